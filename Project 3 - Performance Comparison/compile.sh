@@ -4,4 +4,4 @@
 rm -f bin/*.class
 
 # Compile all Java files in the src folder
-javac -d bin --enable-preview --release 22 src/*.java
\ No newline at end of file
+javac -d bin --enable-preview --release 22 --add-modules jdk.incubator.vector src/*.java
\ No newline at end of file
@@ -1,3 +1,3 @@
 #!/bin/bash
 
-java -cp  bin --enable-preview TimingComparisonScript
+java -cp  bin --enable-preview --add-modules jdk.incubator.vector TimingComparisonScript
@@ -0,0 +1,105 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import static java.lang.System.nanoTime;
+import static java.lang.System.out;
+
+/**
+ * The AllocationComparisonScript class measures the heap allocated by one
+ * index lookup (get), as an i_join probe does it, together with its time.
+ * Allocation is read from the thread's allocated-bytes counter
+ * (com.sun.management.ThreadMXBean) around a loop of lookups with prebuilt
+ * probe keys, so anything counted was allocated by get itself. BpTreeMap's
+ * lookup path is expected to allocate 0 bytes per get. TREE_MAP and
+ * INTBPTREE_MAP are measured the same way for comparison.
+ *
+ * As in JMH, every lookup result is consumed (summed into a sink) so the
+ * lookups cannot be optimized away, and the first of six iterations only
+ * warms up the JIT.
+ */
+class AllocationComparisonScript {
+
+    /**
+     * Number of keys in each index.
+     */
+    private static final int KEYS = 1_000_000;
+
+    /**
+     * Number of lookups per iteration.
+     */
+    private static final int PROBES = 1_000_000;
+
+    /**
+     * Consumes lookup results so the JIT cannot drop the lookups.
+     */
+    private static long sink = 0;
+
+    /**
+     * Return the bytes allocated so far by the current thread.
+     */
+    private static long allocated() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Time the lookups of the probe keys in the index, printing the bytes
+     * allocated and the nano-seconds per get, averaged over five measured
+     * iterations.
+     *
+     * @param label the name of the index
+     * @param index the index to probe
+     * @param probes the keys to look up
+     */
+    static void measure(String label, Map<KeyType, Comparable[]> index, KeyType[] probes) {
+        var bytes = 0L;
+        var ns = 0L;
+        for (var it = 0; it < 6; it++) {
+            var a0 = allocated();
+            var t0 = nanoTime();
+            for (var p : probes) {
+                var t = index.get(p);
+                if (t != null) {
+                    sink += t.length;
+                }
+            } // for
+            var t1 = nanoTime();
+            var a1 = allocated();
+            if (it > 0) {
+                bytes += a1 - a0;
+                ns += t1 - t0;
+            }
+        } // for
+        out.printf("%-14s %8.3f bytes/get %8d ns/get%n", label,
+                bytes / (5.0 * probes.length), ns / (5L * probes.length));
+    }
+
+    public static void main(String[] args) {
+        var rng = new Random(42);
+        var probes = new KeyType[PROBES];
+        for (var i = 0; i < PROBES; i++) {
+            probes[i] = new KeyType(2 * rng.nextInt(2 * KEYS));       // about half hit
+        }
+
+        var bpTree = new BpTreeMap<KeyType, Comparable[]>(KeyType.class, Comparable[].class, 64);
+        var treeMap = new TreeMap<KeyType, Comparable[]>();
+        var intTree = new IntBpTreeMap<Comparable[]>(Integer.class, 64);
+        for (var k = 0; k < 2 * KEYS; k += 2) {
+            var t = new Comparable[]{k, "name" + k, "address" + k, k % 1000};
+            bpTree.put(new KeyType(k), t);
+            treeMap.put(new KeyType(k), t);
+            intTree.put(k, t);
+        } // for
+
+        out.println(KEYS + " keys, " + PROBES + " lookups, Allocation Test cases");
+        measure("BPTREE_MAP", bpTree, probes);
+        measure("TREE_MAP", treeMap, probes);
+        measure("INTBPTREE_MAP", intTree, probes);
+
+        var visits = new long[1];                                     // metrics hook, off while measuring
+        bpTree.setLookupMetrics(v -> visits[0] += v);
+        for (var p : probes) {
+            bpTree.get(p);
+        }
+        bpTree.setLookupMetrics(null);
+        out.println("BPTREE_MAP nodes visited per get = " + visits[0] / (double) PROBES + " (sink " + sink + ")");
+    }
+}
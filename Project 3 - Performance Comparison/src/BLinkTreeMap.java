@@ -0,0 +1,541 @@
+
+/** **********************************************************************************
+ * @file BLinkTreeMap.java
+ *
+ * compile javac --enable-preview --release 22 BLinkTreeMap.java
+ * run     java --enable-preview BLinkTreeMap
+ *
+ * Concurrent B+Tree (B-link tree, Lehman and Yao)
+ * Each node also stores a high key (upper bound of its keys) and a right link to
+ * its right sibling on the same level.
+ * [ . k4 . -- . ] high = +inf
+ *     [ . k1 . k2 . k3 . ] high = k4 --> [ . k4 . k5 . ] high = +inf
+ * Rules: a search for key k at a node with high key <= k moves right (the node split
+ *            after the search read its parent)
+ *        a split publishes the right sibling first, then the shrunken node with its
+ *            new high key and right link, then posts the divider key to the parent
+ *        a removal only takes the key out of its leaf (nodes never merge)
+ *        writers latch the leaf they change and, on a split, the parent
+ *            (bottom-up, left-to-right, so latching cannot deadlock)
+ *        readers take no latches: node contents are immutable snapshots replaced
+ *            by a single volatile write
+ */
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.System.out;
+
+/**
+ * **********************************************************************************
+ * The `BLinkTreeMap` class provides concurrent B+Tree maps. Any number of
+ * threads may call get and put at the same time: lookups never block, and an
+ * insert latches only the leaf it changes (plus the parent when the leaf
+ * splits). A remove latches only the leaf holding the key (B-link tree nodes
+ * never merge, so leaves may become empty), and null values are not allowed. Iteration is in key order and weakly consistent.
+ */
+public class BLinkTreeMap<K extends Comparable<K>, V>
+        extends AbstractMap<K, V>
+{
+
+    private static final int ORDER = 5;                               // default maximum number of children for a node
+
+    private final int order;                                          // maximum number of children for a node
+
+//-----------------------------------------------------------------------------------
+// Node inner class
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * The `Contents` record is an immutable snapshot of a node: its keys, its
+     * references (values for a leaf, one more child than keys for an internal
+     * node), its high key (null => +infinity) and its right sibling.
+     */
+    private record Contents(Object[] key, Object[] ref, Object high, Node right) {
+
+    } // Contents
+
+    /**
+     * ******************************************************************************
+     * The `Node` class defines the nodes of the B-link tree. A writer builds a
+     * new Contents while holding the node's latch and publishes it with one
+     * volatile write, so a reader always sees a whole snapshot.
+     */
+    private static final class Node {
+
+        final boolean isLeaf;                                         // whether the node is a leaf
+        final int level;                                              // height above the leaves (leaf = 0)
+        final ReentrantLock latch = new ReentrantLock();              // held by writers only
+        volatile Contents c;                                          // current contents
+
+        Node(boolean isLeaf_, int level_, Contents c_) {
+            isLeaf = isLeaf_;
+            level = level_;
+            c = c_;
+        } // constructor
+
+    } // Node
+
+//-----------------------------------------------------------------------------------
+// Fields and constructors for B-link tree class
+//-----------------------------------------------------------------------------------
+    private volatile Node root;                                       // root of the B-link tree
+    private final Node firstLeaf;                                     // first (leftmost) leaf, splits only move keys right
+    private final ReentrantLock rootLatch = new ReentrantLock();      // held while growing a new root
+    private final AtomicInteger kCount = new AtomicInteger();         // total number of keys
+
+    /**
+     * ******************************************************************************
+     * Construct an empty B-link tree map using the default order (5).
+     */
+    public BLinkTreeMap() {
+        this(ORDER);
+    } // constructor
+
+    /**
+     * ******************************************************************************
+     * Construct an empty B-link tree map whose nodes have at most _order
+     * children.
+     *
+     * @param _order the maximum number of children for a node (at least 3)
+     */
+    public BLinkTreeMap(int _order) {
+        if (_order < 3) {
+            throw new IllegalArgumentException(
+                    "error: BLinkTreeMap order must be at least 3, was " + _order
+            );
+        }
+        order = _order;
+        root = new Node(true, 0, new Contents(new Object[0], new Object[0], null, null));
+        firstLeaf = root;
+    } // constructor
+
+    /**
+     * ******************************************************************************
+     * Return the size (number of keys) in the B-link tree.
+     */
+    public int size() {
+        return kCount.get();
+    }
+
+//-----------------------------------------------------------------------------------
+// Searching within a node
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Return whether k is at or beyond the high key of contents c, i.e., the
+     * search must move right.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean beyond(Contents c, K k) {
+        return c.high != null && k.compareTo((K) c.high) >= 0;
+    }
+
+    /**
+     * ******************************************************************************
+     * Return the first position where 'k < key_i' (binary search).
+     */
+    @SuppressWarnings("unchecked")
+    private int find(Object[] key, K k) {
+        var lo = 0;
+        var hi = key.length;
+        while (lo < hi) {
+            var mid = (lo + hi) >>> 1;
+            if (k.compareTo((K) key[mid]) < 0) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        } // while
+        return lo;
+    } // find
+
+    /**
+     * ******************************************************************************
+     * Return the position of k, or -(insertion position) - 1 if k is not
+     * there (binary search).
+     */
+    @SuppressWarnings("unchecked")
+    private int findEq(Object[] key, K k) {
+        var lo = 0;
+        var hi = key.length - 1;
+        while (lo <= hi) {
+            var mid = (lo + hi) >>> 1;
+            var cmp = k.compareTo((K) key[mid]);
+            if (cmp == 0) {
+                return mid;
+            }
+            if (cmp < 0) {
+                hi = mid - 1;
+            } else {
+                lo = mid + 1;
+            }
+        } // while
+        return -(lo + 1);
+    } // findEq
+
+    /**
+     * ******************************************************************************
+     * Return a copy of array a with x inserted at position i.
+     */
+    private static Object[] insertAt(Object[] a, int i, Object x) {
+        var b = new Object[a.length + 1];
+        System.arraycopy(a, 0, b, 0, i);
+        b[i] = x;
+        System.arraycopy(a, i, b, i + 1, a.length - i);
+        return b;
+    } // insertAt
+
+    /**
+     * ******************************************************************************
+     * Return a copy of array a without the element at position i.
+     */
+    private static Object[] removeAt(Object[] a, int i) {
+        var b = new Object[a.length - 1];
+        System.arraycopy(a, 0, b, 0, i);
+        System.arraycopy(a, i + 1, b, i, a.length - i - 1);
+        return b;
+    } // removeAt
+
+//-----------------------------------------------------------------------------------
+// Retrieve values
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Given the key, look up the value in the B-link tree. Takes no latches.
+     *
+     * @param key the key used for look up
+     * @return the value associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        var k = (K) key;
+        var n = root;
+        while (true) {
+            var c = n.c;                                              // one snapshot per node visit
+            if (beyond(c, k)) {
+                n = c.right;                                          // split since we read the parent
+            } else if (n.isLeaf) {
+                var i = findEq(c.key, k);
+                return (i >= 0) ? (V) c.ref[i] : null;
+            } else {
+                n = (Node) c.ref[find(c.key, k)];
+            } // if
+        } // while
+    } // get
+
+    /**
+     * ******************************************************************************
+     * Return whether the given key is in the B-link tree.
+     */
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * ******************************************************************************
+     * Return a set view of the entries, in key order. Iteration walks the leaf
+     * level through the right links, reading one snapshot per leaf, so it
+     * never blocks and sees each key at most once.
+     *
+     * @return the set view of the map
+     */
+    @SuppressWarnings("unchecked")
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new Iterator<Map.Entry<K, V>>() {
+                    private Contents c = firstLeaf.c;                 // snapshot of the current leaf
+                    private int i = 0;                                // position in the snapshot
+
+                    public boolean hasNext() {
+                        while (i >= c.key.length && c.right != null) {
+                            c = c.right.c;
+                            i = 0;
+                        } // while
+                        return i < c.key.length;
+                    } // hasNext
+
+                    public Map.Entry<K, V> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        var en = new AbstractMap.SimpleImmutableEntry<K, V>((K) c.key[i], (V) c.ref[i]);
+                        i += 1;
+                        return en;
+                    } // next
+                };
+            } // iterator
+
+            public int size() {
+                return kCount.get();
+            }
+        };
+    } // entrySet
+
+//-----------------------------------------------------------------------------------
+// Put key-value pairs into the B-link tree
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Latch node n, then move right (latching the right sibling before
+     * releasing the current node) until n covers key k. Return the latched
+     * node.
+     */
+    private Node latchCovering(Node n, K k) {
+        n.latch.lock();
+        while (beyond(n.c, k)) {
+            var rt = n.c.right;
+            rt.latch.lock();
+            n.latch.unlock();
+            n = rt;
+        } // while
+        return n;
+    } // latchCovering
+
+    /**
+     * ******************************************************************************
+     * Return the node at the given level covering key k, descending from the
+     * (current) root. Used when the root grew after an insert started. The
+     * split that grows the tree to this level may not have published the new
+     * root yet (its splitter holds only the old root's latch and takes
+     * rootLatch next), so wait until the root reaches the level.
+     */
+    private Node findAtLevel(K k, int level) {
+        var n = root;
+        while (n.level < level) {
+            Thread.onSpinWait();
+            n = root;
+        } // while
+        while (true) {
+            var c = n.c;
+            if (beyond(c, k)) {
+                n = c.right;
+            } else if (n.level == level) {
+                return n;
+            } else {
+                n = (Node) c.ref[find(c.key, k)];
+            } // if
+        } // while
+    } // findAtLevel
+
+    /**
+     * ******************************************************************************
+     * Put the key-value pair in the B-link tree map, replacing the value of an
+     * existing key. Overflowing nodes split into (n, right sibling) with the
+     * larger half moving right, and the divider key is posted to the parent.
+     *
+     * @param key the key to insert
+     * @param value the value to insert (not null)
+     * @return the previous value for this key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException("BLinkTreeMap does not allow null values");
+        }
+
+        var path = new ArrayDeque<Node>();                            // internal nodes on the way down
+        var n = root;
+        while (!n.isLeaf) {
+            var c = n.c;
+            if (beyond(c, key)) {
+                n = c.right;
+            } else {
+                path.push(n);
+                n = (Node) c.ref[find(c.key, key)];
+            } // if
+        } // while
+
+        n = latchCovering(n, key);
+        try {
+            var c = n.c;
+            var i = findEq(c.key, key);
+            if (i >= 0) {                                             // replace the value in place
+                var old = (V) c.ref[i];
+                var ref = c.ref.clone();
+                ref[i] = value;
+                n.c = new Contents(c.key, ref, c.high, c.right);
+                return old;
+            } // if
+            kCount.incrementAndGet();
+
+            var key_ = insertAt(c.key, -i - 1, key);
+            var ref_ = insertAt(c.ref, -i - 1, value);
+            while (true) {
+                if (key_.length < order) {                            // fits => publish and done
+                    n.c = new Contents(key_, ref_, c.high, c.right);
+                    return null;
+                } // if
+
+                var m = key_.length / 2;                              // split: larger half moves to rt
+                var sep = key_[m];                                    // divider key (smallest right)
+                Node rt;
+                if (n.isLeaf) {
+                    rt = new Node(true, 0, new Contents(Arrays.copyOfRange(key_, m, key_.length),
+                            Arrays.copyOfRange(ref_, m, ref_.length), c.high, c.right));
+                    n.c = new Contents(Arrays.copyOf(key_, m), Arrays.copyOf(ref_, m), sep, rt);
+                } else {                                              // middle key moves up only
+                    rt = new Node(false, n.level, new Contents(Arrays.copyOfRange(key_, m + 1, key_.length),
+                            Arrays.copyOfRange(ref_, m + 1, ref_.length), c.high, c.right));
+                    n.c = new Contents(Arrays.copyOf(key_, m), Arrays.copyOf(ref_, m + 1), sep, rt);
+                } // if
+
+                var p = path.poll();                                  // parent from the descent
+                if (p == null) {
+                    rootLatch.lock();
+                    try {
+                        if (root == n) {                              // grow a new root
+                            root = new Node(false, n.level + 1,
+                                    new Contents(new Object[]{sep}, new Object[]{n, rt}, null, null));
+                            return null;
+                        } // if
+                    } finally {
+                        rootLatch.unlock();
+                    } // try
+                    p = findAtLevel((K) sep, n.level + 1);            // another thread grew (or is growing) the root
+                } // if
+
+                var child = n;                                        // latch parent, then release child
+                n = latchCovering(p, (K) sep);
+                child.latch.unlock();
+                c = n.c;
+                var j = find(c.key, (K) sep);
+                key_ = insertAt(c.key, j, sep);
+                ref_ = insertAt(c.ref, j + 1, rt);
+            } // while
+        } finally {
+            n.latch.unlock();                                         // the one latch still held
+        } // try
+    } // put
+
+    /**
+     * ******************************************************************************
+     * Remove the key from the B-link tree map. Only the leaf holding the key is
+     * latched and changed: nodes never merge, so a leaf may become empty, but
+     * its high key and right link stay, so searches still move right correctly.
+     *
+     * @param key the key to remove
+     * @return the value that was removed, or null if the key was not there
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        var k = (K) key;
+        var n = root;
+        while (!n.isLeaf) {
+            var c = n.c;
+            n = beyond(c, k) ? c.right : (Node) c.ref[find(c.key, k)];
+        } // while
+
+        n = latchCovering(n, k);
+        try {
+            var c = n.c;
+            var i = findEq(c.key, k);
+            if (i < 0) {
+                return null;
+            }
+            n.c = new Contents(removeAt(c.key, i), removeAt(c.ref, i), c.high, c.right);
+            kCount.decrementAndGet();
+            return (V) c.ref[i];
+        } finally {
+            n.latch.unlock();
+        } // try
+    } // remove
+
+//-----------------------------------------------------------------------------------
+// Main method for running/testing the B-link tree
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Run the given number of trials in which writers threads each insert
+     * perWriter disjoint keys at once into a new tree of order 3, so the root
+     * splits and grows while other writers are splitting its siblings. Return
+     * the number of trials after which some key was missing or the size was
+     * wrong.
+     */
+    private static int growthTrials(int trials, int writers, int perWriter) throws InterruptedException {
+        var bad = 0;
+        for (var t = 0; t < trials; t++) {
+            var tree = new BLinkTreeMap<Integer, Integer>(3);
+            var threads = new ArrayList<Thread>();
+            for (var w = 0; w < writers; w++) {
+                final var id = w;
+                threads.add(Thread.ofPlatform().start(() -> {
+                    for (var i = 0; i < perWriter; i++) {
+                        tree.put(i * writers + id, i);
+                    }
+                }));
+            } // for
+            for (var th : threads) {
+                th.join();
+            }
+            var ok = tree.size() == writers * perWriter;
+            for (var k = 0; ok && k < writers * perWriter; k++) {
+                ok = Integer.valueOf(k / writers).equals(tree.get(k));
+            }
+            if (!ok) {
+                bad++;
+            }
+        } // for
+        return bad;
+    } // growthTrials
+
+    /**
+     * ******************************************************************************
+     * The main method used for testing: several threads insert disjoint keys
+     * while others look them up, then every key is checked. Then many small
+     * trials check that every key survives writers racing while the root grows.
+     *
+     * @param args the command-line arguments (args[0] gives number of keys to
+     * insert per thread)
+     */
+    public static void main(String[] args) throws InterruptedException {
+        var perThread = (args.length == 1) ? Integer.parseInt(args[0]) : 100_000;
+        var writers = 4;
+        var tree = new BLinkTreeMap<Integer, Integer>(16);
+
+        var threads = new ArrayList<Thread>();
+        for (var w = 0; w < writers; w++) {
+            final var id = w;
+            threads.add(new Thread(() -> {
+                for (var i = 0; i < perThread; i++) {
+                    tree.put(i * writers + id, i);
+                }
+            }));
+            threads.add(new Thread(() -> {
+                var rng = new Random(id);
+                for (var i = 0; i < perThread; i++) {
+                    var v = tree.get(rng.nextInt(perThread * writers));
+                    if (v != null && v < 0) {
+                        out.println("bad value");
+                    }
+                } // for
+            }));
+        } // for
+        for (var t : threads) {
+            t.start();
+        }
+        for (var t : threads) {
+            t.join();
+        }
+
+        var missing = 0;
+        for (var k = 0; k < perThread * writers; k++) {
+            if (!Integer.valueOf(k / writers).equals(tree.get(k))) {
+                missing++;
+            }
+        } // for
+        var prev = -1;
+        var ordered = true;
+        for (var e : tree.entrySet()) {
+            ordered &= e.getKey() > prev;
+            prev = e.getKey();
+        } // for
+        out.println("size = " + tree.size() + ", missing = " + missing + ", ordered = " + ordered);
+
+        var trials = 20_000;
+        out.println("root growth: " + growthTrials(trials, writers, 20) + " of " + trials + " trials lost keys");
+    } // main
+
+} // BLinkTreeMap
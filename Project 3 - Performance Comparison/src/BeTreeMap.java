@@ -0,0 +1,719 @@
+/** **********************************************************************************
+ * @file BeTreeMap.java
+ *
+ * compile javac --enable-preview --release 22 BeTreeMap.java
+ * run     java --enable-preview BeTreeMap
+ *
+ * Buffered B-tree (B^epsilon-tree): a B+Tree whose internal nodes also hold a
+ * buffer of pending messages (upserts and deletes). An insert appends a message
+ * to the root's buffer; when a buffer fills, its messages are sorted and pushed
+ * down to the children in one batch, a leaf taking its whole batch in a single
+ * merge. Each message so moves down a level with many others, rather than every
+ * key paying its own root-to-leaf descent and split cascade.
+ *
+ * [ buffer: (k9, v) (k2, del) ... | . k4 . k8 . ]
+ *     [ k1 k2 k3 ] -> [ k4 k5 k6 k7 ] -> [ k8 k9 ]
+ *
+ * Rules: child i holds keys in [pivot i-1, pivot i) (SMALLEST RIGHT, as BpTreeMap)
+ *        a message in a higher buffer is newer than anything below it, and a later
+ *        message in one buffer is newer than an earlier one
+ *        an overfull node is split into as many pieces as it needs (a batch may
+ *        overfill a leaf by more than one split's worth)
+ *        deletes leave leaves as they are (no merging, as in PagedBpTreeMap)
+ */
+
+import java.lang.reflect.Array;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/**
+ * **********************************************************************************
+ * The `BeTreeMap` class provides write-optimized sorted maps. upsert is the
+ * fast (blind) insert: it neither looks the key up nor returns the old value.
+ * put and remove keep the Map contract by looking the key up first.
+ *
+ * get walks one root-to-leaf path, checking each buffer on the way (a buffer
+ * is sorted, once, when a lookup first meets it). range collects a key range
+ * from the leaves and every buffer above them. size and iteration first flush
+ * every buffer down to the leaves, which are linked in key order as in
+ * BpTreeMap. Lookups may sort buffers, so the map is not thread-safe.
+ */
+public class BeTreeMap<K extends Comparable<K>, V>
+        extends AbstractMap<K, V>
+{
+
+    private static final int ORDER = 16;                              // default maximum number of children
+    private static final int LEAF = 64;                               // default maximum entries per leaf
+    private static final int BUFFER = 512;                            // default messages per buffer before a flush
+    private static final Object TOMBSTONE = new Object();             // message value of a delete
+
+    private final int order;                                          // maximum number of children for a node
+    private final int leafSize;                                       // maximum number of entries for a leaf
+    private final int bufferSize;                                     // messages that make a buffer flush
+
+    /**
+     * ******************************************************************************
+     * A message pending in a buffer: key k is to take value v (TOMBSTONE =>
+     * removed).
+     */
+    private record Msg(Comparable k, Object v) {
+    }
+
+    private static final Comparator<Msg> BY_KEY = (a, b) -> a.k().compareTo(b.k());
+
+//-----------------------------------------------------------------------------------
+// Node inner class
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * The `Node` inner class defines the nodes of the tree.
+     * Leaf: key [0 .. keys-1] ascending, val [i] the value of key [i].
+     * Internal: child [0 .. keys], key [i] the pivot between child i and i+1,
+     * buf [0 .. bn-1] the pending messages, oldest first (or, once sorted, by key
+     * with one message per key).
+     */
+    private class Node {
+
+        final boolean isLeaf;                                         // whether the node is a leaf
+        int keys;                                                     // number of keys (pivots for an internal node)
+        Comparable[] key;                                             // leaf keys or pivots
+        Object[] val;                                                 // leaf: values
+        Node next;                                                    // leaf: next leaf in the LINKED LIST
+        Node[] child;                                                 // internal: children
+        Msg[] buf;                                                    // internal: buffered messages
+        int bn;                                                       // internal: number of buffered messages
+        boolean sorted = true;                                        // internal: whether buf is sorted by key
+
+        @SuppressWarnings("unchecked")
+        Node(boolean isLeaf_, int cap) {
+            isLeaf = isLeaf_;
+            key = new Comparable[cap];
+            if (isLeaf) {
+                val = new Object[cap];
+            } else {
+                child = (Node[]) Array.newInstance(Node.class, cap + 1);
+                buf = new Msg[bufferSize];
+            } // if
+        } // constructor
+
+        /**
+         * **************************************************************************
+         * Return whether this node holds more than it may (and must be split).
+         */
+        boolean overflow() {
+            return isLeaf ? keys > leafSize : keys + 1 > order;
+        }
+
+        /**
+         * **************************************************************************
+         * Return the first position i where 'k < key [i]' (binary search); for an
+         * internal node, the child that covers k.
+         */
+        @SuppressWarnings("unchecked")
+        int find(Comparable k) {
+            var lo = 0;
+            var hi = keys;
+            while (lo < hi) {
+                var mid = (lo + hi) >>> 1;
+                if (k.compareTo(key[mid]) < 0) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            } // while
+            return lo;
+        } // find
+
+        /**
+         * **************************************************************************
+         * Return the position of key k in this LEAF, or -1 if it is absent.
+         */
+        @SuppressWarnings("unchecked")
+        int search(Comparable k) {
+            var i = find(k) - 1;
+            return (i >= 0 && k.compareTo(key[i]) == 0) ? i : -1;
+        } // search
+
+        /**
+         * **************************************************************************
+         * Sort this INTERNAL node's buffer by key (stable, so the newest message
+         * for a key is the last of its run) and keep only the newest per key.
+         */
+        @SuppressWarnings("unchecked")
+        void sortBuffer() {
+            if (sorted) {
+                return;
+            }
+            Arrays.sort(buf, 0, bn, BY_KEY);
+            var m = 0;
+            for (var i = 0; i < bn; i++) {
+                if (m > 0 && buf[m - 1].k().compareTo(buf[i].k()) == 0) {
+                    buf[m - 1] = buf[i];                              // a later message replaces an earlier one
+                } else {
+                    buf[m++] = buf[i];
+                }
+            } // for
+            Arrays.fill(buf, m, bn, null);
+            bn = m;
+            sorted = true;
+        } // sortBuffer
+
+        /**
+         * **************************************************************************
+         * Return the message for key k in this INTERNAL node's buffer, or null.
+         */
+        @SuppressWarnings("unchecked")
+        Msg pending(Comparable k) {
+            if (bn == 0) {
+                return null;
+            }
+            sortBuffer();
+            var lo = 0;
+            var hi = bn - 1;
+            while (lo <= hi) {
+                var mid = (lo + hi) >>> 1;
+                var c = k.compareTo(buf[mid].k());
+                if (c == 0) {
+                    return buf[mid];
+                } else if (c < 0) {
+                    hi = mid - 1;
+                } else {
+                    lo = mid + 1;
+                }
+            } // while
+            return null;
+        } // pending
+
+    } // Node
+
+//-----------------------------------------------------------------------------------
+// Fields and constructors
+//-----------------------------------------------------------------------------------
+    private Node root;                                                // root of the tree
+    private Node firstLeaf;                                           // first (leftmost) leaf
+    private int kCount = 0;                                           // number of keys in the leaves
+
+    /**
+     * ******************************************************************************
+     * Construct an empty buffered B-tree map using the default sizes.
+     */
+    public BeTreeMap() {
+        this(ORDER, LEAF, BUFFER);
+    } // constructor
+
+    /**
+     * ******************************************************************************
+     * Construct an empty buffered B-tree map.
+     *
+     * @param _order the maximum number of children for an internal node (at least 3)
+     * @param _leafSize the maximum number of entries for a leaf (at least 2)
+     * @param _bufferSize the number of buffered messages that makes a node flush
+     */
+    public BeTreeMap(int _order, int _leafSize, int _bufferSize) {
+        if (_order < 3 || _leafSize < 2 || _bufferSize < 1) {
+            throw new IllegalArgumentException(
+                    "error: BeTreeMap needs order >= 3, leaf size >= 2 and buffer size >= 1, was "
+                    + _order + ", " + _leafSize + ", " + _bufferSize
+            );
+        }
+        order = _order;
+        leafSize = _leafSize;
+        bufferSize = _bufferSize;
+        reset();
+    } // constructor
+
+    /**
+     * ******************************************************************************
+     * Return the size (number of keys) of the map, after flushing every buffer.
+     */
+    public int size() {
+        flushAll();
+        return kCount;
+    }
+
+    public void clear() {
+        reset();
+    } // clear
+
+    /**
+     * ******************************************************************************
+     * Empty the map, leaving a single empty leaf as root. The constructor calls
+     * this rather than the overridable clear.
+     */
+    private void reset() {
+        root = new Node(true, leafSize + 1);
+        firstLeaf = root;
+        kCount = 0;
+    } // reset
+
+//-----------------------------------------------------------------------------------
+// Retrieve values
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Given the key, look up the value: the newest message for it on the path to
+     * its leaf, else the leaf's entry.
+     *
+     * @param key the key used for look up
+     * @return the value associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        var k = (Comparable) key;
+        var n = root;
+        while (!n.isLeaf) {
+            var m = n.pending(k);
+            if (m != null) {
+                return (m.v() == TOMBSTONE) ? null : (V) m.v();
+            }
+            n = n.child[n.find(k)];
+        } // while
+        var i = n.search(k);
+        return (i >= 0) ? (V) n.val[i] : null;
+    } // get
+
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * ******************************************************************************
+     * Return the values of the keys in the range lo to hi, in key order. A null
+     * bound leaves that end of the range open.
+     * <p>
+     * #usage tree.range (lo, true, hi, false)
+     *
+     * @param lo the lower bound (null => none)
+     * @param loInclusive whether lo itself is in the range
+     * @param hi the upper bound (null => none)
+     * @param hiInclusive whether hi itself is in the range
+     * @return the values in the range
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> range(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+        var found = new TreeMap<Comparable, Object>();
+        collect(root, lo, loInclusive, hi, hiInclusive, found);
+        var values = new ArrayList<V>(found.size());
+        for (var v : found.values()) {
+            if (v != TOMBSTONE) {
+                values.add((V) v);
+            }
+        } // for
+        return values;
+    } // range
+
+    /**
+     * ******************************************************************************
+     * Put the entries and messages of subtree n that fall in the range into found,
+     * deeper (older) ones first so that newer ones replace them.
+     */
+    @SuppressWarnings("unchecked")
+    private void collect(Node n, K lo, boolean loInc, K hi, boolean hiInc, Map<Comparable, Object> found) {
+        if (n.isLeaf) {
+            for (var i = 0; i < n.keys; i++) {
+                if (inRange(n.key[i], lo, loInc, hi, hiInc)) {
+                    found.put(n.key[i], n.val[i]);
+                }
+            } // for
+            return;
+        } // if
+        var first = (lo == null) ? 0 : n.find(lo);
+        var last = (hi == null) ? n.keys : n.find(hi);
+        for (var i = first; i <= last; i++) {
+            collect(n.child[i], lo, loInc, hi, hiInc, found);
+        }
+        for (var i = 0; i < n.bn; i++) {                              // oldest first
+            if (inRange(n.buf[i].k(), lo, loInc, hi, hiInc)) {
+                found.put(n.buf[i].k(), n.buf[i].v());
+            }
+        } // for
+    } // collect
+
+    @SuppressWarnings("unchecked")
+    private static boolean inRange(Comparable k, Comparable lo, boolean loInc, Comparable hi, boolean hiInc) {
+        if (lo != null) {
+            var c = k.compareTo(lo);
+            if (c < 0 || (c == 0 && !loInc)) {
+                return false;
+            }
+        } // if
+        if (hi != null) {
+            var c = k.compareTo(hi);
+            return c < 0 || (c == 0 && hiInc);
+        } // if
+        return true;
+    } // inRange
+
+    /**
+     * ******************************************************************************
+     * Return a set view of the entries in key order. Every buffer is first
+     * flushed to the leaves, then iteration walks the linked leaves.
+     *
+     * @return the set view of the map
+     */
+    public Set<Map.Entry<K, V>> entrySet() {
+        flushAll();
+        return new AbstractSet<>() {
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new Iterator<>() {
+                    private Node leaf = firstLeaf;
+                    private int i = 0;
+
+                    public boolean hasNext() {
+                        while (leaf != null && i >= leaf.keys) {      // deletes may leave empty leaves
+                            leaf = leaf.next;
+                            i = 0;
+                        } // while
+                        return leaf != null;
+                    }
+
+                    @SuppressWarnings("unchecked")
+                    public Map.Entry<K, V> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        var e = new AbstractMap.SimpleImmutableEntry<>((K) leaf.key[i], (V) leaf.val[i]);
+                        i++;
+                        return e;
+                    }
+                };
+            }
+
+            public int size() {
+                return kCount;
+            }
+        };
+    } // entrySet
+
+//-----------------------------------------------------------------------------------
+// Put and remove
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Put the key-value pair in the map, returning the old value (which costs a
+     * lookup; use upsert when the old value is not needed).
+     *
+     * @param key the key to insert
+     * @param value the value to insert
+     * @return the previous value for the key, or null
+     */
+    public V put(K key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("error: BeTreeMap does not hold null values");
+        }
+        var old = get(key);
+        upsert(key, value);
+        return old;
+    } // put
+
+    /**
+     * ******************************************************************************
+     * Remove the key from the map, returning its old value (null if absent).
+     *
+     * @param key the key to remove
+     * @return the previous value for the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        var old = get(key);
+        if (old != null) {
+            message((Comparable) key, TOMBSTONE);
+        }
+        return old;
+    } // remove
+
+    /**
+     * ******************************************************************************
+     * Insert or replace the value for key without looking it up (a blind write):
+     * the message goes to the root's buffer and moves down with a batch.
+     * <p>
+     * #usage tree.upsert (new KeyType (k), tuple)
+     *
+     * @param key the key to insert
+     * @param value the value to insert
+     */
+    public void upsert(K key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("error: BeTreeMap does not hold null values");
+        }
+        message(key, value);
+    } // upsert
+
+    /**
+     * ******************************************************************************
+     * Send the message (k, v) to the tree: into the root's buffer, or straight into
+     * the root when it is still a leaf.
+     */
+    private void message(Comparable k, Object v) {
+        if (root.isLeaf) {
+            mergeLeaf(root, new Msg[]{new Msg(k, v)}, 0, 1);
+        } else {
+            if (root.bn == root.buf.length) {
+                root.buf = Arrays.copyOf(root.buf, 2 * root.bn);
+            }
+            root.buf[root.bn++] = new Msg(k, v);
+            root.sorted = root.bn == 1;
+            if (root.bn >= bufferSize) {
+                flush(root);
+            }
+        } // if
+        growRoot();
+    } // message
+
+    /**
+     * ******************************************************************************
+     * Split an overfull root, adding levels until it fits.
+     */
+    private void growRoot() {
+        while (root.overflow()) {
+            var newRoot = new Node(false, order);
+            newRoot.child[0] = root;
+            root = newRoot;
+            splitChild(root, 0);
+        } // while
+    } // growRoot
+
+    /**
+     * ******************************************************************************
+     * Flush every buffer down to the leaves.
+     */
+    private void flushAll() {
+        flushAll(root);
+        growRoot();
+    } // flushAll
+
+    private void flushAll(Node n) {
+        if (n.isLeaf) {
+            return;
+        }
+        flush(n);
+        for (var i = n.keys; i >= 0; i--) {                           // right to left: splits add children after i
+            flushAll(n.child[i]);
+            if (n.child[i].overflow()) {
+                splitChild(n, i);
+            }
+        } // for
+    } // flushAll
+
+    /**
+     * ******************************************************************************
+     * Push all of INTERNAL node n's buffered messages down to its children, sorted
+     * and cut by its pivots into one batch per child. Children that overflow are
+     * split (n's own overflow is left to its parent).
+     */
+    private void flush(Node n) {
+        if (n.bn == 0) {
+            return;
+        }
+        n.sortBuffer();
+        var msgs = n.buf;
+        var end = n.bn;
+        n.buf = new Msg[bufferSize];
+        n.bn = 0;
+        n.sorted = true;
+        for (var i = n.keys; i >= 0 && end > 0; i--) {                // right to left: splits add children after i
+            var start = (i == 0) ? 0 : lowerBound(msgs, end, n.key[i - 1]);
+            if (start < end) {
+                push(n.child[i], msgs, start, end);
+                if (n.child[i].overflow()) {
+                    splitChild(n, i);
+                }
+            } // if
+            end = start;
+        } // for
+    } // flush
+
+    /**
+     * ******************************************************************************
+     * Return the first position in msgs [0 .. end-1] (sorted) whose key is >= k.
+     */
+    @SuppressWarnings("unchecked")
+    private static int lowerBound(Msg[] msgs, int end, Comparable k) {
+        var lo = 0;
+        var hi = end;
+        while (lo < hi) {
+            var mid = (lo + hi) >>> 1;
+            if (msgs[mid].k().compareTo(k) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        } // while
+        return lo;
+    } // lowerBound
+
+    /**
+     * ******************************************************************************
+     * Give the sorted batch msgs [from .. to-1] to node n: merged into a leaf, or
+     * appended to an internal node's buffer (flushing it when full).
+     */
+    private void push(Node n, Msg[] msgs, int from, int to) {
+        if (n.isLeaf) {
+            mergeLeaf(n, msgs, from, to);
+            return;
+        } // if
+        var len = to - from;
+        if (n.bn + len > n.buf.length) {
+            n.buf = Arrays.copyOf(n.buf, n.bn + len);
+        }
+        n.sorted = n.bn == 0;                                         // a batch is sorted, unless appended to others
+        System.arraycopy(msgs, from, n.buf, n.bn, len);
+        n.bn += len;
+        if (n.bn >= bufferSize) {
+            flush(n);
+        }
+    } // push
+
+    /**
+     * ******************************************************************************
+     * Merge the sorted batch msgs [from .. to-1] into LEAF n in one pass,
+     * applying upserts and deletes. The leaf may be left overfull.
+     */
+    @SuppressWarnings("unchecked")
+    private void mergeLeaf(Node n, Msg[] msgs, int from, int to) {
+        var cap = Math.max(n.keys + to - from, leafSize + 1);
+        var key = new Comparable[cap];
+        var val = new Object[cap];
+        var m = 0;
+        var i = 0;
+        var j = from;
+        while (i < n.keys || j < to) {
+            var c = (i == n.keys) ? 1 : (j == to) ? -1 : n.key[i].compareTo(msgs[j].k());
+            if (c < 0) {                                              // leaf entry with no message
+                key[m] = n.key[i];
+                val[m++] = n.val[i++];
+            } else {
+                var msg = msgs[j++];
+                if (c == 0) {
+                    i++;                                              // the message replaces the entry
+                    kCount--;
+                }
+                if (msg.v() != TOMBSTONE) {
+                    key[m] = msg.k();
+                    val[m++] = msg.v();
+                    kCount++;
+                }
+            } // if
+        } // while
+        n.key = key;
+        n.val = val;
+        n.keys = m;
+    } // mergeLeaf
+
+    /**
+     * ******************************************************************************
+     * Split the overfull child i of internal node p into as many pieces as it
+     * needs, adding the pieces after it in p. An internal child is split only
+     * right after its buffer was flushed, so its buffer is empty.
+     */
+    @SuppressWarnings("unchecked")
+    private void splitChild(Node p, int i) {
+        var n = p.child[i];
+        var count = n.isLeaf ? n.keys : n.keys + 1;                   // entries or children to share out
+        var max = n.isLeaf ? leafSize : order;
+        var pieces = (count + max - 1) / max;
+        var per = (count + pieces - 1) / pieces;
+
+        var newNodes = (Node[]) Array.newInstance(Node.class, pieces - 1);
+        var newKeys = new Comparable[pieces - 1];
+        for (var s = 1; s < pieces; s++) {
+            var from = s * per;
+            var to = Math.min(count, from + per);
+            var r = new Node(n.isLeaf, n.isLeaf ? leafSize + 1 : order);
+            if (n.isLeaf) {
+                System.arraycopy(n.key, from, r.key, 0, to - from);
+                System.arraycopy(n.val, from, r.val, 0, to - from);
+                r.keys = to - from;
+                newKeys[s - 1] = n.key[from];                         // SMALLEST RIGHT
+            } else {
+                System.arraycopy(n.child, from, r.child, 0, to - from);
+                System.arraycopy(n.key, from, r.key, 0, to - from - 1);
+                r.keys = to - from - 1;
+                newKeys[s - 1] = n.key[from - 1];                     // pivot between the pieces moves up
+            } // if
+            newNodes[s - 1] = r;
+        } // for
+
+        if (n.isLeaf) {
+            var last = n.next;
+            n.next = newNodes[0];
+            for (var s = 0; s < pieces - 2; s++) {
+                newNodes[s].next = newNodes[s + 1];
+            }
+            newNodes[pieces - 2].next = last;
+            Arrays.fill(n.key, per, n.keys, null);
+            Arrays.fill(n.val, per, n.keys, null);
+            n.keys = per;
+        } else {
+            Arrays.fill(n.key, per - 1, n.keys, null);
+            Arrays.fill(n.child, per, n.keys + 1, null);
+            n.keys = per - 1;
+        } // if
+
+        var add = pieces - 1;                                         // insert into p after child i
+        if (p.keys + add > p.key.length) {
+            p.key = Arrays.copyOf(p.key, p.keys + add + order);
+            p.child = Arrays.copyOf(p.child, p.keys + add + order + 1);
+        }
+        System.arraycopy(p.key, i, p.key, i + add, p.keys - i);
+        System.arraycopy(p.child, i + 1, p.child, i + 1 + add, p.keys - i);
+        System.arraycopy(newKeys, 0, p.key, i, add);
+        System.arraycopy(newNodes, 0, p.child, i + 1, add);
+        p.keys += add;
+    } // splitChild
+
+//-----------------------------------------------------------------------------------
+// Main method for checking against TreeMap
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * The main method applies a random mix of upserts, puts and removes to a
+     * BeTreeMap and a TreeMap, and checks lookups, ranges and iteration agree.
+     *
+     * @param args the command-line arguments (args[0] gives the number of operations)
+     */
+    public static void main(String[] args) {
+        var ops = (args.length == 1) ? Integer.parseInt(args[0]) : 200_000;
+        var rng = new Random(42);
+        var tree = new BeTreeMap<Integer, Integer>(5, 4, 16);
+        var check = new TreeMap<Integer, Integer>();
+
+        for (var i = 0; i < ops; i++) {
+            var k = rng.nextInt(ops / 4);
+            switch (rng.nextInt(4)) {
+                case 0, 1 -> {
+                    tree.upsert(k, i);
+                    check.put(k, i);
+                }
+                case 2 -> {
+                    if (!Objects.equals(tree.put(k, i), check.put(k, i))) {
+                        throw new IllegalStateException("error: put returned a different old value for " + k);
+                    }
+                }
+                default -> {
+                    if (!Objects.equals(tree.remove(k), check.remove(k))) {
+                        throw new IllegalStateException("error: remove returned a different old value for " + k);
+                    }
+                }
+            } // switch
+            if (i % 1000 == 0) {
+                var lo = rng.nextInt(ops / 4);
+                var hi = lo + rng.nextInt(100);
+                if (!tree.range(lo, true, hi, false).equals(new ArrayList<>(check.subMap(lo, hi).values()))) {
+                    throw new IllegalStateException("error: range [" + lo + ", " + hi + ") differs");
+                }
+            } // if
+        } // for
+        for (var k = 0; k < ops / 4; k++) {
+            if (!Objects.equals(tree.get(k), check.get(k))) {
+                throw new IllegalStateException("error: lookups differ for " + k);
+            }
+        } // for
+        if (!tree.equals(check) || !new ArrayList<>(tree.keySet()).equals(new ArrayList<>(check.keySet()))) {
+            throw new IllegalStateException("error: entries differ");
+        }
+        out.println("BeTreeMap agrees with TreeMap after " + ops + " operations (" + check.size() + " keys)");
+    } // main
+
+} // BeTreeMap
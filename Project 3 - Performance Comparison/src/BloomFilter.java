@@ -0,0 +1,120 @@
+import java.io.Serializable;
+
+/**
+ * **********************************************************************************
+ * A Bloom filter over key values: a bit set with k hash functions that answers
+ * "definitely absent" or "maybe present". Sized from the expected number of keys n
+ * and the wanted false positive rate p as m = -n ln p / (ln 2)^2 bits and
+ * k = (m / n) ln 2 hash functions. The k bit positions come from double hashing
+ * (h1 + i * h2) of the key's mixed hashCode, so a probe hashes the key once.
+ * Keys cannot be removed; a deleted key only adds to the false positives.
+ */
+public class BloomFilter
+        implements Serializable {
+
+    private final long[] bits;  // the bit set
+    private final int numBits;  // m, the number of bits
+    private final int numHashes;  // k, the number of hash functions
+    private final int capacity;  // n, the number of keys the filter was sized for
+    private final double fpp;  // p, the false positive rate at capacity
+    private int added;  // number of keys added
+
+    /**
+     * **********************************************************************************
+     * Construct an empty Bloom filter sized for expected keys at false positive rate
+     * fpp.
+     *
+     * @param expected the number of keys expected
+     * @param fpp the false positive rate wanted, in (0, 1)
+     */
+    public BloomFilter(int expected, double fpp) {
+        if (fpp <= 0.0 || fpp >= 1.0) {
+            throw new IllegalArgumentException(
+                    "error: Bloom filter false positive rate must be in (0, 1), was " + fpp
+            );
+        }
+        this.capacity = Math.max(expected, 1);
+        this.fpp = fpp;
+        var m = (long) Math.ceil(-this.capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.numBits = (int) Math.min(Math.max(m, 64), Integer.MAX_VALUE - 63);
+        this.numHashes = Math.max(1, (int) Math.round((double) this.numBits / this.capacity * Math.log(2)));
+        this.bits = new long[(this.numBits + 63) / 64];
+    }
+
+    /**
+     * **********************************************************************************
+     * Adds key to the filter.
+     *
+     * @param key the key value to add
+     */
+    public void add(Object key) {
+        var h = mix(key.hashCode());
+        var h1 = (int) h;
+        var h2 = (int) (h >>> 32);
+        for (var i = 0; i < this.numHashes; i++) {
+            var bit = Math.floorMod(h1 + i * h2, this.numBits);
+            this.bits[bit >>> 6] |= 1L << bit;
+        }
+        this.added++;
+    }
+
+    /**
+     * **********************************************************************************
+     * Returns false if key was definitely never added, true if it may have been.
+     *
+     * @param key the key value to test
+     * @return whether the key may be in the filter
+     */
+    public boolean mightContain(Object key) {
+        var h = mix(key.hashCode());
+        var h1 = (int) h;
+        var h2 = (int) (h >>> 32);
+        for (var i = 0; i < this.numHashes; i++) {
+            var bit = Math.floorMod(h1 + i * h2, this.numBits);
+            if ((this.bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * **********************************************************************************
+     * Spreads a (possibly weak) hashCode over 64 bits (the MurmurHash3 finalizer),
+     * giving the two hashes for double hashing.
+     */
+    private static long mix(int hashCode) {
+        var h = hashCode * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * **********************************************************************************
+     * Returns whether more keys were added than the filter was sized for (its false
+     * positive rate is then above fpp).
+     */
+    public boolean isOverCapacity() {
+        return this.added > this.capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public double getFpp() {
+        return fpp;
+    }
+
+    public int getNumBits() {
+        return numBits;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+}
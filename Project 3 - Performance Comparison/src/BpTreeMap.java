@@ -9,6 +9,8 @@
  *
  * Split Nodes on Overflow
  * Structure for order = 5 (max of 4 keys), upon first split
+ * (the order defaults to 5 but may be given to the constructor, e.g., 64 - 256
+ *  so that a node's key array spans a few cache lines)
  * [ . k4 . -- . -- . -- . ]
  *     [ . k1 . k2 . k3 . -- . ]
  *     [ . k4 . k5 . -- . -- . ]
@@ -16,11 +18,29 @@
  *            in the right sub-tree (SMALLEST RIGHT)
  *        split node n into (n, right_sibling_node) with larger half staying in n
  *        internal node split promotes middle key to parent as the divider key
+ *
+ * Merge or Redistribute Nodes on Underflow (fewer than half = (order - 1) / 2 keys)
+ * Rules: borrow a key from the left, else the right, sibling when it has more than half
+ *        otherwise merge the node with a sibling (always into the left one, so the
+ *        first leaf stays first) and remove their divider key from the parent
+ *        a root left with no keys is replaced by its only child
+ *
+ * Copy on Write Snapshots
+ * Rules: snapshot () freezes every node made so far (stamped with an older epoch)
+ *        a later put/remove copies each frozen node on its root-to-leaf path (and any
+ *            sibling it borrows from or merges into) before changing it, so the
+ *            snapshot's nodes are never changed, only shared
+ *        the one exception is a leaf's link (ref [0]), which is re-pointed at the
+ *            copy of the next leaf; snapshots walk the tree, never the links
  */
 
 import java.io.*;
 import java.lang.reflect.Array;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 import static java.lang.Math.ceil;
 import static java.lang.System.out;
@@ -34,17 +54,23 @@ import static java.lang.System.out;
  * key corresponds to the smallest key in its right sub-tree (SMALLEST RIGHT).
  * Keys in left sub-tree are "<",
  * while keys in right sub-tree are ">=".
+ *
+ * Range queries are supported through the `NavigableMap` interface: subMap,
+ * headMap and tailMap return lazy views that make one root-to-leaf descent to
+ * find their first entry and then walk the linked leaves.
  */
 public class BpTreeMap<K extends Comparable<K>, V>
         extends AbstractMap<K, V>
-        implements Serializable, Cloneable // , SortedMap <K, V>
+        implements Serializable, Cloneable, NavigableMap<K, V>
 {
 
     private static final boolean DEBUG = false;                        // debug flag
 
-    private static final int ORDER = 5;                               // maximum number of children for a B+Tree node.
-    private static final int HALF = (ORDER - 1) / 2;                 // half of max keys (floor)
-    private static final int HALFP = ORDER - HALF;                    // rest of the keys (half plus)
+    private static final int ORDER = 5;                               // default maximum number of children for a B+Tree node.
+
+    private final int order;                                          // maximum number of children for a B+Tree node.
+    private final int half;                                           // half of max keys (floor)
+    private final int halfp;                                          // rest of the keys (half plus)
 
     private final Class<K> classK;                                   // The class for type K.
     private final Class<V> classV;                                   // The class for type V.
@@ -66,6 +92,7 @@ public class BpTreeMap<K extends Comparable<K>, V>
      */
     private class Node {
 
+        int epoch = BpTreeMap.this.epoch;                           // epoch made in (older => frozen by a snapshot)
         boolean isLeaf;                                             // whether the node is a leaf
         int keys;                                               // number of active keys
         K[] key;                                                // array of keys
@@ -82,9 +109,23 @@ public class BpTreeMap<K extends Comparable<K>, V>
         Node(int keys_, boolean isLeaf_) {
             isLeaf = isLeaf_;
             keys = keys_;
-            key = (K[]) Array.newInstance(classK, ORDER);
-            ref = (isLeaf) ? new Object[ORDER + 1]
-                    : (Node[]) Array.newInstance(Node.class, ORDER + 1);
+            key = (K[]) Array.newInstance(classK, order);
+            ref = (isLeaf) ? new Object[order + 1]
+                    : (Node[]) Array.newInstance(Node.class, order + 1);
+        } // constructor
+
+        /**
+         * **************************************************************************
+         * Construct a copy of (frozen) node n in the current epoch, sharing n's
+         * keys, values and children but not its arrays.
+         *
+         * @param n the node to copy
+         */
+        Node(Node n) {
+            isLeaf = n.isLeaf;
+            keys = n.keys;
+            key = n.key.clone();
+            ref = n.ref.clone();
         } // constructor
 
         /**
@@ -107,39 +148,62 @@ public class BpTreeMap<K extends Comparable<K>, V>
          * Return whether this node has overflowed (too many keys).
          */
         boolean overflow() {
-            return keys >= ORDER;
+            return keys >= order;
         }
 
         /**
          * **************************************************************************
          * Find and return the first position where 'k < key_i' in this node.
-         * @param k
+         * Uses binary search, so wide nodes cost log2 (keys) comparisons.
          *
-         * the key whose position is sought
+         * @param k the key whose position is sought
          */
         int find(K k) {
-            for (var i = 0; i < keys; i++) {
-                if (k.compareTo(key[i]) < 0) {
-                    return i;
+            var lo = 0;
+            var hi = keys;
+            while (lo < hi) {
+                var mid = (lo + hi) >>> 1;
+                if (k.compareTo(key[mid]) < 0) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
                 }
-            }
-            return keys;
+            } // while
+            return lo;
         } // find
 
         /**
          * **************************************************************************
-         * Find and return the first position where 'k == key_i' in this node.
+         * Find and return the first position where 'k <= key_i' in this node.
+         * Uses binary search.
          *
          * @param k the key whose position is sought
          */
-        int findEq(K k) {
-            for (var i = 0; i < keys; i++) {
-                if (k.compareTo(key[i]) == 0) {
-                    return i;
+        int findLo(K k) {
+            var lo = 0;
+            var hi = keys;
+            while (lo < hi) {
+                var mid = (lo + hi) >>> 1;
+                if (key[mid].compareTo(k) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
                 }
-            }
-            return -1;
-        } // find
+            } // while
+            return lo;
+        } // findLo
+
+        /**
+         * **************************************************************************
+         * Find and return the first position where 'k == key_i' in this node,
+         * or -1 if k is not in this node.
+         *
+         * @param k the key whose position is sought
+         */
+        int findEq(K k) {
+            var i = findLo(k);
+            return (i < keys && k.compareTo(key[i]) == 0) ? i : -1;
+        } // findEq
 
         /**
          * **************************************************************************
@@ -160,6 +224,32 @@ public class BpTreeMap<K extends Comparable<K>, V>
             keys += 1;                                              // increment to number of active keys
         } // add
 
+        /**
+         * **************************************************************************
+         * Return whether this node has underflowed (too few keys). Only applies
+         * to nodes other than the root.
+         */
+        boolean underflow() {
+            return keys < half;
+        }
+
+        /**
+         * **************************************************************************
+         * Remove the key at position i and the reference to its right (the
+         * value for leaves, the right sub-tree for internal nodes).
+         *
+         * @param i the position of the key to remove
+         */
+        void remove(int i) {
+            for (var j = i; j < keys - 1; j++) {                        // close the gap by shifting keys left
+                key[j] = key[j + 1];
+                ref[j + 1] = ref[j + 2];
+            } // for
+            keys -= 1;
+            key[keys] = null;                                         // clear the vacated slots
+            ref[keys + 1] = null;
+        } // remove
+
         /**
          * **************************************************************************
          * Split this LEAF node by creating a right sibling node (rt) and moving
@@ -167,14 +257,14 @@ public class BpTreeMap<K extends Comparable<K>, V>
          * the right sibling node, where the divider key is key[0].
          */
         Node split() {
-            var rt = new Node(HALF, true);                             // allocate leaf right sibling node (rt)
-            for (var i = 0; i < HALF; i++) {                            // move largest half of keys (with refs) to rt
-                rt.key[i] = key[HALFP + i];
-                rt.ref[i + 1] = ref[HALFP + i + 1];                       // refs are right of keys
+            var rt = new Node(half, true);                             // allocate leaf right sibling node (rt)
+            for (var i = 0; i < half; i++) {                            // move largest half of keys (with refs) to rt
+                rt.key[i] = key[halfp + i];
+                rt.ref[i + 1] = ref[halfp + i + 1];                       // refs are right of keys
             } // for
             rt.ref[0] = ref[0];                                         // update LINKED LIST of nodes
             ref[0] = rt;                                             // this -> rt -> old-right
-            keys = HALFP;                                          // reset number of active keys to help plus
+            keys = halfp;                                          // reset number of active keys to help plus
             return rt;                                                  // (divider key (smallest right) in right sibling                                       // (divider key (smallest right) in right sibling
         } // split
 
@@ -185,13 +275,13 @@ public class BpTreeMap<K extends Comparable<K>, V>
          * Return the divider key and the right sibling node.
          */
         Node splitI() {
-            var rt = new Node(HALF, false);                            // allocate internal right sibling node (rt)
-            for (var i = 0; i < HALF; i++) {                            // move largest half of keys (with refs) to rt
-                rt.key[i] = key[HALFP + i];
-                rt.ref[i] = ref[HALFP + i];
+            var rt = new Node(half, false);                            // allocate internal right sibling node (rt)
+            for (var i = 0; i < half; i++) {                            // move largest half of keys (with refs) to rt
+                rt.key[i] = key[halfp + i];
+                rt.ref[i] = ref[halfp + i];
             } // for
-            rt.ref[HALF] = ref[keys];                                   // copy over the last ref
-            keys = HALFP - 1;                                           // reset number of active keys to help plus - 1
+            rt.ref[half] = ref[keys];                                   // copy over the last ref
+            keys = halfp - 1;                                           // reset number of active keys to help plus - 1
             return rt;                                                  // divider key (middle key) in right sibling
         } // splitI
 
@@ -234,22 +324,55 @@ public class BpTreeMap<K extends Comparable<K>, V>
 // Fields and constructors for B+Tree class
 //-----------------------------------------------------------------------------------
     private Node root;                                                // root of the B+Tree
-    private final Node firstLeaf;                                     // first (leftmost) leaf in the B+Tree
+    private Node firstLeaf;                                           // first (leftmost) leaf in the B+Tree
 
-    private int count = 0;                                           // counter for number nodes accessed (for performance testing)
+    private IntConsumer lookupMetrics = null;                         // optional hook given nodes visited per lookup
     private int kCount = 0;                                           // counter for total number of keys in the B+Tree Map
+    private int epoch = 0;                                            // bumped by snapshot (), freezing older nodes
+    private int height = 1;                                           // number of levels (nodes on a root-to-leaf path)
+
+    private long puts = 0;                                            // structural counters (writer only)
+    private long putVisits = 0;
+    private long leafSplits = 0;
+    private long internalSplits = 0;
+    private long merges = 0;
+    private volatile boolean tracking = false;                        // whether lookups are counted
+    private final LongAdder gets = new LongAdder();                   // lookup counters (readers may be concurrent)
+    private final LongAdder getVisits = new LongAdder();
 
     /**
      * ******************************************************************************
-     * Construct an empty B+Tree map.
+     * Construct an empty B+Tree map using the default order (5).
      *
      * @param _classK the class for keys (K)
      * @param _classV the class for values (V)
      */
     //public BpTreeMap (Class <K> _classK, Class <V> _classV, Boolean _is_Unique, Optional<String[]> _attributes)
     public BpTreeMap(Class<K> _classK, Class<V> _classV) {
+        this(_classK, _classV, ORDER);
+    } // constructor
+
+    /**
+     * ******************************************************************************
+     * Construct an empty B+Tree map whose nodes have at most _order children
+     * (fanout). Larger orders give shallower trees, e.g., 64 - 256 keeps a
+     * 1M key tree at 3 - 4 levels.
+     *
+     * @param _classK the class for keys (K)
+     * @param _classV the class for values (V)
+     * @param _order the maximum number of children for a node (at least 3)
+     */
+    public BpTreeMap(Class<K> _classK, Class<V> _classV, int _order) {
+        if (_order < 3) {
+            throw new IllegalArgumentException(
+                    "error: BpTreeMap order must be at least 3, was " + _order
+            );
+        }
         classK = _classK;
         classV = _classV;
+        order = _order;
+        half = (order - 1) / 2;
+        halfp = order - half;
         root = new Node(0, true);                                // make an empty root
         firstLeaf = root;
         // is_Unique = _is_Unique;
@@ -259,9 +382,12 @@ public class BpTreeMap<K extends Comparable<K>, V>
     /**
      * ******************************************************************************
      * Return null to use the natural order based on the key type. This requires
-     * the key type to implement Comparable. public Comparator <? super K>
-     * comparator () { return null; } // comparator
+     * the key type to implement Comparable.
      */
+    public Comparator<? super K> comparator() {
+        return null;
+    } // comparator
+
     /**
      * ******************************************************************************
      * Return the size (number of keys) in the B+Tree.
@@ -272,39 +398,116 @@ public class BpTreeMap<K extends Comparable<K>, V>
         return kCount;
     }
 
+    /**
+     * ******************************************************************************
+     * Return the order (maximum number of children per node) of the B+Tree.
+     *
+     * @return the order of the B+Tree
+     */
+    public int order() {
+        return order;
+    } // order
+
 //-----------------------------------------------------------------------------------
 // Retrieve values or ranges (sub-trees)
 //-----------------------------------------------------------------------------------
-    // /**
-    //  * ******************************************************************************
-    //  * Return a set containing all the entries as pairs of keys and values.
-    //  *
-    //  * @return the set view of the map
-    //  */
-    // public Set<Map.Entry<K, V>> entrySet() {
-    //     var enSet = new HashSet<Map.Entry<K, V>>();
-
-    //     for (var n = firstLeaf; n != null; n = (Node) n.ref[0]) {
-    //         for (var i = 0; i < n.keys; i++) {
-    //             enSet.add(new AbstractMap.SimpleEntry<K, V>(n.key[i], (V) n.ref[i]));
-    //         }
-    //     } // for
-    //     return enSet;
-    // } // entrySet
+    /**
+     * ******************************************************************************
+     * Characteristics of the spliterators over the leaf level (key order). Not
+     * DISTINCT, since put admits duplicate keys.
+     */
+    private static final int LEAF_ORDER = Spliterator.ORDERED | Spliterator.SORTED
+            | Spliterator.SIZED | Spliterator.SUBSIZED;
 
+    /**
+     * ******************************************************************************
+     * Return a set view of all the entries as pairs of keys and values, in key
+     * order. The view is lazy: nothing is copied, and iterating it walks the
+     * linked leaves from the first leaf.
+     *
+     * @return the set view of the map
+     */
     public Set<Map.Entry<K, V>> entrySet() {
-        var enSet = new HashSet<Map.Entry<K, V>>();
+        return new AbstractSet<Map.Entry<K, V>>() {
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator(firstPos(), null, false);
+            }
+
+            public int size() {
+                return kCount;
+            }
+
+            public Spliterator<Map.Entry<K, V>> spliterator() {
+                return new EntrySpliterator<>(Spliterators.spliterator(iterator(), kCount, LEAF_ORDER | Spliterator.NONNULL));
+            }
+        };
+    } // entrySet
 
-        // Start from the first leaf node
+    /**
+     * ******************************************************************************
+     * Return a set view of all the keys, in key order. The view is lazy and
+     * its iterator makes no entry objects.
+     *
+     * @return the key set view of the map
+     */
+    public Set<K> keySet() {
+        return new AbstractSet<K>() {
+            public Iterator<K> iterator() {
+                return new KeyIterator(firstPos());
+            }
+
+            public int size() {
+                return kCount;
+            }
+
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            public Spliterator<K> spliterator() {
+                return Spliterators.spliterator(iterator(), kCount, LEAF_ORDER | Spliterator.NONNULL);
+            }
+        };
+    } // keySet
+
+    /**
+     * ******************************************************************************
+     * Return a collection view of all the values, in key order. The view is
+     * lazy and its iterator makes no entry objects.
+     *
+     * @return the values view of the map
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            public Iterator<V> iterator() {
+                return new ValueIterator(firstPos());
+            }
+
+            public int size() {
+                return kCount;
+            }
+
+            public Spliterator<V> spliterator() {
+                return Spliterators.spliterator(iterator(), kCount, Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED);
+            }
+        };
+    } // values
+
+    /**
+     * ******************************************************************************
+     * Perform the action for each key-value pair, in key order, by walking the
+     * linked leaves directly (no iterator or entry objects).
+     *
+     * @param action the action to perform
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
         for (var n = firstLeaf; n != null; n = (Node) n.ref[0]) {
-            // Iterate over the keys in the leaf node
             for (var i = 0; i < n.keys; i++) {
-                // Use ref[i + 1] to get the correct value
-                enSet.add(new AbstractMap.SimpleEntry<K, V>(n.key[i], (V) n.ref[i + 1]));
+                action.accept(n.key[i], (V) n.ref[i + 1]);
             }
-        }
-        return enSet;
-    }
+        } // for
+    } // forEach
 
     /**
      * ******************************************************************************
@@ -318,6 +521,19 @@ public class BpTreeMap<K extends Comparable<K>, V>
         return find((K) key);
     }
 
+    /**
+     * ******************************************************************************
+     * Return whether the given key is in the B+Tree map (one root-to-leaf
+     * descent rather than AbstractMap's scan of the entry set).
+     *
+     * @param key the key to look for
+     * @return whether the key is present
+     */
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(Object key) {
+        return findLeaf((K) key).findEq((K) key) >= 0;
+    } // containsKey
+
     record NodePos(Object node, int pos) {
 
     }                          // as records are implicitly static, can't use 'Node node'
@@ -325,154 +541,1625 @@ public class BpTreeMap<K extends Comparable<K>, V>
     /**
      * ******************************************************************************
      * Find the given key in this B+tree and return its corresponding value.
-     * Calls the recursive findp method.
+     * The descent is iterative and allocates nothing.
      *
      * @param key the key to find
      */
+    @SuppressWarnings("unchecked")
     public V find(K key) {
-        var np = findp(key, root);                                   // leaf node, index position
-        return (np.pos >= 0) ? (V) ((Node) np.node).ref[np.pos + 1]
-                : (V) null;
+        var n = findLeaf(key);                                        // leaf node
+        var i = n.findEq(key);                                        // index position
+        return (i >= 0) ? (V) n.ref[i + 1] : null;
     } // find
 
     /**
      * ******************************************************************************
-     * Recursive helper method for finding the position of the given key in this
-     * B+tree.
+     * Descend from the root to the leaf that would hold the given key, passing
+     * the number of nodes visited to the lookup metrics hook, if one is set.
      *
      * @param key the key to find
-     * @param n the current node
+     * @return the leaf for the key
+     */
+    private Node findLeaf(K key) {
+        var n = root;
+        var visited = 1;
+        while (!n.isLeaf) {
+            n = (Node) n.ref[n.find(key)];
+            visited += 1;
+        } // while
+        if (lookupMetrics != null) {
+            lookupMetrics.accept(visited);
+        }
+        if (tracking) {
+            gets.increment();
+            getVisits.add(visited);
+        }
+        return n;
+    } // findLeaf
+
+    /**
+     * ******************************************************************************
+     * Look up a batch of keys given in ascending order, returning their values
+     * (null where a key is not found) in the same order. Rather than descending
+     * from the root for every key, the path to the last leaf is kept: the next
+     * key climbs only as far as the first node whose key range still covers it
+     * and descends from there, so neighbouring keys share most of their path
+     * (keys in the same leaf need no descent at all). Nodes visited by the
+     * whole batch are passed to the lookup metrics hook.
+     * <p>
+     * #usage var tuples = bpTree.getAll (sortedKeys)
+     *
+     * @param sortedKeys the keys to look up, in ascending order (repeats allowed)
+     * @return the values for the keys, position by position
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> getAll(List<? extends K> sortedKeys) {
+        var height = 1;
+        for (var n = root; !n.isLeaf; n = (Node) n.ref[0]) {
+            height += 1;
+        }
+        var path = (Node[]) Array.newInstance(Node.class, height);    // path [d] = node at depth d
+        var hi = (K[]) Array.newInstance(classK, height);             // exclusive upper bound of path [d], null => none
+        var values = new ArrayList<V>(sortedKeys.size());
+        var visited = 0;
+        var depth = -1;                                               // deepest valid entry of path (-1 => none)
+        K prev = null;
+
+        for (K k : sortedKeys) {
+            if (prev != null && k.compareTo(prev) < 0) {
+                throw new IllegalArgumentException(
+                        "error: getAll keys out of order: " + k + " after " + prev
+                );
+            }
+            prev = k;
+            while (depth > 0 && hi[depth] != null && k.compareTo(hi[depth]) >= 0) {
+                depth -= 1;                                           // climb until the node covers k
+            }
+            if (depth < 0) {
+                path[0] = root;
+                hi[0] = null;
+                depth = 0;
+                visited += 1;
+            } // if
+            while (!path[depth].isLeaf) {                             // descend from there
+                var n = path[depth];
+                var j = n.find(k);
+                path[depth + 1] = (Node) n.ref[j];
+                hi[depth + 1] = (j < n.keys) ? n.key[j] : hi[depth];
+                depth += 1;
+                visited += 1;
+            } // while
+            var i = path[depth].findEq(k);
+            values.add((i >= 0) ? (V) path[depth].ref[i + 1] : null);
+        } // for
+
+        if (lookupMetrics != null) {
+            lookupMetrics.accept(visited);
+        }
+        if (tracking) {
+            gets.add(values.size());
+            getVisits.add(visited);
+        }
+        return values;
+    } // getAll
+
+    /**
+     * ******************************************************************************
+     * Set (or, given null, remove) the hook told how many nodes each lookup
+     * (get, containsKey, or a whole getAll batch) visited, for performance
+     * testing. Lookups pay only a
+     * null check when no hook is set.
+     * <p>
+     * #usage bpTree.setLookupMetrics (visits -> total [0] += visits)
+     *
+     * @param hook the consumer of node visit counts, or null
      */
-    private NodePos findp(K key, Node n) {
-        count += 1;
-        return (n.isLeaf) ? new NodePos(n, n.findEq(key))
-                : findp(key, (Node) n.ref[n.find(key)]);
-    } // findp
+    public void setLookupMetrics(IntConsumer hook) {
+        lookupMetrics = hook;
+    } // setLookupMetrics
 
 //-----------------------------------------------------------------------------------
-// Put key-value pairs into the B+Tree
+// Navigation (NavigableMap): positions in the leaf level
 //-----------------------------------------------------------------------------------
     /**
      * ******************************************************************************
-     * Put the key-value pair in the B+Tree map.
+     * Return the position of the smallest key in the B+Tree, or null if empty.
+     */
+    private NodePos firstPos() {
+        return (firstLeaf.keys > 0) ? new NodePos(firstLeaf, 0) : null;
+    } // firstPos
+
+    /**
+     * ******************************************************************************
+     * Return the position of the largest key in the B+Tree, or null if empty.
+     */
+    private NodePos lastPos() {
+        var n = root;
+        while (!n.isLeaf) {
+            n = (Node) n.ref[n.keys];
+        }
+        return (n.keys > 0) ? new NodePos(n, n.keys - 1) : null;
+    } // lastPos
+
+    /**
+     * ******************************************************************************
+     * Return the position of the smallest key >= k (inclusive) or > k, or null
+     * if there is none. Makes one descent; if k is beyond the end of the leaf
+     * reached, the answer is the first key in the next leaf.
      *
-     * @param key the key to insert
-     * @param value the value to insert
-     * @return null, not the previous value for this key
+     * @param k the key to search from
+     * @param inclusive whether k itself qualifies
      */
-    public V put(K key, V value) {
-        kCount += 1;
-        insert(key, value, root);
-        return null;
-    } // put
+    private NodePos ceilingPos(K k, boolean inclusive) {
+        var n = root;
+        while (!n.isLeaf) {
+            n = (Node) n.ref[inclusive ? n.findLo(k) : n.find(k)];
+        }
+        var i = inclusive ? n.findLo(k) : n.find(k);
+        if (i == n.keys) {                                            // move on to the next leaf
+            n = (Node) n.ref[0];
+            i = 0;
+        } // if
+        return (n != null && n.keys > 0) ? new NodePos(n, i) : null;
+    } // ceilingPos
 
     /**
      * ******************************************************************************
-     * Author: Thomas Recursive helper function for inserting a key into a
-     * B+tree. Add key-ref pair into node n and when it is full will split node
-     * n by allocating a right sibling node rt and placing the lesser half of
-     * n's key in rt. A split also will require a key-ref pair to be inserted at
-     * the next level up.
+     * Return the position of the largest key <= k (inclusive) or < k, or null
+     * if there is none. Leaves are only linked left to right, so the descent
+     * remembers the sub-tree just left of its path; if every key in the leaf
+     * reached is too big, the answer is the last key in that sub-tree.
      *
-     * @param key the key to insert
-     * @param ref the value/node to insert
-     * @param n the current node
-     * @return the newly allocated right sibling node of n
+     * @param k the key to search from
+     * @param inclusive whether k itself qualifies
+     */
+    private NodePos floorPos(K k, boolean inclusive) {
+        var n = root;
+        Node left = null;                                             // sub-tree left of the path
+        while (!n.isLeaf) {
+            var j = inclusive ? n.find(k) : n.findLo(k);
+            if (j > 0) {
+                left = (Node) n.ref[j - 1];
+            }
+            n = (Node) n.ref[j];
+        } // while
+        var i = (inclusive ? n.find(k) : n.findLo(k)) - 1;
+        if (i >= 0) {
+            return new NodePos(n, i);
+        }
+        if (left == null) {
+            return null;
+        }
+        while (!left.isLeaf) {
+            left = (Node) left.ref[left.keys];
+        }
+        return (left.keys > 0) ? new NodePos(left, left.keys - 1) : null;
+    } // floorPos
+
+    /**
+     * ******************************************************************************
+     * Return the key at position np (null if np is null).
+     */
+    private K keyAt(NodePos np) {
+        return (np == null) ? null : ((Node) np.node).key[np.pos];
+    } // keyAt
+
+    /**
+     * ******************************************************************************
+     * Return the (immutable) entry at position np (null if np is null).
      */
     @SuppressWarnings("unchecked")
-    private Node insert(K key, V ref, Node n) {
-        // out.println("=============================================================");
-        // out.println(STR."insert: key \{key}");
-        // out.println("=============================================================");
+    private Map.Entry<K, V> entryAt(NodePos np) {
+        if (np == null) {
+            return null;
+        }
+        var n = (Node) np.node;
+        return new AbstractMap.SimpleImmutableEntry<K, V>(n.key[np.pos], (V) n.ref[np.pos + 1]);
+    } // entryAt
 
-        Node rt = null;                                               // holder right sibling node
+//-----------------------------------------------------------------------------------
+// NavigableMap methods
+//-----------------------------------------------------------------------------------
+    public Map.Entry<K, V> firstEntry() {
+        return entryAt(firstPos());
+    }
 
-        if (n.isLeaf) {                                               // handle LEAF node level
-            rt = add(n, key, ref);
+    public Map.Entry<K, V> lastEntry() {
+        return entryAt(lastPos());
+    }
 
-            if (rt != null) {
-                if (n != root) {
-                    return rt;
-                }
-                root = new Node(root, rt.key[0], rt);
-                return root;
-            } // if
+    public K firstKey() {
+        var np = firstPos();
+        if (np == null) {
+            throw new NoSuchElementException();
+        }
+        return keyAt(np);
+    } // firstKey
 
-        } else {                                                      // handle INTERNAL node level
+    public K lastKey() {
+        var np = lastPos();
+        if (np == null) {
+            throw new NoSuchElementException();
+        }
+        return keyAt(np);
+    } // lastKey
 
-            rt = insert(key, ref, (Node) n.ref[n.find(key)]);       // recursive call to insert
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return entryAt(ceilingPos(key, true));
+    }
 
-            if (DEBUG) {
-                out.println("insert: handle internal node level");
-            }
+    public K ceilingKey(K key) {
+        return keyAt(ceilingPos(key, true));
+    }
 
-            if (rt != null) {                                         // checks if its null
+    public Map.Entry<K, V> higherEntry(K key) {
+        return entryAt(ceilingPos(key, false));
+    }
 
-                if (rt.isLeaf) {                                      // Checks if rt is a leaf node
-                    rt = addI(n, rt.key[0], rt);                      // adds it if it is
-                } else {                                              // else
-                    Node urt = rt;                                    // make a new node
-                    while (!urt.isLeaf) {                             // while the right node is not a leaf node
-                        urt = (Node) (urt.ref[0]);                    // we can take it as refrence for the middle node
-                    }
-                    rt = addI(n, urt.key[0], rt);                     // we then find the middle node and then we can add it
-                }
+    public K higherKey(K key) {
+        return keyAt(ceilingPos(key, false));
+    }
 
-                // Uses key to insert internal node
-                if (rt != null && n == root) {                        // Checks if it is not null and the root
-                    root = new Node(root, root.key[HALF], rt);        // sets the new root
-                    return root;                                      // return root
-                }
-            }
-        } // if
+    public Map.Entry<K, V> floorEntry(K key) {
+        return entryAt(floorPos(key, true));
+    }
 
-        if (DEBUG) {
-            printT(root, 0);
-        }
-        return rt;                                                    // return right sibling node
-    } // insert
+    public K floorKey(K key) {
+        return keyAt(floorPos(key, true));
+    }
+
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return entryAt(floorPos(key, false));
+    }
+
+    public K lowerKey(K key) {
+        return keyAt(floorPos(key, false));
+    }
+
+    public Map.Entry<K, V> pollFirstEntry() {
+        return pollEntry(firstPos());
+    }
+
+    public Map.Entry<K, V> pollLastEntry() {
+        return pollEntry(lastPos());
+    }
 
     /**
      * ******************************************************************************
-     * Add new key k and value v into LEAF node n. Upon overflow, split node n,
-     * in which case the new right sibling node (containing the divider key) is
-     * returned.
-     *
-     * @param n the current node
-     * @param k the new key
-     * @param v the new value
+     * Remove and return the entry at position np (null if np is null).
      */
-    private Node add(Node n, K k, V v) {
-        Node rt = null;                                               // holder for right sibling rt
-        n.add(k, v);                                                 // add into node n
-        if (n.overflow()) {
-            rt = n.split();                           // full => split into n and rt, divider key is rt.key[0]
+    private Map.Entry<K, V> pollEntry(NodePos np) {
+        var en = entryAt(np);
+        if (en != null) {
+            remove(en.getKey());
+        }
+        return en;
+    } // pollEntry
 
-                }return rt;
-    } // add
+    public NavigableMap<K, V> descendingMap() {
+        return new SubMap(true, null, true, true, null, true, true);
+    }
+
+    public NavigableSet<K> navigableKeySet() {
+        return new KeySet<>(this);
+    }
+
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
 
     /**
      * ******************************************************************************
-     * Author: Thomas
-     *
-     * Add new key k and value v into INTERNAL node n. Upon overflow, split node
-     * n, in which case the new right sibling node (containing the divider key)
-     * is returned.
+     * Return a view of the portion of this map whose keys range from fromKey to
+     * toKey. The view is lazy: nothing is copied, and iterating it makes one
+     * descent to fromKey and then follows the leaf links until toKey.
      *
-     * @param n the current node
-     * @param k the new key
-     * @param v the new left value (ref a node)
+     * #usage index.subMap (new KeyType (1980), true, new KeyType (1990), false)
      */
-    private Node addI(Node n, K k, Node v) {
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (fromKey.compareTo(toKey) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+    } // subMap
 
-        Node rt = null;                                                 // creates sibling node
-        n.add(k, v);                                                   // adds to node n
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return new SubMap(true, null, true, false, toKey, inclusive, false);
+    }
+
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return new SubMap(false, fromKey, inclusive, true, null, true, false);
+    }
+
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+//-----------------------------------------------------------------------------------
+// Range views (sub-maps) and their iterators
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * The `LeafIterator` inner class walks the leaf level from a starting
+     * position, ascending via the leaf links or descending within a leaf and
+     * with one descent per leaf boundary, stopping when the range ends. It
+     * holds only a leaf and a position, so nothing is copied; subclasses
+     * return the key, the value or an entry for the current position.
+     */
+    private abstract class LeafIterator<T> implements Iterator<T> {
+
+        Node n;                                                       // leaf holding the next entry (null => done)
+        int i;                                                        // position of the next entry in n
+        private K last;                                               // key of the entry last returned (for remove)
+        private final SubMap range;                                   // bounds of the view (null => whole map)
+        private final boolean descending;                             // direction of the walk
+
+        LeafIterator(NodePos start, SubMap range_, boolean descending_) {
+            range = range_;
+            descending = descending_;
+            if (start != null) {
+                n = (Node) start.node;
+                i = start.pos;
+            }
+        } // constructor
+
+        /**
+         * Return the element for the current position (n, i).
+         */
+        abstract T current();
+
+        public boolean hasNext() {
+            return n != null;
+        }
+
+        public T next() {
+            if (n == null) {
+                throw new NoSuchElementException();
+            }
+            var el = current();
+            last = n.key[i];
+            advance();
+            return el;
+        } // next
+
+        /**
+         * **************************************************************************
+         * Remove the entry last returned. Removal may merge or redistribute
+         * leaves, so the iterator seeks its next key again afterwards.
+         */
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            var nextKey = (n == null) ? null : n.key[i];
+            BpTreeMap.this.remove(last);
+            last = null;
+            if (nextKey != null) {
+                var np = descending ? floorPos(nextKey, true) : ceilingPos(nextKey, true);
+                n = (Node) np.node;
+                i = np.pos;
+            } // if
+        } // remove
+
+        /**
+         * **************************************************************************
+         * Move to the entry after the current one, or set n to null at the end.
+         */
+        private void advance() {
+            if (descending) {
+                if (--i < 0) {                                        // leaf exhausted => predecessor leaf
+                    var np = floorPos(n.key[0], false);
+                    n = (np == null) ? null : (Node) np.node;
+                    i = (np == null) ? 0 : np.pos;
+                } // if
+                if (n != null && range != null && range.tooLow(n.key[i])) {
+                    n = null;
+                }
+            } else {
+                if (++i >= n.keys) {                                  // leaf exhausted => next leaf
+                    n = (Node) n.ref[0];
+                    i = 0;
+                } // if
+                if (n != null && (n.keys == 0 || range != null && range.tooHigh(n.key[i]))) {
+                    n = null;
+                }
+            } // if
+        } // advance
+
+    } // LeafIterator
+
+    /**
+     * ******************************************************************************
+     * Iterator over the entries (key-value pairs) of the leaf level.
+     */
+    private class EntryIterator extends LeafIterator<Map.Entry<K, V>> {
+
+        EntryIterator(NodePos start, SubMap range_, boolean descending_) {
+            super(start, range_, descending_);
+        }
+
+        @SuppressWarnings("unchecked")
+        Map.Entry<K, V> current() {
+            return new AbstractMap.SimpleImmutableEntry<K, V>(n.key[i], (V) n.ref[i + 1]);
+        }
+
+    } // EntryIterator
+
+    /**
+     * ******************************************************************************
+     * Iterator over the keys of the leaf level (no entry objects are made).
+     */
+    private class KeyIterator extends LeafIterator<K> {
+
+        KeyIterator(NodePos start) {
+            super(start, null, false);
+        }
+
+        K current() {
+            return n.key[i];
+        }
+
+    } // KeyIterator
+
+    /**
+     * ******************************************************************************
+     * Iterator over the values of the leaf level (no entry objects are made).
+     */
+    private class ValueIterator extends LeafIterator<V> {
+
+        ValueIterator(NodePos start) {
+            super(start, null, false);
+        }
+
+        @SuppressWarnings("unchecked")
+        V current() {
+            return (V) n.ref[i + 1];
+        }
+
+    } // ValueIterator
+
+    /**
+     * ******************************************************************************
+     * Spliterator over entries sorted by key: the entries are not Comparable, so
+     * getComparator must give the key order rather than null (natural order).
+     * Every other call, and the parts split off, go to the wrapped spliterator.
+     */
+    private static final class EntrySpliterator<K extends Comparable<K>, V> implements Spliterator<Map.Entry<K, V>> {
+
+        private final Spliterator<Map.Entry<K, V>> s;
+
+        EntrySpliterator(Spliterator<Map.Entry<K, V>> s_) {
+            s = s_;
+        }
+
+        public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+            return s.tryAdvance(action);
+        }
+
+        public void forEachRemaining(Consumer<? super Map.Entry<K, V>> action) {
+            s.forEachRemaining(action);
+        }
+
+        public Spliterator<Map.Entry<K, V>> trySplit() {
+            var part = s.trySplit();
+            return (part == null) ? null : new EntrySpliterator<>(part);
+        }
+
+        public long estimateSize() {
+            return s.estimateSize();
+        }
+
+        public int characteristics() {
+            return s.characteristics();
+        }
+
+        public Comparator<? super Map.Entry<K, V>> getComparator() {
+            return Map.Entry.comparingByKey();
+        }
+
+    } // EntrySpliterator
+
+    /**
+     * ******************************************************************************
+     * The `SubMap` inner class is a lazy view of the keys of this B+Tree in the
+     * range lo to hi (either end may be open), in ascending or descending
+     * order. Updates go through to the backing B+Tree. size() counts the
+     * entries in the range by walking it.
+     */
+    private class SubMap extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+        private final boolean fromStart, toEnd;                       // whether the range is open below/above
+        private final K lo, hi;                                       // the bounds
+        private final boolean loInclusive, hiInclusive;               // whether the bounds are in the range
+        private final boolean descending;                             // whether the view is in descending order
+
+        SubMap(boolean fromStart_, K lo_, boolean loInclusive_,
+                boolean toEnd_, K hi_, boolean hiInclusive_, boolean descending_) {
+            fromStart = fromStart_;
+            lo = lo_;
+            loInclusive = loInclusive_;
+            toEnd = toEnd_;
+            hi = hi_;
+            hiInclusive = hiInclusive_;
+            descending = descending_;
+        } // constructor
+
+        boolean tooLow(K k) {
+            if (fromStart) {
+                return false;
+            }
+            var c = k.compareTo(lo);
+            return c < 0 || (c == 0 && !loInclusive);
+        } // tooLow
+
+        boolean tooHigh(K k) {
+            if (toEnd) {
+                return false;
+            }
+            var c = k.compareTo(hi);
+            return c > 0 || (c == 0 && !hiInclusive);
+        } // tooHigh
+
+        boolean inRange(K k) {
+            return !tooLow(k) && !tooHigh(k);
+        }
+
+        /**
+         * Whether k may be used as a new bound (inclusive or not) of a sub-view.
+         */
+        boolean inRange(K k, boolean inclusive) {
+            if (inclusive) {
+                return inRange(k);
+            }
+            var okLo = fromStart || k.compareTo(lo) >= 0;
+            var okHi = toEnd || k.compareTo(hi) <= 0;
+            return okLo && okHi;
+        } // inRange
+
+        // absolute (ascending order) positions clamped to the range
+
+        private NodePos absLowest() {
+            var np = fromStart ? firstPos() : ceilingPos(lo, loInclusive);
+            return (np == null || tooHigh(keyAt(np))) ? null : np;
+        }
+
+        private NodePos absHighest() {
+            var np = toEnd ? lastPos() : floorPos(hi, hiInclusive);
+            return (np == null || tooLow(keyAt(np))) ? null : np;
+        }
+
+        private NodePos absCeiling(K k, boolean inclusive) {
+            if (tooLow(k)) {
+                return absLowest();
+            }
+            var np = ceilingPos(k, inclusive);
+            return (np == null || tooHigh(keyAt(np))) ? null : np;
+        } // absCeiling
+
+        private NodePos absFloor(K k, boolean inclusive) {
+            if (tooHigh(k)) {
+                return absHighest();
+            }
+            var np = floorPos(k, inclusive);
+            return (np == null || tooLow(keyAt(np))) ? null : np;
+        } // absFloor
+
+        // Map methods
+
+        @SuppressWarnings("unchecked")
+        public V get(Object key) {
+            return inRange((K) key) ? BpTreeMap.this.get(key) : null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean containsKey(Object key) {
+            return inRange((K) key) && BpTreeMap.this.containsKey(key);
+        }
+
+        public V put(K key, V value) {
+            if (!inRange(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+            return BpTreeMap.this.put(key, value);
+        } // put
+
+        @SuppressWarnings("unchecked")
+        public V remove(Object key) {
+            return inRange((K) key) ? BpTreeMap.this.remove(key) : null;
+        }
+
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AbstractSet<Map.Entry<K, V>>() {
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new EntryIterator(descending ? absHighest() : absLowest(), SubMap.this, descending);
+                }
+
+                public int size() {
+                    var sz = 0;
+                    for (var it = iterator(); it.hasNext(); it.next()) {
+                        sz++;
+                    }
+                    return sz;
+                } // size
+
+                public boolean isEmpty() {
+                    return !iterator().hasNext();
+                }
+            };
+        } // entrySet
+
+        public boolean isEmpty() {
+            return absLowest() == null;
+        }
+
+        // NavigableMap methods (swap directions when descending)
+
+        public Comparator<? super K> comparator() {
+            return descending ? Collections.reverseOrder() : null;
+        }
+
+        public Map.Entry<K, V> firstEntry() {
+            return entryAt(descending ? absHighest() : absLowest());
+        }
+
+        public Map.Entry<K, V> lastEntry() {
+            return entryAt(descending ? absLowest() : absHighest());
+        }
+
+        public K firstKey() {
+            var en = firstEntry();
+            if (en == null) {
+                throw new NoSuchElementException();
+            }
+            return en.getKey();
+        } // firstKey
+
+        public K lastKey() {
+            var en = lastEntry();
+            if (en == null) {
+                throw new NoSuchElementException();
+            }
+            return en.getKey();
+        } // lastKey
+
+        public Map.Entry<K, V> ceilingEntry(K key) {
+            return entryAt(descending ? absFloor(key, true) : absCeiling(key, true));
+        }
+
+        public K ceilingKey(K key) {
+            return keyAt(descending ? absFloor(key, true) : absCeiling(key, true));
+        }
+
+        public Map.Entry<K, V> higherEntry(K key) {
+            return entryAt(descending ? absFloor(key, false) : absCeiling(key, false));
+        }
+
+        public K higherKey(K key) {
+            return keyAt(descending ? absFloor(key, false) : absCeiling(key, false));
+        }
+
+        public Map.Entry<K, V> floorEntry(K key) {
+            return entryAt(descending ? absCeiling(key, true) : absFloor(key, true));
+        }
+
+        public K floorKey(K key) {
+            return keyAt(descending ? absCeiling(key, true) : absFloor(key, true));
+        }
+
+        public Map.Entry<K, V> lowerEntry(K key) {
+            return entryAt(descending ? absCeiling(key, false) : absFloor(key, false));
+        }
+
+        public K lowerKey(K key) {
+            return keyAt(descending ? absCeiling(key, false) : absFloor(key, false));
+        }
+
+        public Map.Entry<K, V> pollFirstEntry() {
+            return pollEntry(descending ? absHighest() : absLowest());
+        }
+
+        public Map.Entry<K, V> pollLastEntry() {
+            return pollEntry(descending ? absLowest() : absHighest());
+        }
+
+        public NavigableMap<K, V> descendingMap() {
+            return new SubMap(fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+        }
+
+        public NavigableSet<K> navigableKeySet() {
+            return new KeySet<>(this);
+        }
+
+        public Set<K> keySet() {
+            return navigableKeySet();
+        }
+
+        public NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            var c = fromKey.compareTo(toKey);
+            if (descending ? c < 0 : c > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            if (!inRange(fromKey, fromInclusive)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            if (!inRange(toKey, toInclusive)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            return descending
+                    ? new SubMap(false, toKey, toInclusive, false, fromKey, fromInclusive, true)
+                    : new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+        } // subMap
+
+        public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            if (!inRange(toKey, inclusive)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            return descending
+                    ? new SubMap(false, toKey, inclusive, toEnd, hi, hiInclusive, true)
+                    : new SubMap(fromStart, lo, loInclusive, false, toKey, inclusive, false);
+        } // headMap
+
+        public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            if (!inRange(fromKey, inclusive)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            return descending
+                    ? new SubMap(fromStart, lo, loInclusive, false, fromKey, inclusive, true)
+                    : new SubMap(false, fromKey, inclusive, toEnd, hi, hiInclusive, false);
+        } // tailMap
+
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        public SortedMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+
+    } // SubMap
+
+    /**
+     * ******************************************************************************
+     * The `KeySet` class is the navigable key set view of a B+Tree map or one
+     * of its sub-maps; every operation is delegated to the map.
+     */
+    private static class KeySet<K> extends AbstractSet<K> implements NavigableSet<K> {
+
+        private final NavigableMap<K, ?> m;                           // the backing map
+
+        KeySet(NavigableMap<K, ?> m_) {
+            m = m_;
+        }
+
+        public Iterator<K> iterator() {
+            var it = m.entrySet().iterator();
+            return new Iterator<K>() {
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                public K next() {
+                    return it.next().getKey();
+                }
+            };
+        } // iterator
+
+        public Iterator<K> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        public int size() {
+            return m.size();
+        }
+
+        public boolean isEmpty() {
+            return m.isEmpty();
+        }
+
+        public boolean contains(Object o) {
+            return m.containsKey(o);
+        }
+
+        public Comparator<? super K> comparator() {
+            return m.comparator();
+        }
+
+        public K first() {
+            return m.firstKey();
+        }
+
+        public K last() {
+            return m.lastKey();
+        }
+
+        public K lower(K k) {
+            return m.lowerKey(k);
+        }
+
+        public K floor(K k) {
+            return m.floorKey(k);
+        }
+
+        public K ceiling(K k) {
+            return m.ceilingKey(k);
+        }
+
+        public K higher(K k) {
+            return m.higherKey(k);
+        }
+
+        public K pollFirst() {
+            var en = m.pollFirstEntry();
+            return (en == null) ? null : en.getKey();
+        }
+
+        public K pollLast() {
+            var en = m.pollLastEntry();
+            return (en == null) ? null : en.getKey();
+        }
+
+        public NavigableSet<K> descendingSet() {
+            return new KeySet<>(m.descendingMap());
+        }
+
+        public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+            return new KeySet<>(m.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+            return new KeySet<>(m.headMap(toElement, inclusive));
+        }
+
+        public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+            return new KeySet<>(m.tailMap(fromElement, inclusive));
+        }
+
+        public SortedSet<K> subSet(K fromElement, K toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        public SortedSet<K> headSet(K toElement) {
+            return headSet(toElement, false);
+        }
+
+        public SortedSet<K> tailSet(K fromElement) {
+            return tailSet(fromElement, true);
+        }
+
+    } // KeySet
+
+//-----------------------------------------------------------------------------------
+// Put key-value pairs into the B+Tree
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Put the key-value pair in the B+Tree map.
+     *
+     * @param key the key to insert
+     * @param value the value to insert
+     * @return null, not the previous value for this key
+     */
+    public V put(K key, V value) {
+        kCount += 1;
+        puts += 1;
+        putVisits += height;
+        root = own(root, null);
+        insert(key, value, root, null);
+        return null;
+    } // put
+
+    /**
+     * ******************************************************************************
+     * Author: Thomas Recursive helper function for inserting a key into a
+     * B+tree. Add key-ref pair into node n and when it is full will split node
+     * n by allocating a right sibling node rt and placing the lesser half of
+     * n's key in rt. A split also will require a key-ref pair to be inserted at
+     * the next level up.
+     *
+     * @param key the key to insert
+     * @param ref the value/node to insert
+     * @param n the current node (not frozen)
+     * @param left the sub-tree just left of n's path (null => n is leftmost)
+     * @return the newly allocated right sibling node of n
+     */
+    @SuppressWarnings("unchecked")
+    private Node insert(K key, V ref, Node n, Node left) {
+        // out.println("=============================================================");
+        // out.println(STR."insert: key \{key}");
+        // out.println("=============================================================");
+
+        Node rt = null;                                               // holder right sibling node
+
+        if (n.isLeaf) {                                               // handle LEAF node level
+            rt = add(n, key, ref);
+
+            if (rt != null) {
+                if (n != root) {
+                    return rt;
+                }
+                root = new Node(root, rt.key[0], rt);
+                height += 1;
+                return root;
+            } // if
+
+        } else {                                                      // handle INTERNAL node level
+
+            var j = n.find(key);
+            var lj = (j > 0) ? (Node) n.ref[j - 1] : left;
+            var c = own((Node) n.ref[j], lj);                         // copy the child if a snapshot froze it
+            n.ref[j] = c;
+            rt = insert(key, ref, c, lj);                             // recursive call to insert
+
+            if (DEBUG) {
+                out.println("insert: handle internal node level");
+            }
+
+            if (rt != null) {                                         // checks if its null
+
+                if (rt.isLeaf) {                                      // Checks if rt is a leaf node
+                    rt = addI(n, rt.key[0], rt);                      // adds it if it is
+                } else {                                              // else
+                    Node urt = rt;                                    // make a new node
+                    while (!urt.isLeaf) {                             // while the right node is not a leaf node
+                        urt = (Node) (urt.ref[0]);                    // we can take it as refrence for the middle node
+                    }
+                    rt = addI(n, urt.key[0], rt);                     // we then find the middle node and then we can add it
+                }
+
+                // Uses key to insert internal node
+                if (rt != null && n == root) {                        // Checks if it is not null and the root
+                    root = new Node(root, root.key[halfp - 1], rt);   // sets the new root (middle key left behind by splitI)
+                    height += 1;
+                    return root;                                      // return root
+                }
+            }
+        } // if
+
+        if (DEBUG) {
+            printT(root, 0);
+        }
+        return rt;                                                    // return right sibling node
+    } // insert
+
+    /**
+     * ******************************************************************************
+     * Add new key k and value v into LEAF node n. Upon overflow, split node n,
+     * in which case the new right sibling node (containing the divider key) is
+     * returned.
+     *
+     * @param n the current node
+     * @param k the new key
+     * @param v the new value
+     */
+    private Node add(Node n, K k, V v) {
+        Node rt = null;                                               // holder for right sibling rt
+        n.add(k, v);                                                 // add into node n
+        if (n.overflow()) {
+            rt = n.split();                           // full => split into n and rt, divider key is rt.key[0]
+            leafSplits += 1;
+
+                }return rt;
+    } // add
+
+    /**
+     * ******************************************************************************
+     * Author: Thomas
+     *
+     * Add new key k and value v into INTERNAL node n. Upon overflow, split node
+     * n, in which case the new right sibling node (containing the divider key)
+     * is returned.
+     *
+     * @param n the current node
+     * @param k the new key
+     * @param v the new left value (ref a node)
+     */
+    private Node addI(Node n, K k, Node v) {
+
+        Node rt = null;                                                 // creates sibling node
+        n.add(k, v);                                                   // adds to node n
         if (n.overflow()) {                                            // checks if it overflows
             rt = n.splitI();                                            // splits internal node
+            internalSplits += 1;
         }
         return rt;                                                      // return sibling
     } // addI
 
+//-----------------------------------------------------------------------------------
+// Bulk load the B+Tree from sorted input
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Replace the contents of this B+Tree map with the entries from the sorted
+     * iterator, building it bottom-up in one pass: leaves are packed left to
+     * right to the fill factor and linked, then each internal level is built
+     * over the level below, until one node (the root) remains. There are no
+     * descents or splits, unlike repeated calls to put.
+     * <p>
+     * #usage bpTree.bulkLoad (sortedEntries.iterator (), 1.0)
+     *
+     * @param sorted the entries in ascending key order
+     * @param fillFactor the fraction of each node to fill, in (0, 1] (nodes are
+     * kept at least half full)
+     */
+    public void bulkLoad(Iterator<? extends Map.Entry<K, V>> sorted, double fillFactor) {
+        if (fillFactor <= 0.0 || fillFactor > 1.0) {
+            throw new IllegalArgumentException(
+                    "error: bulkLoad fill factor must be in (0, 1], was " + fillFactor
+            );
+        }
+        var capL = Math.max(Math.max(half, 1), Math.min(order - 1, (int) Math.round((order - 1) * fillFactor)));
+        var capI = Math.max(half + 1, Math.min(order, (int) Math.round(order * fillFactor)));
+
+        // pack the leaf level, linking each leaf to the next
+
+        var leaves = new ArrayList<Node>();
+        var n = new Node(0, true);
+        leaves.add(n);
+        var total = 0;
+        K prev = null;
+        while (sorted.hasNext()) {
+            var en = sorted.next();
+            var k = en.getKey();
+            if (prev != null && k.compareTo(prev) < 0) {
+                throw new IllegalArgumentException(
+                        "error: bulkLoad keys are not in ascending order at " + k
+                );
+            }
+            if (n.keys == capL) {                                     // leaf full => start the next leaf
+                var nx = new Node(0, true);
+                n.ref[0] = nx;
+                n = nx;
+                leaves.add(n);
+            } // if
+            n.key[n.keys] = k;
+            n.ref[n.keys + 1] = en.getValue();
+            n.keys += 1;
+            prev = k;
+            total += 1;
+        } // while
+
+        if (leaves.size() > 1 && n.underflow()) {                     // last leaf too small => fix with its left neighbor
+            var lt = leaves.get(leaves.size() - 2);
+            var move = (lt.keys + n.keys < order) ? lt.keys : (lt.keys - n.keys) / 2;
+            for (var i = n.keys - 1; i >= 0; i--) {                   // make room at the front of n
+                n.key[i + move] = n.key[i];
+                n.ref[i + move + 1] = n.ref[i + 1];
+            } // for
+            for (var i = 0; i < move; i++) {                          // move the last keys of lt
+                n.key[i] = lt.key[lt.keys - move + i];
+                n.ref[i + 1] = lt.ref[lt.keys - move + i + 1];
+                lt.key[lt.keys - move + i] = null;
+                lt.ref[lt.keys - move + i + 1] = null;
+            } // for
+            n.keys += move;
+            lt.keys -= move;
+            if (lt.keys == 0) {                                       // merged => drop lt from the leaf level
+                leaves.remove(leaves.size() - 2);
+                if (leaves.size() > 1) {
+                    leaves.get(leaves.size() - 2).ref[0] = n;
+                }
+            } // if
+        } // if
+
+        // build internal levels, each node's divider keys being the smallest keys of its right sub-trees
+
+        var level = leaves;
+        var mins = new ArrayList<K>(leaves.size());
+        for (var lf : leaves) {
+            mins.add(lf.key[0]);
+        }
+        while (level.size() > 1) {
+            var m = level.size();
+            var g = Math.max(1, Math.min(Math.ceilDiv(m, capI), m / (half + 1)));  // number of parents, each at least half full
+            var parents = new ArrayList<Node>(g);
+            var pmins = new ArrayList<K>(g);
+            var c = 0;
+            for (var p = 0; p < g; p++) {
+                var sz = m / g + ((p < m % g) ? 1 : 0);              // spread the children evenly
+                var pn = new Node(sz - 1, false);
+                for (var i = 0; i < sz; i++) {
+                    pn.ref[i] = level.get(c + i);
+                    if (i > 0) {
+                        pn.key[i - 1] = mins.get(c + i);
+                    }
+                } // for
+                parents.add(pn);
+                pmins.add(mins.get(c));
+                c += sz;
+            } // for
+            level = parents;
+            mins = pmins;
+        } // while
+
+        root = level.get(0);
+        firstLeaf = leaves.get(0);
+        kCount = total;
+        height = 1;
+        for (var nd = root; !nd.isLeaf; nd = (Node) nd.ref[0]) {
+            height += 1;
+        }
+    } // bulkLoad
+
+//-----------------------------------------------------------------------------------
+// Remove key-value pairs from the B+Tree
+//-----------------------------------------------------------------------------------
+    private static final Object NOT_FOUND = new Object();             // marks a key missing from the B+Tree
+
+    /**
+     * ******************************************************************************
+     * Remove the key (and its value) from the B+Tree map. Nodes left with too
+     * few keys borrow from or merge with a sibling, so the B+Tree stays
+     * compact, and the height shrinks when the root runs out of keys.
+     *
+     * @param key the key to remove
+     * @return the value removed, or null if the key was not found
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        root = own(root, null);
+        var old = delete((K) key, root, null);
+        if (old == NOT_FOUND) {
+            return null;
+        }
+        kCount -= 1;
+        if (!root.isLeaf && root.keys == 0) {                         // root collapse
+            root = (Node) root.ref[0];
+            height -= 1;
+        }
+        return (V) old;
+    } // remove
+
+    /**
+     * ******************************************************************************
+     * Remove all the keys from the B+Tree map.
+     */
+    public void clear() {
+        root = new Node(0, true);
+        firstLeaf = root;
+        kCount = 0;
+        height = 1;
+    } // clear
+
+    /**
+     * ******************************************************************************
+     * Recursive helper method for removing a key from the sub-tree rooted at n.
+     * After the recursive call, the parent repairs a child that underflowed.
+     *
+     * @param key the key to remove
+     * @param n the current node (not frozen)
+     * @param left the sub-tree just left of n's path (null => n is leftmost)
+     * @return the value removed or NOT_FOUND
+     */
+    private Object delete(K key, Node n, Node left) {
+        if (n.isLeaf) {                                               // handle LEAF node level
+            var i = n.findEq(key);
+            if (i < 0) {
+                return NOT_FOUND;
+            }
+            var old = n.ref[i + 1];
+            n.remove(i);
+            return old;
+        } // if
+
+        var j = n.find(key);                                          // handle INTERNAL node level
+        var lj = (j > 0) ? (Node) n.ref[j - 1] : left;
+        var c = own((Node) n.ref[j], lj);                             // copy the child if a snapshot froze it
+        n.ref[j] = c;
+        var old = delete(key, c, lj);
+        if (old != NOT_FOUND && c.underflow()) {
+            rebalance(n, j, left);
+        }
+        return old;
+    } // delete
+
+    /**
+     * ******************************************************************************
+     * Repair the underflowed j-th child of internal node n, by borrowing a key
+     * from a sibling with more than half, else by merging with a sibling.
+     * A frozen sibling that will change is copied first (rt is only read
+     * when it is merged into c).
+     *
+     * @param n the parent node (not frozen)
+     * @param j the position of the underflowed child in n (not frozen)
+     * @param left the sub-tree just left of n's path (null => n is leftmost)
+     */
+    private void rebalance(Node n, int j, Node left) {
+        var c = (Node) n.ref[j];
+        var lt = (j > 0) ? (Node) n.ref[j - 1] : null;                // left sibling
+        var rt = (j < n.keys) ? (Node) n.ref[j + 1] : null;           // right sibling
+
+        if (lt != null && lt.keys > half) {
+            lt = own(lt, (j > 1) ? (Node) n.ref[j - 2] : left);
+            n.ref[j - 1] = lt;
+            borrowLeft(n, j, lt, c);
+        } else if (rt != null && rt.keys > half) {
+            rt = own(rt, c);
+            n.ref[j + 1] = rt;
+            borrowRight(n, j, c, rt);
+        } else if (lt != null) {
+            lt = own(lt, (j > 1) ? (Node) n.ref[j - 2] : left);
+            n.ref[j - 1] = lt;
+            merge(n, j - 1, lt, c);                                   // c goes away
+        } else {
+            merge(n, j, c, rt);                                       // rt goes away
+        } // if
+    } // rebalance
+
+    /**
+     * ******************************************************************************
+     * Move the largest key of left sibling lt into c (the j-th child of n).
+     */
+    private void borrowLeft(Node n, int j, Node lt, Node c) {
+        for (var i = c.keys; i > 0; i--) {                            // make room at the front of c
+            c.key[i] = c.key[i - 1];
+            c.ref[i + 1] = c.ref[i];
+        } // for
+        if (c.isLeaf) {
+            c.key[0] = lt.key[lt.keys - 1];
+            c.ref[1] = lt.ref[lt.keys];
+            n.key[j - 1] = c.key[0];                                  // new smallest right
+        } else {
+            c.ref[1] = c.ref[0];
+            c.key[0] = n.key[j - 1];                                  // divider comes down
+            c.ref[0] = lt.ref[lt.keys];
+            n.key[j - 1] = lt.key[lt.keys - 1];                       // largest left key goes up
+        } // if
+        c.keys += 1;
+        lt.key[lt.keys - 1] = null;
+        lt.ref[lt.keys] = null;
+        lt.keys -= 1;
+    } // borrowLeft
+
+    /**
+     * ******************************************************************************
+     * Move the smallest key of right sibling rt into c (the j-th child of n).
+     */
+    private void borrowRight(Node n, int j, Node c, Node rt) {
+        if (c.isLeaf) {
+            c.key[c.keys] = rt.key[0];
+            c.ref[c.keys + 1] = rt.ref[1];
+            c.keys += 1;
+            rt.remove(0);
+            n.key[j] = rt.key[0];                                     // new smallest right
+        } else {
+            c.key[c.keys] = n.key[j];                                 // divider comes down
+            c.ref[c.keys + 1] = rt.ref[0];
+            c.keys += 1;
+            n.key[j] = rt.key[0];                                     // smallest right key goes up
+            rt.ref[0] = rt.ref[1];
+            rt.remove(0);
+        } // if
+    } // borrowRight
+
+    /**
+     * ******************************************************************************
+     * Merge right node rt into left node lt, where they are the children of n
+     * either side of divider key n.key[d], then remove the divider from n.
+     */
+    private void merge(Node n, int d, Node lt, Node rt) {
+        merges += 1;
+        if (lt.isLeaf) {
+            for (var i = 0; i < rt.keys; i++) {
+                lt.key[lt.keys + i] = rt.key[i];
+                lt.ref[lt.keys + i + 1] = rt.ref[i + 1];
+            } // for
+            lt.keys += rt.keys;
+            lt.ref[0] = rt.ref[0];                                    // unlink rt from the LINKED LIST of leaves
+        } else {
+            lt.key[lt.keys] = n.key[d];                               // divider comes down
+            for (var i = 0; i < rt.keys; i++) {
+                lt.key[lt.keys + 1 + i] = rt.key[i];
+            }
+            for (var i = 0; i <= rt.keys; i++) {
+                lt.ref[lt.keys + 1 + i] = rt.ref[i];
+            }
+            lt.keys += 1 + rt.keys;
+        } // if
+        n.remove(d);
+    } // merge
+
+//-----------------------------------------------------------------------------------
+// Structural metrics for the B+Tree
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * The `Metrics` record describes the shape of a B+Tree and the work done on
+     * it: levels and nodes, how full the leaves are (the fill of leaf i is
+     * keys / (order - 1), counted in ten buckets 0-10% ... 90-100%), splits and
+     * merges, the average nodes visited per lookup and per put, and an estimate
+     * of the bytes taken by the nodes (keys and values themselves not counted).
+     * Lookups are only counted while tracking is on (see setTracking).
+     */
+    public record Metrics(int order, int height, int nodes, int leaves, int keys,
+            double leafFill, int[] leafFillHistogram,
+            long leafSplits, long internalSplits, long merges,
+            long gets, double visitsPerGet, long puts, double visitsPerPut, long bytes) {
+
+        @Override
+        public String toString() {
+            return String.format("order %d, height %d, %d nodes (%d leaves), %d keys, leaf fill %.2f %s,%n"
+                    + "  splits %d leaf + %d internal, %d merges, %d gets (%.2f nodes/get), %d puts (%.2f nodes/put), ~%d KB",
+                    order, height, nodes, leaves, keys, leafFill, Arrays.toString(leafFillHistogram),
+                    leafSplits, internalSplits, merges, gets, visitsPerGet, puts, visitsPerPut, bytes / 1024);
+        } // toString
+    } // Metrics
+
+    /**
+     * ******************************************************************************
+     * Estimated bytes of an array of len references (16 byte header, 4 byte
+     * compressed references, 8 byte alignment).
+     */
+    private static long arrayBytes(int len) {
+        return (16 + 4L * len + 7) & ~7L;
+    }
+
+    private static final int NODE_BYTES = 40;                         // estimated Node object (header and fields)
+
+    /**
+     * ******************************************************************************
+     * Return the metrics of this B+Tree, walking every node to measure its
+     * shape (cost linear in the number of nodes, so not for hot paths).
+     * <p>
+     * #usage out.println (bpTree.metrics ())
+     *
+     * @return the metrics now
+     */
+    public Metrics metrics() {
+        var nodes = 0;
+        var leaves = 0;
+        var leafKeys = 0L;
+        var histogram = new int[10];
+        var stack = new ArrayDeque<Node>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            var n = stack.pop();
+            nodes += 1;
+            if (n.isLeaf) {
+                leaves += 1;
+                leafKeys += n.keys;
+                histogram[Math.min(9, 10 * n.keys / (order - 1))] += 1;
+            } else {
+                for (var j = 0; j <= n.keys; j++) {
+                    stack.push((Node) n.ref[j]);
+                }
+            } // if
+        } // while
+        var g = gets.sum();
+        return new Metrics(order, height, nodes, leaves, kCount,
+                leafKeys / ((double) leaves * (order - 1)), histogram,
+                leafSplits, internalSplits, merges,
+                g, (g == 0) ? 0.0 : getVisits.sum() / (double) g,
+                puts, (puts == 0) ? 0.0 : putVisits / (double) puts,
+                nodes * (NODE_BYTES + arrayBytes(order) + arrayBytes(order + 1)));
+    } // metrics
+
+    /**
+     * ******************************************************************************
+     * Turn counting lookups (gets, containsKey, getAll) on or off. While it is
+     * off (the default), lookups pay only a flag check; the counters are
+     * thread safe, so concurrent readers may be counted.
+     *
+     * @param on whether to count lookups
+     */
+    public void setTracking(boolean on) {
+        tracking = on;
+    } // setTracking
+
+    /**
+     * ******************************************************************************
+     * Reset the lookup and put counters (the split and merge counts too) to
+     * zero, e.g., between benchmark phases.
+     */
+    public void resetMetrics() {
+        gets.reset();
+        getVisits.reset();
+        puts = 0;
+        putVisits = 0;
+        leafSplits = 0;
+        internalSplits = 0;
+        merges = 0;
+    } // resetMetrics
+
+//-----------------------------------------------------------------------------------
+// Copy on write snapshots of the B+Tree
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Return a read-only snapshot of the B+Tree map as it is now. Taking one
+     * copies nothing: it keeps the current root and freezes every node, so the
+     * puts and removes that follow copy the nodes they change (only the paths
+     * they touch) and leave the snapshot's nodes as they were. Scans of the
+     * snapshot (e.g., Table.project) thus see a consistent view while the map
+     * keeps changing, and once the snapshot is dropped, the nodes only it
+     * still uses are garbage collected.
+     * <p>
+     * The snapshot must be taken by the thread writing the map (or while
+     * writes are held off); the snapshot itself may then be read by any
+     * thread it is handed to.
+     * <p>
+     * #usage for (var t : bpTree.snapshot ().values ()) ...
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        var snap = new Snapshot(root, kCount);
+        epoch += 1;                                                   // every node made so far is now frozen
+        return snap;
+    } // snapshot
+
+    /**
+     * ******************************************************************************
+     * Return node n if it was made since the last snapshot, else a copy of it
+     * (copy on write). A copied leaf is linked in place of n: the leaf before
+     * it, the last leaf of sub-tree left, is re-pointed at the copy.
+     *
+     * @param n the node about to change
+     * @param left the sub-tree just left of n (null => n is leftmost)
+     * @return n or its copy
+     */
+    private Node own(Node n, Node left) {
+        if (n.epoch == epoch) {
+            return n;
+        }
+        var c = new Node(n);
+        if (c.isLeaf) {
+            if (left == null) {
+                firstLeaf = c;
+            } else {
+                while (!left.isLeaf) {
+                    left = (Node) left.ref[left.keys];
+                }
+                left.ref[0] = c;                                      // the LINKED LIST skips over n
+            } // if
+        } // if
+        return c;
+    } // own
+
+    /**
+     * ******************************************************************************
+     * The `Snapshot` inner class is a read-only view of the B+Tree map as it
+     * was when snapshot () was called. It looks keys up by descending from the
+     * root it kept, and iterates (in key order) by walking the tree depth
+     * first, since the links between leaves belong to the live map.
+     */
+    public final class Snapshot extends AbstractMap<K, V> {
+
+        private final Node top;                                       // the root when the snapshot was taken
+        private final int count;                                      // the number of keys then
+
+        private Snapshot(Node top_, int count_) {
+            top = top_;
+            count = count_;
+        } // constructor
+
+        public int size() {
+            return count;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V get(Object key) {
+            var n = leafFor((K) key);
+            var i = n.findEq((K) key);
+            return (i >= 0) ? (V) n.ref[i + 1] : null;
+        } // get
+
+        @SuppressWarnings("unchecked")
+        public boolean containsKey(Object key) {
+            return leafFor((K) key).findEq((K) key) >= 0;
+        }
+
+        /**
+         * Descend from the snapshot's root to the leaf that would hold key k.
+         */
+        private Node leafFor(K k) {
+            var n = top;
+            while (!n.isLeaf) {
+                n = (Node) n.ref[n.find(k)];
+            }
+            return n;
+        } // leafFor
+
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AbstractSet<Map.Entry<K, V>>() {
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new SnapshotIterator(top);
+                }
+
+                public int size() {
+                    return count;
+                }
+            };
+        } // entrySet
+
+        @SuppressWarnings("unchecked")
+        public void forEach(BiConsumer<? super K, ? super V> action) {
+            var stack = new ArrayDeque<Node>();
+            stack.push(top);
+            while (!stack.isEmpty()) {
+                var n = stack.pop();
+                if (n.isLeaf) {
+                    for (var i = 0; i < n.keys; i++) {
+                        action.accept(n.key[i], (V) n.ref[i + 1]);
+                    }
+                } else {
+                    for (var j = n.keys; j >= 0; j--) {
+                        stack.push((Node) n.ref[j]);
+                    }
+                } // if
+            } // while
+        } // forEach
+
+    } // Snapshot
+
+    /**
+     * ******************************************************************************
+     * Iterator over the entries of a snapshot in key order, visiting its leaves
+     * depth first with a stack of the sub-trees still to be visited.
+     */
+    private final class SnapshotIterator implements Iterator<Map.Entry<K, V>> {
+
+        private final ArrayDeque<Node> stack = new ArrayDeque<>();
+        private Node leaf;                                            // current leaf (null => done)
+        private int i;                                                // position in the current leaf
+
+        SnapshotIterator(Node top) {
+            stack.push(top);
+            nextLeaf();
+        } // constructor
+
+        /**
+         * Move to the next leaf with keys, or set leaf to null at the end.
+         */
+        private void nextLeaf() {
+            leaf = null;
+            while (!stack.isEmpty()) {
+                var n = stack.pop();
+                if (!n.isLeaf) {
+                    for (var j = n.keys; j >= 0; j--) {
+                        stack.push((Node) n.ref[j]);
+                    }
+                } else if (n.keys > 0) {
+                    leaf = n;
+                    i = 0;
+                    return;
+                } // if
+            } // while
+        } // nextLeaf
+
+        public boolean hasNext() {
+            return leaf != null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (leaf == null) {
+                throw new NoSuchElementException();
+            }
+            var en = new AbstractMap.SimpleImmutableEntry<K, V>(leaf.key[i], (V) leaf.ref[i + 1]);
+            if (++i == leaf.keys) {
+                nextLeaf();
+            }
+            return en;
+        } // next
+
+    } // SnapshotIterator
+
 //-----------------------------------------------------------------------------------
 // Print/show the B+Tree
 //-----------------------------------------------------------------------------------
@@ -521,6 +2208,9 @@ public class BpTreeMap<K extends Comparable<K>, V>
         var RANDOMLY = false;
         // var bpTree       = new BpTreeMap <Integer, Integer> (Integer.class, Integer.class, false, Optional.empty());
         var bpTree = new BpTreeMap<Integer, Integer>(Integer.class, Integer.class);
+        var visits = new long[1];                                     // nodes accessed by lookups
+        bpTree.setLookupMetrics(v -> visits[0] += v);
+        bpTree.setTracking(true);
         if (args.length == 1) {
             totalKeys = Integer.valueOf(args[0]);
         }
@@ -544,7 +2234,8 @@ public class BpTreeMap<K extends Comparable<K>, V>
         out.println("-------------------------------------------");
         out.println(STR."number of keys in BpTree = \{bpTree.kCount}");
         out.println("-------------------------------------------");
-        out.println("Average number of nodes accessed = " + bpTree.count / (double) totalKeys);
+        out.println("Average number of nodes accessed = " + visits[0] / (double) (totalKeys + 1));
+        out.println("Metrics: " + bpTree.metrics());
 
         out.println("-------------------------------------------");
         var enSet = bpTree.entrySet();
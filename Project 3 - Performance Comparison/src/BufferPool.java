@@ -0,0 +1,271 @@
+
+/** **********************************************************************************
+ * @file BufferPool.java
+ *
+ * compile javac --enable-preview --release 22 BufferPool.java
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+ * **********************************************************************************
+ * The `BufferPool` class caches a bounded number of fixed-size pages of a file
+ * in memory frames. A page is read from the FileChannel on a miss, decoded by
+ * a PageCodec and kept in decoded form while it stays in the pool; it is
+ * encoded and written back only when a dirty frame is evicted or the pool is
+ * flushed. Victims are chosen by the CLOCK (second chance) policy, skipping
+ * pinned frames.
+ * <p>
+ * #usage var p = pool.fetch (pageNo); ... pool.unpin (pageNo, dirty)
+ *
+ * @param <P> the type of a decoded page
+ */
+public class BufferPool<P>
+        implements Closeable {
+
+    /**
+     * **********************************************************************************
+     * Converts between a page's bytes and its decoded form.
+     */
+    public interface PageCodec<P> {
+
+        P decode(ByteBuffer buf);
+
+        void encode(P page, ByteBuffer buf);
+
+    } // PageCodec
+
+    /**
+     * **********************************************************************************
+     * A frame holding one page of the file.
+     */
+    private static class Frame<P> {
+
+        int pageNo = -1;                                              // page held, -1 => empty
+        P page;                                                       // the decoded page
+        int pins;                                                     // number of users of the page
+        boolean dirty;                                                // page changed since read
+        boolean refBit;                                               // CLOCK reference bit
+
+    } // Frame
+
+    private final FileChannel channel;                                // the paged file
+    private final int pageSize;                                       // bytes per page
+    private final PageCodec<P> codec;                                 // decodes/encodes pages
+    private final Frame<P>[] frames;                                  // the pool's frames
+    private final HashMap<Integer, Frame<P>> pageTable = new HashMap<>(); // page number -> frame
+    private final ByteBuffer buf;                                     // i/o buffer for one page
+    private int hand = 0;                                             // CLOCK hand
+
+    private long hits = 0;                                            // fetches found in the pool
+    private long reads = 0;                                           // pages read from the file
+    private long writes = 0;                                          // pages written to the file
+
+    /**
+     * **********************************************************************************
+     * Construct a buffer pool of nFrames frames over the channel's pages.
+     *
+     * @param _channel the file channel holding the pages
+     * @param _pageSize the size of a page in bytes
+     * @param nFrames the number of frames (pages held in memory)
+     * @param _codec the codec for decoding/encoding pages
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(FileChannel _channel, int _pageSize, int nFrames, PageCodec<P> _codec) {
+        if (nFrames < 1) {
+            throw new IllegalArgumentException("error: BufferPool needs at least one frame");
+        }
+        channel = _channel;
+        pageSize = _pageSize;
+        codec = _codec;
+        frames = new Frame[nFrames];
+        for (var i = 0; i < nFrames; i++) {
+            frames[i] = new Frame<>();
+        }
+        buf = ByteBuffer.allocate(pageSize);
+    } // constructor
+
+    /**
+     * **********************************************************************************
+     * Return page pageNo, pinned, reading it from the file if it is not in the
+     * pool. Every fetch must be matched by an unpin.
+     *
+     * @param pageNo the page number
+     * @return the decoded page
+     */
+    public P fetch(int pageNo) {
+        var f = pageTable.get(pageNo);
+        if (f != null) {
+            hits += 1;
+        } else {
+            f = victim();
+            buf.clear();
+            try {
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf, (long) pageNo * pageSize + buf.position()) < 0) {
+                        break;                                        // past end of file => rest stays zero
+                    }
+                } // while
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } // try
+            reads += 1;
+            buf.clear();
+            load(f, pageNo, codec.decode(buf), false);
+        } // if
+        f.pins += 1;
+        f.refBit = true;
+        return f.page;
+    } // fetch
+
+    /**
+     * **********************************************************************************
+     * Put a newly created page pageNo into the pool, pinned and dirty, without
+     * reading the file.
+     *
+     * @param pageNo the (new) page number
+     * @param page the decoded page
+     * @return the page
+     */
+    public P create(int pageNo, P page) {
+        var f = pageTable.get(pageNo);
+        if (f == null) {
+            f = victim();
+        }
+        load(f, pageNo, page, true);
+        f.pins += 1;
+        f.refBit = true;
+        return page;
+    } // create
+
+    /**
+     * **********************************************************************************
+     * Release one pin on page pageNo, marking it dirty if the caller changed
+     * it.
+     *
+     * @param pageNo the page number
+     * @param dirty whether the page was changed
+     */
+    public void unpin(int pageNo, boolean dirty) {
+        var f = pageTable.get(pageNo);
+        if (f == null || f.pins == 0) {
+            throw new IllegalStateException("error: unpin of page " + pageNo + " that is not pinned");
+        }
+        f.pins -= 1;
+        f.dirty |= dirty;
+    } // unpin
+
+    /**
+     * **********************************************************************************
+     * Write every dirty page back to the file and force it to the device.
+     */
+    public void flush() {
+        for (var f : frames) {
+            if (f.pageNo >= 0 && f.dirty) {
+                writeBack(f);
+            }
+        } // for
+        try {
+            channel.force(false);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } // try
+    } // flush
+
+    /**
+     * **********************************************************************************
+     * Drop every page from the pool without writing it back (e.g., after the
+     * file is truncated).
+     */
+    public void discard() {
+        for (var f : frames) {
+            f.pageNo = -1;
+            f.page = null;
+            f.pins = 0;
+            f.dirty = false;
+        } // for
+        pageTable.clear();
+    } // discard
+
+    /**
+     * **********************************************************************************
+     * Flush the pool and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    } // close
+
+    /**
+     * **********************************************************************************
+     * Return the pool's statistics: fetch hits, page reads and page writes.
+     */
+    public String stats() {
+        return "hits " + hits + ", reads " + reads + ", writes " + writes;
+    } // stats
+
+    /**
+     * **********************************************************************************
+     * Pick a frame to reuse by sweeping the CLOCK hand: an unpinned frame
+     * whose reference bit is clear is the victim, others have their bit
+     * cleared. A dirty victim is written back first.
+     */
+    private Frame<P> victim() {
+        for (var sweep = 0; sweep < 2 * frames.length; sweep++) {
+            var f = frames[hand];
+            hand = (hand + 1) % frames.length;
+            if (f.pins > 0) {
+                continue;
+            }
+            if (f.pageNo < 0 || !f.refBit) {
+                if (f.pageNo >= 0) {
+                    if (f.dirty) {
+                        writeBack(f);
+                    }
+                    pageTable.remove(f.pageNo);
+                } // if
+                return f;
+            } // if
+            f.refBit = false;                                         // second chance
+        } // for
+        throw new IllegalStateException("error: all " + frames.length + " buffer pool frames are pinned");
+    } // victim
+
+    /**
+     * **********************************************************************************
+     * Make frame f hold page pageNo.
+     */
+    private void load(Frame<P> f, int pageNo, P page, boolean dirty) {
+        f.pageNo = pageNo;
+        f.page = page;
+        f.pins = 0;
+        f.dirty = dirty;
+        pageTable.put(pageNo, f);
+    } // load
+
+    /**
+     * **********************************************************************************
+     * Encode frame f's page and write it to its place in the file.
+     */
+    private void writeBack(Frame<P> f) {
+        buf.clear();
+        codec.encode(f.page, buf);
+        buf.clear();
+        try {
+            while (buf.hasRemaining()) {
+                channel.write(buf, (long) f.pageNo * pageSize + buf.position());
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } // try
+        writes += 1;
+        f.dirty = false;
+    } // writeBack
+
+} // BufferPool
@@ -0,0 +1,837 @@
+/** **************************************************************************************
+ * @file  ColumnTable.java
+ *
+ * compile  From the directory Project 3 - Performance Comparison run the command $ ./compile.sh
+ * run      java --enable-preview -cp bin ColumnarComparisonScript
+ *
+ * Columnar Storage
+ * Rules: each attribute is stored in its own column vector, by domain:
+ *            Integer -> int [], Long -> long [], Double -> double [],
+ *            String  -> int [] of codes into a StringDictionary,
+ *            others  -> Comparable [] (boxed, as in the row store)
+ *        row i of the table is position i of every column
+ *        an operator reads only the columns it needs (select reads the column in its
+ *            condition, join the columns in its equality), and copies the other columns
+ *            only for the rows in its result
+ *        tables derived from a table share its dictionaries
+ */
+import java.io.*;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/**
+ * **************************************************************************************
+ * The ColumnTable class is the columnar storage alternative to Table: the same
+ * schema (attribute names, domains and primary key) with the values held column
+ * by column in primitive vectors rather than as a list of Comparable [] rows. A
+ * tuple is only materialized as a Comparable [] when asked for (get, print).
+ * Provided are insert, select (by simple condition or by key), project and
+ * equi-join.
+ */
+public class ColumnTable
+        implements Serializable {
+
+    /**
+     * Counter for naming temporary tables.
+     */
+    private static int count = 0;
+
+    /**
+     * Table name.
+     */
+    private final String name;
+
+    /**
+     * Array of attribute names.
+     */
+    private final String[] attribute;
+
+    /**
+     * Array of attribute domains: a domain may be integer types: Long, Integer,
+     * Short, Byte real types: Double, Float string types: Character, String
+     */
+    private final Class[] domain;
+
+    /**
+     * Primary key (the attributes forming).
+     */
+    private final String[] key;
+
+    /**
+     * The column vector of each attribute.
+     */
+    private final Column[] column;
+
+    /**
+     * Number of rows (tuples).
+     */
+    private int rows;
+
+    /**
+     * Row of each primary key value, built on first use for derived tables.
+     */
+    private HashMap<KeyType, Integer> keyRow;
+
+    /**
+     * The comparison operators of a simple condition.
+     */
+    private enum Op {
+        EQ, NE, LT, LE, GT, GE;
+
+        static Op of(String op) {
+            return switch (op) {
+                case "==" ->
+                    EQ;
+                case "!=" ->
+                    NE;
+                case "<" ->
+                    LT;
+                case "<=" ->
+                    LE;
+                case ">" ->
+                    GT;
+                case ">=" ->
+                    GE;
+                default ->
+                    throw new IllegalArgumentException("error: unknown comparison operator " + op);
+            }; // switch
+        } // of
+
+        /**
+         * Whether a value comparing as cmp (< 0, 0, > 0) with the constant holds.
+         */
+        boolean test(int cmp) {
+            return switch (this) {
+                case EQ ->
+                    cmp == 0;
+                case NE ->
+                    cmp != 0;
+                case LT ->
+                    cmp < 0;
+                case LE ->
+                    cmp <= 0;
+                case GT ->
+                    cmp > 0;
+                case GE ->
+                    cmp >= 0;
+            }; // switch
+        } // test
+    } // Op
+
+    //----------------------------------------------------------------------------------
+    // Column vectors
+    //----------------------------------------------------------------------------------
+    /**
+     * **********************************************************************************
+     * A growable vector holding one attribute's values, row by row.
+     */
+    private abstract static class Column implements Serializable {
+
+        int n = 0;                                                    // number of values
+
+        /**
+         * Append value v.
+         */
+        abstract void add(Comparable v);
+
+        /**
+         * Return the value of row i (boxed).
+         */
+        abstract Comparable get(int i);
+
+        /**
+         * Return the rows whose value satisfies 'value op v', in ascending order.
+         */
+        abstract int[] select(Op op, Comparable v);
+
+        /**
+         * Return a new column of the values of the given rows (the first m).
+         */
+        abstract Column gather(int[] row, int m);
+
+        /**
+         * Return the new column for a domain.
+         */
+        static Column of(Class dom) {
+            return switch (dom.getSimpleName()) {
+                case "Integer" ->
+                    new IntColumn();
+                case "Long" ->
+                    new LongColumn();
+                case "Double" ->
+                    new DoubleColumn();
+                case "String" ->
+                    new StringColumn(new StringDictionary());
+                default ->
+                    new ObjectColumn();
+            }; // switch
+        } // of
+    } // Column
+
+    /**
+     * **********************************************************************************
+     * Row ids collected by a column scan.
+     */
+    private static final class Hits {
+
+        int[] row = new int[16];
+        int n = 0;
+
+        void add(int i) {
+            if (n == row.length) {
+                row = Arrays.copyOf(row, 2 * n);
+            }
+            row[n++] = i;
+        } // add
+
+        int[] toArray() {
+            return Arrays.copyOf(row, n);
+        }
+    } // Hits
+
+    /**
+     * **********************************************************************************
+     * Column of Integer values as an int [].
+     */
+    private static final class IntColumn extends Column {
+
+        int[] a = new int[16];
+
+        void add(Comparable v) {
+            if (n == a.length) {
+                a = Arrays.copyOf(a, 2 * n);
+            }
+            a[n++] = (Integer) v;
+        } // add
+
+        Comparable get(int i) {
+            return a[i];
+        }
+
+        int[] select(Op op, Comparable v) {
+            var x = (int) (Integer) v;
+            var hits = new Hits();
+            if (op == Op.NE) {
+                for (var i = 0; i < n; i++) {
+                    if (a[i] != x) {
+                        hits.add(i);
+                    }
+                } // for
+                return hits.toArray();
+            } // if
+            long lo = Integer.MIN_VALUE, hi = Integer.MAX_VALUE;      // every other op is a range lo <= a [i] <= hi
+            switch (op) {
+                case EQ -> {
+                    lo = x;
+                    hi = x;
+                }
+                case LT ->
+                    hi = x - 1L;
+                case LE ->
+                    hi = x;
+                case GT ->
+                    lo = x + 1L;
+                default ->
+                    lo = x;
+            } // switch
+            if (lo > hi) {
+                return hits.toArray();
+            }
+            var l = (int) lo;
+            var h = (int) hi;
+            for (var i = 0; i < n; i++) {
+                if (a[i] >= l && a[i] <= h) {
+                    hits.add(i);
+                }
+            } // for
+            return hits.toArray();
+        } // select
+
+        Column gather(int[] row, int m) {
+            var c = new IntColumn();
+            c.a = new int[Math.max(m, 16)];
+            for (var i = 0; i < m; i++) {
+                c.a[i] = a[row[i]];
+            }
+            c.n = m;
+            return c;
+        } // gather
+    } // IntColumn
+
+    /**
+     * **********************************************************************************
+     * Column of Long values as a long [].
+     */
+    private static final class LongColumn extends Column {
+
+        long[] a = new long[16];
+
+        void add(Comparable v) {
+            if (n == a.length) {
+                a = Arrays.copyOf(a, 2 * n);
+            }
+            a[n++] = (Long) v;
+        } // add
+
+        Comparable get(int i) {
+            return a[i];
+        }
+
+        int[] select(Op op, Comparable v) {
+            var x = (long) (Long) v;
+            var hits = new Hits();
+            for (var i = 0; i < n; i++) {
+                if (op.test(Long.compare(a[i], x))) {
+                    hits.add(i);
+                }
+            } // for
+            return hits.toArray();
+        } // select
+
+        Column gather(int[] row, int m) {
+            var c = new LongColumn();
+            c.a = new long[Math.max(m, 16)];
+            for (var i = 0; i < m; i++) {
+                c.a[i] = a[row[i]];
+            }
+            c.n = m;
+            return c;
+        } // gather
+    } // LongColumn
+
+    /**
+     * **********************************************************************************
+     * Column of Double values as a double [].
+     */
+    private static final class DoubleColumn extends Column {
+
+        double[] a = new double[16];
+
+        void add(Comparable v) {
+            if (n == a.length) {
+                a = Arrays.copyOf(a, 2 * n);
+            }
+            a[n++] = (Double) v;
+        } // add
+
+        Comparable get(int i) {
+            return a[i];
+        }
+
+        int[] select(Op op, Comparable v) {
+            var x = (double) (Double) v;
+            var hits = new Hits();
+            for (var i = 0; i < n; i++) {
+                if (op.test(Double.compare(a[i], x))) {
+                    hits.add(i);
+                }
+            } // for
+            return hits.toArray();
+        } // select
+
+        Column gather(int[] row, int m) {
+            var c = new DoubleColumn();
+            c.a = new double[Math.max(m, 16)];
+            for (var i = 0; i < m; i++) {
+                c.a[i] = a[row[i]];
+            }
+            c.n = m;
+            return c;
+        } // gather
+    } // DoubleColumn
+
+    /**
+     * **********************************************************************************
+     * Column of String values as an int [] of dictionary codes. An equality
+     * condition is one code compared with every row; any other condition is
+     * evaluated once per distinct value, and the rows are then checked by code.
+     */
+    private static final class StringColumn extends Column {
+
+        final StringDictionary dict;
+        int[] code = new int[16];
+
+        StringColumn(StringDictionary dict_) {
+            dict = dict_;
+        }
+
+        void add(Comparable v) {
+            if (n == code.length) {
+                code = Arrays.copyOf(code, 2 * n);
+            }
+            code[n++] = dict.encode((String) v);
+        } // add
+
+        Comparable get(int i) {
+            return dict.decode(code[i]);
+        }
+
+        int[] select(Op op, Comparable v) {
+            var s = (String) v;
+            var hits = new Hits();
+            if (op == Op.EQ || op == Op.NE) {
+                var c = dict.code(s);                                 // -1 => no row holds s
+                var eq = op == Op.EQ;
+                for (var i = 0; i < n; i++) {
+                    if ((code[i] == c) == eq) {
+                        hits.add(i);
+                    }
+                } // for
+                return hits.toArray();
+            } // if
+            var rank = dict.ranks();                                  // order-preserving: compare ranks, not Strings
+            var bound = dict.bound(s, op == Op.LE || op == Op.GT);
+            var below = op == Op.LT || op == Op.LE;
+            for (var i = 0; i < n; i++) {
+                if ((rank[code[i]] < bound) == below) {
+                    hits.add(i);
+                }
+            } // for
+            return hits.toArray();
+        } // select
+
+        Column gather(int[] row, int m) {
+            var c = new StringColumn(dict);                           // share the dictionary
+            c.code = new int[Math.max(m, 16)];
+            for (var i = 0; i < m; i++) {
+                c.code[i] = code[row[i]];
+            }
+            c.n = m;
+            return c;
+        } // gather
+    } // StringColumn
+
+    /**
+     * **********************************************************************************
+     * Column of boxed values (domains without a primitive vector).
+     */
+    private static final class ObjectColumn extends Column {
+
+        Comparable[] a = new Comparable[16];
+
+        void add(Comparable v) {
+            if (n == a.length) {
+                a = Arrays.copyOf(a, 2 * n);
+            }
+            a[n++] = v;
+        } // add
+
+        Comparable get(int i) {
+            return a[i];
+        }
+
+        @SuppressWarnings("unchecked")
+        int[] select(Op op, Comparable v) {
+            var hits = new Hits();
+            for (var i = 0; i < n; i++) {
+                if (op.test(a[i].compareTo(v))) {
+                    hits.add(i);
+                }
+            } // for
+            return hits.toArray();
+        } // select
+
+        Column gather(int[] row, int m) {
+            var c = new ObjectColumn();
+            c.a = new Comparable[Math.max(m, 16)];
+            for (var i = 0; i < m; i++) {
+                c.a[i] = a[row[i]];
+            }
+            c.n = m;
+            return c;
+        } // gather
+    } // ObjectColumn
+
+    //----------------------------------------------------------------------------------
+    // Constructors
+    //----------------------------------------------------------------------------------
+    /**
+     * **********************************************************************************
+     * Construct an empty table from the meta-data specifications.
+     *
+     * @param _name the name of the relation
+     * @param _attribute the string containing attributes names
+     * @param _domain the string containing attribute domains (data types)
+     * @param _key the primary key
+     */
+    public ColumnTable(String _name, String[] _attribute, Class[] _domain, String[] _key) {
+        name = _name;
+        attribute = _attribute;
+        domain = _domain;
+        key = _key;
+        column = new Column[domain.length];
+        for (var j = 0; j < domain.length; j++) {
+            column[j] = Column.of(domain[j]);
+        }
+        rows = 0;
+        keyRow = new HashMap<>();
+    } // constructor
+
+    /**
+     * **********************************************************************************
+     * Construct an empty table from the raw string specifications.
+     *
+     * @param _name the name of the relation
+     * @param attributes the string containing attributes names
+     * @param domains the string containing attribute domains (data types)
+     * @param _key the primary key
+     */
+    public ColumnTable(String _name, String attributes, String domains, String _key) {
+        this(_name, attributes.split(" "), Table.findClass(domains.split(" ")), _key.split(" "));
+    } // constructor
+
+    /**
+     * **********************************************************************************
+     * Construct a (derived) table over the given columns.
+     */
+    private ColumnTable(String _name, String[] _attribute, Class[] _domain, String[] _key,
+            Column[] _column, int _rows) {
+        name = _name;
+        attribute = _attribute;
+        domain = _domain;
+        key = _key;
+        column = _column;
+        rows = _rows;
+    } // constructor
+
+    //----------------------------------------------------------------------------------
+    // Public Methods
+    //----------------------------------------------------------------------------------
+    /**
+     * **********************************************************************************
+     * Insert a tuple to the table, appending each value to its column.
+     * <p>
+     * #usage movie.insert ("Star_Wars", 1977, 124, "T", "Fox", 12345)
+     *
+     * @param tup the array of attribute values forming the tuple
+     * @return whether insertion was successful
+     */
+    public boolean insert(Comparable[] tup) {
+        if (tup.length != domain.length) {
+            return false;
+        }
+        for (var j = 0; j < tup.length; j++) {
+            if (tup[j].getClass() != domain[j]) {
+                return false;
+            }
+        } // for
+        var keyVal = new KeyType(extract(tup, match(key)));
+        if (keyRows().putIfAbsent(keyVal, rows) != null) {
+            throw new IllegalArgumentException(
+                    "error: Unable to insert tuple - primary key value already exists. "
+            );
+        }
+        for (var j = 0; j < tup.length; j++) {
+            column[j].add(tup[j]);
+        }
+        rows += 1;
+        return true;
+    } // insert
+
+    /**
+     * **********************************************************************************
+     * Select the tuples satisfying the given simple condition on
+     * attributes/constants compared using an <op> ==, !=, <, <=, >, >=. Only
+     * the condition's column is scanned; the other columns are copied for the
+     * matching rows.
+     * <p>
+     * #usage movie.select ("year == 1977")
+     *
+     * @param condition the check condition as a string for tuples
+     * @return a table with tuples satisfying the condition
+     */
+    public ColumnTable select(String condition) {
+        var token = condition.split(" ");
+        var colNo = col(token[0]);
+        if (colNo < 0) {
+            throw new IllegalArgumentException("error: select on unknown attribute " + token[0]);
+        }
+        var hits = column[colNo].select(Op.of(token[1]), toDomain(colNo, token[2]));
+        return gather(name + count++, attribute, domain, key, column, hits);
+    } // select
+
+    /**
+     * **********************************************************************************
+     * Select the tuple with the given primary key value.
+     *
+     * @param keyVal the given key value
+     * @return a table with the tuple satisfying the key predicate
+     */
+    public ColumnTable select(KeyType keyVal) {
+        var row = keyRows().get(keyVal);
+        var hits = (row == null) ? new int[0] : new int[]{row};
+        return gather(name + count++, attribute, domain, key, column, hits);
+    } // select
+
+    /**
+     * **********************************************************************************
+     * Project the tuples onto a lower dimension by keeping only the given
+     * attributes: only their columns are copied. Check whether the original key
+     * is included in the projection.
+     * <p>
+     * #usage movie.project ("title year studioNo")
+     *
+     * @param attributes the attributes to project onto
+     * @return a table of projected tuples
+     */
+    public ColumnTable project(String attributes) {
+        var attrs = attributes.split(" ");
+        var cols = match(attrs);
+        var newKey = (Arrays.asList(attrs).containsAll(Arrays.asList(key))) ? key : attrs;
+        var all = new int[rows];
+        for (var i = 0; i < rows; i++) {
+            all[i] = i;
+        }
+        var colDomain = new Class[cols.length];
+        var colVec = new Column[cols.length];
+        for (var j = 0; j < cols.length; j++) {
+            colDomain[j] = domain[cols[j]];
+            colVec[j] = column[cols[j]];
+        } // for
+        return gather(name + count++, attrs, colDomain, newKey, colVec, all);
+    } // project
+
+    /**
+     * **********************************************************************************
+     * Join this table and table2 by performing an "equi-join" as a hash join:
+     * only the join columns are read to match the rows (table2's are hashed,
+     * this table's probe), and then every column is copied for the matching
+     * pairs. Tuples come out as from Table's nested loop join (this table's
+     * order, then table2's), and duplicate attribute names in table2 get a "2"
+     * appended.
+     * <p>
+     * #usage movie.join ("studioName", "name", studio)
+     *
+     * @param attributes1 the attributes of this table to be compared (Foreign
+     * Key)
+     * @param attributes2 the attributes of table2 to be compared (Primary Key)
+     * @param table2 the rhs table in the join operation
+     * @return a table with tuples satisfying the equality predicate
+     */
+    public ColumnTable join(String attributes1, String attributes2, ColumnTable table2) {
+        var t_cols = match(attributes1.split(" "));
+        var u_cols = table2.match(attributes2.split(" "));
+
+        var first = new HashMap<Object, Integer>();                   // first row of table2 with each join value
+        var next = new int[table2.rows];                              // next row with the same value, -1 => none
+        for (var j = table2.rows - 1; j >= 0; j--) {
+            var h = first.put(table2.joinValue(u_cols, j), j);
+            next[j] = (h == null) ? -1 : h;
+        } // for
+
+        var lt = new Hits();
+        var rt = new Hits();
+        for (var i = 0; i < rows; i++) {
+            var h = first.get(joinValue(t_cols, i));
+            for (var j = (h == null) ? -1 : (int) h; j >= 0; j = next[j]) {
+                lt.add(i);
+                rt.add(j);
+            } // for
+        } // for
+
+        var u_attrs = table2.attribute.clone();
+        for (var a : attribute) {                                     // disambiguate duplicate names
+            for (var k = 0; k < u_attrs.length; k++) {
+                if (a.equals(u_attrs[k])) {
+                    u_attrs[k] = u_attrs[k] + "2";
+                }
+            } // for
+        } // for
+        var cols = new Column[column.length + table2.column.length];
+        for (var j = 0; j < column.length; j++) {
+            cols[j] = column[j].gather(lt.row, lt.n);
+        }
+        for (var j = 0; j < table2.column.length; j++) {
+            cols[column.length + j] = table2.column[j].gather(rt.row, rt.n);
+        }
+        return new ColumnTable(name + count++, Table.concat(attribute, u_attrs),
+                Table.concat(domain, table2.domain), key, cols, lt.n);
+    } // join
+
+    /**
+     * **********************************************************************************
+     * Return the tuple at row i, materialized from the columns.
+     *
+     * @param i the row
+     * @return the tuple
+     * @throws IndexOutOfBoundsException if i is not in [0, size())
+     */
+    public Comparable[] get(int i) {
+        Objects.checkIndex(i, rows);
+        var tup = new Comparable[column.length];
+        for (var j = 0; j < column.length; j++) {
+            tup[j] = column[j].get(i);
+        }
+        return tup;
+    } // get
+
+    /**
+     * **********************************************************************************
+     * Return the column position for the given attribute name or -1 if not
+     * found.
+     *
+     * @param attr the given attribute name
+     * @return a column position
+     */
+    public int col(String attr) {
+        for (var i = 0; i < attribute.length; i++) {
+            if (attr.equals(attribute[i])) {
+                return i;
+            }
+        } // for
+        return -1;       // -1 => not found
+    } // col
+
+    /**
+     * **********************************************************************************
+     * Return the number of tuples (rows) in the table.
+     *
+     * @return the row count
+     */
+    public int size() {
+        return rows;
+    } // size
+
+    /**
+     * **********************************************************************************
+     * Get the name of the table.
+     *
+     * @return the table's name
+     */
+    public String getName() {
+        return name;
+    } // getName
+
+    /**
+     * **********************************************************************************
+     * Print this table.
+     */
+    public void print() {
+        out.println("\n Table " + name);
+        out.print("|-");
+        out.print("---------------".repeat(attribute.length));
+        out.println("-|");
+        out.print("| ");
+        for (var a : attribute) {
+            out.printf("%15s", a);
+        }
+        out.println(" |");
+        out.print("|-");
+        out.print("---------------".repeat(attribute.length));
+        out.println("-|");
+        for (var i = 0; i < rows; i++) {
+            out.print("| ");
+            for (var c : column) {
+                out.printf("%15s", c.get(i));
+            }
+            out.println(" |");
+        } // for
+        out.print("|-");
+        out.print("---------------".repeat(attribute.length));
+        out.println("-|");
+    } // print
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+    /**
+     * **********************************************************************************
+     * Return a table of the given rows of the columns.
+     */
+    private static ColumnTable gather(String name, String[] attribute, Class[] domain, String[] key,
+            Column[] column, int[] row) {
+        var cols = new Column[column.length];
+        for (var j = 0; j < column.length; j++) {
+            cols[j] = column[j].gather(row, row.length);
+        }
+        return new ColumnTable(name, attribute, domain, key, cols, row.length);
+    } // gather
+
+    /**
+     * **********************************************************************************
+     * Return the map from primary key value to row, building it for a derived
+     * table.
+     */
+    private HashMap<KeyType, Integer> keyRows() {
+        if (keyRow == null) {
+            keyRow = new HashMap<>();
+            var cols = match(key);
+            for (var i = 0; i < rows; i++) {
+                keyRow.put(new KeyType(extract(get(i), cols)), i);
+            }
+        } // if
+        return keyRow;
+    } // keyRows
+
+    /**
+     * **********************************************************************************
+     * Return the join value of row i on the given columns: the value itself for
+     * one column, else the values as a KeyType.
+     */
+    private Object joinValue(int[] cols, int i) {
+        if (cols.length == 1) {
+            return column[cols[0]].get(i);
+        }
+        var vals = new Comparable[cols.length];
+        for (var j = 0; j < cols.length; j++) {
+            vals[j] = column[cols[j]].get(i);
+        }
+        return new KeyType(vals);
+    } // joinValue
+
+    /**
+     * **********************************************************************************
+     * Match the column and attribute names to determine the column positions.
+     *
+     * @param names the array of column names
+     * @return an array of column index positions
+     */
+    private int[] match(String[] names) {
+        var colPos = new int[names.length];
+        for (var j = 0; j < names.length; j++) {
+            colPos[j] = col(names[j]);
+            if (colPos[j] < 0) {
+                throw new IllegalArgumentException("error: unknown attribute " + names[j]);
+            }
+        } // for
+        return colPos;
+    } // match
+
+    /**
+     * **********************************************************************************
+     * Extract the values at the given column positions from tuple t.
+     */
+    private static Comparable[] extract(Comparable[] t, int[] cols) {
+        var tup = new Comparable[cols.length];
+        for (var j = 0; j < cols.length; j++) {
+            tup[j] = t[cols[j]];
+        }
+        return tup;
+    } // extract
+
+    /**
+     * **********************************************************************************
+     * Convert the string value to the domain type of column colNo.
+     */
+    private Comparable toDomain(int colNo, String value) {
+        return switch (domain[colNo].getSimpleName()) {
+            case "Byte" ->
+                Byte.valueOf(value);
+            case "Character" ->
+                value.charAt(0);
+            case "Double" ->
+                Double.valueOf(value);
+            case "Float" ->
+                Float.valueOf(value);
+            case "Integer" ->
+                Integer.valueOf(value);
+            case "Long" ->
+                Long.valueOf(value);
+            case "Short" ->
+                Short.valueOf(value);
+            default ->
+                value;
+        }; // switch
+    } // toDomain
+}
@@ -0,0 +1,137 @@
+import java.util.*;
+import java.util.function.IntSupplier;
+import static java.lang.System.nanoTime;
+import static java.lang.System.out;
+
+/**
+ * The ColumnarComparisonScript class compares the row store (IndexTestsTable,
+ * tuples as a List of Comparable [], with a HASH_MAP index) with the column
+ * store (ColumnTable, one primitive or dictionary-coded vector per attribute)
+ * on the movie and movieExec schemas.
+ *
+ * Memory is the heap retained by each table after a full GC, with every tuple
+ * generated as it is inserted, so each table owns all of its data (both also
+ * hold a map from primary key to tuple/row). Timed are two selects (on an
+ * Integer and on a String attribute), a projection onto two attributes and
+ * the equi-join of movie and movieExec on producerNo, each averaged over five
+ * iterations after one JIT warm up.
+ *
+ * The maximum number of tuples may be given as args[0] (e.g., 100000) for
+ * machines with a small heap.
+ */
+class ColumnarComparisonScript {
+
+    /**
+     * The numbers of movie tuples to compare (movieExec gets a tenth).
+     */
+    private static final int[] SIZES = {100_000, 1_000_000};
+
+    /**
+     * Consumes result sizes so the JIT cannot drop the operations.
+     */
+    private static long sink = 0;
+
+    /**
+     * Return the heap in use after garbage collection.
+     */
+    static long used() {
+        var rt = Runtime.getRuntime();
+        for (var i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * Generate the i-th movie tuple (title year length genre studioName
+     * producerNo), drawing from rng.
+     */
+    static Comparable[] movie(int i, int n, Random rng) {
+        return new Comparable[]{"title" + i, 1900 + rng.nextInt(125), 60 + rng.nextInt(120),
+            "genre" + rng.nextInt(12), "studioName" + rng.nextInt(500), rng.nextInt(n / 10)};
+    }
+
+    /**
+     * Generate the i-th movieExec tuple (producerNo name address fee).
+     */
+    static Comparable[] movieExec(int i, Random rng) {
+        return new Comparable[]{i, "name" + i, "address" + i, rng.nextInt(1_000_000)};
+    }
+
+    /**
+     * Time op, printing its micro-seconds averaged over five measured
+     * iterations for the row store and the column store.
+     *
+     * @param label the operation
+     * @param rowOp the operation on the row store, returning its result size
+     * @param colOp the operation on the column store, returning its result size
+     */
+    static void time(String label, IntSupplier rowOp, IntSupplier colOp) {
+        var ns = new long[2];
+        var ops = new IntSupplier[]{rowOp, colOp};
+        var result = new int[2];
+        for (var k = 0; k < 2; k++) {
+            for (var it = 0; it < 6; it++) {
+                var t0 = nanoTime();
+                result[k] = ops[k].getAsInt();
+                var et = nanoTime() - t0;
+                if (it > 0) {
+                    ns[k] += et;
+                }
+            } // for
+            sink += result[k];
+        } // for
+        out.printf("%-28s %8d tuples %10d mu-sec (row) %10d mu-sec (column)%n", label, result[1],
+                ns[0] / 5000, ns[1] / 5000);
+    }
+
+    public static void main(String[] args) {
+        var maxTuples = (args.length == 1) ? Integer.parseInt(args[0]) : SIZES[SIZES.length - 1];
+
+        for (var n : SIZES) {
+            if (n > maxTuples) {
+                break;
+            }
+            out.println(n + " movie tuples, Columnar Test cases");
+
+            var m0 = used();
+            var movie = new IndexTestsTable("movie", "title year length genre studioName producerNo",
+                    "String Integer Integer String String Integer", "title year", IndexTestsTable.MapType.HASH_MAP);
+            var movieExec = new IndexTestsTable("movieExec", "producerNo name address fee",
+                    "Integer String String Integer", "producerNo", IndexTestsTable.MapType.HASH_MAP);
+            var rng = new Random(42);
+            for (var i = 0; i < n; i++) {
+                movie.insert(movie(i, n, rng));
+            }
+            for (var i = 0; i < n / 10; i++) {
+                movieExec.insert(movieExec(i, rng));
+            }
+            var m1 = used();
+
+            var cMovie = new ColumnTable("movie", "title year length genre studioName producerNo",
+                    "String Integer Integer String String Integer", "title year");
+            var cMovieExec = new ColumnTable("movieExec", "producerNo name address fee",
+                    "Integer String String Integer", "producerNo");
+            rng = new Random(42);
+            for (var i = 0; i < n; i++) {
+                cMovie.insert(movie(i, n, rng));
+            }
+            for (var i = 0; i < n / 10; i++) {
+                cMovieExec.insert(movieExec(i, rng));
+            }
+            var m2 = used();
+            out.printf("%-28s %8d tuples %10d KB (row) %10d KB (column)%n", "memory", n + n / 10,
+                    (m1 - m0) / 1024, (m2 - m1) / 1024);
+
+            time("select year < 1950", () -> movie.select(t -> (Integer) t[1] < 1950).getTuples().size(),
+                    () -> cMovie.select("year < 1950").size());
+            time("select genre == genre3", () -> movie.select(t -> t[3].equals("genre3")).getTuples().size(),
+                    () -> cMovie.select("genre == genre3").size());
+            time("project year producerNo", () -> movie.project("year producerNo").getTuples().size(),
+                    () -> cMovie.project("year producerNo").size());
+            time("join producerNo", () -> movie.i_join("producerNo", "producerNo", movieExec).getTuples().size(),
+                    () -> cMovie.join("producerNo", "producerNo", cMovieExec).size());
+        } // for
+        out.println("(sink " + sink + ")");
+    }
+}
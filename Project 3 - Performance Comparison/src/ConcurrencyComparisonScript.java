@@ -0,0 +1,115 @@
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import static java.lang.System.nanoTime;
+import static java.lang.System.out;
+
+/**
+ * The ConcurrencyComparisonScript class compares the multi-threaded throughput
+ * of a BLinkTreeMap index with a BpTreeMap guarded by a synchronized wrapper
+ * (Collections.synchronizedMap). Each thread runs a mix of select by key
+ * lookups (get) and inserts (put) on a preloaded index of movieExec style
+ * producerNo keys, and the total operations per milli-second are printed for
+ * 1, 2, 4 and 8 threads.
+ *
+ * The percentage of inserts may be given as args[0] (default 10).
+ */
+class ConcurrencyComparisonScript {
+
+    /**
+     * Number of keys loaded before timing.
+     */
+    private static final int PRELOAD = 1_000_000;
+
+    /**
+     * Number of operations run by each thread.
+     */
+    private static final int OPS = 500_000;
+
+    /**
+     * The thread counts to compare.
+     */
+    private static final int[] THREADS = {1, 2, 4, 8};
+
+    /**
+     * The order of both trees.
+     */
+    private static final int ORDER = 64;
+
+    /**
+     * Run OPS operations per thread on the index with the given number of
+     * threads, putPct percent of them inserts of new keys. Returns the
+     * throughput in operations per milli-second.
+     *
+     * @param index the index to exercise
+     * @param threads the number of threads
+     * @param putPct the percentage of operations that are inserts
+     * @param round used to keep inserted keys new across runs
+     * @return operations per milli-second
+     */
+    static long run(Map<KeyType, Comparable[]> index, int threads, int putPct, int round) throws InterruptedException {
+        var start = new CountDownLatch(1);
+        var done = new CountDownLatch(threads);
+        for (var t = 0; t < threads; t++) {
+            final var id = t;
+            new Thread(() -> {
+                var rng = new Random(id);
+                var next = PRELOAD + (round * THREADS[THREADS.length - 1] + id) * OPS;  // fresh keys for this thread
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (var i = 0; i < OPS; i++) {
+                    if (rng.nextInt(100) < putPct) {
+                        var k = next++;
+                        index.put(new KeyType(k), new Comparable[]{k, "name" + k, "address" + k, k % 1000});
+                    } else {
+                        index.get(new KeyType(rng.nextInt(PRELOAD)));
+                    }
+                } // for
+                done.countDown();
+            }).start();
+        } // for
+
+        var t0 = nanoTime();
+        start.countDown();
+        done.await();
+        var ms = Math.max(1, (nanoTime() - t0) / 1_000_000);
+        return (long) threads * OPS / ms;
+    }
+
+    /**
+     * Load PRELOAD keys into the index.
+     *
+     * @param index the empty index
+     * @return the loaded index
+     */
+    static Map<KeyType, Comparable[]> preload(Map<KeyType, Comparable[]> index) {
+        for (var k = 0; k < PRELOAD; k++) {
+            index.put(new KeyType(k), new Comparable[]{k, "name" + k, "address" + k, k % 1000});
+        }
+        return index;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        var putPct = (args.length == 1) ? Integer.parseInt(args[0]) : 10;
+
+        out.println(PRELOAD + " keys, " + putPct + "% inserts, Concurrency Test cases");
+        for (var threads : THREADS) {
+            var round = 0;
+            // first run of each warms up the JIT and is not reported
+
+            var bLink = preload(new BLinkTreeMap<KeyType, Comparable[]>(ORDER));
+            run(bLink, threads, putPct, round++);
+            var bLinkOps = run(bLink, threads, putPct, round++);
+
+            var synced = preload(Collections.synchronizedMap(
+                    new BpTreeMap<KeyType, Comparable[]>(KeyType.class, Comparable[].class, ORDER)));
+            run(synced, threads, putPct, round++);
+            var syncedOps = run(synced, threads, putPct, round++);
+
+            out.println(threads + " threads: BLINKTREE_MAP " + bLinkOps + " ops/ms"
+                    + ", synchronized BPTREE_MAP " + syncedOps + " ops/ms");
+        } // for
+    }
+}
@@ -0,0 +1,111 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.function.BiFunction;
+import static java.lang.System.out;
+
+/**
+ * The DictionaryComparisonScript class measures the memory trade-off of the
+ * dictionary encoding of String columns in Table on two schemas: movie, whose
+ * String attributes are title (a distinct value per tuple), genre (12 values)
+ * and studioName (500 values), and movieExec, whose name and address are
+ * distinct in every tuple (the encoding's worst case).
+ *
+ * The same tuples, each generated with new Strings as it is inserted (as a
+ * loader makes them), are inserted into a table with encodeStrings (false) and
+ * into one with the encoding on, and the heap retained by each after a full GC
+ * is printed. The encoding adds a code (4 bytes) per tuple and String column and
+ * a dictionary entry per distinct value, and saves the String of every repeated
+ * value (insert stores the dictionary's instance instead). Both tables also hold
+ * the same primary index, so the difference is the encoding's.
+ *
+ * Table.insert prints each tuple, so System.out is silenced while inserting. The
+ * maximum number of tuples may be given as args[0] (e.g., 100000).
+ */
+class DictionaryComparisonScript {
+
+    /**
+     * The numbers of tuples to compare.
+     */
+    private static final int[] SIZES = {100_000, 1_000_000};
+
+    /**
+     * Return the heap in use after garbage collection.
+     */
+    static long used() {
+        var rt = Runtime.getRuntime();
+        for (var i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * Generate the i-th movie tuple (title year length genre studioName
+     * producerNo), drawing from rng.
+     */
+    static Comparable[] movie(int i, Random rng) {
+        return new Comparable[]{"title" + i, 1900 + rng.nextInt(125), 60 + rng.nextInt(120),
+            "genre" + rng.nextInt(12), "studioName" + rng.nextInt(500), rng.nextInt(100_000)};
+    }
+
+    /**
+     * Generate the i-th movieExec tuple (producerNo name address fee), drawing
+     * from rng.
+     */
+    static Comparable[] movieExec(int i, Random rng) {
+        return new Comparable[]{i, "name" + i, "address" + i, rng.nextInt(1_000_000)};
+    }
+
+    /**
+     * Insert n generated tuples into a new table, encoding its String columns or
+     * not, and print the heap it retains.
+     *
+     * @param label the name of the case
+     * @param schema the table's name, attributes, domains and key
+     * @param tuple the generator of the i-th tuple
+     * @param encode whether the table encodes String columns
+     * @param n the number of tuples
+     * @return the heap retained in bytes
+     */
+    static long measure(String label, String[] schema, BiFunction<Integer, Random, Comparable[]> tuple,
+            boolean encode, int n) {
+        var console = System.out;
+        var h0 = used();
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        var table = new Table(schema[0], schema[1], schema[2], schema[3]);
+        table.encodeStrings(encode);
+        var rng = new Random(42);
+        for (var i = 0; i < n; i++) {
+            table.insert(tuple.apply(i, rng));
+        }
+        System.setOut(console);
+        var heap = used() - h0;
+        out.printf("%-9s %-11s %8d tuples %10d KB heap %6d bytes/tuple (%d)%n", schema[0], label, n,
+                heap / 1024, heap / n, table.getTuples().size());
+        return heap;
+    }
+
+    public static void main(String[] args) {
+        var maxTuples = (args.length == 1) ? Integer.parseInt(args[0]) : SIZES[SIZES.length - 1];
+
+        for (var n : SIZES) {
+            if (n > maxTuples) {
+                break;
+            }
+            out.println(n + " tuples, Dictionary Test cases");
+            var movie = new String[]{"movie", "title year length genre studioName producerNo",
+                "String Integer Integer String String Integer", "title year"};
+            var movieExec = new String[]{"movieExec", "producerNo name address fee",
+                "Integer String String Integer", "producerNo"};
+            for (var schema : new String[][]{movie, movieExec}) {
+                BiFunction<Integer, Random, Comparable[]> tuple = (schema == movie)
+                        ? DictionaryComparisonScript::movie : DictionaryComparisonScript::movieExec;
+                var plain = measure("PLAIN", schema, tuple, false, n);
+                var coded = measure("DICTIONARY", schema, tuple, true, n);
+                out.printf("%-9s %-11s %8d tuples %10d KB %+6d bytes/tuple%n", schema[0], "difference", n,
+                        (coded - plain) / 1024, (coded - plain) / n);
+            } // for
+        } // for
+    }
+}
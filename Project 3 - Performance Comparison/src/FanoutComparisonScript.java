@@ -0,0 +1,155 @@
+import java.util.*;
+import static java.lang.System.nanoTime;
+import static java.lang.System.out;
+
+/**
+ * The FanoutComparisonScript class compares BpTreeMap indexes built with
+ * different orders (fanouts) on the two operations timed by
+ * TimingComparisonScript: select by key (a single index lookup) and the
+ * indexed join (one index lookup per outer tuple). Keys are movieExec style
+ * producerNo values wrapped in KeyType, from 100K up to 10M keys.
+ *
+ * The maximum number of keys may be given as args[0] (e.g., 1000000) for
+ * machines with a small heap.
+ */
+class FanoutComparisonScript {
+
+    /**
+     * The orders (maximum number of children per node) to compare.
+     */
+    private static final int[] FANOUTS = {5, 16, 32, 64, 128, 256};
+
+    /**
+     * The index sizes (number of keys) to compare.
+     */
+    private static final int[] SIZES = {100_000, 1_000_000, 10_000_000};
+
+    /**
+     * Number of lookups timed for the select case.
+     */
+    private static final int SELECTS = 100_000;
+
+    /**
+     * Number of outer tuples probed for the join case.
+     */
+    private static final int OUTER = 100_000;
+
+    /**
+     * Build a BpTreeMap index of the given order over the given producerNo
+     * values, with a movieExec style tuple as the value.
+     *
+     * @param keys the producerNo values (distinct)
+     * @param order the order of the BpTreeMap
+     * @return the populated index
+     */
+    static BpTreeMap<KeyType, Comparable[]> build_index(int[] keys, int order) {
+        var index = new BpTreeMap<KeyType, Comparable[]>(KeyType.class, Comparable[].class, order);
+        for (var k : keys) {
+            index.put(new KeyType(k), new Comparable[]{k, "name" + k, "address" + k, k % 1000});
+        }
+        return index;
+    }
+
+    /**
+     * Time select by key: the average time of one index lookup, in
+     * nano-seconds. The first of six iterations is skipped (JIT warm up).
+     *
+     * @param index the index to probe
+     * @param probes the keys to look up
+     * @return the average nano-seconds per lookup
+     */
+    static long time_select(BpTreeMap<KeyType, Comparable[]> index, KeyType[] probes) {
+        var sum = 0L;
+        var found = 0;
+        for (var it = 0; it < 6; it++) {
+            var t0 = nanoTime();
+            for (var p : probes) {
+                if (index.get(p) != null) {
+                    found++;
+                }
+            }
+            var et = nanoTime() - t0;
+            if (it > 0) {
+                sum += et;
+            }
+        } // for
+        if (found == 0) {
+            out.println("time_select: no probe keys found");
+        }
+        return sum / (5L * probes.length);
+    }
+
+    /**
+     * Time the indexed join: probe the index once per outer tuple and
+     * concatenate matching tuples, as Table.i_join does. Returns the average
+     * time of one join in micro-seconds. The first of six iterations is
+     * skipped (JIT warm up).
+     *
+     * @param index the index on the inner table
+     * @param outer the outer (movie) tuples, producerNo in column 0
+     * @return the average micro-seconds per join
+     */
+    static long time_join(BpTreeMap<KeyType, Comparable[]> index, Comparable[][] outer) {
+        var sum = 0L;
+        for (var it = 0; it < 6; it++) {
+            var rows = new ArrayList<Comparable[]>();
+            var t0 = nanoTime();
+            for (var t : outer) {
+                var u = index.get(new KeyType(t[0]));
+                if (u != null) {
+                    rows.add(Table.concat(t, u));
+                }
+            }
+            var et = (nanoTime() - t0) / 1000;
+            if (it > 0) {
+                sum += et;
+            }
+        } // for
+        return sum / 5;
+    }
+
+    public static void main(String[] args) {
+        var maxKeys = (args.length == 1) ? Integer.parseInt(args[0]) : SIZES[SIZES.length - 1];
+        var rng = new Random(42);
+
+        for (var n : SIZES) {
+            if (n > maxKeys) {
+                break;
+            }
+
+            // distinct producerNo values in random order
+            var keys = new int[n];
+            for (var i = 0; i < n; i++) {
+                keys[i] = 2 * i;
+            }
+            for (var i = n - 1; i > 0; i--) {
+                var j = rng.nextInt(i + 1);
+                var tmp = keys[i];
+                keys[i] = keys[j];
+                keys[j] = tmp;
+            }
+
+            // select probes all hit, join outer tuples hit about half the time (odd keys miss)
+            var probes = new KeyType[SELECTS];
+            for (var i = 0; i < SELECTS; i++) {
+                probes[i] = new KeyType(keys[rng.nextInt(n)]);
+            }
+            var outer = new Comparable[OUTER][];
+            for (var i = 0; i < OUTER; i++) {
+                outer[i] = new Comparable[]{rng.nextInt(2 * n), "title" + i, 1900 + i % 100};
+            }
+
+            out.println(n + " keys, BPTREE_MAP Fanout Test cases");
+            for (var order : FANOUTS) {
+                var t0 = nanoTime();
+                var index = build_index(keys, order);
+                var bt = (nanoTime() - t0) / 1_000_000;
+                out.println("order " + order
+                        + ": build " + bt + " ms"
+                        + ", select " + time_select(index, probes) + " ns/lookup"
+                        + ", join " + time_join(index, outer) + " mu-sec");
+                index = null;
+            } // for
+        } // for
+    }
+}
@@ -1,8 +1,16 @@
 
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * **********************************************************************************
@@ -10,13 +18,24 @@ import java.util.Map;
  * map, representing the map of the index. Also contains condition variables
  * like isUnique and index_key.
  *
- * Contains method insertTuple and index_lookup to interact with the map.
+ * Contains method insertTuple and index_lookup to interact with the map. A
+ * non-unique index keeps a PostingList of row ids per key value instead, so
+ * index_lookup_all returns every matching tuple.
  *
  * @author Heeya Jolly and Jason Maurer
  */
-public class Index {
+public final class Index {
 
-    private final Map<KeyType, Comparable[]> map;  // The map object
+    private static final double BULK_LOAD_FILL = 1.0;  // fill factor for B+Tree nodes built by bulk loading
+    private static final int PARALLEL_ROWS = 1 << 16;  // tables at least this large are indexed in parallel
+    private static final int SORT_CHUNK = 1 << 13;  // rows a fork/join task extracts and sorts by itself
+
+    private final Map<KeyType, Comparable[]> map;  // The map object (unique index)
+    private final Map<KeyType, PostingList> postings;  // Row ids per key value (non-unique index)
+    private BloomFilter bloom;  // Optional filter answering lookups of absent keys
+    private long bloomProbes;  // Lookups checked against the filter
+    private long bloomSaved;  // Lookups the filter answered (key absent)
+    private long bloomFalsePositives;  // Lookups the filter passed that found nothing
     private final boolean isUnique;  // The boolean flag
     private final String[] index_key;  // The string array
     private final int[] key_columns;
@@ -35,12 +54,21 @@ public class Index {
      * 
      * PopulateMap() is called in case the table already has tuples that must be indexed. 
      *
-     * @param new_map the empty map passed in
+     * @param new_map the empty map passed in (null for a non-unique index, which keeps posting lists)
      * @param table the table the index is being made for
      * @param isUnique the boolean for if the index is unique
      * @param index_key the attributes of the key for the index
      */
     public Index(Map<KeyType, Comparable[]> new_map, Table table, boolean isUnique, String[] index_key) {
+        this(new_map, table, isUnique, index_key, true);
+    }
+
+    /**
+     * **********************************************************************************
+     * Construct an index, filling it from the table's tuples only when populate is
+     * true (readSnapshot fills it otherwise).
+     */
+    Index(Map<KeyType, Comparable[]> new_map, Table table, boolean isUnique, String[] index_key, boolean populate) {
         if (isUnique) {
             this.uniqueKeysSet = new HashSet<List<Comparable>>();
         }
@@ -57,21 +85,57 @@ public class Index {
         this.index_key = index_key;
         this.table = table;
         this.map = new_map;
-        populateMap();
+        this.postings = isUnique ? null : new HashMap<>();
+        if (populate) {
+            populateMap();
+        }
     }
 
     /**
      * **********************************************************************************
-     * Inserts tuple into index, checking if the key value is repeated if the index is 
-     * unique. 
+     * Inserts tuple into index, checking if the key value is repeated if the index is
+     * unique. A non-unique index adds the tuple's row id to its key value's posting
+     * list instead.
      *
      * @param tuple the tuple to insert
+     * @param row the row id (position in the table's tuples) of the tuple
      */
-    public void insertTuple(Comparable[] tuple) {
-        Comparable[] key_values = new Comparable[this.key_columns.length];
-        for (int i = 0; i < this.key_columns.length; i++) {
-            key_values[i] = tuple[this.key_columns[i]];
+    public void insertTuple(Comparable[] tuple, int row) {
+        var key = this.extractKey(tuple);
+        if (this.bloom != null) {
+            if (this.bloom.isOverCapacity()) {
+                this.enableBloomFilter(this.bloom.getFpp());  // resize, keeping the false positive rate
+            }
+            this.bloom.add(key);
         }
+        if (this.isUnique) {
+            if (this.map instanceof BeTreeMap<KeyType, Comparable[]> beTree) {
+                beTree.upsert(key, tuple);  // extractKey checked the key is new
+            } else if (this.map instanceof SoaBpTreeMap soaTree) {
+                soaTree.put(key, row);  // by row id, as an off-heap table's tuples are copies
+            } else {
+                this.map.put(key, tuple);
+            }
+        } else {
+            var rows = this.postings.get(key);
+            if (rows == null) {
+                this.postings.put(key, new PostingList(row));
+            } else {
+                rows.add(row);
+            }
+        }
+    }
+
+    /**
+     * **********************************************************************************
+     * Extracts the key value of tuple for this index, checking if the key value is
+     * repeated if the index is unique.
+     *
+     * @param tuple the tuple to extract the key from
+     * @return the key value of the tuple
+     */
+    private KeyType extractKey(Comparable[] tuple) {
+        Comparable[] key_values = this.keyValues(tuple);
 
         if (this.isUnique) {
             List<Comparable> list = Arrays.asList(key_values);
@@ -83,31 +147,435 @@ public class Index {
                 this.uniqueKeysSet.add(list);
             }
         }
-        this.map.put(new KeyType(key_values), tuple);
+        return new KeyType(key_values);
     }
 
     /**
      * **********************************************************************************
-     * Inserts existing tuples from table into index. 
+     * Returns the values of tuple's index key attributes.
+     */
+    private Comparable[] keyValues(Comparable[] tuple) {
+        Comparable[] key_values = new Comparable[this.key_columns.length];
+        for (int i = 0; i < this.key_columns.length; i++) {
+            key_values[i] = tuple[this.key_columns[i]];
+        }
+        return key_values;
+    }
+
+    /**
+     * **********************************************************************************
+     * Returns the attribute values of key as a list (as uniqueKeysSet holds them).
+     */
+    private static List<Comparable> keyList(KeyType key) {
+        var key_values = new Comparable[key.length()];
+        for (var i = 0; i < key_values.length; i++) {
+            key_values[i] = key.get(i);
+        }
+        return Arrays.asList(key_values);
+    }
+
+    /**
+     * **********************************************************************************
+     * Removes tuple from a unique index (when the tuple is the one the index holds for
+     * its key value, or equal to it, as a PagedBpTreeMap and an off-heap table hold
+     * copies of the tuples), freeing its key value. A
+     * non-unique index is left as is until the table calls removeRows.
+     *
+     * @param tuple the tuple to remove
+     */
+    public void removeTuple(Comparable[] tuple) {
+        if (!this.isUnique) {
+            return;
+        }
+        Comparable[] key_values = new Comparable[this.key_columns.length];
+        for (int i = 0; i < this.key_columns.length; i++) {
+            key_values[i] = tuple[this.key_columns[i]];
+        }
+
+        var key = new KeyType(key_values);
+        var held = this.map.get(key);
+        if (held == tuple || (held != null && Arrays.equals(held, tuple))) {
+            this.map.remove(key);
+        }
+        this.uniqueKeysSet.remove(Arrays.asList(key_values));
+    }
+
+    /**
+     * **********************************************************************************
+     * Renumbers a non-unique index's posting lists after the rows in deleted were
+     * removed from the table, dropping key values left with no rows (or, for a
+     * unique SoaBpTreeMap, its row ids).
+     *
+     * @param deleted the removed row ids, in ascending order
+     */
+    public void removeRows(int[] deleted) {
+        if (!this.isUnique) {
+            this.postings.values().removeIf(rows -> rows.removeRows(deleted) == 0);
+        } else if (this.map instanceof SoaBpTreeMap soaTree) {
+            soaTree.removeRows(deleted);  // its values are row ids too
+        }
+    }
+
+    /**
+     * **********************************************************************************
+     * Inserts existing tuples from table into index. A non-unique index collects
+     * the row ids for each key value. A unique BpTreeMap is bulk loaded instead: the
+     * key values are extracted (checking uniqueness), sorted, and the B+Tree is
+     * built bottom-up in one pass. Tables of PARALLEL_ROWS tuples or more are
+     * indexed by parallelPopulate on the common fork/join pool.
      */
     private void populateMap() {
-        if (!this.table.getTuples().isEmpty()) {
-            if (this.map != null && !this.map.isEmpty()) {
+        if (this.table.getTuples().size() >= PARALLEL_ROWS) {
+            this.parallelPopulate(ForkJoinPool.commonPool());
+        } else if (!this.table.getTuples().isEmpty()) {
+            if (this.isUnique && this.map != null && !this.map.isEmpty()) {
                 this.map.clear();
             }
             var allRows = this.table.getTuples();
-            for (Comparable[] row : allRows) {
-                this.insertTuple(row);
+            if (!this.isUnique) {
+                this.postings.clear();
+                for (var row = 0; row < allRows.size(); row++) {
+                    this.insertTuple(allRows.get(row), row);
+                }
+            } else if (this.map instanceof BpTreeMap<KeyType, Comparable[]> bpTree) {
+                var entries = new ArrayList<Map.Entry<KeyType, Comparable[]>>(allRows.size());
+                for (Comparable[] row : allRows) {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(this.extractKey(row), row));
+                }
+                entries.sort(Map.Entry.comparingByKey());
+                bpTree.bulkLoad(entries.iterator(), BULK_LOAD_FILL);
+            } else {
+                for (var row = 0; row < allRows.size(); row++) {
+                    this.insertTuple(allRows.get(row), row);
+                }
+            }
+        }
+    }
+
+    /**
+     * **********************************************************************************
+     * Rebuilds this index from the table's tuples using the given number of threads
+     * (see parallelPopulate).
+     * <p>
+     * #usage movieExec.create_index (new String [] {"producerNo"}, false).rebuild (4)
+     *
+     * @param threads the number of fork/join worker threads
+     */
+    public void rebuild(int threads) {
+        var pool = new ForkJoinPool(threads);
+        try {
+            this.parallelPopulate(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * **********************************************************************************
+     * Inserts existing tuples from table into index in parallel: fork/join tasks
+     * extract and sort the (key value, row id) pairs of chunks of the tuples and
+     * merge their sorted runs. Ties keep row id order, so a non-unique index then
+     * cuts the sorted pairs into posting lists; a unique index checks neighbours for
+     * repeated key values and bulk loads a BpTreeMap (other maps take the pairs in
+     * key order).
+     */
+    private void parallelPopulate(ForkJoinPool pool) {
+        var allRows = this.table.getTuples();
+        var sorted = pool.invoke(new SortTask(allRows, 0, allRows.size()));
+        if (!this.isUnique) {
+            this.postings.clear();
+            for (var i = 0; i < sorted.length; ) {
+                var rows = new PostingList(sorted[i].row());
+                var j = i + 1;
+                for (; j < sorted.length && sorted[j].key().equals(sorted[i].key()); j++) {
+                    rows.add(sorted[j].row());  // ascending, so each add appends
+                }
+                this.postings.put(sorted[i].key(), rows);
+                i = j;
+            }
+        } else {
+            this.uniqueKeysSet.clear();
+            this.map.clear();
+            for (var i = 0; i < sorted.length; i++) {
+                if (i > 0 && sorted[i].key().equals(sorted[i - 1].key())) {
+                    this.uniqueKeysSet.clear();
+                    throw new IllegalArgumentException(
+                            "error: Unable to insert tuple - already exists in unique index. "
+                    );
+                }
+                this.uniqueKeysSet.add(keyList(sorted[i].key()));
+            }
+            var entries = new Iterator<Map.Entry<KeyType, Comparable[]>>() {
+                private int i = 0;
+
+                public boolean hasNext() {
+                    return i < sorted.length;
+                }
+
+                public Map.Entry<KeyType, Comparable[]> next() {
+                    var e = sorted[i++];
+                    return new AbstractMap.SimpleImmutableEntry<>(e.key(), allRows.get(e.row()));
+                }
+            };
+            if (this.map instanceof BpTreeMap<KeyType, Comparable[]> bpTree) {
+                bpTree.bulkLoad(entries, BULK_LOAD_FILL);
+            } else {
+                while (entries.hasNext()) {
+                    var e = entries.next();
+                    this.map.put(e.getKey(), e.getValue());
+                }
             }
         }
+        if (this.bloom != null) {
+            this.enableBloomFilter(this.bloom.getFpp());
+        }
+    }
+
+    private record KeyRow(KeyType key, int row) {
+    }
+
+    /**
+     * **********************************************************************************
+     * Fork/join task returning the (key value, row id) pairs of rows lo .. hi-1
+     * sorted by key value, ties in row id order.
+     */
+    private class SortTask extends RecursiveTask<KeyRow[]> {
+
+        private final List<Comparable[]> allRows;
+        private final int lo, hi;
+
+        SortTask(List<Comparable[]> allRows, int lo, int hi) {
+            this.allRows = allRows;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected KeyRow[] compute() {
+            if (hi - lo <= SORT_CHUNK) {
+                var run = new KeyRow[hi - lo];
+                for (var row = lo; row < hi; row++) {
+                    run[row - lo] = new KeyRow(new KeyType(keyValues(allRows.get(row))), row);
+                }
+                Arrays.sort(run, (a, b) -> a.key().compareTo(b.key()));  // stable: ties stay in row order
+                return run;
+            }
+            var mid = (lo + hi) >>> 1;
+            var left = new SortTask(allRows, lo, mid);
+            left.fork();
+            var right = new SortTask(allRows, mid, hi).compute();
+            return merge(left.join(), right);
+        }
+
+        private static KeyRow[] merge(KeyRow[] a, KeyRow[] b) {
+            var out = new KeyRow[a.length + b.length];
+            var i = 0;
+            var j = 0;
+            for (var k = 0; k < out.length; k++) {
+                if (j == b.length || (i < a.length && a[i].key().compareTo(b[j].key()) <= 0)) {
+                    out[k] = a[i++];  // ties from a (lower row ids) first
+                } else {
+                    out[k] = b[j++];
+                }
+            }
+            return out;
+        }
+    }
+
+    /**
+     * **********************************************************************************
+     * Writes this index to a snapshot file (see IndexSnapshot): a unique index as
+     * (key value, row id) entries, a non-unique one as (key value, posting list).
+     *
+     * @param path the snapshot file
+     * @param stamp the table's save stamp
+     * @param rowOf the row id of each of the table's tuples
+     */
+    void writeSnapshot(String path, long stamp, IdentityHashMap<Comparable[], Integer> rowOf) throws IOException {
+        if (this.isUnique) {
+            IndexSnapshot.writeMap(path, stamp, this.map, rowOf);
+            return;
+        }
+        try (var dos = IndexSnapshot.create(path, stamp, rowOf.size(), false, this.postings.size())) {
+            for (var e : this.postings.entrySet()) {
+                IndexSnapshot.writeKey(dos, e.getKey());
+                var rows = e.getValue();
+                dos.writeInt(rows.size());
+                for (var i = 0; i < rows.size(); i++) {
+                    dos.writeInt(rows.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * **********************************************************************************
+     * Fills this (empty) index from a snapshot file written by writeSnapshot,
+     * rebuilding a unique index's set of key values from the keys read.
+     *
+     * @param path the snapshot file
+     * @param stamp the loaded table's save stamp
+     * @return whether the snapshot was read (false => the index is still empty)
+     */
+    boolean readSnapshot(String path, long stamp) throws IOException {
+        var allRows = this.table.getTuples();
+        if (this.isUnique) {
+            if (!IndexSnapshot.readMap(path, stamp, allRows, this.map)) {
+                return false;
+            }
+            this.restoreKeys();
+            return true;
+        }
+        try (var dis = IndexSnapshot.open(path, stamp, allRows.size())) {
+            if (dis == null) {
+                return false;
+            }
+            dis.readBoolean();                                        // sorted flag, unused by postings
+            for (var n = dis.readInt(); n > 0; n--) {
+                var key = IndexSnapshot.readKey(dis);
+                var size = dis.readInt();
+                var rows = new PostingList(dis.readInt());
+                for (var i = 1; i < size; i++) {
+                    rows.add(dis.readInt());                      // ascending, so each add appends
+                }
+                this.postings.put(key, rows);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * **********************************************************************************
+     * Rebuilds a unique index's set of key values from the keys in its map, for a
+     * map that was filled by a snapshot or reopened from its file (a PagedBpTreeMap).
+     */
+    void restoreKeys() {
+        this.uniqueKeysSet.clear();
+        for (var key : this.map.keySet()) {
+            this.uniqueKeysSet.add(keyList(key));
+        }
+    }
+
+    /**
+     * **********************************************************************************
+     * Puts a Bloom filter with false positive rate fpp in front of the lookups, so
+     * that most lookups of absent key values return without touching the map. The
+     * filter is sized for twice the keys now in the index (at least 1024), and is
+     * rebuilt twice as large when insertTuple takes it past that.
+     * <p>
+     * #usage movieExec.create_index (new String [] {"producerNo"}, false).enableBloomFilter (0.01)
+     *
+     * @param fpp the false positive rate wanted, in (0, 1)
+     */
+    public void enableBloomFilter(double fpp) {
+        var keys = this.isUnique ? this.map.keySet() : this.postings.keySet();
+        this.bloom = new BloomFilter(Math.max(2 * keys.size(), 1024), fpp);
+        for (var key : keys) {
+            this.bloom.add(key);
+        }
+    }
+
+    /**
+     * **********************************************************************************
+     * Removes the Bloom filter (if any); its statistics are kept.
+     */
+    public void disableBloomFilter() {
+        this.bloom = null;
+    }
+
+    /**
+     * **********************************************************************************
+     * Returns the Bloom filter's statistics: lookups checked, lookups it saved
+     * (absent keys answered without the map) and false positives.
+     */
+    public String bloomStats() {
+        var pct = (this.bloomProbes == 0) ? 0.0 : 100.0 * this.bloomSaved / this.bloomProbes;
+        return String.format("bloom probes %d, saved %d (%.1f%%), false positives %d",
+                this.bloomProbes, this.bloomSaved, pct, this.bloomFalsePositives);
+    }
+
+    /**
+     * **********************************************************************************
+     * Returns false when the Bloom filter shows key_value is absent (counting the
+     * saved lookup), true when the map must be searched.
+     */
+    private boolean mayContain(KeyType key_value) {
+        if (this.bloom == null) {
+            return true;
+        }
+        this.bloomProbes++;
+        if (!this.bloom.mightContain(key_value)) {
+            this.bloomSaved++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * **********************************************************************************
+     * Counts a false positive when a lookup the Bloom filter passed found nothing.
+     */
+    private <T> T checkMiss(T found) {
+        if (found == null && this.bloom != null) {
+            this.bloomFalsePositives++;
+        }
+        return found;
     }
 
     //Getter Methods -----------------------------------------------------------------------------------------
+    /**
+     * **********************************************************************************
+     * Returns the tuple with the given key value (the first one, by row id, for a
+     * non-unique index), or null if there is none.
+     */
     public Comparable[] index_lookup(KeyType key_value) {
-        return this.map.get(key_value);
+        if (!this.mayContain(key_value)) {
+            return null;
+        }
+        if (this.isUnique) {
+            return this.checkMiss(this.map.get(key_value));
+        }
+        var rows = this.checkMiss(this.postings.get(key_value));
+        return (rows == null) ? null : this.table.getTuples().get(rows.get(0));
+    }
+
+    /**
+     * **********************************************************************************
+     * Returns every tuple with the given key value, in row id order (an empty list
+     * if there is none).
+     */
+    public List<Comparable[]> index_lookup_all(KeyType key_value) {
+        if (!this.mayContain(key_value)) {
+            return List.of();
+        }
+        if (this.isUnique) {
+            var tuple = this.checkMiss(this.map.get(key_value));
+            return (tuple == null) ? List.of() : List.<Comparable[]>of(tuple);
+        }
+        var rows = this.checkMiss(this.postings.get(key_value));
+        if (rows == null) {
+            return List.of();
+        }
+        var allRows = this.table.getTuples();
+        var matches = new ArrayList<Comparable[]>(rows.size());
+        for (var i = 0; i < rows.size(); i++) {
+            matches.add(allRows.get(rows.get(i)));
+        }
+        return matches;
     }
 
-    public Map<KeyType, Comparable[]> getMap() {
+    /**
+     * **********************************************************************************
+     * Returns the posting list (row ids) of the given key value for a non-unique
+     * index, or null if there is none.
+     */
+    public PostingList index_lookup_rows(KeyType key_value) {
+        if (this.isUnique || !this.mayContain(key_value)) {
+            return null;
+        }
+        return this.checkMiss(this.postings.get(key_value));
+    }
+
+    public Map<KeyType, Comparable[]> getMap() {  // a unique index's map (a non-unique index keeps postings)
         return map;
     }
 
@@ -142,11 +610,13 @@ public class Index {
         }
 
         var allRows = tab.getTuples();
-        int rowCount = allRows.size();
-        var bpTree = new BpTreeMap<Integer, Comparable[]>(Integer.class, Comparable[].class);
-        for (var i = 0; i < rowCount; i++) {
-            bpTree.put((Integer) (allRows.get(i))[colIndex], allRows.get(i));
+        var entries = new ArrayList<Map.Entry<Integer, Comparable[]>>(allRows.size());
+        for (Comparable[] row : allRows) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>((Integer) row[colIndex], row));
         }
+        entries.sort(Map.Entry.comparingByKey());
+        var bpTree = new BpTreeMap<Integer, Comparable[]>(Integer.class, Comparable[].class);
+        bpTree.bulkLoad(entries.iterator(), BULK_LOAD_FILL);
 
         return bpTree;
     }
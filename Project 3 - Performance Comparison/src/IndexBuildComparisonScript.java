@@ -0,0 +1,74 @@
+import java.util.*;
+import static java.lang.System.nanoTime;
+import static java.lang.System.out;
+
+/**
+ * The IndexBuildComparisonScript class times building alternate indexes on a
+ * movieExec style table of 1M tuples with Index.rebuild at 1, 2, 4 and 8
+ * fork/join threads, printing the milli-seconds per build and the speedup
+ * over one thread. Both a unique index (name) and a non-unique one
+ * (address, 1000 tuples per value) are built. The speedup is bounded by the
+ * cores available (printed first). The first of six iterations is skipped
+ * (JIT warm up).
+ *
+ * The number of tuples may be given as args[0] (e.g., 100000) for machines
+ * with a small heap.
+ */
+class IndexBuildComparisonScript {
+
+    /**
+     * Default number of tuples in the table.
+     */
+    private static final int TUPLES = 1_000_000;
+
+    /**
+     * The thread counts to compare.
+     */
+    private static final int[] THREADS = {1, 2, 4, 8};
+
+    /**
+     * Time rebuilding the index with the given number of threads, returning the
+     * average milli-seconds per build.
+     *
+     * @param index the index to rebuild
+     * @param threads the number of fork/join threads
+     * @return the average milli-seconds per build
+     */
+    static double time_build(Index index, int threads) {
+        var sum = 0L;
+        for (var it = 0; it < 6; it++) {
+            var t0 = nanoTime();
+            index.rebuild(threads);
+            var et = nanoTime() - t0;
+            if (it > 0) {
+                sum += et;
+            }
+        } // for
+        return sum / 5e6;
+    }
+
+    public static void main(String[] args) {
+        var n = (args.length == 1) ? Integer.parseInt(args[0]) : TUPLES;
+        var rng = new Random(42);
+        var rows = new ArrayList<Comparable[]>(n);
+        for (var i = 0; i < n; i++) {
+            var k = rng.nextInt(Integer.MAX_VALUE);
+            rows.add(new Comparable[]{i, "name" + k + "_" + i, "address" + (k % (n / 1000 + 1)), (float) (k % 1000)});
+        }
+        var movieExec = new Table("movieExec", new String[]{"certNo", "name", "address", "fee"},
+                new Class[]{Integer.class, String.class, String.class, Float.class}, new String[]{"certNo"}, rows);
+
+        out.println(n + " tuples, " + Runtime.getRuntime().availableProcessors() + " cores, Index Build Test cases");
+        for (var unique : new boolean[]{true, false}) {
+            var index = movieExec.create_index(new String[]{unique ? "name" : "address"}, unique);
+            var base = 0.0;
+            for (var threads : THREADS) {
+                var ms = time_build(index, threads);
+                if (threads == 1) {
+                    base = ms;
+                }
+                out.printf("%-10s %d threads %10.1f ms %6.2fx%n", unique ? "unique" : "non-unique", threads, ms, base / ms);
+            } // for
+        } // for
+    }
+}
@@ -0,0 +1,224 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * **********************************************************************************
+ * Reads and writes index snapshot files, so that Table.load can reattach a saved
+ * table's indexes by reading them rather than by re-inserting every tuple.
+ *
+ * A snapshot refers to tuples by row id (position in the table's tuples), so the
+ * tuples read back with the table are shared, not copied. Its header holds the
+ * save stamp of the table it was written with and the number of tuples; a
+ * snapshot whose header does not match the loaded table (left over from an older
+ * save) is ignored and the index is rebuilt instead.
+ *
+ *   MAGIC | stamp | tuples | sorted | entries | (key, row ids) ...
+ *
+ * Keys are written attribute by attribute as a type tag and the value.
+ */
+final class IndexSnapshot {
+
+    private static final int MAGIC = 0x49445831;  // "IDX1"
+
+    private IndexSnapshot() {
+    }
+
+    /**
+     * **********************************************************************************
+     * Return a map from each tuple (by identity) to its row id.
+     *
+     * @param tuples the table's tuples
+     * @return the row id of each tuple
+     */
+    static IdentityHashMap<Comparable[], Integer> rowIds(List<Comparable[]> tuples) {
+        var rowOf = new IdentityHashMap<Comparable[], Integer>(2 * tuples.size());
+        for (var row = 0; row < tuples.size(); row++) {
+            rowOf.put(tuples.get(row), row);
+        }
+        return rowOf;
+    }
+
+    /**
+     * **********************************************************************************
+     * Open a snapshot file for writing and write its header.
+     *
+     * @param path the snapshot file
+     * @param stamp the table's save stamp
+     * @param tupleCount the number of tuples in the table
+     * @param sorted whether the entries are written in ascending key order
+     * @param entries the number of entries that will follow
+     * @return the stream to write the entries to
+     */
+    static DataOutputStream create(String path, long stamp, int tupleCount, boolean sorted, int entries)
+            throws IOException {
+        var dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+        dos.writeInt(MAGIC);
+        dos.writeLong(stamp);
+        dos.writeInt(tupleCount);
+        dos.writeBoolean(sorted);
+        dos.writeInt(entries);
+        return dos;
+    }
+
+    /**
+     * **********************************************************************************
+     * Open a snapshot file for reading, returning null (after closing it) when it
+     * does not exist or its header does not match the table. The stream is left
+     * positioned at the sorted flag.
+     *
+     * @param path the snapshot file
+     * @param stamp the loaded table's save stamp
+     * @param tupleCount the number of tuples in the loaded table
+     * @return the stream to read the rest from, or null
+     */
+    static DataInputStream open(String path, long stamp, int tupleCount) throws IOException {
+        if (!new File(path).isFile()) {
+            return null;
+        }
+        var dis = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16));
+        if (dis.readInt() != MAGIC || dis.readLong() != stamp || dis.readInt() != tupleCount) {
+            dis.close();
+            return null;
+        }
+        return dis;
+    }
+
+    /**
+     * **********************************************************************************
+     * Write a table's primary index (map) to a snapshot file.
+     *
+     * @param path the snapshot file
+     * @param stamp the table's save stamp
+     * @param map the index
+     * @param rowOf the row id of each tuple
+     */
+    static void writeMap(String path, long stamp, Map<KeyType, Comparable[]> map,
+            IdentityHashMap<Comparable[], Integer> rowOf) throws IOException {
+        try (var dos = create(path, stamp, rowOf.size(), map instanceof SortedMap, map.size())) {
+            for (var e : map.entrySet()) {
+                writeKey(dos, e.getKey());
+                dos.writeInt(rowOf.get(e.getValue()));
+            }
+        }
+    }
+
+    /**
+     * **********************************************************************************
+     * Fill an empty primary index (map) from a snapshot file. Entries written in
+     * key order go to a BpTreeMap by bulk loading (one pass, no descents).
+     *
+     * @param path the snapshot file
+     * @param stamp the loaded table's save stamp
+     * @param tuples the loaded table's tuples
+     * @param map the empty index to fill
+     * @return whether the snapshot was read (false => the index must be rebuilt)
+     */
+    static boolean readMap(String path, long stamp, List<Comparable[]> tuples, Map<KeyType, Comparable[]> map)
+            throws IOException {
+        try (var dis = open(path, stamp, tuples.size())) {
+            if (dis == null) {
+                return false;
+            }
+            var sorted = dis.readBoolean();
+            var n = dis.readInt();
+            var entries = new Iterator<Map.Entry<KeyType, Comparable[]>>() {
+                private int i = 0;
+
+                public boolean hasNext() {
+                    return i < n;
+                }
+
+                public Map.Entry<KeyType, Comparable[]> next() {
+                    i++;
+                    try {
+                        var key = readKey(dis);
+                        return new AbstractMap.SimpleImmutableEntry<>(key, tuples.get(dis.readInt()));
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            };
+            if (sorted && map instanceof BpTreeMap<KeyType, Comparable[]> bpTree) {
+                bpTree.bulkLoad(entries, 1.0);
+            } else {
+                while (entries.hasNext()) {
+                    var e = entries.next();
+                    map.put(e.getKey(), e.getValue());
+                }
+            }
+            return true;
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * **********************************************************************************
+     * Write key k as its number of attributes followed by each attribute (a type
+     * tag and the value).
+     */
+    static void writeKey(DataOutputStream dos, KeyType k) throws IOException {
+        dos.writeByte(k.length());
+        for (var i = 0; i < k.length(); i++) {
+            switch (k.get(i)) {
+                case Integer v -> {
+                    dos.writeByte('I');
+                    dos.writeInt(v);
+                }
+                case Long v -> {
+                    dos.writeByte('L');
+                    dos.writeLong(v);
+                }
+                case Short v -> {
+                    dos.writeByte('S');
+                    dos.writeShort(v);
+                }
+                case Byte v -> {
+                    dos.writeByte('B');
+                    dos.writeByte(v);
+                }
+                case Double v -> {
+                    dos.writeByte('D');
+                    dos.writeDouble(v);
+                }
+                case Float v -> {
+                    dos.writeByte('F');
+                    dos.writeFloat(v);
+                }
+                case Character v -> {
+                    dos.writeByte('C');
+                    dos.writeChar(v);
+                }
+                case String v -> {
+                    dos.writeByte('T');
+                    dos.writeUTF(v);
+                }
+                default -> throw new IllegalArgumentException(
+                        "error: cannot snapshot a key attribute of type " + k.get(i).getClass().getSimpleName());
+            }
+        }
+    }
+
+    /**
+     * **********************************************************************************
+     * Read a key written by writeKey.
+     */
+    static KeyType readKey(DataInputStream dis) throws IOException {
+        var k = new Comparable[dis.readByte()];
+        for (var i = 0; i < k.length; i++) {
+            var tag = (char) dis.readByte();
+            k[i] = switch (tag) {
+                case 'I' -> dis.readInt();
+                case 'L' -> dis.readLong();
+                case 'S' -> dis.readShort();
+                case 'B' -> dis.readByte();
+                case 'D' -> dis.readDouble();
+                case 'F' -> dis.readFloat();
+                case 'C' -> dis.readChar();
+                case 'T' -> dis.readUTF();
+                default -> throw new IOException("error: bad type tag " + (int) tag + " in snapshot");
+            };
+        }
+        return new KeyType(k);
+    }
+}
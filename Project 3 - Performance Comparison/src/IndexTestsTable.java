@@ -45,6 +45,11 @@ public class IndexTestsTable
      */
     private static int count = 0;
 
+    /**
+     * Number of outer tuples probed together when i_join uses BpTreeMap.getAll.
+     */
+    private static final int JOIN_BATCH = 4096;
+
     /**
      * Table name.
      */
@@ -76,6 +81,16 @@ public class IndexTestsTable
      */
     private Map<KeyType, Comparable[]> index;
 
+    /**
+     * Optional Bloom filter on the primary key values, checked before select
+     * (KeyType) and i_join probe the primary index, and its statistics: probes
+     * checked, probes it answered (key absent) and false positives. Not saved.
+     */
+    private transient BloomFilter bloom;
+    private transient long bloomProbes;
+    private transient long bloomSaved;
+    private transient long bloomFalsePositives;
+
     private final HashSet<List<Comparable>> uniqueKeysSet = new HashSet<List<Comparable>>();
 
     /**
@@ -87,7 +102,7 @@ public class IndexTestsTable
      * The supported map types.
      */
     enum MapType {
-        NO_MAP, TREE_MAP, HASH_MAP, LINHASH_MAP, BPTREE_MAP
+        NO_MAP, TREE_MAP, HASH_MAP, LINHASH_MAP, BPTREE_MAP, BLINKTREE_MAP, INTBPTREE_MAP, PREFIX_BPTREE_MAP, BETREE_MAP, SOA_BPTREE_MAP
     }
 
     /**
@@ -97,9 +112,17 @@ public class IndexTestsTable
 
     /**
      * **********************************************************************************
-     * Make a map (index) given the MapType.
+     * Make a map (index) given the MapType. INTBPTREE_MAP gives an IntBpTreeMap
+     * when the map key is a single Integer, Short or Byte attribute, and a
+     * BpTreeMap otherwise. PREFIX_BPTREE_MAP gives a PrefixBpTreeMap, whose
+     * leaves store keys prefix-compressed. BETREE_MAP gives a BeTreeMap, which
+     * buffers inserts in its internal nodes and applies them in batches.
+     * SOA_BPTREE_MAP gives a SoaBpTreeMap, whose nodes keep normalized keys in a
+     * long [] and row ids into this table's tuples in an int [].
+     *
+     * @param mapKey the attributes making up the map's key
      */
-    private Map<KeyType, Comparable[]> makeMap() {
+    private Map<KeyType, Comparable[]> makeMap(String[] mapKey) {
         return switch (mType) {
             case NO_MAP ->
                 null;
@@ -110,6 +133,22 @@ public class IndexTestsTable
             //case LINHASH_MAP -> new LinHashMap <> (KeyType.class, Comparable [].class);
             case BPTREE_MAP ->
                 new BpTreeMap<>(KeyType.class, Comparable[].class);
+            case BLINKTREE_MAP ->
+                new BLinkTreeMap<>();
+            case INTBPTREE_MAP -> {
+                var keyDomain = extractDom(match(mapKey), domain);
+                if (keyDomain.length == 1 && (keyDomain[0] == Integer.class
+                        || keyDomain[0] == Short.class || keyDomain[0] == Byte.class)) {
+                    yield new IntBpTreeMap<>(keyDomain[0], 5);
+                }
+                yield new BpTreeMap<>(KeyType.class, Comparable[].class);
+            }
+            case PREFIX_BPTREE_MAP ->
+                new PrefixBpTreeMap<>();
+            case BETREE_MAP ->
+                new BeTreeMap<>();
+            case SOA_BPTREE_MAP ->
+                new SoaBpTreeMap(extractDom(match(mapKey), domain), tuples);
             default ->
                 null;
         }; // switch
@@ -150,7 +189,7 @@ public class IndexTestsTable
         key = _key;
         tuples = new ArrayList<>();
         this.mType = mType;
-        index = makeMap();
+        index = makeMap(key);
         // out.println(Arrays.toString(domain));
     } // constructor
 
@@ -173,7 +212,7 @@ public class IndexTestsTable
         key = _key;
         tuples = _tuples;
         this.mType = mType;
-        index = makeMap();
+        index = makeMap(key);
     } // constructor
 
     /**
@@ -346,7 +385,7 @@ public class IndexTestsTable
         List<Comparable[]> rows = new ArrayList<>();
 
         if (mType != MapType.NO_MAP) { // If the table has an index
-            var t = index.get(keyVal); // Get the tuple if it exists s.t. key = value
+            var t = mayContain(keyVal) ? checkMiss(index.get(keyVal)) : null; // Get the tuple if it exists s.t. key = value
             if (t != null) {
                 // System.out.println("Found tuple");
                 rows.add(t); // If the tuple exists add it to rows
@@ -594,12 +633,29 @@ public class IndexTestsTable
 
         if (table2.mType != MapType.NO_MAP) { // if table 2 has index
 
-            for (var t : tuples) { // For every tuple in this table
-                var keyVal = new KeyType(extract(t, t_attrs)); // get the key value wanted 
-                IndexVersionTwo table_2_specified_index = table2.create_index(u_attrs, false);
-                var u = table_2_specified_index.index_lookup(keyVal); // check if there are matches in table 2
-                if (u != null) { // if there are matches
-                    rows.add(concat(t, u)); // add concatenated tuples to rows
+            if (Arrays.equals(u_attrs, table2.key) && table2.indexed()) { // joining on table 2's primary key: probe its index
+                if (table2.index instanceof BpTreeMap<KeyType, Comparable[]> bpTree) {
+                    batch_probe(t_attrs, table2, bpTree, rows); // a B+Tree is probed in sorted batches
+                } else {
+                    for (var t : tuples) {
+                        var keyVal = new KeyType(extract(t, t_attrs));
+                        var u = table2.mayContain(keyVal) ? table2.checkMiss(table2.index.get(keyVal)) : null;
+                        if (u != null) {
+                            rows.add(concat(t, u));
+                        }
+                    }
+                }
+            } else {
+                IndexVersionTwo table_2_specified_index = table2.create_index(u_attrs, false); // non-unique: every match is kept
+                var u_tuples = table2.tuples;
+                for (var t : tuples) { // For every tuple in this table
+                    var keyVal = new KeyType(extract(t, t_attrs)); // get the key value wanted 
+                    var u_rows = table_2_specified_index.index_lookup_rows(keyVal); // row ids of the matches in table 2
+                    if (u_rows != null) { // if there are matches
+                        for (var i = 0; i < u_rows.size(); i++) {
+                            rows.add(concat(t, u_tuples.get(u_rows.get(i)))); // add concatenated tuples to rows
+                        }
+                    }
                 }
             }
 
@@ -627,6 +683,49 @@ public class IndexTestsTable
 
     } // i_join
 
+    /**
+     * **********************************************************************************
+     * Probe table 2's primary key B+Tree for the tuples of this table, JOIN_BATCH
+     * at a time: each batch's keys are sorted and looked up with one getAll walk
+     * of the tree, and the matches are emitted in this table's tuple order. Keys
+     * that table 2's Bloom filter (if any) shows are absent are left out of the walk.
+     *
+     * @param t_attrs the attributes of this table matching table 2's key
+     * @param table2 the table probed
+     * @param index2 table 2's primary index
+     * @param rows the list the joined tuples are added to
+     */
+    private void batch_probe(String[] t_attrs, IndexTestsTable table2, BpTreeMap<KeyType, Comparable[]> index2,
+            List<Comparable[]> rows) {
+        for (var from = 0; from < tuples.size(); from += JOIN_BATCH) {
+            var batch = tuples.subList(from, Math.min(from + JOIN_BATCH, tuples.size()));
+            var keys = new KeyType[batch.size()];
+            var order = new ArrayList<Integer>(keys.length);
+            for (var i = 0; i < keys.length; i++) {
+                keys[i] = new KeyType(extract(batch.get(i), t_attrs));
+                if (table2.mayContain(keys[i])) {
+                    order.add(i);
+                }
+            } // for
+            order.sort((a, b) -> keys[a].compareTo(keys[b]));
+
+            var sorted = new ArrayList<KeyType>(order.size());
+            for (var i : order) {
+                sorted.add(keys[i]);
+            }
+            var found = index2.getAll(sorted);
+            var matches = new Comparable[keys.length][];
+            for (var i = 0; i < order.size(); i++) {
+                matches[order.get(i)] = table2.checkMiss(found.get(i));
+            }
+            for (var i = 0; i < matches.length; i++) {
+                if (matches[i] != null) {
+                    rows.add(concat(batch.get(i), matches[i]));
+                }
+            } // for
+        } // for
+    } // batch_probe
+
     /**
      * **********************************************************************************
      * Join this table and table2 by performing an NATURAL JOIN. Tuples from
@@ -767,13 +866,23 @@ public class IndexTestsTable
             } else {
                 this.uniqueKeysSet.add(list);
                 tuples.add(tup);
+                if (bloom != null) {
+                    if (bloom.isOverCapacity()) {
+                        enableBloomFilter(bloom.getFpp());              // resize, keeping the false positive rate
+                    }
+                    bloom.add(new KeyType(keyVal));
+                }
             }
 
             if (mType != MapType.NO_MAP) {
-                index.put(new KeyType(keyVal), tup);
+                if (index instanceof BeTreeMap<KeyType, Comparable[]> beTree) {
+                    beTree.upsert(new KeyType(keyVal), tup);              // key is known to be new: a blind write
+                } else {
+                    index.put(new KeyType(keyVal), tup);
+                }
                 if (this.alternate_indexes != null) {
                     for (IndexVersionTwo ind : this.alternate_indexes) {
-                        ind.insertTuple(tup);
+                        ind.insertTuple(tup, tuples.size() - 1);
                     }
                 }
             }
@@ -967,6 +1076,16 @@ public class IndexTestsTable
         return colPos;
     } // match
 
+    /**
+     * **********************************************************************************
+     * Determine whether the primary index holds every tuple of this table, so it may
+     * answer for the table. A table made from a list of tuples (the result of an
+     * operator) starts with an empty index, so it must be scanned instead.
+     */
+    private boolean indexed() {
+        return index != null && index.size() == tuples.size();
+    } // indexed
+
     /**
      * **********************************************************************************
      * Extract the attributes specified by the column array from tuple t.
@@ -1119,7 +1238,7 @@ public class IndexTestsTable
 
         if (new_index == null) {
             this.drop_index(index_key);
-            new_index = new IndexVersionTwo(makeMap(), this, _is_Unique, index_key);
+            new_index = new IndexVersionTwo(_is_Unique ? makeMap(index_key) : null, this, _is_Unique, index_key); // non-unique => posting lists
             this.alternate_indexes.add(new_index);
         }
 
@@ -1152,6 +1271,88 @@ public class IndexTestsTable
         return tuples.size();
     }
 
+    /**
+     * Return the metrics of the primary index, or null when it is not a BpTreeMap.
+     */
+    public BpTreeMap.Metrics indexMetrics() {
+        return (index instanceof BpTreeMap<KeyType, Comparable[]> bpTree) ? bpTree.metrics() : null;
+    }
+
+    /**
+     * Turn counting lookups on the primary index on or off (BpTreeMap only).
+     */
+    public void trackIndex(boolean on) {
+        if (index instanceof BpTreeMap<KeyType, Comparable[]> bpTree) {
+            bpTree.setTracking(on);
+        }
+    }
+
+    /**
+     * **********************************************************************************
+     * Put a Bloom filter with false positive rate fpp in front of the primary index,
+     * so that most select (KeyType) and i_join probes of absent key values return
+     * without touching the index. The filter is sized for twice the tuples now in
+     * the table (at least 1024), and is rebuilt twice as large when insert takes it
+     * past that. Deleted keys stay in the filter (they only cost false positives).
+     * <p>
+     * #usage movieExec.enableBloomFilter (0.01)
+     *
+     * @param fpp the false positive rate wanted, in (0, 1)
+     */
+    public void enableBloomFilter(double fpp) {
+        bloom = new BloomFilter(Math.max(2 * tuples.size(), 1024), fpp);
+        for (var tup : tuples) {
+            bloom.add(new KeyType(extract(tup, key)));
+        }
+    } // enableBloomFilter
+
+    /**
+     * **********************************************************************************
+     * Remove the primary index's Bloom filter (if any); its statistics are kept.
+     */
+    public void disableBloomFilter() {
+        bloom = null;
+    } // disableBloomFilter
+
+    /**
+     * **********************************************************************************
+     * Return the Bloom filter's statistics: probes checked, probes it saved (absent
+     * keys answered without the index) and false positives.
+     */
+    public String bloomStats() {
+        var pct = (bloomProbes == 0) ? 0.0 : 100.0 * bloomSaved / bloomProbes;
+        return String.format("bloom probes %d, saved %d (%.1f%%), false positives %d",
+                bloomProbes, bloomSaved, pct, bloomFalsePositives);
+    } // bloomStats
+
+    /**
+     * **********************************************************************************
+     * Return false when the Bloom filter shows keyVal is absent (counting the saved
+     * probe), true when the primary index must be searched.
+     */
+    private boolean mayContain(KeyType keyVal) {
+        if (bloom == null) {
+            return true;
+        }
+        bloomProbes++;
+        if (!bloom.mightContain(keyVal)) {
+            bloomSaved++;
+            return false;
+        }
+        return true;
+    } // mayContain
+
+    /**
+     * **********************************************************************************
+     * Count a false positive when a probe the Bloom filter passed found nothing.
+     */
+    private <T> T checkMiss(T found) {
+        if (found == null && bloom != null) {
+            bloomFalsePositives++;
+        }
+        return found;
+    } // checkMiss
+
     // public void testTable() {
     //     this.create_index(new String[]{"year", "length"}, true);
     //     Index n = this.find_index(new String[]{"year", "length"}, true);
@@ -1,5 +1,8 @@
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -14,7 +17,14 @@ import java.util.Map;
  */
 public class IndexVersionTwo {
 
-    private final Map<KeyType, Comparable[]> map;  // The map object
+    private static final double BULK_LOAD_FILL = 1.0;  // fill factor for B+Tree nodes built by bulk loading
+
+    private final Map<KeyType, Comparable[]> map;  // The map object (unique index)
+    private final Map<KeyType, PostingList> postings;  // Row ids per key value (non-unique index)
+    private BloomFilter bloom;  // Optional filter answering lookups of absent keys
+    private long bloomProbes;  // Lookups checked against the filter
+    private long bloomSaved;  // Lookups the filter answered (key absent)
+    private long bloomFalsePositives;  // Lookups the filter passed that found nothing
     private final boolean isUnique;  // The boolean flag
     private final String[] index_key;  // The string array
     private final int[] key_columns;
@@ -35,7 +45,7 @@ public class IndexVersionTwo {
      * PopulateMap() is called in case the table already has tuples that must be
      * indexed.
      *
-     * @param new_map the empty map passed in
+     * @param new_map the empty map passed in (null for a non-unique index, which keeps posting lists)
      * @param table the table the index is being made for
      * @param isUnique the boolean for if the index is unique
      * @param index_key the attributes of the key for the index
@@ -57,17 +67,52 @@ public class IndexVersionTwo {
         this.index_key = index_key;
         this.table = table;
         this.map = new_map;
+        this.postings = isUnique ? null : new HashMap<>();
         populateMap();
     }
 
     /**
      * **********************************************************************************
-     * Inserts tuple into index, checking if the key value is repeated if the
-     * index is unique.
+     * Inserts tuple into index, checking if the key value is repeated if the index is
+     * unique. A non-unique index adds the tuple's row id to its key value's posting
+     * list instead.
      *
      * @param tuple the tuple to insert
+     * @param row the row id (position in the table's tuples) of the tuple
+     */
+    public void insertTuple(Comparable[] tuple, int row) {
+        var key = this.extractKey(tuple);
+        if (this.bloom != null) {
+            if (this.bloom.isOverCapacity()) {
+                this.enableBloomFilter(this.bloom.getFpp());  // resize, keeping the false positive rate
+            }
+            this.bloom.add(key);
+        }
+        if (this.isUnique) {
+            if (this.map instanceof BeTreeMap<KeyType, Comparable[]> beTree) {
+                beTree.upsert(key, tuple);  // extractKey checked the key is new
+            } else {
+                this.map.put(key, tuple);
+            }
+        } else {
+            var rows = this.postings.get(key);
+            if (rows == null) {
+                this.postings.put(key, new PostingList(row));
+            } else {
+                rows.add(row);
+            }
+        }
+    }
+
+    /**
+     * **********************************************************************************
+     * Extracts the key value of tuple for this index, checking if the key value is
+     * repeated if the index is unique.
+     *
+     * @param tuple the tuple to extract the key from
+     * @return the key value of the tuple
      */
-    public void insertTuple(Comparable[] tuple) {
+    private KeyType extractKey(Comparable[] tuple) {
         Comparable[] key_values = new Comparable[this.key_columns.length];
         for (int i = 0; i < this.key_columns.length; i++) {
             key_values[i] = tuple[this.key_columns[i]];
@@ -83,31 +128,163 @@ public class IndexVersionTwo {
                 this.uniqueKeysSet.add(list);
             }
         }
-        this.map.put(new KeyType(key_values), tuple);
+        return new KeyType(key_values);
     }
 
     /**
      * **********************************************************************************
-     * Inserts existing tuples from table into index.
+     * Inserts existing tuples from table into index. A non-unique index collects
+     * the row ids for each key value. A unique BpTreeMap is bulk loaded instead: the
+     * key values are extracted (checking uniqueness), sorted, and the B+Tree is
+     * built bottom-up in one pass.
      */
     private void populateMap() {
         if (!this.table.getTuples().isEmpty()) {
-            if (this.map != null && !this.map.isEmpty()) {
+            if (this.isUnique && this.map != null && !this.map.isEmpty()) {
                 this.map.clear();
             }
             var allRows = this.table.getTuples();
-            for (Comparable[] row : allRows) {
-                this.insertTuple(row);
+            if (!this.isUnique) {
+                this.postings.clear();
+                for (var row = 0; row < allRows.size(); row++) {
+                    this.insertTuple(allRows.get(row), row);
+                }
+            } else if (this.map instanceof BpTreeMap<KeyType, Comparable[]> bpTree) {
+                var entries = new ArrayList<Map.Entry<KeyType, Comparable[]>>(allRows.size());
+                for (Comparable[] row : allRows) {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(this.extractKey(row), row));
+                }
+                entries.sort(Map.Entry.comparingByKey());
+                bpTree.bulkLoad(entries.iterator(), BULK_LOAD_FILL);
+            } else {
+                for (var row = 0; row < allRows.size(); row++) {
+                    this.insertTuple(allRows.get(row), row);
+                }
             }
         }
     }
 
+    /**
+     * **********************************************************************************
+     * Puts a Bloom filter with false positive rate fpp in front of the lookups, so
+     * that most lookups of absent key values return without touching the map. The
+     * filter is sized for twice the keys now in the index (at least 1024), and is
+     * rebuilt twice as large when insertTuple takes it past that.
+     * <p>
+     * #usage movieExec.create_index (new String [] {"producerNo"}, false).enableBloomFilter (0.01)
+     *
+     * @param fpp the false positive rate wanted, in (0, 1)
+     */
+    public void enableBloomFilter(double fpp) {
+        var keys = this.isUnique ? this.map.keySet() : this.postings.keySet();
+        this.bloom = new BloomFilter(Math.max(2 * keys.size(), 1024), fpp);
+        for (var key : keys) {
+            this.bloom.add(key);
+        }
+    }
+
+    /**
+     * **********************************************************************************
+     * Removes the Bloom filter (if any); its statistics are kept.
+     */
+    public void disableBloomFilter() {
+        this.bloom = null;
+    }
+
+    /**
+     * **********************************************************************************
+     * Returns the Bloom filter's statistics: lookups checked, lookups it saved
+     * (absent keys answered without the map) and false positives.
+     */
+    public String bloomStats() {
+        var pct = (this.bloomProbes == 0) ? 0.0 : 100.0 * this.bloomSaved / this.bloomProbes;
+        return String.format("bloom probes %d, saved %d (%.1f%%), false positives %d",
+                this.bloomProbes, this.bloomSaved, pct, this.bloomFalsePositives);
+    }
+
+    /**
+     * **********************************************************************************
+     * Returns false when the Bloom filter shows key_value is absent (counting the
+     * saved lookup), true when the map must be searched.
+     */
+    private boolean mayContain(KeyType key_value) {
+        if (this.bloom == null) {
+            return true;
+        }
+        this.bloomProbes++;
+        if (!this.bloom.mightContain(key_value)) {
+            this.bloomSaved++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * **********************************************************************************
+     * Counts a false positive when a lookup the Bloom filter passed found nothing.
+     */
+    private <T> T checkMiss(T found) {
+        if (found == null && this.bloom != null) {
+            this.bloomFalsePositives++;
+        }
+        return found;
+    }
+
     //Getter Methods -----------------------------------------------------------------------------------------
+    /**
+     * **********************************************************************************
+     * Returns the tuple with the given key value (the first one, by row id, for a
+     * non-unique index), or null if there is none.
+     */
     public Comparable[] index_lookup(KeyType key_value) {
-        return this.map.get(key_value);
+        if (!this.mayContain(key_value)) {
+            return null;
+        }
+        if (this.isUnique) {
+            return this.checkMiss(this.map.get(key_value));
+        }
+        var rows = this.checkMiss(this.postings.get(key_value));
+        return (rows == null) ? null : this.table.getTuples().get(rows.get(0));
     }
 
-    public Map<KeyType, Comparable[]> getMap() {
+    /**
+     * **********************************************************************************
+     * Returns every tuple with the given key value, in row id order (an empty list
+     * if there is none).
+     */
+    public List<Comparable[]> index_lookup_all(KeyType key_value) {
+        if (!this.mayContain(key_value)) {
+            return List.of();
+        }
+        if (this.isUnique) {
+            var tuple = this.checkMiss(this.map.get(key_value));
+            return (tuple == null) ? List.of() : List.<Comparable[]>of(tuple);
+        }
+        var rows = this.checkMiss(this.postings.get(key_value));
+        if (rows == null) {
+            return List.of();
+        }
+        var allRows = this.table.getTuples();
+        var matches = new ArrayList<Comparable[]>(rows.size());
+        for (var i = 0; i < rows.size(); i++) {
+            matches.add(allRows.get(rows.get(i)));
+        }
+        return matches;
+    }
+
+    /**
+     * **********************************************************************************
+     * Returns the posting list (row ids) of the given key value for a non-unique
+     * index, or null if there is none.
+     */
+    public PostingList index_lookup_rows(KeyType key_value) {
+        if (this.isUnique || !this.mayContain(key_value)) {
+            return null;
+        }
+        return this.checkMiss(this.postings.get(key_value));
+    }
+
+    public Map<KeyType, Comparable[]> getMap() {  // a unique index's map (a non-unique index keeps postings)
         return map;
     }
 
@@ -142,11 +319,13 @@ public class IndexVersionTwo {
         }
 
         var allRows = tab.getTuples();
-        int rowCount = allRows.size();
-        var bpTree = new BpTreeMap<Integer, Comparable[]>(Integer.class, Comparable[].class);
-        for (var i = 0; i < rowCount; i++) {
-            bpTree.put((Integer) (allRows.get(i))[colIndex], allRows.get(i));
+        var entries = new ArrayList<Map.Entry<Integer, Comparable[]>>(allRows.size());
+        for (Comparable[] row : allRows) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>((Integer) row[colIndex], row));
         }
+        entries.sort(Map.Entry.comparingByKey());
+        var bpTree = new BpTreeMap<Integer, Comparable[]>(Integer.class, Comparable[].class);
+        bpTree.bulkLoad(entries.iterator(), BULK_LOAD_FILL);
 
         return bpTree;
     }
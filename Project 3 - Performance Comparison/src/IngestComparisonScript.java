@@ -0,0 +1,159 @@
+import java.util.*;
+import static java.lang.System.nanoTime;
+import static java.lang.System.out;
+
+/**
+ * The IngestComparisonScript class compares bulk ingest (many inserts, no
+ * lookups in between) into the TREE_MAP, BPTREE_MAP and BETREE_MAP indexes,
+ * each as makeMap creates it. Keys are movieExec style producerNo values, in
+ * random order, wrapped in KeyType. BeTreeMap is given its blind upsert, as
+ * Table.insert uses it; the others put.
+ *
+ * Two cases are timed: inserting straight into the map, and inserting
+ * tuples through IndexTestsTable.insert (type check, primary key check and
+ * index). After each map ingest, lookups of every key are timed too, since a
+ * BeTreeMap lookup also checks the buffers on its path. The first of six
+ * iterations is skipped (JIT warm up).
+ *
+ * The maximum number of keys may be given as args[0] (e.g., 100000) for
+ * machines with a small heap.
+ */
+class IngestComparisonScript {
+
+    /**
+     * The index sizes (number of keys) to compare.
+     */
+    private static final int[] SIZES = {100_000, 1_000_000};
+
+    /**
+     * Number of tuples inserted through IndexTestsTable.insert.
+     */
+    private static final int TABLE_TUPLES = 100_000;
+
+    /**
+     * Consumes lookup results so the JIT cannot drop the lookups.
+     */
+    private static long sink = 0;
+
+    /**
+     * Make an empty map of the given type, as makeMap does.
+     */
+    static Map<KeyType, Comparable[]> make_map(IndexTestsTable.MapType mType) {
+        return switch (mType) {
+            case TREE_MAP ->
+                new TreeMap<>();
+            case BPTREE_MAP ->
+                new BpTreeMap<>(KeyType.class, Comparable[].class);
+            case BETREE_MAP ->
+                new BeTreeMap<>();
+            default ->
+                throw new IllegalArgumentException("error: no ingest case for " + mType);
+        }; // switch
+    }
+
+    /**
+     * Time ingesting the keys into a fresh map of the given type and then
+     * looking every key up, printing the nano-seconds per insert and per
+     * lookup averaged over five measured iterations.
+     *
+     * @param mType the type of map
+     * @param keys the keys, in insertion order
+     * @param tuples the tuple for each key
+     */
+    static void time_map(IndexTestsTable.MapType mType, KeyType[] keys, Comparable[][] tuples) {
+        var insertNs = 0L;
+        var lookupNs = 0L;
+        for (var it = 0; it < 6; it++) {
+            var map = make_map(mType);
+            var t0 = nanoTime();
+            if (map instanceof BeTreeMap<KeyType, Comparable[]> beTree) {
+                for (var i = 0; i < keys.length; i++) {
+                    beTree.upsert(keys[i], tuples[i]);
+                }
+            } else {
+                for (var i = 0; i < keys.length; i++) {
+                    map.put(keys[i], tuples[i]);
+                }
+            } // if
+            var t1 = nanoTime();
+            for (var k : keys) {
+                sink += map.get(k).length;
+            }
+            var t2 = nanoTime();
+            if (it > 0) {
+                insertNs += t1 - t0;
+                lookupNs += t2 - t1;
+            }
+        } // for
+        out.printf("%-11s %8d keys %8d ns/insert %8d ns/get%n", mType, keys.length,
+                insertNs / (5L * keys.length), lookupNs / (5L * keys.length));
+    }
+
+    /**
+     * Time inserting the tuples through IndexTestsTable.insert into a fresh
+     * movieExec table indexed by the given type of map, printing the
+     * nano-seconds per insert averaged over five measured iterations.
+     *
+     * @param mType the type of map
+     * @param tuples the movieExec tuples, in insertion order
+     */
+    static void time_table(IndexTestsTable.MapType mType, Comparable[][] tuples) {
+        var ns = 0L;
+        for (var it = 0; it < 6; it++) {
+            var movieExec = new IndexTestsTable("movieExec", "certNo name address fee",
+                    "Integer String String Float", "certNo", mType);
+            var t0 = nanoTime();
+            for (var t : tuples) {
+                movieExec.insert(t);
+            }
+            var et = nanoTime() - t0;
+            if (it > 0) {
+                ns += et;
+            }
+        } // for
+        out.printf("%-11s %8d tuples %8d ns/insert (table)%n", mType, tuples.length, ns / (5L * tuples.length));
+    }
+
+    public static void main(String[] args) {
+        var maxKeys = (args.length == 1) ? Integer.parseInt(args[0]) : SIZES[SIZES.length - 1];
+        var types = new IndexTestsTable.MapType[]{
+            IndexTestsTable.MapType.TREE_MAP, IndexTestsTable.MapType.BPTREE_MAP, IndexTestsTable.MapType.BETREE_MAP};
+        var rng = new Random(42);
+
+        for (var n : SIZES) {
+            if (n > maxKeys) {
+                break;
+            }
+            var keys = new KeyType[n];                                // distinct producerNo values in random order
+            var tuples = new Comparable[n][];
+            var order = new int[n];
+            for (var i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            for (var i = n - 1; i > 0; i--) {
+                var j = rng.nextInt(i + 1);
+                var tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            } // for
+            for (var i = 0; i < n; i++) {
+                var k = 2 * order[i];
+                keys[i] = new KeyType(k);
+                tuples[i] = new Comparable[]{k, "name" + k, "address" + k, (float) (k % 1000)};
+            } // for
+
+            out.println(n + " keys, Ingest Test cases");
+            for (var mType : types) {
+                time_map(mType, keys, tuples);
+            }
+
+            if (n == SIZES[0]) {
+                var tableTuples = Arrays.copyOf(tuples, Math.min(n, TABLE_TUPLES));
+                for (var mType : types) {
+                    time_table(mType, tableTuples);
+                }
+            } // if
+        } // for
+        out.println("(sink " + sink + ")");
+    }
+}
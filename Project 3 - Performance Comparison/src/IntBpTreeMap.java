@@ -0,0 +1,607 @@
+
+/** **********************************************************************************
+ * @file IntBpTreeMap.java
+ *
+ * compile javac --enable-preview --release 22 IntBpTreeMap.java
+ * run     java --enable-preview IntBpTreeMap
+ *
+ * B+Tree specialized for keys that are a single integer attribute (Integer, Short
+ * or Byte). Same structure and rules as BpTreeMap (SMALLEST RIGHT divider keys,
+ * larger half stays in n on a split, borrow or merge on underflow), but each node
+ * stores its keys in an int [] so a search compares primitives, and no KeyType,
+ * key array or boxed key is kept per entry.
+ */
+
+import java.util.*;
+
+import static java.lang.System.nanoTime;
+import static java.lang.System.out;
+
+/**
+ * **********************************************************************************
+ * The `IntBpTreeMap` class provides B+Tree maps for single integer attribute
+ * keys. It is a Map from KeyType (so it can serve as a Table index) with
+ * primitive get (int), put (int, V) and remove (int) methods alongside; KeyType
+ * arguments are unwrapped to an int on entry, and keys are boxed back to the
+ * attribute's domain (Integer, Short or Byte) only when entries are iterated.
+ */
+public class IntBpTreeMap<V>
+        extends AbstractMap<KeyType, V>
+{
+
+    private static final int ORDER = 5;                               // default maximum number of children for a node
+
+    private final int order;                                          // maximum number of children for a node
+    private final int half;                                           // half of max keys (floor)
+    private final int halfp;                                          // rest of the keys (half plus)
+    private final Class<?> domain;                                    // key domain: Integer, Short or Byte
+    private boolean vectorSearch = VectorSearch.AVAILABLE;            // whether wide nodes use the Vector API
+
+//-----------------------------------------------------------------------------------
+// Node inner class
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * The `Node` inner class defines nodes that are stored in the B+tree map.
+     * Leaf: ref[0] -> next leaf node; ref[i + 1] -> value for key[i].
+     * Internal: ref[i] -> subtree with keys < key[i] (and >= key[i - 1]).
+     */
+    private class Node {
+
+        boolean isLeaf;                                               // whether the node is a leaf
+        int keys;                                                     // number of active keys
+        final int[] key;                                              // array of keys (primitive)
+        final Object[] ref;                                           // array of references/values
+
+        Node(int keys_, boolean isLeaf_) {
+            isLeaf = isLeaf_;
+            keys = keys_;
+            key = new int[order];
+            ref = new Object[order + 1];
+        } // constructor
+
+        /**
+         * **************************************************************************
+         * Return whether this node has overflowed (too many keys).
+         */
+        boolean overflow() {
+            return keys >= order;
+        }
+
+        /**
+         * **************************************************************************
+         * Find and return the first position where 'k < key_i' in this node:
+         * with the Vector API on wide nodes (see VectorSearch), else by binary
+         * search.
+         */
+        int find(int k) {
+            if (vectorSearch && keys >= VectorSearch.MIN_KEYS) {
+                return VectorSearch.find(key, keys, k);
+            }
+            var lo = 0;
+            var hi = keys;
+            while (lo < hi) {
+                var mid = (lo + hi) >>> 1;
+                if (k < key[mid]) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            } // while
+            return lo;
+        } // find
+
+        /**
+         * **************************************************************************
+         * Find and return the position where 'k == key_i' in this node, or -1.
+         */
+        int findEq(int k) {
+            var i = find(k) - 1;
+            return (i >= 0 && key[i] == k) ? i : -1;
+        } // findEq
+
+        /**
+         * **************************************************************************
+         * Add the new key k and value v (or right sub-tree) at its position.
+         */
+        void add(int k, Object v) {
+            var ip = find(k);
+            for (var i = keys; i > ip; i--) {                          // make room by shifting keys right
+                key[i] = key[i - 1];
+                ref[i + 1] = ref[i];
+            } // for
+            key[ip] = k;
+            ref[ip + 1] = v;
+            keys += 1;
+        } // add
+
+        /**
+         * **************************************************************************
+         * Remove the key at position i and the reference to its right.
+         */
+        void remove(int i) {
+            for (var j = i; j < keys - 1; j++) {                        // close the gap by shifting keys left
+                key[j] = key[j + 1];
+                ref[j + 1] = ref[j + 2];
+            } // for
+            keys -= 1;
+            ref[keys + 1] = null;
+        } // remove
+
+        /**
+         * **************************************************************************
+         * Split this LEAF node, moving the largest half to a new right sibling,
+         * whose key[0] is the divider key.
+         */
+        Node split() {
+            var rt = new Node(half, true);
+            System.arraycopy(key, halfp, rt.key, 0, half);
+            System.arraycopy(ref, halfp + 1, rt.ref, 1, half);
+            Arrays.fill(ref, halfp + 1, order + 1, null);
+            rt.ref[0] = ref[0];                                       // update LINKED LIST of nodes
+            ref[0] = rt;
+            keys = halfp;
+            return rt;
+        } // split
+
+        /**
+         * **************************************************************************
+         * Split this INTERNAL node, moving the largest half to a new right
+         * sibling; the middle key key[halfp - 1] is left for the parent.
+         */
+        Node splitI() {
+            var rt = new Node(half, false);
+            System.arraycopy(key, halfp, rt.key, 0, half);
+            System.arraycopy(ref, halfp, rt.ref, 0, half + 1);
+            Arrays.fill(ref, halfp, order + 1, null);
+            keys = halfp - 1;
+            return rt;
+        } // splitI
+
+    } // Node
+
+//-----------------------------------------------------------------------------------
+// Fields and constructors
+//-----------------------------------------------------------------------------------
+    private Node root;                                                // root of the B+Tree
+    private Node firstLeaf;                                           // first (leftmost) leaf in the B+Tree
+    private int kCount = 0;                                           // total number of keys
+    private int upKey;                                                // divider key passed up by the last split
+
+    /**
+     * ******************************************************************************
+     * Construct an empty B+Tree map for Integer keys using the default order.
+     */
+    public IntBpTreeMap() {
+        this(Integer.class, ORDER);
+    } // constructor
+
+    /**
+     * ******************************************************************************
+     * Construct an empty B+Tree map whose keys come from an attribute with the
+     * given integer domain, with nodes of at most _order children.
+     *
+     * @param _domain the key attribute's domain (Integer, Short or Byte)
+     * @param _order the maximum number of children for a node (at least 3)
+     */
+    public IntBpTreeMap(Class<?> _domain, int _order) {
+        if (_domain != Integer.class && _domain != Short.class && _domain != Byte.class) {
+            throw new IllegalArgumentException(
+                    "error: IntBpTreeMap needs an Integer, Short or Byte key, not " + _domain
+            );
+        }
+        if (_order < 3) {
+            throw new IllegalArgumentException(
+                    "error: IntBpTreeMap order must be at least 3, was " + _order
+            );
+        }
+        domain = _domain;
+        order = _order;
+        half = (order - 1) / 2;
+        halfp = order - half;
+        root = new Node(0, true);
+        firstLeaf = root;
+    } // constructor
+
+    /**
+     * ******************************************************************************
+     * Turn the Vector API node search on or off (it stays off when the
+     * jdk.incubator.vector module is missing).
+     *
+     * @param on whether to search wide nodes with the Vector API
+     */
+    public void setVectorSearch(boolean on) {
+        vectorSearch = on && VectorSearch.AVAILABLE;
+    } // setVectorSearch
+
+    /**
+     * ******************************************************************************
+     * Return the size (number of keys) in the B+Tree.
+     */
+    public int size() {
+        return kCount;
+    }
+
+    /**
+     * ******************************************************************************
+     * Unwrap a single attribute KeyType (or a bare Integer/Short/Byte) to an int.
+     */
+    private static int intKey(Object key) {
+        var k = (key instanceof KeyType kt) ? kt.get(0) : key;
+        return ((Number) k).intValue();
+    } // intKey
+
+    /**
+     * ******************************************************************************
+     * Box int key k back into a KeyType of the key's domain.
+     */
+    private KeyType boxKey(int k) {
+        Comparable c;                                                 // if-else, as ?: would promote all to int
+        if (domain == Short.class) {
+            c = (short) k;
+        } else if (domain == Byte.class) {
+            c = (byte) k;
+        } else {
+            c = k;
+        } // if
+        return new KeyType(new Comparable[]{c});
+    } // boxKey
+
+//-----------------------------------------------------------------------------------
+// Retrieve values
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Given the key, look up the value in the B+Tree map. Iterative descent
+     * comparing ints only.
+     *
+     * @param key the key used for look up
+     * @return the value associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        var n = root;
+        while (!n.isLeaf) {
+            n = (Node) n.ref[n.find(key)];
+        }
+        var i = n.findEq(key);
+        return (i >= 0) ? (V) n.ref[i + 1] : null;
+    } // get
+
+    public V get(Object key) {
+        return get(intKey(key));
+    }
+
+    public boolean containsKey(Object key) {
+        var k = intKey(key);
+        var n = root;
+        while (!n.isLeaf) {
+            n = (Node) n.ref[n.find(k)];
+        }
+        return n.findEq(k) >= 0;
+    } // containsKey
+
+    /**
+     * ******************************************************************************
+     * Return a set view of the entries in key order; iteration walks the
+     * linked leaves and boxes each key as it is returned.
+     *
+     * @return the set view of the map
+     */
+    public Set<Map.Entry<KeyType, V>> entrySet() {
+        return new AbstractSet<Map.Entry<KeyType, V>>() {
+            public Iterator<Map.Entry<KeyType, V>> iterator() {
+                return new Iterator<Map.Entry<KeyType, V>>() {
+                    private Node n = firstLeaf;                       // leaf holding the next entry
+                    private int i = 0;                                // position of the next entry in n
+
+                    public boolean hasNext() {
+                        while (n != null && i >= n.keys) {
+                            n = (Node) n.ref[0];
+                            i = 0;
+                        } // while
+                        return n != null;
+                    } // hasNext
+
+                    @SuppressWarnings("unchecked")
+                    public Map.Entry<KeyType, V> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        var en = new AbstractMap.SimpleImmutableEntry<KeyType, V>(boxKey(n.key[i]), (V) n.ref[i + 1]);
+                        i += 1;
+                        return en;
+                    } // next
+                };
+            } // iterator
+
+            public int size() {
+                return kCount;
+            }
+        };
+    } // entrySet
+
+//-----------------------------------------------------------------------------------
+// Put key-value pairs into the B+Tree
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Put the key-value pair in the B+Tree map, replacing the value of an
+     * existing key.
+     *
+     * @param key the key to insert
+     * @param value the value to insert
+     * @return the previous value for this key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        var n = root;                                                 // replace in place if present
+        while (!n.isLeaf) {
+            n = (Node) n.ref[n.find(key)];
+        }
+        var i = n.findEq(key);
+        if (i >= 0) {
+            var old = (V) n.ref[i + 1];
+            n.ref[i + 1] = value;
+            return old;
+        } // if
+
+        kCount += 1;
+        var rt = insert(key, value, root);
+        if (rt != null) {                                             // root split => grow a new root
+            var nr = new Node(1, false);
+            nr.key[0] = upKey;
+            nr.ref[0] = root;
+            nr.ref[1] = rt;
+            root = nr;
+        } // if
+        return null;
+    } // put
+
+    public V put(KeyType key, V value) {
+        return put(intKey(key), value);
+    }
+
+    /**
+     * ******************************************************************************
+     * Recursive helper for inserting key into the sub-tree rooted at n. Return
+     * the new right sibling of n if n split (the divider key is left in upKey),
+     * else null.
+     */
+    private Node insert(int key, Object ref, Node n) {
+        if (n.isLeaf) {
+            n.add(key, ref);
+            if (!n.overflow()) {
+                return null;
+            }
+            var rt = n.split();
+            upKey = rt.key[0];                                        // smallest right
+            return rt;
+        } // if
+
+        var rt = insert(key, ref, (Node) n.ref[n.find(key)]);
+        if (rt == null) {
+            return null;
+        }
+        n.add(upKey, rt);
+        if (!n.overflow()) {
+            return null;
+        }
+        var nrt = n.splitI();
+        upKey = n.key[halfp - 1];                                     // middle key goes up
+        return nrt;
+    } // insert
+
+//-----------------------------------------------------------------------------------
+// Remove key-value pairs from the B+Tree
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Remove the key (and its value) from the B+Tree map, borrowing from or
+     * merging with a sibling on underflow as BpTreeMap.remove does.
+     *
+     * @param key the key to remove
+     * @return the value removed, or null if the key was not found
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        var found = new Object[1];
+        if (!delete(key, root, found)) {
+            return null;
+        }
+        kCount -= 1;
+        if (!root.isLeaf && root.keys == 0) {                         // root collapse
+            root = (Node) root.ref[0];
+        }
+        return (V) found[0];
+    } // remove
+
+    public V remove(Object key) {
+        return remove(intKey(key));
+    }
+
+    /**
+     * ******************************************************************************
+     * Remove all the keys from the B+Tree map.
+     */
+    public void clear() {
+        root = new Node(0, true);
+        firstLeaf = root;
+        kCount = 0;
+    } // clear
+
+    /**
+     * ******************************************************************************
+     * Recursive helper for removing key from the sub-tree rooted at n, putting
+     * the removed value in found[0]. Return whether the key was found.
+     */
+    private boolean delete(int key, Node n, Object[] found) {
+        if (n.isLeaf) {
+            var i = n.findEq(key);
+            if (i < 0) {
+                return false;
+            }
+            found[0] = n.ref[i + 1];
+            n.remove(i);
+            return true;
+        } // if
+
+        var j = n.find(key);
+        var c = (Node) n.ref[j];
+        if (!delete(key, c, found)) {
+            return false;
+        }
+        if (c.keys < half) {
+            rebalance(n, j);
+        }
+        return true;
+    } // delete
+
+    /**
+     * ******************************************************************************
+     * Repair the underflowed j-th child of n: borrow from the left, else the
+     * right, sibling if it has more than half, else merge into the left node.
+     */
+    private void rebalance(Node n, int j) {
+        var c = (Node) n.ref[j];
+        var lt = (j > 0) ? (Node) n.ref[j - 1] : null;
+        var rt = (j < n.keys) ? (Node) n.ref[j + 1] : null;
+
+        if (lt != null && lt.keys > half) {                           // borrow from left
+            for (var i = c.keys; i > 0; i--) {
+                c.key[i] = c.key[i - 1];
+                c.ref[i + 1] = c.ref[i];
+            } // for
+            if (c.isLeaf) {
+                c.key[0] = lt.key[lt.keys - 1];
+                c.ref[1] = lt.ref[lt.keys];
+                n.key[j - 1] = c.key[0];
+            } else {
+                c.ref[1] = c.ref[0];
+                c.key[0] = n.key[j - 1];
+                c.ref[0] = lt.ref[lt.keys];
+                n.key[j - 1] = lt.key[lt.keys - 1];
+            } // if
+            c.keys += 1;
+            lt.ref[lt.keys] = null;
+            lt.keys -= 1;
+        } else if (rt != null && rt.keys > half) {                    // borrow from right
+            if (c.isLeaf) {
+                c.key[c.keys] = rt.key[0];
+                c.ref[c.keys + 1] = rt.ref[1];
+                c.keys += 1;
+                rt.remove(0);
+                n.key[j] = rt.key[0];
+            } else {
+                c.key[c.keys] = n.key[j];
+                c.ref[c.keys + 1] = rt.ref[0];
+                c.keys += 1;
+                n.key[j] = rt.key[0];
+                rt.ref[0] = rt.ref[1];
+                rt.remove(0);
+            } // if
+        } else if (lt != null) {
+            merge(n, j - 1, lt, c);
+        } else {
+            merge(n, j, c, rt);
+        } // if
+    } // rebalance
+
+    /**
+     * ******************************************************************************
+     * Merge right node rt into left node lt (children of n either side of
+     * divider key n.key[d]) and remove the divider from n.
+     */
+    private void merge(Node n, int d, Node lt, Node rt) {
+        if (lt.isLeaf) {
+            System.arraycopy(rt.key, 0, lt.key, lt.keys, rt.keys);
+            System.arraycopy(rt.ref, 1, lt.ref, lt.keys + 1, rt.keys);
+            lt.keys += rt.keys;
+            lt.ref[0] = rt.ref[0];                                    // unlink rt from the LINKED LIST of leaves
+        } else {
+            lt.key[lt.keys] = n.key[d];
+            System.arraycopy(rt.key, 0, lt.key, lt.keys + 1, rt.keys);
+            System.arraycopy(rt.ref, 0, lt.ref, lt.keys + 1, rt.keys + 1);
+            lt.keys += 1 + rt.keys;
+        } // if
+        n.remove(d);
+    } // merge
+
+//-----------------------------------------------------------------------------------
+// Main method for measuring the savings over BpTreeMap
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Return the heap in use (bytes) after asking for garbage collection.
+     */
+    private static long usedHeap() {
+        var rt = Runtime.getRuntime();
+        for (var i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    } // usedHeap
+
+    /**
+     * ******************************************************************************
+     * The main method compares an IntBpTreeMap with a BpTreeMap <KeyType,
+     * Comparable []> index on the same producerNo keys and tuples: heap used by
+     * the index itself and average time of a select by key lookup.
+     *
+     * @param args the command-line arguments (args[0] gives number of keys)
+     */
+    public static void main(String[] args) {
+        var n = (args.length == 1) ? Integer.parseInt(args[0]) : 1_000_000;
+        var order = 64;
+        var rng = new Random(42);
+
+        var tuples = new Comparable[n][];
+        for (var i = 0; i < n; i++) {
+            tuples[i] = new Comparable[]{2 * i, "name" + i, "address" + i, i % 1000};
+        }
+        var probes = new KeyType[100_000];
+        for (var i = 0; i < probes.length; i++) {
+            probes[i] = new KeyType(2 * rng.nextInt(n));
+        }
+
+        var h0 = usedHeap();
+        var bpTree = new BpTreeMap<KeyType, Comparable[]>(KeyType.class, Comparable[].class, order);
+        for (var t : tuples) {
+            bpTree.put(new KeyType(t[0]), t);
+        }
+        var bpBytes = usedHeap() - h0;
+
+        h0 = usedHeap();
+        var intTree = new IntBpTreeMap<Comparable[]>(Integer.class, order);
+        for (var t : tuples) {
+            intTree.put((Integer) t[0], t);
+        }
+        var intBytes = usedHeap() - h0;
+
+        var bpNs = 0L;
+        var intNs = 0L;
+        for (var it = 0; it < 6; it++) {                              // first iteration warms up the JIT
+            var t0 = nanoTime();
+            for (var p : probes) {
+                bpTree.get(p);
+            }
+            var t1 = nanoTime();
+            for (var p : probes) {
+                intTree.get(p);
+            }
+            var t2 = nanoTime();
+            if (it > 0) {
+                bpNs += t1 - t0;
+                intNs += t2 - t1;
+            }
+        } // for
+
+        out.println(n + " keys, order " + order);
+        out.println("BpTreeMap <KeyType, Comparable []>: " + bpBytes / n + " bytes/key, "
+                + bpNs / (5L * probes.length) + " ns/lookup");
+        out.println("IntBpTreeMap <Comparable []>:      " + intBytes / n + " bytes/key, "
+                + intNs / (5L * probes.length) + " ns/lookup");
+        out.println(bpTree.size() + " " + intTree.size());
+    } // main
+
+} // IntBpTreeMap
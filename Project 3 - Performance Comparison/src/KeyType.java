@@ -42,6 +42,25 @@ public class KeyType
          for (var i = 1; i < key.length; i++) key [i] = keys [i-1];
     } // constructor
 
+    /*************************************************************************************
+     * Return the i-th attribute value of this key.
+     * @param i  the attribute position
+     * @return  the attribute value
+     */
+    public Comparable get (int i)
+    {
+        return key [i];
+    } // get
+
+    /*************************************************************************************
+     * Return the number of attributes in this key (1 for a non-composite key).
+     * @return  the number of attributes
+     */
+    public int length ()
+    {
+        return key.length;
+    } // length
+
     /*************************************************************************************
      * Compare two keys (negative => less than, zero => equals, positive => greater than).
      * @param k  the other key (to compare with this)
@@ -0,0 +1,155 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import static java.lang.System.nanoTime;
+import static java.lang.System.out;
+
+/**
+ * The OffHeapComparisonScript class compares the garbage collection cost of
+ * keeping a large table's tuples on the heap (a List of Comparable [], as Table
+ * keeps them) with keeping them in an OffHeapRowStore (fixed-size records in
+ * memory segments outside the heap), under sustained inserts of movie tuples.
+ *
+ * For each store, the tuples are inserted one by one (each generated just
+ * before, so the heap store retains them and the off-heap store only copies
+ * them), and every stop-the-world collection in the meantime is recorded from
+ * the collectors' notifications: the number of pauses, their total and the
+ * longest. The heap retained afterwards (after a full GC) and a scan summing
+ * the year attribute are reported too.
+ *
+ * The maximum number of tuples may be given as args[0] (e.g., 1000000); the
+ * 10M case needs a heap of about 4 GB for the heap store (-Xmx4g).
+ */
+class OffHeapComparisonScript {
+
+    /**
+     * The numbers of tuples to insert.
+     */
+    private static final int[] SIZES = {1_000_000, 5_000_000, 10_000_000};
+
+    /**
+     * The movie domains: title year length genre studioName producerNo.
+     */
+    private static final Class[] MOVIE = {String.class, Integer.class, Integer.class, String.class, String.class, Integer.class};
+
+    /**
+     * Records the stop-the-world pauses reported by the collectors.
+     */
+    static final class Pauses implements NotificationListener {
+
+        long count = 0;
+        long total = 0;                                               // milli-seconds
+        long max = 0;
+
+        public synchronized void handleNotification(Notification n, Object handback) {
+            if (!n.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+            var info = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+            if (info.getGcName().contains("Concurrent")) {               // concurrent cycles do not stop the world
+                return;
+            }
+            var ms = info.getGcInfo().getDuration();
+            count += 1;
+            total += ms;
+            max = Math.max(max, ms);
+        } // handleNotification
+
+        synchronized void reset() {
+            count = 0;
+            total = 0;
+            max = 0;
+        } // reset
+    } // Pauses
+
+    /**
+     * Return the heap in use after garbage collection.
+     */
+    static long used() {
+        var rt = Runtime.getRuntime();
+        for (var i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * Generate the i-th movie tuple, drawing from rng.
+     */
+    static Comparable[] movie(int i, Random rng) {
+        return new Comparable[]{"title" + i, 1900 + rng.nextInt(125), 60 + rng.nextInt(120),
+            "genre" + rng.nextInt(12), "studioName" + rng.nextInt(500), rng.nextInt(100_000)};
+    }
+
+    /**
+     * Insert n tuples into the store, printing the time per insert, the pauses
+     * while inserting, the heap retained and the time of a scan of the year
+     * attribute.
+     *
+     * @param label the name of the store
+     * @param store the (empty) store
+     * @param n the number of tuples
+     * @param pauses the pause recorder
+     */
+    static void measure(String label, List<Comparable[]> store, int n, Pauses pauses) throws InterruptedException {
+        var h0 = used();
+        Thread.sleep(200);                                            // let the notifications of used () arrive
+        pauses.reset();
+        var rng = new Random(42);
+        var t0 = nanoTime();
+        for (var i = 0; i < n; i++) {
+            store.add(movie(i, rng));
+        }
+        var t1 = nanoTime();
+        Thread.sleep(200);
+        long count, total, max;
+        synchronized (pauses) {
+            count = pauses.count;
+            total = pauses.total;
+            max = pauses.max;
+        }
+        var heap = Math.max(0, used() - h0);                         // (noise can make it slightly negative)
+
+        var sum = 0L;
+        var t2 = nanoTime();
+        if (store instanceof OffHeapRowStore offHeap) {
+            for (var i = 0; i < n; i++) {
+                sum += offHeap.getInt(i, 1);
+            }
+        } else {
+            for (var t : store) {
+                sum += (Integer) t[1];
+            }
+        } // if
+        var t3 = nanoTime();
+
+        out.printf("%-9s %9d tuples %6d ns/insert %5d pauses %7d ms total %5d ms max %9d KB heap %7d ms scan (%d)%n",
+                label, n, (t1 - t0) / n, count, total, max, heap / 1024, (t3 - t2) / 1_000_000, sum % 1000);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        var maxTuples = (args.length == 1) ? Integer.parseInt(args[0]) : SIZES[SIZES.length - 1];
+        var pauses = new Pauses();
+        for (var gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) gc).addNotificationListener(pauses, null, null);
+        }
+
+        for (var n : SIZES) {
+            if (n > maxTuples) {
+                break;
+            }
+            out.println(n + " tuples, Off-Heap Test cases");
+            var heapStore = new ArrayList<Comparable[]>();
+            measure("HEAP", heapStore, n, pauses);
+            heapStore = null;
+            try (var offHeap = new OffHeapRowStore(MOVIE)) {
+                measure("OFF_HEAP", offHeap, n, pauses);
+                out.printf("%-9s %9d KB off-heap (%d bytes/record)%n", "", offHeap.bytes() / 1024, offHeap.recordBytes());
+            }
+        } // for
+    }
+}
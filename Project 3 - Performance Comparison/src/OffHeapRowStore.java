@@ -0,0 +1,443 @@
+/** **************************************************************************************
+ * @file  OffHeapRowStore.java
+ *
+ * compile  From the directory Project 3 - Performance Comparison run the command $ ./compile.sh
+ * run      java --enable-preview -Xmx4g -cp bin OffHeapComparisonScript
+ *
+ * Record Layout (fixed per schema, derived from the domains)
+ *     Long, Double -> 8 bytes    Integer, Float -> 4 bytes    Short, Character -> 2 bytes
+ *     Byte, Boolean -> 1 byte    String -> 8 bytes (position of its UTF-8 bytes in the text area)
+ *     null bits (one per attribute, after the fields)
+ * Rules: fields are laid out largest first, so each is naturally aligned, and the record
+ *            is padded to a multiple of 8 bytes
+ *        a null value sets its attribute's null bit and leaves its field 0
+ *        records are stored CHUNK_ROWS to a MemorySegment (chunk), allocated from one
+ *            shared Arena as the store grows; row i is record i % CHUNK_ROWS of chunk
+ *            i / CHUNK_ROWS
+ *        a string is stored once in the append-only text area as its length (int) and
+ *            bytes; overwriting a row leaves its old string bytes unused
+ *        nothing is on the Java heap per row: a tuple (Comparable []) is only made when
+ *            get is called, and typed getters read single values without making one
+ */
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * **************************************************************************************
+ * The OffHeapRowStore class is a list of tuples kept outside the Java heap in
+ * memory segments (Foreign Function & Memory API), for tables large enough that
+ * millions of Comparable [] rows (each with boxed values) keep the garbage
+ * collector busy. It is a List of Comparable [], so it can be scanned like a
+ * table's tuples, but tuples read from it are new arrays each time (equal, not
+ * identical, to the ones added). The memory is freed by close.
+ */
+public class OffHeapRowStore
+        extends AbstractList<Comparable[]>
+        implements RandomAccess, AutoCloseable {
+
+    /**
+     * Number of records in a chunk (a power of 2).
+     */
+    private static final int CHUNK_ROWS = 1 << 14;
+
+    /**
+     * Minimum size in bytes of a chunk of the text area.
+     */
+    private static final int TEXT_CHUNK = 1 << 20;
+
+    private static final byte INT = 0, LONG = 1, DOUBLE = 2, FLOAT = 3, SHORT = 4,
+            BYTE = 5, CHAR = 6, BOOL = 7, STRING = 8;                 // kinds of field
+    private static final int[] WIDTH = {4, 8, 8, 4, 2, 1, 2, 1, 8};  // bytes of each kind
+
+    private final Class[] domain;                                     // the domain of each attribute
+    private final byte[] kind;                                        // the kind of each attribute's field
+    private final long[] offset;                                      // the offset of each field in a record
+    private final long nulls;                                         // the offset of the null bits in a record
+    private final int recordBytes;                                    // the size of a record
+
+    private final Arena arena = Arena.ofShared();
+    private final ArrayList<MemorySegment> chunk = new ArrayList<>();
+    private final ArrayList<MemorySegment> text = new ArrayList<>();
+    private long textPos = 0;                                         // next free byte in the last text chunk
+    private int rows = 0;
+
+    /**
+     * **********************************************************************************
+     * Construct an empty store for tuples of the given domains.
+     *
+     * @param _domain the domain (class) of each attribute
+     */
+    public OffHeapRowStore(Class[] _domain) {
+        domain = _domain;
+        kind = new byte[domain.length];
+        offset = new long[domain.length];
+        for (var j = 0; j < domain.length; j++) {
+            kind[j] = switch (domain[j].getSimpleName()) {
+                case "Integer" ->
+                    INT;
+                case "Long" ->
+                    LONG;
+                case "Double" ->
+                    DOUBLE;
+                case "Float" ->
+                    FLOAT;
+                case "Short" ->
+                    SHORT;
+                case "Byte" ->
+                    BYTE;
+                case "Character" ->
+                    CHAR;
+                case "Boolean" ->
+                    BOOL;
+                case "String" ->
+                    STRING;
+                default ->
+                    throw new IllegalArgumentException(
+                            "error: OffHeapRowStore has no field layout for domain " + domain[j].getSimpleName());
+            }; // switch
+        } // for
+        var pos = 0L;
+        for (var w = 8; w >= 1; w /= 2) {                             // largest fields first => aligned
+            for (var j = 0; j < domain.length; j++) {
+                if (WIDTH[kind[j]] == w) {
+                    offset[j] = pos;
+                    pos += w;
+                }
+            } // for
+        } // for
+        nulls = pos;
+        recordBytes = (int) ((pos + (domain.length + 7) / 8 + 7) & ~7L);
+    } // constructor
+
+    //----------------------------------------------------------------------------------
+    // List of tuples
+    //----------------------------------------------------------------------------------
+    /**
+     * **********************************************************************************
+     * Return the number of tuples.
+     */
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * **********************************************************************************
+     * Append tuple t, whose values must be of the store's domains (or null).
+     *
+     * @param t the tuple
+     * @return true
+     */
+    public boolean add(Comparable[] t) {
+        if ((rows & (CHUNK_ROWS - 1)) == 0 && rows / CHUNK_ROWS == chunk.size()) {
+            chunk.add(arena.allocate((long) recordBytes * CHUNK_ROWS, 8));
+        }
+        write(rows, t);
+        rows += 1;
+        modCount += 1;
+        return true;
+    } // add
+
+    /**
+     * **********************************************************************************
+     * Return the tuple at row i, made from its record.
+     *
+     * @param i the row
+     * @return a new tuple holding row i's values
+     */
+    public Comparable[] get(int i) {
+        Objects.checkIndex(i, rows);
+        var seg = chunk.get(i / CHUNK_ROWS);
+        var base = (long) (i & (CHUNK_ROWS - 1)) * recordBytes;
+        var t = new Comparable[kind.length];
+        for (var j = 0; j < kind.length; j++) {
+            if ((seg.get(ValueLayout.JAVA_BYTE, base + nulls + j / 8) & (1 << (j % 8))) != 0) {
+                continue;                                             // null
+            }
+            var at = base + offset[j];
+            t[j] = switch (kind[j]) {
+                case INT ->
+                    seg.get(ValueLayout.JAVA_INT, at);
+                case LONG ->
+                    seg.get(ValueLayout.JAVA_LONG, at);
+                case DOUBLE ->
+                    seg.get(ValueLayout.JAVA_DOUBLE, at);
+                case FLOAT ->
+                    seg.get(ValueLayout.JAVA_FLOAT, at);
+                case SHORT ->
+                    seg.get(ValueLayout.JAVA_SHORT, at);
+                case BYTE ->
+                    seg.get(ValueLayout.JAVA_BYTE, at);
+                case CHAR ->
+                    seg.get(ValueLayout.JAVA_CHAR, at);
+                case BOOL ->
+                    seg.get(ValueLayout.JAVA_BYTE, at) != 0;
+                default ->
+                    readText(seg.get(ValueLayout.JAVA_LONG, at));
+            }; // switch
+        } // for
+        return t;
+    } // get
+
+    /**
+     * **********************************************************************************
+     * Replace the tuple at row i with tuple t.
+     *
+     * @param i the row
+     * @param t the new tuple
+     * @return the tuple replaced
+     */
+    public Comparable[] set(int i, Comparable[] t) {
+        var old = get(i);
+        write(i, t);
+        return old;
+    } // set
+
+    /**
+     * **********************************************************************************
+     * Remove the tuple at row i, moving the later records down one row.
+     *
+     * @param i the row
+     * @return the tuple removed
+     */
+    public Comparable[] remove(int i) {
+        var old = get(i);
+        for (var r = i; r < rows - 1; r++) {
+            copyRecord(r + 1, r);
+        }
+        rows -= 1;
+        modCount += 1;
+        return old;
+    } // remove
+
+    /**
+     * **********************************************************************************
+     * Remove the tuples satisfying the predicate in one pass, moving each kept
+     * record down over the removed ones.
+     *
+     * @param filter the check condition for tuples to remove
+     * @return whether any tuple was removed
+     */
+    public boolean removeIf(Predicate<? super Comparable[]> filter) {
+        var kept = 0;
+        for (var r = 0; r < rows; r++) {
+            if (!filter.test(get(r))) {
+                if (kept != r) {
+                    copyRecord(r, kept);
+                }
+                kept += 1;
+            } // if
+        } // for
+        var removed = kept < rows;
+        rows = kept;
+        modCount += 1;
+        return removed;
+    } // removeIf
+
+    /**
+     * **********************************************************************************
+     * Remove all the tuples. The record chunks and the first text chunk are
+     * reused by later adds; the memory is only freed by close.
+     */
+    public void clear() {
+        rows = 0;
+        textPos = 0;
+        while (text.size() > 1) {
+            text.remove(text.size() - 1);
+        }
+        modCount += 1;
+    } // clear
+
+    //----------------------------------------------------------------------------------
+    // Typed access to single values (no tuple is made)
+    //----------------------------------------------------------------------------------
+    /**
+     * **********************************************************************************
+     * Return whether attribute col of row i is null (the typed getters below read
+     * a null number as 0 and a null String as null).
+     */
+    public boolean isNull(int i, int col) {
+        Objects.checkIndex(i, rows);
+        var base = (long) (i & (CHUNK_ROWS - 1)) * recordBytes;
+        return (chunk.get(i / CHUNK_ROWS).get(ValueLayout.JAVA_BYTE, base + nulls + col / 8) & (1 << (col % 8))) != 0;
+    } // isNull
+
+    /**
+     * **********************************************************************************
+     * Return the Integer attribute col of row i as an int.
+     */
+    public int getInt(int i, int col) {
+        return segment(i, col, INT).get(ValueLayout.JAVA_INT, at(i, col));
+    }
+
+    /**
+     * **********************************************************************************
+     * Return the Long attribute col of row i as a long.
+     */
+    public long getLong(int i, int col) {
+        return segment(i, col, LONG).get(ValueLayout.JAVA_LONG, at(i, col));
+    }
+
+    /**
+     * **********************************************************************************
+     * Return the Double attribute col of row i as a double.
+     */
+    public double getDouble(int i, int col) {
+        return segment(i, col, DOUBLE).get(ValueLayout.JAVA_DOUBLE, at(i, col));
+    }
+
+    /**
+     * **********************************************************************************
+     * Return the String attribute col of row i.
+     */
+    public String getString(int i, int col) {
+        var seg = segment(i, col, STRING);
+        return isNull(i, col) ? null : readText(seg.get(ValueLayout.JAVA_LONG, at(i, col)));
+    }
+
+    /**
+     * **********************************************************************************
+     * Return the bytes of memory reserved outside the heap (records and text).
+     */
+    public long bytes() {
+        var b = (long) chunk.size() * recordBytes * CHUNK_ROWS;
+        for (var seg : text) {
+            b += seg.byteSize();
+        }
+        return b;
+    } // bytes
+
+    /**
+     * **********************************************************************************
+     * Return the size in bytes of one record.
+     */
+    public int recordBytes() {
+        return recordBytes;
+    }
+
+    /**
+     * **********************************************************************************
+     * Free the store's memory; the store must not be used afterwards.
+     */
+    public void close() {
+        chunk.clear();
+        text.clear();
+        rows = 0;
+        arena.close();
+    } // close
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+    /**
+     * **********************************************************************************
+     * Return the chunk holding row i, checking the row and the kind of col.
+     */
+    private MemorySegment segment(int i, int col, byte k) {
+        Objects.checkIndex(i, rows);
+        if (kind[col] != k) {
+            throw new IllegalArgumentException("error: attribute " + col + " is a " + domain[col].getSimpleName());
+        }
+        return chunk.get(i / CHUNK_ROWS);
+    } // segment
+
+    /**
+     * **********************************************************************************
+     * Return the offset of attribute col of row i within its chunk.
+     */
+    private long at(int i, int col) {
+        return (long) (i & (CHUNK_ROWS - 1)) * recordBytes + offset[col];
+    }
+
+    /**
+     * **********************************************************************************
+     * Write tuple t into the record of row i, setting the null bits of its null
+     * values.
+     */
+    private void write(int i, Comparable[] t) {
+        if (t.length != kind.length) {
+            throw new IllegalArgumentException("error: tuple has " + t.length + " values, expected " + kind.length);
+        }
+        var seg = chunk.get(i / CHUNK_ROWS);
+        var base = (long) (i & (CHUNK_ROWS - 1)) * recordBytes;
+        for (var b = nulls; b < recordBytes; b++) {
+            seg.set(ValueLayout.JAVA_BYTE, base + b, (byte) 0);
+        }
+        for (var j = 0; j < kind.length; j++) {
+            var at = base + offset[j];
+            if (t[j] == null) {
+                var bits = base + nulls + j / 8;
+                seg.set(ValueLayout.JAVA_BYTE, bits, (byte) (seg.get(ValueLayout.JAVA_BYTE, bits) | (1 << (j % 8))));
+                seg.asSlice(at, WIDTH[kind[j]]).fill((byte) 0);
+                continue;
+            } // if
+            if (t[j].getClass() != domain[j]) {
+                throw new IllegalArgumentException("error: value " + t[j] + " is not a " + domain[j].getSimpleName());
+            }
+            switch (kind[j]) {
+                case INT ->
+                    seg.set(ValueLayout.JAVA_INT, at, (Integer) t[j]);
+                case LONG ->
+                    seg.set(ValueLayout.JAVA_LONG, at, (Long) t[j]);
+                case DOUBLE ->
+                    seg.set(ValueLayout.JAVA_DOUBLE, at, (Double) t[j]);
+                case FLOAT ->
+                    seg.set(ValueLayout.JAVA_FLOAT, at, (Float) t[j]);
+                case SHORT ->
+                    seg.set(ValueLayout.JAVA_SHORT, at, (Short) t[j]);
+                case BYTE ->
+                    seg.set(ValueLayout.JAVA_BYTE, at, (Byte) t[j]);
+                case CHAR ->
+                    seg.set(ValueLayout.JAVA_CHAR, at, (Character) t[j]);
+                case BOOL ->
+                    seg.set(ValueLayout.JAVA_BYTE, at, (byte) ((Boolean) t[j] ? 1 : 0));
+                default ->
+                    seg.set(ValueLayout.JAVA_LONG, at, writeText((String) t[j]));
+            } // switch
+        } // for
+    } // write
+
+    /**
+     * **********************************************************************************
+     * Copy the record of row from over the record of row to.
+     */
+    private void copyRecord(int from, int to) {
+        MemorySegment.copy(chunk.get(from / CHUNK_ROWS), (long) (from & (CHUNK_ROWS - 1)) * recordBytes,
+                chunk.get(to / CHUNK_ROWS), (long) (to & (CHUNK_ROWS - 1)) * recordBytes, recordBytes);
+    } // copyRecord
+
+    /**
+     * **********************************************************************************
+     * Append string s to the text area, returning its position (text chunk in
+     * the high 32 bits, offset in the low).
+     */
+    private long writeText(String s) {
+        var b = s.getBytes(StandardCharsets.UTF_8);
+        var need = 4L + b.length;
+        if (text.isEmpty() || textPos + need > text.get(text.size() - 1).byteSize()) {
+            text.add(arena.allocate(Math.max(TEXT_CHUNK, need), 8));
+            textPos = 0;
+        } // if
+        var seg = text.get(text.size() - 1);
+        var pos = ((long) (text.size() - 1) << 32) | textPos;
+        seg.set(ValueLayout.JAVA_INT_UNALIGNED, textPos, b.length);
+        MemorySegment.copy(b, 0, seg, ValueLayout.JAVA_BYTE, textPos + 4, b.length);
+        textPos += need;
+        return pos;
+    } // writeText
+
+    /**
+     * **********************************************************************************
+     * Read the string at position pos of the text area.
+     */
+    private String readText(long pos) {
+        var seg = text.get((int) (pos >>> 32));
+        var off = pos & 0xFFFFFFFFL;
+        var b = new byte[seg.get(ValueLayout.JAVA_INT_UNALIGNED, off)];
+        MemorySegment.copy(seg, ValueLayout.JAVA_BYTE, off + 4, b, 0, b.length);
+        return new String(b, StandardCharsets.UTF_8);
+    } // readText
+}
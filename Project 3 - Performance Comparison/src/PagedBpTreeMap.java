@@ -0,0 +1,735 @@
+
+/** **********************************************************************************
+ * @file PagedBpTreeMap.java
+ *
+ * compile javac --enable-preview --release 22 PagedBpTreeMap.java
+ * run     java --enable-preview PagedBpTreeMap
+ *
+ * Disk-resident B+Tree: every node is a fixed-size page of a file, read and
+ * written through a bounded BufferPool, so the index may be larger than the heap
+ * and is reopened (not rebuilt) when its table is loaded.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+import static java.lang.System.nanoTime;
+import static java.lang.System.out;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * **********************************************************************************
+ * The `PagedBpTreeMap` class provides B+Tree maps from KeyType to tuples that are
+ * stored in a file. Page 0 is the header (root page, first leaf, page count, key
+ * count and stamp); every other page is a node:
+ *
+ *   isLeaf (byte) | keys (short) | next leaf or child 0 (int) | entries
+ *
+ * where a leaf entry is a key and a tuple, and an internal entry is a key and the
+ * child to its right. Keys and tuples are encoded attribute by attribute (a type
+ * tag and the value), so nodes are split by bytes, not by a fixed order: a node
+ * splits when its entries no longer fit in a page, at the entry that halves its
+ * bytes. Divider keys are the SMALLEST RIGHT, as in BpTreeMap. On remove, leaves
+ * are not merged (an emptied leaf stays in the chain and is skipped), as in many
+ * disk B+Trees; the space is reused as keys are put back.
+ * <p>
+ * Changes become durable on flush or close (Table.save flushes its index); there
+ * is no log, so a crash before a flush may leave the file inconsistent. Since the
+ * buffer pool writes dirty pages back as it evicts them, the first change after a
+ * flush clears the stamp in the header before any page is changed: a file whose
+ * stamp is still the one it was flushed with holds exactly what was flushed.
+ */
+public class PagedBpTreeMap
+        extends AbstractMap<KeyType, Comparable[]>
+        implements Closeable
+{
+
+    public static final int PAGE_SIZE = 4096;                         // bytes per page
+    public static final int FRAMES = 256;                             // default buffer pool frames (1 MB)
+
+    private static final int MAGIC = 0x42505431;                      // "BPT1"
+    private static final int NODE_HEAD = 7;                           // isLeaf, keys, next/child 0
+    private static final int MAX_ENTRY = (PAGE_SIZE - NODE_HEAD) / 4; // largest encoded entry
+
+//-----------------------------------------------------------------------------------
+// Node inner class
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * The `Node` inner class is the decoded form of a node page, as held in the
+     * buffer pool. Leaf: val[i] is the tuple for key[i]. Internal: child[i] is
+     * the page with keys < key[i] (and >= key[i - 1]), so it has one more
+     * child than keys.
+     */
+    private static class Node {
+
+        final boolean isLeaf;                                         // whether the node is a leaf
+        int next = -1;                                                // leaf only: page of the next leaf
+        final ArrayList<KeyType> key = new ArrayList<>();             // keys
+        final ArrayList<Comparable[]> val;                            // leaf only: tuples
+        final ArrayList<Integer> child;                               // internal only: child pages
+
+        Node(boolean isLeaf_) {
+            isLeaf = isLeaf_;
+            val = isLeaf ? new ArrayList<>() : null;
+            child = isLeaf ? null : new ArrayList<>();
+        } // constructor
+
+        /**
+         * **************************************************************************
+         * Return the number of bytes of the i-th entry in the page.
+         */
+        int entryBytes(int i) {
+            return keyBytes(key.get(i)) + (isLeaf ? tupleBytes(val.get(i)) : 4);
+        } // entryBytes
+
+        /**
+         * **************************************************************************
+         * Return the number of bytes this node needs in a page.
+         */
+        int bytes() {
+            var sum = NODE_HEAD;
+            for (var i = 0; i < key.size(); i++) {
+                sum += entryBytes(i);
+            }
+            return sum;
+        } // bytes
+
+        /**
+         * **************************************************************************
+         * Find and return the position of the child holding key k (the number
+         * of keys <= k).
+         */
+        int find(KeyType k) {
+            var i = Collections.binarySearch(key, k);
+            return (i >= 0) ? i + 1 : -i - 1;
+        } // find
+
+    } // Node
+
+    /**
+     * ******************************************************************************
+     * Codec between node pages and Nodes for the buffer pool.
+     */
+    private static final BufferPool.PageCodec<Node> CODEC = new BufferPool.PageCodec<>() {
+        public Node decode(ByteBuffer buf) {
+            var n = new Node(buf.get() == 1);
+            var keys = buf.getShort();
+            n.next = buf.getInt();
+            if (!n.isLeaf) {
+                n.child.add(n.next);
+                n.next = -1;
+            }
+            for (var i = 0; i < keys; i++) {
+                n.key.add(readKey(buf));
+                if (n.isLeaf) {
+                    n.val.add(readTuple(buf));
+                } else {
+                    n.child.add(buf.getInt());
+                }
+            } // for
+            return n;
+        } // decode
+
+        public void encode(Node n, ByteBuffer buf) {
+            buf.put((byte) (n.isLeaf ? 1 : 0));
+            buf.putShort((short) n.key.size());
+            buf.putInt(n.isLeaf ? n.next : n.child.get(0));
+            for (var i = 0; i < n.key.size(); i++) {
+                writeKey(buf, n.key.get(i));
+                if (n.isLeaf) {
+                    writeTuple(buf, n.val.get(i));
+                } else {
+                    buf.putInt(n.child.get(i + 1));
+                }
+            } // for
+        } // encode
+    };
+
+//-----------------------------------------------------------------------------------
+// Fields and constructors
+//-----------------------------------------------------------------------------------
+    private final String path;                                        // the index file
+    private final FileChannel channel;                                // channel on the index file
+    private final BufferPool<Node> pool;                              // cached node pages
+
+    private int root;                                                 // page of the root
+    private int firstLeaf;                                            // page of the first (leftmost) leaf
+    private int nPages;                                               // pages in the file (incl. header)
+    private int kCount;                                               // total number of keys
+    private long stamp;                                               // stamp given to the last flush (0 => changed since)
+
+    private KeyType upKey;                                            // divider key passed up by the last split
+    private Comparable[] oldValue;                                    // value replaced by the last put
+    private boolean replaced;                                         // whether the last put replaced a value
+
+    /**
+     * ******************************************************************************
+     * Open (or create) the paged B+Tree map in the given file, with a buffer
+     * pool of FRAMES pages.
+     *
+     * @param _path the path of the index file
+     */
+    public PagedBpTreeMap(String _path) {
+        this(_path, FRAMES);
+    } // constructor
+
+    /**
+     * ******************************************************************************
+     * Open (or create) the paged B+Tree map in the given file, with a buffer
+     * pool of nFrames pages. Opening an existing file only reads its header.
+     *
+     * @param _path the path of the index file
+     * @param nFrames the number of pages the buffer pool may hold (at least 8)
+     */
+    public PagedBpTreeMap(String _path, int nFrames) {
+        if (nFrames < 8) {
+            throw new IllegalArgumentException("error: PagedBpTreeMap needs at least 8 frames, was " + nFrames);
+        }
+        path = _path;
+        try {
+            channel = FileChannel.open(Path.of(path), CREATE, READ, WRITE);
+            pool = new BufferPool<>(channel, PAGE_SIZE, nFrames, CODEC);
+            if (channel.size() == 0) {
+                init();
+            } else {
+                readHeader();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } // try
+    } // constructor
+
+    /**
+     * ******************************************************************************
+     * Return the size (number of keys) in the B+Tree.
+     */
+    public int size() {
+        return kCount;
+    }
+
+//-----------------------------------------------------------------------------------
+// Retrieve values
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Given the key, look up the tuple in the B+Tree map, fetching one page per
+     * level.
+     *
+     * @param key the key used for look up
+     * @return the tuple associated with the key or null if not found
+     */
+    public Comparable[] get(Object key) {
+        var k = (KeyType) key;
+        var p = root;
+        while (true) {
+            var n = pool.fetch(p);
+            if (n.isLeaf) {
+                var i = Collections.binarySearch(n.key, k);
+                var v = (i >= 0) ? n.val.get(i) : null;
+                pool.unpin(p, false);
+                return v;
+            } // if
+            var c = n.child.get(n.find(k));
+            pool.unpin(p, false);
+            p = c;
+        } // while
+    } // get
+
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * ******************************************************************************
+     * Return a set view of the entries in key order; iteration reads the
+     * chain of leaf pages one at a time through the buffer pool.
+     *
+     * @return the set view of the map
+     */
+    public Set<Map.Entry<KeyType, Comparable[]>> entrySet() {
+        return new AbstractSet<Map.Entry<KeyType, Comparable[]>>() {
+            public Iterator<Map.Entry<KeyType, Comparable[]>> iterator() {
+                return new Iterator<Map.Entry<KeyType, Comparable[]>>() {
+                    private int p = firstLeaf;                        // next leaf page to read
+                    private final ArrayDeque<Map.Entry<KeyType, Comparable[]>> leaf = new ArrayDeque<>();
+
+                    public boolean hasNext() {
+                        while (leaf.isEmpty() && p >= 0) {           // read the next (non-empty) leaf
+                            var n = pool.fetch(p);
+                            for (var i = 0; i < n.key.size(); i++) {
+                                leaf.add(new AbstractMap.SimpleImmutableEntry<>(n.key.get(i), n.val.get(i)));
+                            }
+                            pool.unpin(p, false);
+                            p = n.next;
+                        } // while
+                        return !leaf.isEmpty();
+                    } // hasNext
+
+                    public Map.Entry<KeyType, Comparable[]> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return leaf.poll();
+                    } // next
+                };
+            } // iterator
+
+            public int size() {
+                return kCount;
+            }
+        };
+    } // entrySet
+
+//-----------------------------------------------------------------------------------
+// Put key-value pairs into the B+Tree
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Put the key-tuple pair in the B+Tree map, replacing the tuple of an
+     * existing key.
+     *
+     * @param key the key to insert
+     * @param value the tuple to insert
+     * @return the previous tuple for this key, or null
+     */
+    public Comparable[] put(KeyType key, Comparable[] value) {
+        if (keyBytes(key) + tupleBytes(value) > MAX_ENTRY) {
+            throw new IllegalArgumentException(
+                    "error: entry for " + key + " needs more than " + MAX_ENTRY + " bytes of a page"
+            );
+        }
+        touch();
+        replaced = false;
+        oldValue = null;
+        var rt = insert(root, key, value);
+        if (rt >= 0) {                                                // root split => grow a new root
+            var nr = new Node(false);
+            nr.key.add(upKey);
+            nr.child.add(root);
+            nr.child.add(rt);
+            root = allocate(nr);
+        } // if
+        if (!replaced) {
+            kCount += 1;
+        }
+        return oldValue;
+    } // put
+
+    /**
+     * ******************************************************************************
+     * Recursive helper for inserting into the sub-tree rooted at page p. Return
+     * the page of p's new right sibling if p split (the divider key is left in
+     * upKey), else -1.
+     */
+    private int insert(int p, KeyType key, Comparable[] value) {
+        var n = pool.fetch(p);
+        if (n.isLeaf) {
+            var i = Collections.binarySearch(n.key, key);
+            if (i >= 0) {                                             // existing key => replace (may grow)
+                oldValue = n.val.set(i, value);
+                replaced = true;
+            } else {
+                n.key.add(-i - 1, key);
+                n.val.add(-i - 1, value);
+            } // if
+        } else {
+            var j = n.find(key);
+            var rt = insert(n.child.get(j), key, value);
+            if (rt < 0) {
+                pool.unpin(p, false);
+                return -1;
+            } // if
+            n.key.add(j, upKey);
+            n.child.add(j + 1, rt);
+        } // if
+
+        var rt = (n.bytes() > PAGE_SIZE) ? split(n) : -1;
+        pool.unpin(p, true);
+        return rt;
+    } // insert
+
+    /**
+     * ******************************************************************************
+     * Split overflowed node n at the entry that halves its bytes, moving the
+     * right part to a new page. Leaf: the divider is the right node's first
+     * key. Internal: the middle key moves up. The divider is left in upKey.
+     *
+     * @return the page of the new right sibling
+     */
+    private int split(Node n) {
+        var half = (n.bytes() - NODE_HEAD) / 2;
+        var m = 0;
+        for (var sum = 0; m < n.key.size() - 2 && sum < half; m++) {
+            sum += n.entryBytes(m);
+        }
+        m = Math.max(m, 1);
+        var size = n.key.size();
+
+        var rt = new Node(n.isLeaf);
+        if (n.isLeaf) {
+            rt.key.addAll(n.key.subList(m, size));
+            rt.val.addAll(n.val.subList(m, size));
+            n.key.subList(m, size).clear();
+            n.val.subList(m, size).clear();
+            upKey = rt.key.get(0);                                    // smallest right
+            rt.next = n.next;                                         // update LINKED LIST of leaves
+            n.next = allocate(rt);
+            return n.next;
+        } // if
+
+        upKey = n.key.get(m);                                         // middle key goes up
+        rt.key.addAll(n.key.subList(m + 1, size));
+        rt.child.addAll(n.child.subList(m + 1, size + 1));
+        n.key.subList(m, size).clear();
+        n.child.subList(m + 1, size + 1).clear();
+        return allocate(rt);
+    } // split
+
+    /**
+     * ******************************************************************************
+     * Give node n a new page at the end of the file and return the page number.
+     */
+    private int allocate(Node n) {
+        var p = nPages++;
+        pool.create(p, n);
+        pool.unpin(p, true);
+        return p;
+    } // allocate
+
+//-----------------------------------------------------------------------------------
+// Remove keys, flush and close
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Remove the key (and its tuple) from the B+Tree map. The leaf is not
+     * merged with a sibling if it underflows.
+     *
+     * @param key the key to remove
+     * @return the tuple removed, or null if the key was not found
+     */
+    public Comparable[] remove(Object key) {
+        var k = (KeyType) key;
+        var p = root;
+        while (true) {
+            var n = pool.fetch(p);
+            if (n.isLeaf) {
+                var i = Collections.binarySearch(n.key, k);
+                if (i < 0) {
+                    pool.unpin(p, false);
+                    return null;
+                } // if
+                touch();
+                n.key.remove(i);
+                var v = n.val.remove(i);
+                pool.unpin(p, true);
+                kCount -= 1;
+                return v;
+            } // if
+            var c = n.child.get(n.find(k));
+            pool.unpin(p, false);
+            p = c;
+        } // while
+    } // remove
+
+    /**
+     * ******************************************************************************
+     * Remove all the keys from the B+Tree map, truncating the file.
+     */
+    public void clear() {
+        pool.discard();
+        try {
+            channel.truncate(0);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } // try
+        init();
+    } // clear
+
+    /**
+     * ******************************************************************************
+     * Write the dirty pages and the header to the file, making the map durable.
+     */
+    public void flush() {
+        pool.flush();
+        writeHeader();
+    } // flush
+
+    /**
+     * ******************************************************************************
+     * Flush the map, recording the given stamp in the header once the pages are
+     * written (e.g., Table.save's save stamp), so that stamp () returns it after
+     * the file is reopened, unless the map is changed first.
+     *
+     * @param _stamp the stamp to record (not 0)
+     */
+    public void flush(long _stamp) {
+        pool.flush();
+        stamp = _stamp;
+        writeHeader();
+    } // flush
+
+    /**
+     * ******************************************************************************
+     * Return the stamp recorded by the last flush (long), or 0 if the map was
+     * changed since (or was never flushed with a stamp).
+     */
+    public long stamp() {
+        return stamp;
+    } // stamp
+
+    /**
+     * ******************************************************************************
+     * Clear the stamp, in the header as well, before the first change after a
+     * stamped flush.
+     */
+    private void touch() {
+        if (stamp != 0) {
+            stamp = 0;
+            writeHeader();
+        }
+    } // touch
+
+    /**
+     * ******************************************************************************
+     * Flush the map and close its file.
+     */
+    @Override
+    public void close() throws IOException {
+        writeHeader();
+        pool.close();
+    } // close
+
+    /**
+     * ******************************************************************************
+     * Return the buffer pool's statistics.
+     */
+    public String stats() {
+        return path + ": " + nPages + " pages, " + pool.stats();
+    } // stats
+
+    /**
+     * ******************************************************************************
+     * Set up an empty tree: a header page and one (empty) leaf page as root.
+     */
+    private void init() {
+        nPages = 1;
+        kCount = 0;
+        stamp = 0;
+        root = allocate(new Node(true));
+        firstLeaf = root;
+        writeHeader();                                                // not flush (): init runs in the constructor
+        pool.flush();
+    } // init
+
+    /**
+     * ******************************************************************************
+     * Write the header page (page 0).
+     */
+    private void writeHeader() {
+        var buf = ByteBuffer.allocate(32);
+        buf.putInt(MAGIC).putInt(PAGE_SIZE).putInt(root).putInt(firstLeaf).putInt(nPages).putInt(kCount);
+        buf.putLong(stamp);
+        buf.flip();
+        try {
+            while (buf.hasRemaining()) {
+                channel.write(buf, buf.position());
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } // try
+    } // writeHeader
+
+    /**
+     * ******************************************************************************
+     * Read the header page (page 0) of an existing file.
+     */
+    private void readHeader() throws IOException {
+        var buf = ByteBuffer.allocate(32);
+        while (buf.hasRemaining() && channel.read(buf, buf.position()) >= 0) {
+        }
+        buf.flip();
+        if (buf.remaining() < 32 || buf.getInt() != MAGIC || buf.getInt() != PAGE_SIZE) {
+            throw new IllegalArgumentException("error: " + path + " is not a paged B+tree file");
+        }
+        root = buf.getInt();
+        firstLeaf = buf.getInt();
+        nPages = buf.getInt();
+        kCount = buf.getInt();
+        stamp = buf.getLong();
+    } // readHeader
+
+//-----------------------------------------------------------------------------------
+// Encoding of keys and tuples
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Return the number of bytes to encode attribute value v (tag and value).
+     */
+    private static int valueBytes(Comparable v) {
+        return 1 + switch (v) {
+            case null -> 0;
+            case Integer i -> 4;
+            case Long l -> 8;
+            case Short s -> 2;
+            case Byte b -> 1;
+            case Double d -> 8;
+            case Float f -> 4;
+            case Character c -> 2;
+            case String s -> 4 + s.getBytes(StandardCharsets.UTF_8).length;
+            default -> throw new IllegalArgumentException(
+                    "error: PagedBpTreeMap cannot store a " + v.getClass().getSimpleName());
+        }; // switch
+    } // valueBytes
+
+    private static int keyBytes(KeyType k) {
+        var sum = 1;
+        for (var i = 0; i < k.length(); i++) {
+            sum += valueBytes(k.get(i));
+        }
+        return sum;
+    } // keyBytes
+
+    private static int tupleBytes(Comparable[] t) {
+        var sum = 2;
+        if (t != null) {
+            for (var v : t) {
+                sum += valueBytes(v);
+            }
+        } // if
+        return sum;
+    } // tupleBytes
+
+    /**
+     * ******************************************************************************
+     * Write attribute value v as a type tag followed by the value.
+     */
+    private static void writeValue(ByteBuffer buf, Comparable v) {
+        switch (v) {
+            case null -> buf.put((byte) 'N');
+            case Integer i -> buf.put((byte) 'I').putInt(i);
+            case Long l -> buf.put((byte) 'L').putLong(l);
+            case Short s -> buf.put((byte) 'S').putShort(s);
+            case Byte b -> buf.put((byte) 'B').put(b);
+            case Double d -> buf.put((byte) 'D').putDouble(d);
+            case Float f -> buf.put((byte) 'F').putFloat(f);
+            case Character c -> buf.put((byte) 'C').putChar(c);
+            case String s -> {
+                var bytes = s.getBytes(StandardCharsets.UTF_8);
+                buf.put((byte) 'T').putInt(bytes.length).put(bytes);
+            }
+            default -> throw new IllegalArgumentException(
+                    "error: PagedBpTreeMap cannot store a " + v.getClass().getSimpleName());
+        } // switch
+    } // writeValue
+
+    /**
+     * ******************************************************************************
+     * Read an attribute value written by writeValue.
+     */
+    private static Comparable readValue(ByteBuffer buf) {
+        var tag = (char) buf.get();
+        return switch (tag) {
+            case 'N' -> null;
+            case 'I' -> buf.getInt();
+            case 'L' -> buf.getLong();
+            case 'S' -> buf.getShort();
+            case 'B' -> buf.get();
+            case 'D' -> buf.getDouble();
+            case 'F' -> buf.getFloat();
+            case 'C' -> buf.getChar();
+            case 'T' -> {
+                var bytes = new byte[buf.getInt()];
+                buf.get(bytes);
+                yield new String(bytes, StandardCharsets.UTF_8);
+            }
+            default -> throw new IllegalStateException("error: bad type tag " + (int) tag + " in page");
+        }; // switch
+    } // readValue
+
+    private static void writeKey(ByteBuffer buf, KeyType k) {
+        buf.put((byte) k.length());
+        for (var i = 0; i < k.length(); i++) {
+            writeValue(buf, k.get(i));
+        }
+    } // writeKey
+
+    private static KeyType readKey(ByteBuffer buf) {
+        var k = new Comparable[buf.get()];
+        for (var i = 0; i < k.length; i++) {
+            k[i] = readValue(buf);
+        }
+        return new KeyType(k);
+    } // readKey
+
+    private static void writeTuple(ByteBuffer buf, Comparable[] t) {
+        if (t == null) {
+            buf.putShort((short) -1);
+            return;
+        } // if
+        buf.putShort((short) t.length);
+        for (var v : t) {
+            writeValue(buf, v);
+        }
+    } // writeTuple
+
+    private static Comparable[] readTuple(ByteBuffer buf) {
+        var len = buf.getShort();
+        if (len < 0) {
+            return null;
+        }
+        var t = new Comparable[len];
+        for (var i = 0; i < len; i++) {
+            t[i] = readValue(buf);
+        }
+        return t;
+    } // readTuple
+
+//-----------------------------------------------------------------------------------
+// Main method for building, reopening and probing a paged index
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * The main method builds a paged index of movieExec style tuples with a
+     * small buffer pool (the index is many times larger than the pool), closes
+     * it, reopens it and times lookups.
+     *
+     * @param args the command-line arguments (args[0] gives number of keys)
+     */
+    public static void main(String[] args) throws IOException {
+        var n = (args.length == 1) ? Integer.parseInt(args[0]) : 1_000_000;
+        var file = File.createTempFile("paged", ".idx");
+        file.deleteOnExit();
+        var rng = new Random(42);
+
+        var t0 = nanoTime();
+        try (var index = new PagedBpTreeMap(file.getPath(), 64)) {
+            for (var i = 0; i < n; i++) {
+                var k = rng.nextInt(Integer.MAX_VALUE);
+                index.put(new KeyType(k), new Comparable[]{k, "name" + k, "address" + k, k % 1000});
+            }
+            out.println("build " + index.size() + " keys: " + (nanoTime() - t0) / 1_000_000 + " ms, " + index.stats());
+        } // try
+
+        t0 = nanoTime();
+        try (var index = new PagedBpTreeMap(file.getPath(), 64)) {
+            out.println("reopen: " + (nanoTime() - t0) / 1000 + " mu-sec, " + index.size() + " keys");
+            rng = new Random(42);
+            var found = 0;
+            t0 = nanoTime();
+            for (var i = 0; i < 100_000; i++) {
+                var k = rng.nextInt(Integer.MAX_VALUE);
+                var t = index.get(new KeyType(k));
+                if (t != null && t[0].equals(k)) {
+                    found++;
+                }
+            } // for
+            out.println("100000 lookups: " + (nanoTime() - t0) / 100_000 + " ns/lookup, " + found + " found, " + index.stats());
+        } // try
+    } // main
+
+} // PagedBpTreeMap
@@ -0,0 +1,100 @@
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * **********************************************************************************
+ * A posting list: the row ids (positions in a table's tuples) of the tuples
+ * sharing one key value of a non-unique index. Row ids are kept in ascending
+ * order in a growing int array (doubling, like ArrayList), so a list costs 4
+ * bytes per row rather than a boxed Integer and a reference.
+ */
+public class PostingList
+        implements Serializable {
+
+    private int[] rows;  // row ids, ascending, in rows[0 .. size-1]
+    private int size;  // number of row ids
+
+    /**
+     * **********************************************************************************
+     * Construct a posting list holding the single row id row.
+     *
+     * @param row the first row id
+     */
+    public PostingList(int row) {
+        rows = new int[]{row, 0};
+        size = 1;
+    }
+
+    /**
+     * **********************************************************************************
+     * Add row id row, keeping the ids in ascending order (appending when row is
+     * the largest, as it is when tuples are inserted at the end of the table).
+     *
+     * @param row the row id to add
+     */
+    public void add(int row) {
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, 2 * size);
+        }
+        var i = size;
+        while (i > 0 && rows[i - 1] > row) {
+            rows[i] = rows[i - 1];
+            i--;
+        }
+        rows[i] = row;
+        size++;
+    }
+
+    /**
+     * **********************************************************************************
+     * Renumber the row ids after the rows in deleted (ascending) were removed
+     * from the table: a deleted id is dropped and every other id moves down by
+     * the number of deleted ids below it.
+     *
+     * @param deleted the deleted row ids, in ascending order
+     * @return the number of row ids left
+     */
+    public int removeRows(int[] deleted) {
+        var n = 0;
+        var d = 0;
+        for (var i = 0; i < size; i++) {
+            var row = rows[i];
+            while (d < deleted.length && deleted[d] < row) {
+                d++;
+            }
+            if (d < deleted.length && deleted[d] == row) {
+                continue;
+            }
+            rows[n++] = row - d;
+        }
+        size = n;
+        return n;
+    }
+
+    /**
+     * **********************************************************************************
+     * Return the i-th row id.
+     *
+     * @param i the position in the list
+     * @return the row id
+     */
+    public int get(int i) {
+        return rows[i];
+    }
+
+    /**
+     * **********************************************************************************
+     * Return the number of row ids in the list.
+     *
+     * @return the size of the list
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(Arrays.copyOf(rows, size));
+    }
+}
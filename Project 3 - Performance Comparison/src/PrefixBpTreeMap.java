@@ -0,0 +1,815 @@
+
+/** **********************************************************************************
+ * @file PrefixBpTreeMap.java
+ *
+ * compile javac --enable-preview --release 22 PrefixBpTreeMap.java
+ * run     java --enable-preview PrefixBpTreeMap
+ *
+ * B+Tree with prefix-compressed keys. Keys (String or composite KeyType) are
+ * encoded as order-preserving byte strings; each leaf stores the prefix common to
+ * all its keys once, followed by the remaining suffixes packed into one byte []
+ * (front coding), and internal nodes hold the shortest separator between their
+ * children rather than a full key (suffix truncation).
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Array;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/**
+ * **********************************************************************************
+ * The `PrefixBpTreeMap` class provides B+Tree maps whose keys are stored
+ * compressed. Same structure and rules as BpTreeMap (larger half stays in n on
+ * a split, borrow or merge on underflow), but a key is kept as bytes:
+ *
+ *   leaf:     prefix | data = suffix_0 suffix_1 ... | off [i] = start of suffix_i
+ *   internal: key [i] = shortest byte string separating child i from child i+1
+ *
+ * Each attribute of a key is encoded as a type tag and an order-preserving value
+ * (sign-flipped big-endian numbers, terminated strings with 1 byte per ASCII
+ * char), so unsigned byte order agrees with KeyType.compareTo and a shared
+ * leading attribute or string prefix is stored once per leaf. KeyType objects
+ * are rebuilt only when entries are iterated.
+ */
+public class PrefixBpTreeMap<V>
+        extends AbstractMap<KeyType, V>
+{
+
+    private static final int ORDER = 5;                               // default maximum number of children for a node
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int order;                                          // maximum number of children for a node
+    private final int half;                                           // half of max keys (floor)
+    private final int halfp;                                          // rest of the keys (half plus)
+
+//-----------------------------------------------------------------------------------
+// Node inner class
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * The `Node` inner class defines nodes that are stored in the B+tree map.
+     * Leaf: key i is prefix + data [off [i], off [i + 1]), val [i] its value.
+     * Internal: child [i] -> subtree with keys < key [i] (and >= key [i - 1]).
+     */
+    private class Node {
+
+        final boolean isLeaf;                                         // whether the node is a leaf
+        int keys;                                                     // number of active keys
+
+        byte[][] key;                                                 // internal: separator keys
+        Node[] child;                                                 // internal: children
+
+        byte[] prefix = EMPTY;                                        // leaf: prefix common to all keys
+        byte[] data = EMPTY;                                          // leaf: packed key suffixes
+        int[] off;                                                    // leaf: start of each suffix in data
+        Object[] val;                                                 // leaf: values
+        Node next;                                                    // leaf: next leaf in the LINKED LIST
+
+        @SuppressWarnings("unchecked")
+        Node(boolean isLeaf_) {
+            isLeaf = isLeaf_;
+            if (isLeaf) {
+                off = new int[order + 1];
+                val = new Object[order];
+            } else {
+                key = new byte[order][];
+                child = (Node[]) Array.newInstance(Node.class, order + 1);
+            } // if
+        } // constructor
+
+        /**
+         * **************************************************************************
+         * Find and return the first position where 'k < key_i' in this
+         * INTERNAL node.
+         */
+        int find(byte[] k) {
+            var lo = 0;
+            var hi = keys;
+            while (lo < hi) {
+                var mid = (lo + hi) >>> 1;
+                if (Arrays.compareUnsigned(k, key[mid]) < 0) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            } // while
+            return lo;
+        } // find
+
+        /**
+         * **************************************************************************
+         * Find and return the position of key k in this LEAF node, or
+         * -(insertion point) - 1 if it is not there (as Arrays.binarySearch).
+         * Only the suffixes are compared once k is known to share the prefix.
+         */
+        int search(byte[] k) {
+            var plen = prefix.length;
+            var cmp = Arrays.compareUnsigned(k, 0, Math.min(plen, k.length), prefix, 0, Math.min(plen, k.length));
+            if (cmp < 0 || cmp == 0 && k.length < plen) {
+                return -1;                                            // k sorts before every key
+            }
+            if (cmp > 0) {
+                return -keys - 1;                                     // k sorts after every key
+            }
+            var lo = 0;
+            var hi = keys - 1;
+            while (lo <= hi) {
+                var mid = (lo + hi) >>> 1;
+                var c = Arrays.compareUnsigned(k, plen, k.length, data, off[mid], off[mid + 1]);
+                if (c == 0) {
+                    return mid;
+                } else if (c < 0) {
+                    hi = mid - 1;
+                } else {
+                    lo = mid + 1;
+                }
+            } // while
+            return -lo - 1;
+        } // search
+
+        /**
+         * **************************************************************************
+         * Return the i-th key of this LEAF node in full (prefix + suffix).
+         */
+        byte[] keyAt(int i) {
+            var k = Arrays.copyOf(prefix, prefix.length + off[i + 1] - off[i]);
+            System.arraycopy(data, off[i], k, prefix.length, off[i + 1] - off[i]);
+            return k;
+        } // keyAt
+
+        /**
+         * **************************************************************************
+         * Return all the keys of this LEAF node in full.
+         */
+        byte[][] fullKeys() {
+            var ks = new byte[keys + 1][];                            // room for one more (insert)
+            for (var i = 0; i < keys; i++) {
+                ks[i] = keyAt(i);
+            }
+            return ks;
+        } // fullKeys
+
+        /**
+         * **************************************************************************
+         * Replace the keys of this LEAF node with the first n of the sorted
+         * full keys ks, storing their common prefix once.
+         */
+        void pack(byte[][] ks, int n) {
+            keys = n;
+            if (n == 0) {
+                prefix = EMPTY;
+                data = EMPTY;
+                return;
+            } // if
+            var plen = Arrays.mismatch(ks[0], ks[n - 1]);             // sorted => LCP of first and last
+            if (plen < 0) {
+                plen = ks[0].length;
+            }
+            prefix = Arrays.copyOf(ks[0], plen);
+            var size = 0;
+            for (var i = 0; i < n; i++) {
+                size += ks[i].length - plen;
+            }
+            data = new byte[size];
+            var pos = 0;
+            for (var i = 0; i < n; i++) {
+                off[i] = pos;
+                System.arraycopy(ks[i], plen, data, pos, ks[i].length - plen);
+                pos += ks[i].length - plen;
+            } // for
+            off[n] = pos;
+        } // pack
+
+        /**
+         * **************************************************************************
+         * Add the new separator k and right sub-tree rt at position i of this
+         * INTERNAL node.
+         */
+        void addI(int i, byte[] k, Node rt) {
+            for (var j = keys; j > i; j--) {
+                key[j] = key[j - 1];
+                child[j + 1] = child[j];
+            } // for
+            key[i] = k;
+            child[i + 1] = rt;
+            keys += 1;
+        } // addI
+
+        /**
+         * **************************************************************************
+         * Remove the separator at position i and the child to its right from
+         * this INTERNAL node.
+         */
+        void removeI(int i) {
+            for (var j = i; j < keys - 1; j++) {
+                key[j] = key[j + 1];
+                child[j + 1] = child[j + 2];
+            } // for
+            keys -= 1;
+            key[keys] = null;
+            child[keys + 1] = null;
+        } // removeI
+
+    } // Node
+
+//-----------------------------------------------------------------------------------
+// Fields and constructors
+//-----------------------------------------------------------------------------------
+    private Node root;                                                // root of the B+Tree
+    private Node firstLeaf;                                           // first (leftmost) leaf in the B+Tree
+    private int kCount = 0;                                           // total number of keys
+    private byte[] upKey;                                             // separator passed up by the last split
+
+    /**
+     * ******************************************************************************
+     * Construct an empty B+Tree map using the default order.
+     */
+    public PrefixBpTreeMap() {
+        this(ORDER);
+    } // constructor
+
+    /**
+     * ******************************************************************************
+     * Construct an empty B+Tree map with nodes of at most _order children.
+     *
+     * @param _order the maximum number of children for a node (at least 3)
+     */
+    public PrefixBpTreeMap(int _order) {
+        if (_order < 3) {
+            throw new IllegalArgumentException(
+                    "error: PrefixBpTreeMap order must be at least 3, was " + _order
+            );
+        }
+        order = _order;
+        half = (order - 1) / 2;
+        halfp = order - half;
+        root = new Node(true);
+        firstLeaf = root;
+    } // constructor
+
+    /**
+     * ******************************************************************************
+     * Return the size (number of keys) in the B+Tree.
+     */
+    public int size() {
+        return kCount;
+    }
+
+//-----------------------------------------------------------------------------------
+// Retrieve values
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Return the leaf that would hold the encoded key k.
+     */
+    private Node leafFor(byte[] k) {
+        var n = root;
+        while (!n.isLeaf) {
+            n = n.child[n.find(k)];
+        }
+        return n;
+    } // leafFor
+
+    /**
+     * ******************************************************************************
+     * Given the key, look up the value in the B+Tree map.
+     *
+     * @param key the key used for look up
+     * @return the value associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        var k = encode((KeyType) key);
+        var n = leafFor(k);
+        var i = n.search(k);
+        return (i >= 0) ? (V) n.val[i] : null;
+    } // get
+
+    public boolean containsKey(Object key) {
+        var k = encode((KeyType) key);
+        return leafFor(k).search(k) >= 0;
+    } // containsKey
+
+    /**
+     * ******************************************************************************
+     * Return a set view of the entries in key order; iteration walks the
+     * linked leaves and decodes each key as it is returned.
+     *
+     * @return the set view of the map
+     */
+    public Set<Map.Entry<KeyType, V>> entrySet() {
+        return new AbstractSet<Map.Entry<KeyType, V>>() {
+            public Iterator<Map.Entry<KeyType, V>> iterator() {
+                return new Iterator<Map.Entry<KeyType, V>>() {
+                    private Node n = firstLeaf;                       // leaf holding the next entry
+                    private int i = 0;                                // position of the next entry in n
+
+                    public boolean hasNext() {
+                        while (n != null && i >= n.keys) {
+                            n = n.next;
+                            i = 0;
+                        } // while
+                        return n != null;
+                    } // hasNext
+
+                    @SuppressWarnings("unchecked")
+                    public Map.Entry<KeyType, V> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        var en = new AbstractMap.SimpleImmutableEntry<KeyType, V>(decode(n.keyAt(i)), (V) n.val[i]);
+                        i += 1;
+                        return en;
+                    } // next
+                };
+            } // iterator
+
+            public int size() {
+                return kCount;
+            }
+        };
+    } // entrySet
+
+//-----------------------------------------------------------------------------------
+// Put key-value pairs into the B+Tree
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Put the key-value pair in the B+Tree map, replacing the value of an
+     * existing key.
+     *
+     * @param key the key to insert
+     * @param value the value to insert
+     * @return the previous value for this key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(KeyType key, V value) {
+        var k = encode(key);
+        var leaf = leafFor(k);
+        var i = leaf.search(k);
+        if (i >= 0) {                                                 // existing key => replace
+            var old = (V) leaf.val[i];
+            leaf.val[i] = value;
+            return old;
+        } // if
+
+        kCount += 1;
+        var rt = insert(k, value, root);
+        if (rt != null) {                                             // root split => grow a new root
+            var nr = new Node(false);
+            nr.keys = 1;
+            nr.key[0] = upKey;
+            nr.child[0] = root;
+            nr.child[1] = rt;
+            root = nr;
+        } // if
+        return null;
+    } // put
+
+    /**
+     * ******************************************************************************
+     * Recursive helper for inserting (new) key k into the sub-tree rooted at
+     * n. Return the new right sibling of n if n split (the separator is left in
+     * upKey), else null.
+     */
+    private Node insert(byte[] k, Object v, Node n) {
+        if (n.isLeaf) {
+            var ip = -n.search(k) - 1;
+            var ks = n.fullKeys();
+            System.arraycopy(ks, ip, ks, ip + 1, n.keys - ip);
+            System.arraycopy(n.val, ip, n.val, ip + 1, n.keys - ip);
+            ks[ip] = k;
+            n.val[ip] = v;
+            if (n.keys + 1 < order) {
+                n.pack(ks, n.keys + 1);
+                return null;
+            } // if
+            return split(n, ks);
+        } // if
+
+        var j = n.find(k);
+        var rt = insert(k, v, n.child[j]);
+        if (rt == null) {
+            return null;
+        }
+        n.addI(j, upKey, rt);
+        if (n.keys < order) {
+            return null;
+        }
+        return splitI(n);
+    } // insert
+
+    /**
+     * ******************************************************************************
+     * Split overflowed LEAF n (whose order full keys are ks), moving the
+     * largest half to a new right sibling. The separator left in upKey is the
+     * shortest prefix of the right's first key that is greater than the left's
+     * last key.
+     */
+    private Node split(Node n, byte[][] ks) {
+        var rt = new Node(true);
+        System.arraycopy(n.val, halfp, rt.val, 0, half);
+        Arrays.fill(n.val, halfp, order, null);
+        rt.pack(Arrays.copyOfRange(ks, halfp, order), half);
+        n.pack(ks, halfp);
+        upKey = separator(ks[halfp - 1], ks[halfp]);
+        rt.next = n.next;                                             // update LINKED LIST of nodes
+        n.next = rt;
+        return rt;
+    } // split
+
+    /**
+     * ******************************************************************************
+     * Split overflowed INTERNAL node n, moving the largest half to a new right
+     * sibling; the middle separator key [halfp - 1] is left in upKey.
+     */
+    private Node splitI(Node n) {
+        var rt = new Node(false);
+        System.arraycopy(n.key, halfp, rt.key, 0, half);
+        System.arraycopy(n.child, halfp, rt.child, 0, half + 1);
+        rt.keys = half;
+        upKey = n.key[halfp - 1];
+        Arrays.fill(n.key, halfp - 1, order, null);
+        Arrays.fill(n.child, halfp, order + 1, null);
+        n.keys = halfp - 1;
+        return rt;
+    } // splitI
+
+    /**
+     * ******************************************************************************
+     * Return the shortest byte string s with lo < s <= hi (lo < hi).
+     */
+    private static byte[] separator(byte[] lo, byte[] hi) {
+        var m = Arrays.mismatch(lo, hi);                              // lo < hi => m >= 0
+        return Arrays.copyOf(hi, Math.min(m + 1, hi.length));
+    } // separator
+
+//-----------------------------------------------------------------------------------
+// Remove key-value pairs from the B+Tree
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Remove the key (and its value) from the B+Tree map, borrowing from or
+     * merging with a sibling on underflow as BpTreeMap.remove does.
+     *
+     * @param key the key to remove
+     * @return the value removed, or null if the key was not found
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        var found = new Object[1];
+        if (!delete(encode((KeyType) key), root, found)) {
+            return null;
+        }
+        kCount -= 1;
+        if (!root.isLeaf && root.keys == 0) {                         // root collapse
+            root = root.child[0];
+        }
+        return (V) found[0];
+    } // remove
+
+    /**
+     * ******************************************************************************
+     * Remove all the keys from the B+Tree map.
+     */
+    public void clear() {
+        root = new Node(true);
+        firstLeaf = root;
+        kCount = 0;
+    } // clear
+
+    /**
+     * ******************************************************************************
+     * Recursive helper for removing key k from the sub-tree rooted at n,
+     * putting the removed value in found[0]. Return whether k was found.
+     */
+    private boolean delete(byte[] k, Node n, Object[] found) {
+        if (n.isLeaf) {
+            var i = n.search(k);
+            if (i < 0) {
+                return false;
+            }
+            found[0] = n.val[i];
+            var ks = n.fullKeys();
+            System.arraycopy(ks, i + 1, ks, i, n.keys - i - 1);
+            System.arraycopy(n.val, i + 1, n.val, i, n.keys - i - 1);
+            n.val[n.keys - 1] = null;
+            n.pack(ks, n.keys - 1);
+            return true;
+        } // if
+
+        var j = n.find(k);
+        var c = n.child[j];
+        if (!delete(k, c, found)) {
+            return false;
+        }
+        if (c.keys < half) {
+            rebalance(n, j);
+        }
+        return true;
+    } // delete
+
+    /**
+     * ******************************************************************************
+     * Repair the underflowed j-th child of n: borrow from the left, else the
+     * right, sibling if it has more than half, else merge into the left node.
+     */
+    private void rebalance(Node n, int j) {
+        var c = n.child[j];
+        var lt = (j > 0) ? n.child[j - 1] : null;
+        var rt = (j < n.keys) ? n.child[j + 1] : null;
+
+        if (lt != null && lt.keys > half) {
+            if (c.isLeaf) {                                           // move lt's last entry to c
+                var lks = lt.fullKeys();
+                var cks = c.fullKeys();
+                System.arraycopy(cks, 0, cks, 1, c.keys);
+                System.arraycopy(c.val, 0, c.val, 1, c.keys);
+                cks[0] = lks[lt.keys - 1];
+                c.val[0] = lt.val[lt.keys - 1];
+                lt.val[lt.keys - 1] = null;
+                c.pack(cks, c.keys + 1);
+                lt.pack(lks, lt.keys - 1);
+                n.key[j - 1] = separator(lks[lt.keys - 1], cks[0]);
+            } else {                                                  // rotate through the parent
+                c.addI(0, n.key[j - 1], c.child[0]);
+                c.child[0] = lt.child[lt.keys];
+                n.key[j - 1] = lt.key[lt.keys - 1];
+                lt.key[lt.keys - 1] = null;
+                lt.child[lt.keys] = null;
+                lt.keys -= 1;
+            } // if
+        } else if (rt != null && rt.keys > half) {
+            if (c.isLeaf) {                                           // move rt's first entry to c
+                var rks = rt.fullKeys();
+                var cks = c.fullKeys();
+                cks[c.keys] = rks[0];
+                c.val[c.keys] = rt.val[0];
+                System.arraycopy(rks, 1, rks, 0, rt.keys - 1);
+                System.arraycopy(rt.val, 1, rt.val, 0, rt.keys - 1);
+                rt.val[rt.keys - 1] = null;
+                c.pack(cks, c.keys + 1);
+                rt.pack(rks, rt.keys - 1);
+                n.key[j] = separator(cks[c.keys - 1], rks[0]);
+            } else {                                                  // rotate through the parent
+                c.key[c.keys] = n.key[j];
+                c.child[c.keys + 1] = rt.child[0];
+                c.keys += 1;
+                n.key[j] = rt.key[0];
+                rt.child[0] = rt.child[1];
+                rt.removeI(0);
+            } // if
+        } else if (lt != null) {
+            merge(n, j - 1, lt, c);
+        } else {
+            merge(n, j, c, rt);
+        } // if
+    } // rebalance
+
+    /**
+     * ******************************************************************************
+     * Merge right node rt into left node lt (children of n either side of
+     * separator n.key[d]) and remove the separator from n.
+     */
+    private void merge(Node n, int d, Node lt, Node rt) {
+        if (lt.isLeaf) {
+            var ks = new byte[lt.keys + rt.keys][];
+            for (var i = 0; i < lt.keys; i++) {
+                ks[i] = lt.keyAt(i);
+            }
+            for (var i = 0; i < rt.keys; i++) {
+                ks[lt.keys + i] = rt.keyAt(i);
+            }
+            System.arraycopy(rt.val, 0, lt.val, lt.keys, rt.keys);
+            lt.pack(ks, ks.length);
+            lt.next = rt.next;                                        // unlink rt from the LINKED LIST of leaves
+        } else {
+            lt.key[lt.keys] = n.key[d];
+            System.arraycopy(rt.key, 0, lt.key, lt.keys + 1, rt.keys);
+            System.arraycopy(rt.child, 0, lt.child, lt.keys + 1, rt.keys + 1);
+            lt.keys += 1 + rt.keys;
+        } // if
+        n.removeI(d);
+    } // merge
+
+//-----------------------------------------------------------------------------------
+// Order-preserving encoding of keys
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Encode key k as a byte string whose unsigned order is KeyType order:
+     * per attribute a type tag then the value; integers big-endian with the
+     * sign bit flipped, reals with the IEEE trick (flip all bits if negative,
+     * else the sign bit), strings a char at a time (chars below 0x7f as c + 1,
+     * others as 0xff hi lo) ended by 0.
+     *
+     * @param k the key to encode
+     * @return the encoded key
+     */
+    static byte[] encode(KeyType k) {
+        var buf = new ByteArrayOutputStream(16);
+        for (var i = 0; i < k.length(); i++) {
+            switch (k.get(i)) {
+                case String s -> {
+                    buf.write('T');
+                    for (var j = 0; j < s.length(); j++) {
+                        var c = s.charAt(j);
+                        if (c < 0x7f) {
+                            buf.write(c + 1);
+                        } else {
+                            buf.write(0xff);
+                            buf.write(c >>> 8);
+                            buf.write(c);
+                        } // if
+                    } // for
+                    buf.write(0);
+                }
+                case Integer v -> {
+                    buf.write('I');
+                    writeBits(buf, v ^ 0x80000000L, 4);
+                }
+                case Long v -> {
+                    buf.write('L');
+                    writeBits(buf, v ^ Long.MIN_VALUE, 8);
+                }
+                case Short v -> {
+                    buf.write('S');
+                    writeBits(buf, v ^ 0x8000L, 2);
+                }
+                case Byte v -> {
+                    buf.write('B');
+                    writeBits(buf, v ^ 0x80L, 1);
+                }
+                case Character v -> {
+                    buf.write('C');
+                    writeBits(buf, v, 2);
+                }
+                case Double v -> {
+                    var bits = Double.doubleToLongBits(v);
+                    buf.write('D');
+                    writeBits(buf, (bits < 0) ? ~bits : bits ^ Long.MIN_VALUE, 8);
+                }
+                case Float v -> {
+                    var bits = Float.floatToIntBits(v);
+                    buf.write('F');
+                    writeBits(buf, (bits < 0) ? ~bits : bits ^ 0x80000000, 4);
+                }
+                default -> throw new IllegalArgumentException(
+                        "error: PrefixBpTreeMap cannot encode a " + k.get(i).getClass().getSimpleName());
+            } // switch
+        } // for
+        return buf.toByteArray();
+    } // encode
+
+    private static void writeBits(ByteArrayOutputStream buf, long bits, int bytes) {
+        for (var s = 8 * (bytes - 1); s >= 0; s -= 8) {
+            buf.write((int) (bits >>> s));
+        }
+    } // writeBits
+
+    private static long readBits(byte[] b, int pos, int bytes) {
+        var bits = 0L;
+        for (var i = 0; i < bytes; i++) {
+            bits = (bits << 8) | (b[pos + i] & 0xff);
+        }
+        return bits;
+    } // readBits
+
+    /**
+     * ******************************************************************************
+     * Decode a key encoded by encode.
+     *
+     * @param b the encoded key
+     * @return the key
+     */
+    static KeyType decode(byte[] b) {
+        var attrs = new ArrayList<Comparable>();
+        var pos = 0;
+        while (pos < b.length) {
+            var tag = (char) b[pos++];
+            switch (tag) {
+                case 'T' -> {
+                    var sb = new StringBuilder();
+                    while (b[pos] != 0) {
+                        if ((b[pos] & 0xff) == 0xff) {
+                            sb.append((char) (((b[pos + 1] & 0xff) << 8) | (b[pos + 2] & 0xff)));
+                            pos += 3;
+                        } else {
+                            sb.append((char) (b[pos] - 1));
+                            pos += 1;
+                        } // if
+                    } // while
+                    pos += 1;
+                    attrs.add(sb.toString());
+                }
+                case 'I' -> {
+                    attrs.add((int) (readBits(b, pos, 4) ^ 0x80000000L));
+                    pos += 4;
+                }
+                case 'L' -> {
+                    attrs.add(readBits(b, pos, 8) ^ Long.MIN_VALUE);
+                    pos += 8;
+                }
+                case 'S' -> {
+                    attrs.add((short) (readBits(b, pos, 2) ^ 0x8000L));
+                    pos += 2;
+                }
+                case 'B' -> {
+                    attrs.add((byte) (readBits(b, pos, 1) ^ 0x80L));
+                    pos += 1;
+                }
+                case 'C' -> {
+                    attrs.add((char) readBits(b, pos, 2));
+                    pos += 2;
+                }
+                case 'D' -> {
+                    var bits = readBits(b, pos, 8);
+                    attrs.add(Double.longBitsToDouble((bits < 0) ? bits ^ Long.MIN_VALUE : ~bits));
+                    pos += 8;
+                }
+                case 'F' -> {
+                    var bits = (int) readBits(b, pos, 4);
+                    attrs.add(Float.intBitsToFloat((bits < 0) ? bits ^ 0x80000000 : ~bits));
+                    pos += 4;
+                }
+                default -> throw new IllegalStateException("error: bad type tag " + (int) tag + " in key");
+            } // switch
+        } // while
+        return new KeyType(attrs.toArray(new Comparable[0]));
+    } // decode
+
+//-----------------------------------------------------------------------------------
+// Main method for measuring the savings over BpTreeMap
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Return the heap in use (bytes) after asking for garbage collection.
+     */
+    private static long usedHeap() {
+        var rt = Runtime.getRuntime();
+        for (var i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    } // usedHeap
+
+    /**
+     * ******************************************************************************
+     * The main method compares the heap used by a BpTreeMap <KeyType,
+     * Comparable []> index with a PrefixBpTreeMap on the same keys, for
+     * studioName keys ("studioName" + digits) and composite (title, year) keys,
+     * at 100K and 1M keys. The tuples exist before either index is built, so
+     * only the index itself (nodes and keys) is measured.
+     *
+     * @param args the command-line arguments (args[0] gives the maximum keys)
+     */
+    public static void main(String[] args) {
+        var maxKeys = (args.length == 1) ? Integer.parseInt(args[0]) : 1_000_000;
+        var order = 64;
+
+        for (var n : new int[]{100_000, 1_000_000}) {
+            if (n > maxKeys) {
+                break;
+            }
+            var tuples = new Comparable[n][];
+            for (var i = 0; i < n; i++) {
+                tuples[i] = new Comparable[]{"studioName" + i, "Movie Title " + i, 1900 + i % 100};
+            }
+
+            for (var composite : new boolean[]{false, true}) {
+                var keys = new KeyType[n];                            // probe keys, built outside the measurement
+                for (var i = 0; i < n; i++) {
+                    keys[i] = composite ? new KeyType(tuples[i][1], tuples[i][2]) : new KeyType(tuples[i][0]);
+                }
+
+                var h0 = usedHeap();
+                var bpTree = new BpTreeMap<KeyType, Comparable[]>(KeyType.class, Comparable[].class, order);
+                for (var t : tuples) {                                // the index owns its KeyTypes, as in Table
+                    bpTree.put(composite ? new KeyType(t[1], t[2]) : new KeyType(t[0]), t);
+                }
+                var bpBytes = usedHeap() - h0;
+
+                h0 = usedHeap();
+                var prefixTree = new PrefixBpTreeMap<Comparable[]>(order);
+                for (var t : tuples) {
+                    prefixTree.put(composite ? new KeyType(t[1], t[2]) : new KeyType(t[0]), t);
+                }
+                var prefixBytes = usedHeap() - h0;
+
+                for (var k : keys) {                                  // every key is found in both
+                    if (bpTree.get(k) != prefixTree.get(k)) {
+                        throw new IllegalStateException("error: lookups differ for " + k);
+                    }
+                } // for
+
+                out.println(n + (composite ? " (title, year) keys: " : " studioName keys: ")
+                        + "BpTreeMap " + bpBytes / n + " bytes/key, PrefixBpTreeMap " + prefixBytes / n + " bytes/key");
+                bpTree = null;
+                prefixTree = null;
+            } // for
+        } // for
+    } // main
+
+} // PrefixBpTreeMap
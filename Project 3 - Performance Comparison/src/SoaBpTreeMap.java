@@ -0,0 +1,674 @@
+
+/** **********************************************************************************
+ * @file SoaBpTreeMap.java
+ *
+ * compile javac --enable-preview --release 22 SoaBpTreeMap.java
+ * run     java --enable-preview SoaBpTreeMap
+ *
+ * B+Tree with a structure-of-arrays node layout. Same structure as BpTreeMap
+ * (SMALLEST RIGHT divider keys, larger half stays in n on a split), but a node
+ * keeps its keys as normalized longs in one long [] and a leaf keeps row ids
+ * (positions in the table's tuples) in one int [], so a search runs over a
+ * contiguous array of primitives instead of following KeyType -> Comparable []
+ * -> boxed value for every comparison:
+ *
+ *   leaf:     norm [0 .. keys-1] | row [0 .. keys-1] | (full [0 .. keys-1]) | next
+ *   internal: norm [0 .. keys-1] | child [0 .. keys] | (full [0 .. keys-1])
+ *
+ * A normalized key is an order-preserving 64-bit image of the key's first
+ * attribute. For a single integer, character or real attribute it is the whole
+ * key (exact), and no KeyType is kept. Otherwise (strings, composite keys) it
+ * holds the first 8 chars or the first attribute, and the full KeyType is kept
+ * in full [] and compared only when normalized keys tie.
+ *
+ * Rules: remove leaves nodes as they are (no merging, as in PagedBpTreeMap)
+ */
+
+import java.lang.reflect.Array;
+import java.util.*;
+
+import static java.lang.System.nanoTime;
+import static java.lang.System.out;
+
+/**
+ * **********************************************************************************
+ * The `SoaBpTreeMap` class provides B+Tree indexes whose values are row ids into
+ * a table's tuples. It is a Map from KeyType to tuple (so it can serve as a
+ * Table index): get resolves the row id through the tuples list, and put finds
+ * the row id of the tuple it is given (the last row, or the next row when rows
+ * are indexed in order, without searching). After rows are deleted from the
+ * tuples, removeRows renumbers the row ids.
+ */
+public class SoaBpTreeMap
+        extends AbstractMap<KeyType, Comparable[]>
+{
+
+    private static final int ORDER = 32;                              // default maximum number of children for a node
+
+    private final int order;                                          // maximum number of children for a node
+    private final int half;                                           // half of max keys (floor)
+    private final int halfp;                                          // rest of the keys (half plus)
+    private final Class<?> domain;                                    // domain of the key's first attribute
+    private final boolean exact;                                      // whether a normalized key is the whole key
+    private final List<Comparable[]> rows;                            // the table's tuples, indexed by row id
+    private boolean vectorSearch = VectorSearch.AVAILABLE;            // whether wide nodes use the Vector API
+
+//-----------------------------------------------------------------------------------
+// Node inner class
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * The `Node` inner class defines nodes that are stored in the B+tree map.
+     * Leaf: row [i] is the row id for key i, next the next leaf.
+     * Internal: child [i] -> subtree with keys < key i (and >= key i - 1).
+     */
+    private class Node {
+
+        final boolean isLeaf;                                         // whether the node is a leaf
+        int keys;                                                     // number of active keys
+        final long[] norm;                                            // normalized keys
+        final KeyType[] full;                                         // full keys (null when exact)
+        final int[] row;                                              // leaf: row ids
+        final Node[] child;                                           // internal: children
+        Node next;                                                    // leaf: next leaf in the LINKED LIST
+
+        @SuppressWarnings("unchecked")
+        Node(boolean isLeaf_) {
+            isLeaf = isLeaf_;
+            norm = new long[order];
+            full = exact ? null : new KeyType[order];
+            row = isLeaf ? new int[order] : null;
+            child = isLeaf ? null : (Node[]) Array.newInstance(Node.class, order + 1);
+        } // constructor
+
+        /**
+         * **************************************************************************
+         * Compare key (nk, k) with key i of this node, looking at the full key
+         * only when the normalized keys tie and are not exact.
+         */
+        int compare(long nk, KeyType k, int i) {
+            var c = Long.compare(nk, norm[i]);
+            return (c != 0 || exact) ? c : k.compareTo(full[i]);
+        } // compare
+
+        /**
+         * **************************************************************************
+         * Find and return the first position where 'k < key_i' in this node:
+         * with the Vector API on wide nodes of exact keys (see VectorSearch),
+         * else by binary search.
+         */
+        int find(long nk, KeyType k) {
+            if (exact && vectorSearch && keys >= VectorSearch.MIN_KEYS) {
+                return VectorSearch.find(norm, keys, nk);
+            }
+            var lo = 0;
+            var hi = keys;
+            while (lo < hi) {
+                var mid = (lo + hi) >>> 1;
+                if (compare(nk, k, mid) < 0) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            } // while
+            return lo;
+        } // find
+
+        /**
+         * **************************************************************************
+         * Find and return the position where 'k == key_i' in this LEAF, or -1.
+         */
+        int findEq(long nk, KeyType k) {
+            var i = find(nk, k) - 1;
+            return (i >= 0 && compare(nk, k, i) == 0) ? i : -1;
+        } // findEq
+
+        /**
+         * **************************************************************************
+         * Open a gap at position ip (and, for an internal node, child ip + 1) and
+         * put key (nk, k) in it.
+         */
+        void addKey(int ip, long nk, KeyType k) {
+            var n = keys - ip;
+            System.arraycopy(norm, ip, norm, ip + 1, n);
+            norm[ip] = nk;
+            if (!exact) {
+                System.arraycopy(full, ip, full, ip + 1, n);
+                full[ip] = k;
+            }
+            if (isLeaf) {
+                System.arraycopy(row, ip, row, ip + 1, n);
+            } else {
+                System.arraycopy(child, ip + 1, child, ip + 2, n);
+            }
+            keys += 1;
+        } // addKey
+
+        /**
+         * **************************************************************************
+         * Split this node, moving the largest half to a new right sibling. For a
+         * leaf the divider is the sibling's first key; for an internal node the
+         * middle key at halfp - 1 is left for the parent.
+         */
+        Node split() {
+            var rt = new Node(isLeaf);
+            var from = halfp;
+            rt.keys = keys - from;
+            System.arraycopy(norm, from, rt.norm, 0, rt.keys);
+            if (!exact) {
+                System.arraycopy(full, from, rt.full, 0, rt.keys);
+                Arrays.fill(full, isLeaf ? from : from - 1, keys, null);
+            }
+            if (isLeaf) {
+                System.arraycopy(row, from, rt.row, 0, rt.keys);
+                rt.next = next;                                       // update LINKED LIST of nodes
+                next = rt;
+                keys = from;
+            } else {
+                System.arraycopy(child, from, rt.child, 0, rt.keys + 1);
+                Arrays.fill(child, from, keys + 1, null);
+                keys = from - 1;
+            } // if
+            return rt;
+        } // split
+
+    } // Node
+
+//-----------------------------------------------------------------------------------
+// Fields and constructors
+//-----------------------------------------------------------------------------------
+    private Node root;                                                // root of the B+Tree
+    private Node firstLeaf;                                           // first (leftmost) leaf in the B+Tree
+    private int kCount = 0;                                           // total number of keys
+    private long upNorm;                                              // divider key passed up by the last split
+    private KeyType upFull;
+    private IdentityHashMap<Comparable[], Integer> rowOf;             // row ids for put's slow path (lazily built)
+
+    /**
+     * ******************************************************************************
+     * Construct an empty B+Tree index over the given tuples, for keys from
+     * attributes with the given domains, using the default order.
+     *
+     * @param keyDomain the domains of the key attributes
+     * @param _rows the table's tuples (row id i is _rows.get (i))
+     */
+    public SoaBpTreeMap(Class[] keyDomain, List<Comparable[]> _rows) {
+        this(keyDomain, _rows, ORDER);
+    } // constructor
+
+    /**
+     * ******************************************************************************
+     * Construct an empty B+Tree index over the given tuples, for keys from
+     * attributes with the given domains, with nodes of at most _order children.
+     *
+     * @param keyDomain the domains of the key attributes
+     * @param _rows the table's tuples (row id i is _rows.get (i))
+     * @param _order the maximum number of children for a node (at least 3)
+     */
+    public SoaBpTreeMap(Class[] keyDomain, List<Comparable[]> _rows, int _order) {
+        if (_order < 3) {
+            throw new IllegalArgumentException(
+                    "error: SoaBpTreeMap order must be at least 3, was " + _order
+            );
+        }
+        domain = keyDomain[0];
+        exact = keyDomain.length == 1 && domain != String.class;
+        rows = _rows;
+        order = _order;
+        half = (order - 1) / 2;
+        halfp = order - half;
+        reset();
+    } // constructor
+
+    /**
+     * ******************************************************************************
+     * Turn the Vector API node search on or off (it stays off when the
+     * jdk.incubator.vector module is missing).
+     *
+     * @param on whether to search wide nodes with the Vector API
+     */
+    public void setVectorSearch(boolean on) {
+        vectorSearch = on && VectorSearch.AVAILABLE;
+    } // setVectorSearch
+
+    /**
+     * ******************************************************************************
+     * Return the size (number of keys) in the B+Tree.
+     */
+    public int size() {
+        return kCount;
+    }
+
+    /**
+     * ******************************************************************************
+     * Return the normalized (order-preserving 64-bit) image of key k's first
+     * attribute: the value of an integer or char, the sign-flipped bits of a
+     * real, or the first 8 chars of a string, a byte each. The first char at or
+     * past 0xFF maps to 0xFF and ends the image (the rest is 0), since a byte
+     * cannot order what follows it; such keys tie and the full key decides.
+     */
+    private static long normalize(KeyType k) {
+        return switch (k.get(0)) {
+            case Integer v ->
+                v;
+            case Long v ->
+                v;
+            case Short v ->
+                v;
+            case Byte v ->
+                v;
+            case Character v ->
+                v;
+            case Double v ->
+                realBits(v);
+            case Float v ->
+                realBits(v);
+            case String v -> {
+                var bits = 0L;
+                var wide = false;                                   // a char >= 0xFF was seen
+                for (var i = 0; i < 8; i++) {
+                    var c = (wide || i >= v.length()) ? 0 : v.charAt(i);
+                    if (c >= 0xFF) {
+                        c = 0xFF;
+                        wide = true;
+                    }
+                    bits = (bits << 8) | c;
+                }
+                yield bits ^ Long.MIN_VALUE;
+            }
+            default ->
+                throw new IllegalArgumentException(
+                        "error: SoaBpTreeMap cannot normalize a key of type " + k.get(0).getClass().getSimpleName());
+        }; // switch
+    } // normalize
+
+    private static long realBits(double v) {
+        var bits = Double.doubleToLongBits(v);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);                // negatives: flip all but the sign
+    } // realBits
+
+    /**
+     * ******************************************************************************
+     * Return the key at position i of leaf n (rebuilt from the normalized key,
+     * in the key's domain, when it is exact).
+     */
+    private KeyType keyAt(Node n, int i) {
+        if (!exact) {
+            return n.full[i];
+        }
+        var v = n.norm[i];
+        Comparable c;                                                 // if-else, as ?: would promote the boxes
+        if (domain == Integer.class) {
+            c = (int) v;
+        } else if (domain == Long.class) {
+            c = v;
+        } else if (domain == Short.class) {
+            c = (short) v;
+        } else if (domain == Byte.class) {
+            c = (byte) v;
+        } else if (domain == Character.class) {
+            c = (char) v;
+        } else {
+            var d = Double.longBitsToDouble(v ^ ((v >> 63) & Long.MAX_VALUE));
+            c = (domain == Float.class) ? (Comparable) (float) d : (Comparable) d;
+        } // if
+        return new KeyType(new Comparable[]{c});
+    } // keyAt
+
+//-----------------------------------------------------------------------------------
+// Retrieve values
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Return the leaf that would hold key (nk, k).
+     */
+    private Node leafFor(long nk, KeyType k) {
+        var n = root;
+        while (!n.isLeaf) {
+            n = n.child[n.find(nk, k)];
+        }
+        return n;
+    } // leafFor
+
+    /**
+     * ******************************************************************************
+     * Given the key, return the row id of its tuple, or -1 if not found.
+     *
+     * @param key the key used for look up
+     * @return the row id
+     */
+    public int getRow(KeyType key) {
+        var nk = normalize(key);
+        var n = leafFor(nk, key);
+        var i = n.findEq(nk, key);
+        return (i >= 0) ? n.row[i] : -1;
+    } // getRow
+
+    public Comparable[] get(Object key) {
+        var r = getRow((KeyType) key);
+        return (r >= 0) ? rows.get(r) : null;
+    } // get
+
+    public boolean containsKey(Object key) {
+        return getRow((KeyType) key) >= 0;
+    }
+
+    /**
+     * ******************************************************************************
+     * Return a set view of the entries in key order; iteration walks the
+     * linked leaves.
+     *
+     * @return the set view of the map
+     */
+    public Set<Map.Entry<KeyType, Comparable[]>> entrySet() {
+        return new AbstractSet<>() {
+            public Iterator<Map.Entry<KeyType, Comparable[]>> iterator() {
+                return new Iterator<>() {
+                    private Node n = firstLeaf;                       // leaf holding the next entry
+                    private int i = 0;                                // position of the next entry in n
+
+                    public boolean hasNext() {
+                        while (n != null && i >= n.keys) {
+                            n = n.next;
+                            i = 0;
+                        } // while
+                        return n != null;
+                    } // hasNext
+
+                    public Map.Entry<KeyType, Comparable[]> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        var en = new AbstractMap.SimpleImmutableEntry<>(keyAt(n, i), rows.get(n.row[i]));
+                        i += 1;
+                        return en;
+                    } // next
+                };
+            } // iterator
+
+            public int size() {
+                return kCount;
+            }
+        };
+    } // entrySet
+
+//-----------------------------------------------------------------------------------
+// Put key-row pairs into the B+Tree
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Put the key and the row id of its tuple in the B+Tree, replacing the row
+     * id of an existing key.
+     *
+     * @param key the key to insert
+     * @param row the row id of its tuple
+     * @return the previous row id for this key, or -1
+     */
+    public int put(KeyType key, int row) {
+        var nk = normalize(key);
+        var n = leafFor(nk, key);                                     // replace in place if present
+        var i = n.findEq(nk, key);
+        if (i >= 0) {
+            var old = n.row[i];
+            n.row[i] = row;
+            return old;
+        } // if
+
+        kCount += 1;
+        var rt = insert(nk, key, row, root);
+        if (rt != null) {                                             // root split => grow a new root
+            var nr = new Node(false);
+            nr.keys = 1;
+            nr.norm[0] = upNorm;
+            if (!exact) {
+                nr.full[0] = upFull;
+            }
+            nr.child[0] = root;
+            nr.child[1] = rt;
+            root = nr;
+        } // if
+        return -1;
+    } // put
+
+    /**
+     * ******************************************************************************
+     * Put the key and tuple in the index, which must be one of the table's
+     * tuples. Its row id is found without a search when it is the last row (a
+     * tuple just inserted) or the next row in order (rows indexed in order).
+     *
+     * @param key the key to insert
+     * @param tuple the tuple (one of the table's tuples)
+     * @return the previous tuple for this key, or null
+     */
+    public Comparable[] put(KeyType key, Comparable[] tuple) {
+        var old = put(key, rowOf(tuple));
+        return (old >= 0) ? rows.get(old) : null;
+    } // put
+
+    /**
+     * ******************************************************************************
+     * Return the row id of tuple in rows.
+     */
+    private int rowOf(Comparable[] tuple) {
+        var last = rows.size() - 1;
+        if (last >= 0 && rows.get(last) == tuple) {
+            return last;
+        }
+        if (kCount < rows.size() && rows.get(kCount) == tuple) {
+            return kCount;
+        }
+        if (rowOf == null || rowOf.get(tuple) == null) {
+            rowOf = IndexSnapshot.rowIds(rows);
+        }
+        var r = rowOf.get(tuple);
+        if (r == null) {
+            throw new IllegalArgumentException("error: SoaBpTreeMap values must be the table's tuples");
+        }
+        return r;
+    } // rowOf
+
+    /**
+     * ******************************************************************************
+     * Recursive helper for inserting key into the sub-tree rooted at n. Return
+     * the new right sibling of n if n split (the divider key is left in upNorm
+     * and upFull), else null.
+     */
+    private Node insert(long nk, KeyType k, int row, Node n) {
+        if (n.isLeaf) {
+            var ip = n.find(nk, k);
+            n.addKey(ip, nk, k);
+            n.row[ip] = row;
+            if (n.keys < order) {
+                return null;
+            }
+            var rt = n.split();
+            upNorm = rt.norm[0];                                      // smallest right
+            upFull = exact ? null : rt.full[0];
+            return rt;
+        } // if
+
+        var ip = n.find(nk, k);
+        var rt = insert(nk, k, row, n.child[ip]);
+        if (rt == null) {
+            return null;
+        }
+        n.addKey(ip, upNorm, upFull);
+        n.child[ip + 1] = rt;
+        if (n.keys < order) {
+            return null;
+        }
+        var mid = halfp - 1;                                          // middle key goes up
+        var midNorm = n.norm[mid];
+        var midFull = exact ? null : n.full[mid];
+        var nrt = n.split();
+        upNorm = midNorm;
+        upFull = midFull;
+        return nrt;
+    } // insert
+
+//-----------------------------------------------------------------------------------
+// Remove keys and renumber rows
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Remove the key from the B+Tree (the leaf keeps its place even when it
+     * empties).
+     *
+     * @param key the key to remove
+     * @return the tuple removed, or null if the key was not found
+     */
+    public Comparable[] remove(Object key) {
+        var k = (KeyType) key;
+        var nk = normalize(k);
+        var n = leafFor(nk, k);
+        var i = n.findEq(nk, k);
+        if (i < 0) {
+            return null;
+        }
+        var old = rows.get(n.row[i]);
+        var m = n.keys - i - 1;
+        System.arraycopy(n.norm, i + 1, n.norm, i, m);
+        System.arraycopy(n.row, i + 1, n.row, i, m);
+        if (!exact) {
+            System.arraycopy(n.full, i + 1, n.full, i, m);
+            n.full[n.keys - 1] = null;
+        }
+        n.keys -= 1;
+        kCount -= 1;
+        return old;
+    } // remove
+
+    /**
+     * ******************************************************************************
+     * Renumber the row ids after the rows in deleted were removed from the
+     * table's tuples: every row id moves down by the number of deleted ids below
+     * it (the deleted rows' keys have already been removed).
+     *
+     * @param deleted the removed row ids, in ascending order
+     */
+    public void removeRows(int[] deleted) {
+        rowOf = null;
+        if (deleted.length == 0) {
+            return;
+        }
+        for (var n = firstLeaf; n != null; n = n.next) {
+            for (var i = 0; i < n.keys; i++) {
+                var below = Arrays.binarySearch(deleted, n.row[i]);
+                n.row[i] -= (below >= 0) ? below : -below - 1;
+            } // for
+        } // for
+    } // removeRows
+
+    /**
+     * ******************************************************************************
+     * Remove all the keys from the B+Tree map.
+     */
+    public void clear() {
+        reset();
+    } // clear
+
+    /**
+     * ******************************************************************************
+     * Empty the map, leaving a single empty leaf as root. The constructor calls
+     * this rather than the overridable clear.
+     */
+    private void reset() {
+        root = new Node(true);
+        firstLeaf = root;
+        kCount = 0;
+        rowOf = null;
+    } // reset
+
+//-----------------------------------------------------------------------------------
+// Main method for measuring select by key against BpTreeMap
+//-----------------------------------------------------------------------------------
+    /**
+     * ******************************************************************************
+     * Return the heap in use (bytes) after asking for garbage collection.
+     */
+    private static long usedHeap() {
+        var rt = Runtime.getRuntime();
+        for (var i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    } // usedHeap
+
+    /**
+     * ******************************************************************************
+     * The main method compares select by key (get (KeyType)) on a BpTreeMap
+     * <KeyType, Comparable []> index and a SoaBpTreeMap over the same tuples, for
+     * Integer producerNo keys and String studioName keys, at 1M keys (and more
+     * when args[0] says so). Both trees have order 32. Heap used by each index
+     * and the average time of a lookup (about half the probes hit) are printed;
+     * the first of six iterations is skipped (JIT warm up).
+     *
+     * @param args the command-line arguments (args[0] gives number of keys)
+     */
+    public static void main(String[] args) {
+        var n = (args.length == 1) ? Integer.parseInt(args[0]) : 1_000_000;
+        var order = ORDER;
+        var rng = new Random(42);
+
+        var tuples = new ArrayList<Comparable[]>(n);
+        for (var i = 0; i < n; i++) {
+            var k = (int) ((i * 2654435761L) & 0x3FFFFFFF) * 2;      // distinct, in scrambled order
+            tuples.add(new Comparable[]{k, "studioName" + k, "address" + i, i % 1000});
+        }
+
+        for (var col : new int[]{0, 1}) {
+            var probes = new KeyType[100_000];
+            for (var i = 0; i < probes.length; i++) {
+                var t = tuples.get(rng.nextInt(n));
+                probes[i] = (i % 2 == 0) ? new KeyType(t[col])
+                        : new KeyType(col == 0 ? (Comparable) ((Integer) t[0] + 1) : (Comparable) (t[1] + "x"));
+            } // for
+
+            var h0 = usedHeap();
+            var bpTree = new BpTreeMap<KeyType, Comparable[]>(KeyType.class, Comparable[].class, order);
+            for (var t : tuples) {
+                bpTree.put(new KeyType(t[col]), t);
+            }
+            var bpBytes = usedHeap() - h0;
+
+            h0 = usedHeap();
+            var soaTree = new SoaBpTreeMap(new Class[]{col == 0 ? Integer.class : String.class}, tuples, order);
+            for (var row = 0; row < n; row++) {
+                soaTree.put(new KeyType(tuples.get(row)[col]), row);
+            }
+            var soaBytes = usedHeap() - h0;
+
+            var bpNs = 0L;
+            var soaNs = 0L;
+            for (var it = 0; it < 6; it++) {
+                var t0 = nanoTime();
+                for (var p : probes) {
+                    bpTree.get(p);
+                }
+                var t1 = nanoTime();
+                for (var p : probes) {
+                    soaTree.get(p);
+                }
+                var t2 = nanoTime();
+                if (it > 0) {
+                    bpNs += t1 - t0;
+                    soaNs += t2 - t1;
+                }
+            } // for
+            for (var p : probes) {                                    // both find the same tuples
+                if (bpTree.get(p) != soaTree.get(p)) {
+                    throw new IllegalStateException("error: lookups differ for " + p);
+                }
+            } // for
+
+            out.println(n + (col == 0 ? " Integer keys" : " String keys") + ", order " + order);
+            out.println("BpTreeMap <KeyType, Comparable []>: " + bpBytes / n + " bytes/key, "
+                    + bpNs / (5L * probes.length) + " ns/select");
+            out.println("SoaBpTreeMap:                      " + soaBytes / n + " bytes/key, "
+                    + soaNs / (5L * probes.length) + " ns/select");
+            bpTree = null;
+            soaTree = null;
+        } // for
+    } // main
+
+} // SoaBpTreeMap
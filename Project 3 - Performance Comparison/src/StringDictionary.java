@@ -0,0 +1,123 @@
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * **********************************************************************************
+ * A dictionary of the distinct values of a String column. Each value is given an
+ * int code, its position in the order values were first seen, so the column can
+ * hold codes (4 bytes a row) instead of a String reference per row, and values
+ * repeated across rows are stored once. Two rows of columns sharing a dictionary
+ * hold equal values exactly when they hold equal codes.
+ * <p>
+ * The dictionary is also order-preserving through ranks: rank (c) is the position
+ * of code c's value in sorted order, so a range predicate on the values becomes an
+ * int comparison of ranks against a bound found by binary search (see ranks and
+ * bound). The ranks are rebuilt lazily, once per batch of new values.
+ */
+final class StringDictionary implements Serializable {
+
+    private final ArrayList<String> values = new ArrayList<>();      // value of each code
+    private final HashMap<String, Integer> codes = new HashMap<>();   // code of each value
+    private transient int[] rank;                                     // rank of each code, null if stale
+    private transient String[] sorted;                                // the values in rank order
+
+    /**
+     * **********************************************************************************
+     * Return the code for value s, adding s to the dictionary if it is new.
+     *
+     * @param s the value to encode
+     * @return its code
+     */
+    int encode(String s) {
+        var c = codes.get(s);
+        if (c == null) {
+            c = values.size();
+            values.add(s);
+            codes.put(s, c);
+            rank = null;
+        } // if
+        return c;
+    }
+
+    /**
+     * **********************************************************************************
+     * Return the code for value s, or -1 if s is not in the dictionary (so no row
+     * holds it).
+     *
+     * @param s the value to look up
+     * @return its code or -1
+     */
+    int code(String s) {
+        var c = codes.get(s);
+        return (c == null) ? -1 : c;
+    }
+
+    /**
+     * **********************************************************************************
+     * Return the value for code c.
+     *
+     * @param c the code
+     * @return the value
+     */
+    String decode(int c) {
+        return values.get(c);
+    }
+
+    /**
+     * **********************************************************************************
+     * Return the number of distinct values (codes are 0 until size - 1).
+     */
+    int size() {
+        return values.size();
+    }
+
+    /**
+     * **********************************************************************************
+     * Return the rank of every code: ranks ()[c] < ranks ()[d] exactly when
+     * decode (c) < decode (d). The array is shared, so callers must not modify it.
+     *
+     * @return the ranks indexed by code
+     */
+    int[] ranks() {
+        if (rank == null) {
+            var n = values.size();
+            var order = new Integer[n];
+            for (var c = 0; c < n; c++) {
+                order[c] = c;
+            }
+            Arrays.sort(order, (c, d) -> values.get(c).compareTo(values.get(d)));
+            rank = new int[n];
+            sorted = new String[n];
+            for (var r = 0; r < n; r++) {
+                rank[order[r]] = r;
+                sorted[r] = values.get(order[r]);
+            }
+        } // if
+        return rank;
+    } // ranks
+
+    /**
+     * **********************************************************************************
+     * Return the number of values less than s (or, when inclusive, less than or
+     * equal to s), so for any code c: decode (c) < s iff ranks ()[c] < bound (s,
+     * false) and decode (c) <= s iff ranks ()[c] < bound (s, true).
+     *
+     * @param s the value to bound (need not be in the dictionary)
+     * @param inclusive whether values equal to s are counted
+     * @return the rank bound
+     */
+    int bound(String s, boolean inclusive) {
+        ranks();
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            var mid = (lo + hi) >>> 1;
+            var cmp = sorted[mid].compareTo(s);
+            if (cmp < 0 || inclusive && cmp == 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        } // while
+        return lo;
+    } // bound
+}
@@ -26,9 +26,9 @@ import java.lang.reflect.Array;
  * **************************************************************************************
  * The Table class implements relational database tables (including attribute
  * names, domains and a list of tuples. Five basic relational algebra operators
- * are provided: project, select, union, minus and join. The insert data
- * manipulation operator is also provided. Missing are update and delete data
- * manipulation operators.
+ * are provided: project, select, union, minus and join. The insert and delete
+ * data manipulation operators are also provided. Missing is the update data
+ * manipulation operator.
  */
 public class Table
         implements Serializable {
@@ -39,15 +39,36 @@ public class Table
     private static final String DIR = "store" + File.separator;
 
     /**
-     * Filename extension for database files
+     * Filename extension for database files (tables saved before the table file
+     * format, still read by load)
      */
     private static final String EXT = ".dbf";
 
+    /**
+     * Filename extension for table files (see TableFile)
+     */
+    private static final String TBL = ".tbl";
+
+    /**
+     * Filename extension for paged index files
+     */
+    private static final String IDX = ".idx";
+
+    /**
+     * The file extension for index snapshot files.
+     */
+    private static final String SNAP = ".snap";
+
     /**
      * Counter for naming temporary tables.
      */
     private static int count = 0;
 
+    /**
+     * Number of outer tuples probed together when i_join uses BpTreeMap.getAll.
+     */
+    private static final int JOIN_BATCH = 4096;
+
     /**
      * Table name.
      */
@@ -79,6 +100,16 @@ public class Table
      */
     private Map<KeyType, Comparable[]> index;
 
+    /**
+     * Optional Bloom filter on the primary key values, checked before select
+     * (KeyType) and i_join probe the primary index, and its statistics: probes
+     * checked, probes it answered (key absent) and false positives. Not saved.
+     */
+    private transient BloomFilter bloom;
+    private transient long bloomProbes;
+    private transient long bloomSaved;
+    private transient long bloomFalsePositives;
+
     private final HashSet<List<Comparable>> uniqueKeysSet = new HashSet<List<Comparable>>();
 
     /**
@@ -86,11 +117,44 @@ public class Table
      */
     private ArrayList<Index> alternate_indexes;
 
+    /**
+     * The alternate indexes (key attributes, uniqueness) as of the last save, so
+     * load can reattach them.
+     */
+    private ArrayList<IndexSpec> saved_indexes;
+
+    private record IndexSpec(String[] index_key, boolean isUnique) implements Serializable {
+    }
+
+    /**
+     * Random stamp of the last save, written into its index snapshots so load
+     * never reads a snapshot left over from an older save.
+     */
+    private long saveStamp;
+
+    /**
+     * The dictionary of each String column (null for the other domains) and the
+     * int codes of its values for the first coded tuples, so equality selects and
+     * joins on String attributes compare codes. Built on first use and extended by
+     * insert; not saved (load re-encodes lazily).
+     * <p>
+     * The tuples keep their Strings, so the encoding costs a code (4 bytes) per tuple
+     * and String column plus a dictionary entry (about 60 bytes) per distinct value.
+     * It pays for itself through insert storing the dictionary's String for a value
+     * already seen instead of the caller's: DictionaryComparisonScript measures 11 to
+     * 24 bytes per tuple less on movie (genre and studioName repeat) and 130 more on
+     * movieExec (name and address never repeat), which encodeStrings (false) avoids.
+     */
+    private transient StringDictionary[] dict;
+    private transient int[][] code;
+    private transient int coded;
+    private transient boolean noDictionary;                           // true after encodeStrings (false)
+
     /**
      * The supported map types.
      */
     private enum MapType {
-        NO_MAP, TREE_MAP, HASH_MAP, LINHASH_MAP, BPTREE_MAP
+        NO_MAP, TREE_MAP, HASH_MAP, LINHASH_MAP, BPTREE_MAP, BLINKTREE_MAP, INTBPTREE_MAP, PREFIX_BPTREE_MAP, BETREE_MAP, SOA_BPTREE_MAP, PAGED_BPTREE_MAP
     }
 
     /**
@@ -100,9 +164,18 @@ public class Table
 
     /**
      * **********************************************************************************
-     * Make a map (index) given the MapType.
+     * Make a map (index) given the MapType. INTBPTREE_MAP gives an IntBpTreeMap
+     * when the map key is a single Integer, Short or Byte attribute, and a
+     * BpTreeMap otherwise. PREFIX_BPTREE_MAP gives a PrefixBpTreeMap, whose
+     * leaves store keys prefix-compressed. BETREE_MAP gives a BeTreeMap, which
+     * buffers inserts in its internal nodes and applies them in batches.
+     * SOA_BPTREE_MAP gives a SoaBpTreeMap, whose nodes keep normalized keys in a
+     * long [] and row ids into this table's tuples in an int []. PAGED_BPTREE_MAP creates (or empties) the table's
+     * index file for these attributes in the storage directory.
+     *
+     * @param mapKey the attributes making up the map's key
      */
-    private static Map<KeyType, Comparable[]> makeMap() {
+    private Map<KeyType, Comparable[]> makeMap(String[] mapKey) {
         return switch (mType) {
             case NO_MAP ->
                 null;
@@ -113,11 +186,56 @@ public class Table
             //case LINHASH_MAP -> new LinHashMap <> (KeyType.class, Comparable [].class);
             case BPTREE_MAP ->
                 new BpTreeMap<>(KeyType.class, Comparable[].class);
+            case BLINKTREE_MAP ->
+                new BLinkTreeMap<>();
+            case INTBPTREE_MAP -> {
+                var keyDomain = extractDom(match(mapKey), domain);
+                if (keyDomain.length == 1 && (keyDomain[0] == Integer.class
+                        || keyDomain[0] == Short.class || keyDomain[0] == Byte.class)) {
+                    yield new IntBpTreeMap<>(keyDomain[0], 5);
+                }
+                yield new BpTreeMap<>(KeyType.class, Comparable[].class);
+            }
+            case PREFIX_BPTREE_MAP ->
+                new PrefixBpTreeMap<>();
+            case BETREE_MAP ->
+                new BeTreeMap<>();
+            case SOA_BPTREE_MAP ->
+                new SoaBpTreeMap(extractDom(match(mapKey), domain), tuples);
+            case PAGED_BPTREE_MAP -> {
+                var paged = new PagedBpTreeMap(indexFile(mapKey));
+                paged.clear();                                        // a new table starts with an empty index
+                yield paged;
+            }
             default ->
                 null;
         }; // switch
     } // makeMap
 
+    /**
+     * **********************************************************************************
+     * Return the path of this table's paged index file on the given attributes.
+     *
+     * @param mapKey the attributes making up the index's key
+     */
+    private String indexFile(String[] mapKey) {
+        return DIR + name + "_" + String.join("_", mapKey) + IDX;
+    } // indexFile
+
+    /**
+     * **********************************************************************************
+     * Return the snapshot file of the primary index (spec == null) or of an
+     * alternate index.
+     *
+     * @param spec the alternate index, or null
+     */
+    private String snapshotFile(IndexSpec spec) {
+        if (spec == null) {
+            return DIR + name + SNAP;
+        }
+        return DIR + name + "_" + String.join("_", spec.index_key()) + (spec.isUnique() ? "_unique" : "") + SNAP;
+    } // snapshotFile
+
     /**
      * **********************************************************************************
      * Concatenate two arrays of type T to form a new wider array.
@@ -152,7 +270,7 @@ public class Table
         domain = _domain;
         key = _key;
         tuples = new ArrayList<>();
-        index = makeMap();
+        index = makeMap(key);
         out.println(Arrays.toString(domain));
     } // constructor
 
@@ -174,7 +292,7 @@ public class Table
         domain = _domain;
         key = _key;
         tuples = _tuples;
-        index = makeMap();
+        index = makeMap(key);
     } // constructor
 
     /**
@@ -192,6 +310,64 @@ public class Table
         out.println(STR."DDL> create table \{name} (\{attributes})");
     } // constructor
 
+    /**
+     * **********************************************************************************
+     * Construct an empty table from the raw string specifications, keeping its
+     * tuples off the heap in an OffHeapRowStore when offHeap is true, so the
+     * garbage collector does not trace a large table's rows. The tuples read from
+     * such a table are copies made on each get (the primary index still holds the
+     * inserted tuples unless it is NO_MAP or SOA_BPTREE_MAP, which keeps row ids).
+     * Its memory is freed by close.
+     * <p>
+     * #usage new Table ("movie", "title year", "String Integer", "title", true)
+     *
+     * @param _name the name of the relation
+     * @param attributes the string containing attributes names
+     * @param domains the string containing attribute domains (data types)
+     * @param _key the primary key
+     * @param offHeap whether to keep the tuples in an OffHeapRowStore
+     */
+    public Table(String _name, String attributes, String domains, String _key, boolean offHeap) {
+        this(_name, attributes.split(" "), findClass(domains.split(" ")), _key.split(" "),
+                offHeap ? new OffHeapRowStore(findClass(domains.split(" "))) : new ArrayList<>());
+
+        out.println(STR."DDL> create table \{name} (\{attributes})");
+    } // constructor
+
+    /**
+     * **********************************************************************************
+     * Construct a table from a table read from a table file: its schema, its tuples
+     * (each decoded once) and what save kept in the extra bytes (the save stamp and
+     * the alternate indexes). The indexes are attached afterwards by
+     * restoreIndexes.
+     *
+     * @param rows the table in an open table file
+     */
+    private Table(TableFile.Rows rows) throws IOException {
+        name = rows.name();
+        attribute = rows.attribute();
+        domain = rows.domain();
+        key = rows.key();
+        tuples = new ArrayList<>(rows);
+        for (var tup : tuples) {
+            uniqueKeysSet.add(Arrays.asList(extract(tup, key)));
+        }
+
+        var dis = new DataInputStream(new ByteArrayInputStream(rows.extra()));
+        saveStamp = dis.readLong();
+        var specs = dis.readInt();
+        if (specs >= 0) {
+            saved_indexes = new ArrayList<>();
+            for (var k = 0; k < specs; k++) {
+                var index_key = new String[dis.readShort()];
+                for (var j = 0; j < index_key.length; j++) {
+                    index_key[j] = dis.readUTF();
+                }
+                saved_indexes.add(new IndexSpec(index_key, dis.readBoolean()));
+            } // for
+        } // if
+    } // constructor
+
     //----------------------------------------------------------------------------------
     // Public Methods
     //----------------------------------------------------------------------------------
@@ -215,8 +391,7 @@ public class Table
         List<Comparable[]> rows = new ArrayList<>();
 
         if (mType != MapType.NO_MAP) { // If the table has an index
-            for (Map.Entry<KeyType, Comparable[]> entry : index.entrySet()) {
-                Comparable[] temp_value = entry.getValue();
+            for (Comparable[] temp_value : scanIndex().values()) { // a snapshot's values () is lazy, so nothing is copied
                 if (temp_value != null) {
                     rows.add(extract(temp_value, attrs));
                 }
@@ -250,6 +425,9 @@ public class Table
      * **********************************************************************************
      * Select the tuples satisfying the given simple condition on
      * attributes/constants compared using an <op> ==, !=, <, <=, >, >=.
+     * When the condition is on a single attribute primary key and the index is
+     * ordered (TREE_MAP, BPTREE_MAP, BETREE_MAP) and holds all the tuples, the
+     * matching range is read from the index instead of scanning the table.
      * <p>
      * #usage movie.select ("year == 1977")
      *
@@ -264,6 +442,80 @@ public class Table
         var token = condition.split(" ");
         var colNo = col(token[0]);
 
+        if (key.length == 1 && token[0].equals(key[0]) && indexed() && index instanceof BeTreeMap<KeyType, Comparable[]> beTree) {
+            var k = new KeyType(toDomain(colNo, token[2]));
+            var range = switch (token[1]) {
+                case "==" ->
+                    beTree.range(k, true, k, true);
+                case "<" ->
+                    beTree.range(null, false, k, false);
+                case "<=" ->
+                    beTree.range(null, false, k, true);
+                case ">" ->
+                    beTree.range(k, false, null, false);
+                case ">=" ->
+                    beTree.range(k, true, null, false);
+                default ->
+                    null;                                               // != is not a range, scan below
+            }; // switch
+            if (range != null) {
+                rows.addAll(range);
+                return new Table(name + count++, attribute, domain, key, rows);
+            }
+        } // if
+
+        if (key.length == 1 && token[0].equals(key[0]) && indexed() && index instanceof NavigableMap<KeyType, Comparable[]> nav) {
+            var k = new KeyType(toDomain(colNo, token[2]));
+            var range = switch (token[1]) {
+                case "==" ->
+                    nav.subMap(k, true, k, true);
+                case "<" ->
+                    nav.headMap(k, false);
+                case "<=" ->
+                    nav.headMap(k, true);
+                case ">" ->
+                    nav.tailMap(k, false);
+                case ">=" ->
+                    nav.tailMap(k, true);
+                default ->
+                    null;                                               // != is not a range, scan below
+            }; // switch
+            if (range != null) {
+                rows.addAll(range.values());
+                return new Table(name + count++, attribute, domain, key, rows);
+            }
+        } // if
+
+        if (domain[colNo] == String.class && !noDictionary) {         // scan the codes instead of the Strings
+            encode();
+            var codes = code[colNo];
+            switch (token[1]) {
+                case "==", "!=" -> {
+                    var c = dict[colNo].code(token[2]);                 // -1 => no tuple holds the value
+                    var eq = token[1].equals("==");
+                    for (var i = 0; i < coded; i++) {
+                        if (codes[i] >= 0 && (codes[i] == c) == eq) {
+                            rows.add(tuples.get(i));
+                        }
+                    } // for
+                    return new Table(name + count++, attribute, domain, key, rows);
+                }
+                case "<", "<=", ">", ">=" -> {
+                    var rank = dict[colNo].ranks();                     // order-preserving: compare ranks
+                    var bound = dict[colNo].bound(token[2], token[1].equals("<=") || token[1].equals(">"));
+                    var below = token[1].startsWith("<");
+                    for (var i = 0; i < coded; i++) {
+                        if (codes[i] >= 0 && (rank[codes[i]] < bound) == below) {
+                            rows.add(tuples.get(i));
+                        }
+                    } // for
+                    return new Table(name + count++, attribute, domain, key, rows);
+                }
+                default -> {
+                }
+            } // switch
+        } // if
+
         for (var t : tuples) {
             if (satifies(t, colNo, token[1], token[2])) {
                 rows.add(t);
@@ -290,26 +542,7 @@ public class Table
     private boolean satifies(Comparable[] t, int colNo, String op, String value) {
         var t_A = t[colNo];
         out.println(STR."satisfies: \{t_A} \{op} \{value}");
-        var valt = switch (domain[colNo].getSimpleName()) {      // type converted
-            case "Byte" ->
-                Byte.valueOf(value);
-            case "Character" ->
-                value.charAt(0);
-            case "Double" ->
-                Double.valueOf(value);
-            case "Float" ->
-                Float.valueOf(value);
-            case "Integer" ->
-                Integer.valueOf(value);
-            case "Long" ->
-                Long.valueOf(value);
-            case "Short" ->
-                Short.valueOf(value);
-            case "String" ->
-                value;
-            default ->
-                value;
-        }; // switch
+        var valt = toDomain(colNo, value);                        // type converted
         var comp = t_A.compareTo(valt);
 
         return switch (op) {
@@ -330,6 +563,39 @@ public class Table
         }; // switch
     } // satifies
 
+    /**
+     * **********************************************************************************
+     * Convert the string value to the domain type of column colNo.
+     * <p>
+     * #usage toDomain (1, "1980")
+     *
+     * @param colNo the attribute's column number
+     * @param value the value as a string
+     * @return the value converted to the column's domain
+     */
+    private Comparable toDomain(int colNo, String value) {
+        return switch (domain[colNo].getSimpleName()) {
+            case "Byte" ->
+                Byte.valueOf(value);
+            case "Character" ->
+                value.charAt(0);
+            case "Double" ->
+                Double.valueOf(value);
+            case "Float" ->
+                Float.valueOf(value);
+            case "Integer" ->
+                Integer.valueOf(value);
+            case "Long" ->
+                Long.valueOf(value);
+            case "Short" ->
+                Short.valueOf(value);
+            case "String" ->
+                value;
+            default ->
+                value;
+        }; // switch
+    } // toDomain
+
     /**
      * **********************************************************************************
      * Select the tuples satisfying the given key predicate (key = value). Use
@@ -347,7 +613,7 @@ public class Table
         List<Comparable[]> rows = new ArrayList<>();
 
         if (mType != MapType.NO_MAP) { // If the table has an index
-            var t = index.get(keyVal); // Get the tuple if it exists s.t. key = value
+            var t = mayContain(keyVal) ? checkMiss(index.get(keyVal)) : null; // Get the tuple if it exists s.t. key = value
             if (t != null) {
                 rows.add(t); // If the tuple exists add it to rows
             }
@@ -378,13 +644,14 @@ public class Table
 
         if (table2.mType != MapType.NO_MAP && this.mType != MapType.NO_MAP) { // If both tables have an index
 
-            for (var t : table2.index.values()) { // add all tuples from the second table
+            var index2 = table2.scanIndex();
+            for (var t : index2.values()) { // add all tuples from the second table
                 rows.add(t);
             }
-            for (var k : this.index.keySet()) { // add all tuples from the first table
+            for (var e : this.scanIndex().entrySet()) { // add all tuples from the first table
 
-                if (!table2.index.containsKey(k)) { // If the tuple doesnt exist in the second table, add it to the rows
-                    rows.add(this.index.get(k));
+                if (!index2.containsKey(e.getKey())) { // If the tuple doesnt exist in the second table, add it to the rows
+                    rows.add(e.getValue());
                 }
             }
             return new Table(name + count++, attribute, domain, key, rows);
@@ -471,6 +738,11 @@ public class Table
         var t_attrs_columns = this.match(t_attrs);
         var u_attrs_columns = table2.match(u_attrs);
 
+        //String attributes are compared by dictionary code (null elsewhere)
+        var codes = joinCodes(t_attrs_columns, table2, u_attrs_columns);
+        var t_codes = codes[0];
+        var u_codes = codes[1];
+
         //Nested loop, checks both lists for matches, and if matched, stores it in rows variable as concatenated Comparable array
         for (int i = 0; i < this.tuples.size(); i++) {
             Comparable[] tuple_t = this.tuples.get(i);
@@ -478,7 +750,8 @@ public class Table
                 Comparable[] tuple_u = table2.tuples.get(j);
                 boolean matching = true;
                 for (int k = 0; k < t_attrs_columns.length; k++) {
-                    if (!(tuple_t[t_attrs_columns[k]].compareTo(tuple_u[u_attrs_columns[k]]) == 0)) {
+                    if (t_codes[k] != null ? t_codes[k][i] != u_codes[k][j]
+                            : !(tuple_t[t_attrs_columns[k]].compareTo(tuple_u[u_attrs_columns[k]]) == 0)) {
                         matching = false;
                         break;
                     }
@@ -589,12 +862,29 @@ public class Table
 
         if (table2.mType != MapType.NO_MAP) { // if table 2 has index
 
-            for (var t : tuples) { // For every tuple in this table
-                var keyVal = new KeyType(extract(t, t_attrs)); // get the key value wanted 
-                Index table_2_specified_index = table2.create_index(u_attrs, false);
-                var u = table_2_specified_index.index_lookup(keyVal); // check if there are matches in table 2
-                if (u != null) { // if there are matches
-                    rows.add(concat(t, u)); // add concatenated tuples to rows
+            if (Arrays.equals(u_attrs, table2.key) && table2.indexed()) { // joining on table 2's primary key: probe its index
+                if (table2.index instanceof BpTreeMap<KeyType, Comparable[]> bpTree) {
+                    batch_probe(t_attrs, table2, bpTree, rows); // a B+Tree is probed in sorted batches
+                } else {
+                    for (var t : tuples) {
+                        var keyVal = new KeyType(extract(t, t_attrs));
+                        var u = table2.mayContain(keyVal) ? table2.checkMiss(table2.index.get(keyVal)) : null;
+                        if (u != null) {
+                            rows.add(concat(t, u));
+                        }
+                    }
+                }
+            } else {
+                Index table_2_specified_index = table2.create_index(u_attrs, false); // non-unique: every match is kept
+                var u_tuples = table2.tuples;
+                for (var t : tuples) { // For every tuple in this table
+                    var keyVal = new KeyType(extract(t, t_attrs)); // get the key value wanted 
+                    var u_rows = table_2_specified_index.index_lookup_rows(keyVal); // row ids of the matches in table 2
+                    if (u_rows != null) { // if there are matches
+                        for (var i = 0; i < u_rows.size(); i++) {
+                            rows.add(concat(t, u_tuples.get(u_rows.get(i)))); // add concatenated tuples to rows
+                        }
+                    }
                 }
             }
 
@@ -622,6 +912,49 @@ public class Table
 
     } // i_join
 
+    /**
+     * **********************************************************************************
+     * Probe table 2's primary key B+Tree for the tuples of this table, JOIN_BATCH
+     * at a time: each batch's keys are sorted and looked up with one getAll walk
+     * of the tree, and the matches are emitted in this table's tuple order. Keys
+     * that table 2's Bloom filter (if any) shows are absent are left out of the walk.
+     *
+     * @param t_attrs the attributes of this table matching table 2's key
+     * @param table2 the table probed
+     * @param index2 table 2's primary index
+     * @param rows the list the joined tuples are added to
+     */
+    private void batch_probe(String[] t_attrs, Table table2, BpTreeMap<KeyType, Comparable[]> index2,
+            List<Comparable[]> rows) {
+        for (var from = 0; from < tuples.size(); from += JOIN_BATCH) {
+            var batch = tuples.subList(from, Math.min(from + JOIN_BATCH, tuples.size()));
+            var keys = new KeyType[batch.size()];
+            var order = new ArrayList<Integer>(keys.length);
+            for (var i = 0; i < keys.length; i++) {
+                keys[i] = new KeyType(extract(batch.get(i), t_attrs));
+                if (table2.mayContain(keys[i])) {
+                    order.add(i);
+                }
+            } // for
+            order.sort((a, b) -> keys[a].compareTo(keys[b]));
+
+            var sorted = new ArrayList<KeyType>(order.size());
+            for (var i : order) {
+                sorted.add(keys[i]);
+            }
+            var found = index2.getAll(sorted);
+            var matches = new Comparable[keys.length][];
+            for (var i = 0; i < order.size(); i++) {
+                matches[order.get(i)] = table2.checkMiss(found.get(i));
+            }
+            for (var i = 0; i < matches.length; i++) {
+                if (matches[i] != null) {
+                    rows.add(concat(batch.get(i), matches[i]));
+                }
+            } // for
+        } // for
+    } // batch_probe
+
     /**
      * **********************************************************************************
      * Join this table and table2 by performing an NATURAL JOIN. Tuples from
@@ -685,6 +1018,11 @@ public class Table
         var t_attrs_columns = this.match(common_attributes);
         var u_attrs_columns = table2.match(common_attributes);
 
+        //String attributes are compared by dictionary code (null elsewhere)
+        var codes = joinCodes(t_attrs_columns, table2, u_attrs_columns);
+        var t_codes = codes[0];
+        var u_codes = codes[1];
+
         //Nested loop, checks both lists for matches, and if matched, stores it in rows variable as concatenated Comparable array
         for (int i = 0; i < this.tuples.size(); i++) {
             Comparable[] tuple_t = this.tuples.get(i);
@@ -692,7 +1030,8 @@ public class Table
                 Comparable[] tuple_u = table2.tuples.get(j);
                 boolean matching = true;
                 for (int k = 0; k < t_attrs_columns.length; k++) {
-                    if (!(tuple_t[t_attrs_columns[k]].compareTo(tuple_u[u_attrs_columns[k]]) == 0)) {
+                    if (t_codes[k] != null ? t_codes[k][i] != u_codes[k][j]
+                            : !(tuple_t[t_attrs_columns[k]].compareTo(tuple_u[u_attrs_columns[k]]) == 0)) {
                         matching = false;
                         break;
                     }
@@ -757,14 +1096,27 @@ public class Table
                 );
             } else {
                 this.uniqueKeysSet.add(list);
+                tup = share(tup);                                       // a copy: the caller's tuple is left as is
                 tuples.add(tup);
+                if (bloom != null) {
+                    if (bloom.isOverCapacity()) {
+                        enableBloomFilter(bloom.getFpp());              // resize, keeping the false positive rate
+                    }
+                    bloom.add(new KeyType(keyVal));
+                }
             }
 
             if (mType != MapType.NO_MAP) {
-                index.put(new KeyType(keyVal), tup);
+                if (index instanceof BeTreeMap<KeyType, Comparable[]> beTree) {
+                    beTree.upsert(new KeyType(keyVal), tup);              // key is known to be new: a blind write
+                } else if (index instanceof SoaBpTreeMap soaTree) {
+                    soaTree.put(new KeyType(keyVal), tuples.size() - 1);  // by row id (off-heap tuples are copies)
+                } else {
+                    index.put(new KeyType(keyVal), tup);
+                }
                 if (this.alternate_indexes != null) {
                     for (Index ind : this.alternate_indexes) {
-                        ind.insertTuple(tup);
+                        ind.insertTuple(tup, tuples.size() - 1);
                     }
                 }
             }
@@ -774,6 +1126,242 @@ public class Table
         } // if
     } // insert
 
+    /**
+     * **********************************************************************************
+     * Delete the tuples satisfying the given predicate (Boolean function) from
+     * the table, removing them from the primary index and every alternate index
+     * as well.
+     * <p>
+     * #usage movie.delete (t -> t[movie.col("year")].equals (1977))
+     *
+     * @param predicate the check condition for tuples to delete
+     * @return the number of tuples deleted
+     */
+    public int delete(Predicate<Comparable[]> predicate) {
+        out.println(STR."DML> delete from \{name} where (\{predicate})");
+
+        var doomed = new BitSet();
+        for (var i = 0; i < tuples.size(); i++) {
+            var tup = tuples.get(i);
+            if (predicate.test(tup)) {
+                doomed.set(i);
+                unindex(tup);
+            }
+        } // for
+        var row = new int[1];
+        tuples.removeIf(t -> doomed.get(row[0]++));                  // by position: removeIf tests the rows in order
+        renumber(doomed.stream().toArray());
+        return doomed.cardinality();
+    } // delete
+
+    /**
+     * **********************************************************************************
+     * Delete the tuple with the given primary key value. Use the index (Map)
+     * to rule out an absent key when there is one. The row is located by its key
+     * value rather than by the tuple the index returns, since a PagedBpTreeMap
+     * returns copies of the tuples it stores.
+     * <p>
+     * #usage movieExec.delete (new KeyType (9999))
+     *
+     * @param keyVal the primary key value of the tuple to delete
+     * @return whether a tuple was deleted
+     */
+    public boolean delete(KeyType keyVal) {
+        out.println(STR."DML> delete from \{name} where key = \{keyVal}");
+
+        if (mType != MapType.NO_MAP && index.get(keyVal) == null) {
+            return false;
+        }
+        var cols = match(key);
+        var row = 0;
+        for (; row < tuples.size(); row++) {
+            var t = tuples.get(row);
+            var keyVals = new Comparable[cols.length];
+            for (var j = 0; j < cols.length; j++) {
+                keyVals[j] = t[cols[j]];
+            }
+            if (keyVal.equals(new KeyType(keyVals))) {
+                break;
+            }
+        } // for
+
+        if (row == tuples.size()) {
+            return false;
+        }
+        unindex(tuples.get(row));
+        tuples.remove(row);
+        renumber(new int[]{row});
+        return true;
+    } // delete
+
+    /**
+     * **********************************************************************************
+     * Remove tuple tup from the primary key set, the primary index and the
+     * alternate indexes (the tuple itself stays in tuples).
+     *
+     * @param tup the tuple being deleted
+     */
+    private void unindex(Comparable[] tup) {
+        var keyVal = extract(tup, key);
+        this.uniqueKeysSet.remove(Arrays.asList(keyVal));
+
+        if (mType != MapType.NO_MAP) {
+            index.remove(new KeyType(keyVal));
+            if (this.alternate_indexes != null) {
+                for (Index ind : this.alternate_indexes) {
+                    ind.removeTuple(tup);
+                }
+            }
+        } // if
+    } // unindex
+
+    /**
+     * **********************************************************************************
+     * Renumber the row ids held by indexes (a SoaBpTreeMap, non-unique alternate
+     * indexes) after the rows deleted were removed from tuples.
+     *
+     * @param deleted the removed row ids, in ascending order
+     */
+    private void renumber(int[] deleted) {
+        if (index instanceof SoaBpTreeMap soaTree) {
+            soaTree.removeRows(deleted);
+        }
+        if (dict != null && deleted.length > 0) {
+            var kept = 0;
+            for (int i = 0, d = 0; i < coded; i++) {
+                if (d < deleted.length && deleted[d] == i) {
+                    d++;
+                    continue;
+                }
+                for (var j = 0; j < dict.length; j++) {
+                    if (dict[j] != null) {
+                        code[j][kept] = code[j][i];
+                    }
+                } // for
+                kept++;
+            } // for
+            coded = kept;
+        } // if
+        if (this.alternate_indexes != null && deleted.length > 0) {
+            for (Index ind : this.alternate_indexes) {
+                ind.removeRows(deleted);
+            }
+        } // if
+    } // renumber
+
+    /**
+     * **********************************************************************************
+     * Bring the dictionary encoding up to date: give every String column a
+     * dictionary (on first use) and code the tuples added since the last call.
+     * The tuples themselves are not changed.
+     */
+    private void encode() {
+        if (dict == null) {
+            dict = new StringDictionary[domain.length];
+            code = new int[domain.length][];
+            for (var j = 0; j < domain.length; j++) {
+                if (domain[j] == String.class) {
+                    dict[j] = new StringDictionary();
+                    code[j] = new int[Math.max(16, tuples.size())];
+                }
+            } // for
+            coded = 0;
+        } // if
+        for (; coded < tuples.size(); coded++) {
+            var tup = tuples.get(coded);
+            for (var j = 0; j < dict.length; j++) {
+                if (dict[j] == null) {
+                    continue;
+                }
+                if (coded == code[j].length) {
+                    code[j] = Arrays.copyOf(code[j], 2 * coded);
+                }
+                if (tup[j] instanceof String s) {
+                    code[j][coded] = dict[j].encode(s);
+                } else {
+                    code[j][coded] = -1;                                // null matches nothing
+                }
+            } // for
+        } // for
+    } // encode
+
+    /**
+     * **********************************************************************************
+     * Return the tuple insert stores for tup: a copy holding the dictionary's
+     * instance of each String value, so rows repeating a value share one String,
+     * or tup itself when the table does not encode Strings. Its codes are added by
+     * the next encode.
+     *
+     * @param tup the tuple being inserted (left as is)
+     */
+    private Comparable[] share(Comparable[] tup) {
+        if (noDictionary) {
+            return tup;
+        }
+        encode();
+        var row = tup.clone();
+        for (var j = 0; j < dict.length; j++) {
+            if (dict[j] != null && row[j] instanceof String s) {
+                row[j] = dict[j].decode(dict[j].encode(s));
+            }
+        } // for
+        return row;
+    } // share
+
+    /**
+     * **********************************************************************************
+     * Return the codes of table2's String column colNo2 translated into the code
+     * space of this table's String column colNo, one per tuple of table2: equal to
+     * code [colNo][i] exactly when tuple i of this table holds the same value
+     * (values absent from this column get -2, matching no code). Each distinct
+     * value is looked up once.
+     *
+     * @param colNo the column of this table
+     * @param table2 the other table
+     * @param colNo2 the column of table2
+     * @return the translated codes
+     */
+    private int[] translate(int colNo, Table table2, int colNo2) {
+        table2.encode();
+        var dict2 = table2.dict[colNo2];
+        var map = new int[dict2.size()];
+        for (var c = 0; c < map.length; c++) {
+            var c1 = dict[colNo].code(dict2.decode(c));
+            map[c] = (c1 < 0) ? -2 : c1;
+        }
+        var codes2 = table2.code[colNo2];
+        var trans = new int[table2.coded];
+        for (var j = 0; j < trans.length; j++) {
+            trans[j] = (codes2[j] < 0) ? -2 : map[codes2[j]];
+        }
+        return trans;
+    } // translate
+
+    /**
+     * **********************************************************************************
+     * Return, for equi-joining columns cols of this table with columns cols2 of
+     * table2, the codes to compare instead of values: [0][k] holds this table's
+     * codes and [1][k] table2's translated ones when both columns k are Strings,
+     * and both are null otherwise (or when either table does not encode Strings).
+     *
+     * @param cols the join columns of this table
+     * @param table2 the other table
+     * @param cols2 the join columns of table2
+     * @return the code columns of both sides
+     */
+    private int[][][] joinCodes(int[] cols, Table table2, int[] cols2) {
+        var codes = new int[2][cols.length][];
+        for (var k = 0; k < cols.length; k++) {
+            if (domain[cols[k]] == String.class && table2.domain[cols2[k]] == String.class
+                    && !noDictionary && !table2.noDictionary) {
+                encode();
+                codes[0][k] = code[cols[k]];
+                codes[1][k] = translate(cols[k], table2, cols2[k]);
+            }
+        } // for
+        return codes;
+    } // joinCodes
+
 /************************************************************************************
      * Get the tuple at index position i.
      *
@@ -795,6 +1383,114 @@ public class Table
         return name;
     } // getName
 
+    /**
+     * **********************************************************************************
+     * Return the metrics of this table's primary index (height, nodes, leaf fill,
+     * splits, nodes visited per get/put, bytes), or null when the index is not a
+     * BpTreeMap.
+     *
+     * @return the index metrics or null
+     */
+    public BpTreeMap.Metrics indexMetrics() {
+        return (index instanceof BpTreeMap<KeyType, Comparable[]> bpTree) ? bpTree.metrics() : null;
+    } // indexMetrics
+
+    /**
+     * **********************************************************************************
+     * Turn counting lookups on this table's primary index on or off (see
+     * BpTreeMap.setTracking); a no-op unless the index is a BpTreeMap.
+     *
+     * @param on whether to count lookups
+     */
+    public void trackIndex(boolean on) {
+        if (index instanceof BpTreeMap<KeyType, Comparable[]> bpTree) {
+            bpTree.setTracking(on);
+        }
+    } // trackIndex
+
+    /**
+     * **********************************************************************************
+     * Turn the dictionary encoding of String columns on (the default) or off. Off,
+     * the dictionaries and codes are dropped, insert stores the tuples as given, and
+     * selects and joins on String attributes compare the Strings themselves.
+     *
+     * @param on whether to encode String columns
+     */
+    public void encodeStrings(boolean on) {
+        noDictionary = !on;
+        if (!on) {
+            dict = null;
+            code = null;
+            coded = 0;
+        }
+    } // encodeStrings
+
+    /**
+     * **********************************************************************************
+     * Put a Bloom filter with false positive rate fpp in front of the primary index,
+     * so that most select (KeyType) and i_join probes of absent key values return
+     * without touching the index. The filter is sized for twice the tuples now in
+     * the table (at least 1024), and is rebuilt twice as large when insert takes it
+     * past that. Deleted keys stay in the filter (they only cost false positives).
+     * <p>
+     * #usage movieExec.enableBloomFilter (0.01)
+     *
+     * @param fpp the false positive rate wanted, in (0, 1)
+     */
+    public void enableBloomFilter(double fpp) {
+        bloom = new BloomFilter(Math.max(2 * tuples.size(), 1024), fpp);
+        for (var tup : tuples) {
+            bloom.add(new KeyType(extract(tup, key)));
+        }
+    } // enableBloomFilter
+
+    /**
+     * **********************************************************************************
+     * Remove the primary index's Bloom filter (if any); its statistics are kept.
+     */
+    public void disableBloomFilter() {
+        bloom = null;
+    } // disableBloomFilter
+
+    /**
+     * **********************************************************************************
+     * Return the Bloom filter's statistics: probes checked, probes it saved (absent
+     * keys answered without the index) and false positives.
+     */
+    public String bloomStats() {
+        var pct = (bloomProbes == 0) ? 0.0 : 100.0 * bloomSaved / bloomProbes;
+        return String.format("bloom probes %d, saved %d (%.1f%%), false positives %d",
+                bloomProbes, bloomSaved, pct, bloomFalsePositives);
+    } // bloomStats
+
+    /**
+     * **********************************************************************************
+     * Return false when the Bloom filter shows keyVal is absent (counting the saved
+     * probe), true when the primary index must be searched.
+     */
+    private boolean mayContain(KeyType keyVal) {
+        if (bloom == null) {
+            return true;
+        }
+        bloomProbes++;
+        if (!bloom.mightContain(keyVal)) {
+            bloomSaved++;
+            return false;
+        }
+        return true;
+    } // mayContain
+
+    /**
+     * **********************************************************************************
+     * Count a false positive when a probe the Bloom filter passed found nothing.
+     */
+    private <T> T checkMiss(T found) {
+        if (found == null && bloom != null) {
+            bloomFalsePositives++;
+        }
+        return found;
+    } // checkMiss
+
 /************************************************************************************
      * Print tuple tup.
      * @param tup  the array of attribute values forming the tuple
@@ -852,16 +1548,24 @@ public class Table
 
     /**
      * **********************************************************************************
-     * Load the table with the given name into memory.
+     * Load the table with the given name into memory from its table file, or from
+     * its serialized file if it was saved before the table file format.
      *
      * @param name the name of the table to load
      */
     public static Table load(String name) {
         Table tab = null;
         try {
-            ObjectInputStream ois = new ObjectInputStream(new FileInputStream(DIR + name + EXT));
-            tab = (Table) ois.readObject();
-            ois.close();
+            if (new File(DIR + name + TBL).isFile()) {
+                try (var file = new TableFile(DIR + name + TBL)) {
+                    tab = new Table(file.table(name));
+                }
+            } else {                                                  // saved before the table file format
+                ObjectInputStream ois = new ObjectInputStream(new FileInputStream(DIR + name + EXT));
+                tab = (Table) ois.readObject();
+                ois.close();
+            } // if
+            tab.restoreIndexes();
         } catch (IOException ex) {
             out.println("load: IO Exception");
             ex.printStackTrace();
@@ -874,29 +1578,160 @@ public class Table
 
     /**
      * **********************************************************************************
-     * Save this table in a file.
+     * Reattach the indexes of a table just read by load. A paged index (primary or
+     * unique alternate) is reopened from its index file; other indexes are read
+     * from the snapshot files written by save. An index is rebuilt from the tuples
+     * only when its snapshot is missing or stale, or its index file does not carry
+     * the table's save stamp (it was changed after the save, or by another one).
+     */
+    private void restoreIndexes() throws IOException {
+        if (mType != MapType.NO_MAP) {
+            boolean restored;
+            if (mType == MapType.PAGED_BPTREE_MAP) {
+                var paged = new PagedBpTreeMap(indexFile(key));      // reopen the index file
+                restored = stamped(paged);
+                if (!restored) {
+                    paged.clear();
+                }
+                index = paged;
+            } else {
+                index = makeMap(key);
+                restored = IndexSnapshot.readMap(snapshotFile(null), saveStamp, tuples, index);
+            } // if
+            if (!restored) {
+                var cols = match(key);
+                for (var tup : tuples) {
+                    var keyVal = new Comparable[cols.length];
+                    for (var j = 0; j < keyVal.length; j++) {
+                        keyVal[j] = tup[cols[j]];
+                    }
+                    index.put(new KeyType(keyVal), tup);
+                } // for
+            } // if
+        } // if
+        if (saved_indexes != null) {
+            alternate_indexes = new ArrayList<>();
+            for (var spec : saved_indexes) {
+                Index ind;
+                if (mType == MapType.PAGED_BPTREE_MAP && spec.isUnique()) {
+                    var paged = new PagedBpTreeMap(indexFile(spec.index_key()));  // reopen its index file
+                    ind = new Index(paged, this, true, spec.index_key(), false);
+                    if (stamped(paged)) {
+                        ind.restoreKeys();
+                    } else {                                          // changed after the save, or by another one
+                        paged.clear();
+                        ind = new Index(paged, this, true, spec.index_key());
+                    }
+                } else {
+                    var unique = spec.isUnique();                     // non-unique => posting lists, no map
+                    ind = new Index(unique ? makeMap(spec.index_key()) : null, this, unique, spec.index_key(), false);
+                    if (!ind.readSnapshot(snapshotFile(spec), saveStamp)) {
+                        ind = new Index(unique ? makeMap(spec.index_key()) : null, this, unique, spec.index_key());
+                    }
+                } // if
+                alternate_indexes.add(ind);
+            } // for
+        } // if
+    } // restoreIndexes
+
+    /**
+     * **********************************************************************************
+     * Determine whether a reopened paged index was last flushed by the save this
+     * table was loaded from, and not changed since (stamp 0 means the table was
+     * saved before save stamps).
+     */
+    private boolean stamped(PagedBpTreeMap paged) {
+        return saveStamp != 0 && paged.stamp() == saveStamp;
+    } // stamped
+
+    /**
+     * **********************************************************************************
+     * Save this table in a table file (see TableFile), and its indexes in snapshot
+     * files (every paged index is flushed to its own file instead), so load does not
+     * rebuild them. An off-heap table writes no snapshots (its indexes do not hold
+     * its tuples), so load, which reads it back onto the heap, rebuilds them.
      */
     public void save() {
-        Map<KeyType, Comparable[]> temp_index = this.index;
-        ArrayList<Index> temp_alternate_indexes = this.alternate_indexes;
         try {
-            this.index = null;
-            this.alternate_indexes = null;
+            this.saveStamp = new Random().nextLong();
+            var offHeap = tuples instanceof OffHeapRowStore;          // its index values are not its tuples:
+            var rowOf = offHeap ? null : IndexSnapshot.rowIds(tuples); // no snapshots, load rebuilds the indexes
+            if (index instanceof PagedBpTreeMap paged) {
+                paged.flush(saveStamp);                               // the index lives in its own file
+            } else if (index != null && !offHeap) {
+                IndexSnapshot.writeMap(snapshotFile(null), saveStamp, index, rowOf);
+            }
+            this.saved_indexes = null;
+            if (alternate_indexes != null) {
+                this.saved_indexes = new ArrayList<>();
+                for (Index ind : alternate_indexes) {
+                    var spec = new IndexSpec(ind.getIndexKey(), ind.isUnique());
+                    if (ind.getMap() instanceof PagedBpTreeMap paged) {
+                        paged.flush(saveStamp);                       // the index lives in its own file
+                    } else if (!offHeap) {
+                        ind.writeSnapshot(snapshotFile(spec), saveStamp, rowOf);
+                    }
+                    this.saved_indexes.add(spec);
+                } // for
+            } // if
+
+            var extra = new ByteArrayOutputStream();
+            var dos = new DataOutputStream(extra);
+            dos.writeLong(saveStamp);
+            dos.writeInt((saved_indexes == null) ? -1 : saved_indexes.size());
+            if (saved_indexes != null) {
+                for (var spec : saved_indexes) {
+                    dos.writeShort(spec.index_key().length);
+                    for (var k : spec.index_key()) {
+                        dos.writeUTF(k);
+                    }
+                    dos.writeBoolean(spec.isUnique());
+                } // for
+            } // if
+            dos.flush();
 
-            var oos = new ObjectOutputStream(new FileOutputStream(DIR + name + EXT));
-            oos.writeObject(this);
-            oos.close();
+            TableFile.write(DIR + name + TBL, List.of(
+                    new TableFile.Source(name, attribute, domain, key, tuples, extra.toByteArray())));
         } catch (IOException ex) {
             out.println("save: IO Exception");
             ex.printStackTrace();
         } // try
-        this.index = temp_index;
-        this.alternate_indexes = temp_alternate_indexes;
     } // save
 
+    /**
+     * **********************************************************************************
+     * Free the memory of an off-heap table's tuples; the table must not be used
+     * afterwards. A table on the heap is left as is.
+     */
+    public void close() {
+        if (tuples instanceof OffHeapRowStore offHeap) {
+            offHeap.close();
+        }
+    } // close
+
     //----------------------------------------------------------------------------------
     // Private Methods
     //----------------------------------------------------------------------------------
+    /**
+     * **********************************************************************************
+     * Return the index to scan in a long-running operation (project, union): a
+     * snapshot of a BpTreeMap index, so tuples inserted during the scan neither
+     * show up in it nor corrupt it, otherwise the index itself.
+     */
+    private Map<KeyType, Comparable[]> scanIndex() {
+        return (index instanceof BpTreeMap<KeyType, Comparable[]> bpTree) ? bpTree.snapshot() : index;
+    } // scanIndex
+
+    /**
+     * **********************************************************************************
+     * Determine whether the primary index holds every tuple of this table, so it may
+     * answer for the table. A table made from a list of tuples (the result of an
+     * operator) starts with an empty index, so it must be scanned instead.
+     */
+    private boolean indexed() {
+        return index != null && index.size() == tuples.size();
+    } // indexed
+
     /**
      * **********************************************************************************
      * Determine whether the two tables (this and table2) are compatible, i.e.,
@@ -1004,7 +1839,7 @@ public class Table
      * @param className the array of class name (e.g., {"Integer", "String"})
      * @return an array of Java classes
      */
-    private static Class[] findClass(String[] className) {
+    static Class[] findClass(String[] className) {
         var classArray = new Class[className.length];
 
         for (var i = 0; i < className.length; i++) {
@@ -1096,7 +1931,7 @@ public class Table
 
         if (new_index == null) {
             this.drop_index(index_key);
-            new_index = new Index(makeMap(), this, _is_Unique, index_key);
+            new_index = new Index(_is_Unique ? makeMap(index_key) : null, this, _is_Unique, index_key); // non-unique => posting lists
             this.alternate_indexes.add(new_index);
         }
 
@@ -0,0 +1,565 @@
+/** **************************************************************************************
+ * @file  TableFile.java
+ *
+ * compile  From the directory Project 3 - Performance Comparison run the command $ ./compile.sh
+ * run      java --enable-preview -cp bin TableFileComparisonScript
+ *
+ * File Layout
+ *     data pages (PAGE_SIZE bytes each) | schema | schema offset (long) | MAGIC (int)
+ * Page Layout (slotted)
+ *     rows (short) | slot of each row (short: offset of its record in the page) | free | records
+ * Record Layout (no type tags: the schema gives the domain of every attribute)
+ *     null bits (one per attribute) | the non-null values in attribute order
+ *     Long, Double -> 8 bytes    Integer, Float -> 4 bytes    Short, Character -> 2 bytes
+ *     Byte, Boolean -> 1 byte    String -> its UTF-8 length (short) and bytes
+ * Rules: a file holds one or more tables, each a run of consecutive pages; the schema
+ *            (written last, once the page counts are known) gives each table's name,
+ *            attributes, domains, key, number of rows, first page and the first row of
+ *            each of its pages, plus extra bytes for the owner's use
+ *        records are filled into a page from its end and slots from its start; a page
+ *            is closed when the next record and its slot do not fit, so a record is
+ *            never split (one larger than a page is rejected)
+ *        the file is mapped (FileChannel.map), not read: opening it reads only the
+ *            schema, and a tuple is decoded from its page when get is called
+ */
+import java.io.*;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * **************************************************************************************
+ * The TableFile class reads and writes tables in a compact binary page file, as
+ * an alternative to serializing them (and the whole object graph behind them)
+ * with ObjectOutputStream. Each table in an open file is a read-only List of
+ * Comparable [] (Rows) over the mapped pages, so nothing is read into the heap
+ * until a tuple is asked for, and then only that tuple; tuples read are new
+ * arrays each time (equal, not identical). The mapping is released by close.
+ */
+public class TableFile
+        implements AutoCloseable {
+
+    /**
+     * Size of a page in bytes.
+     */
+    public static final int PAGE_SIZE = 8192;
+
+    private static final int MAGIC = 0x54424631;                      // "TBF1"
+
+    /**
+     * Number of chunks stream decodes ahead of its consumer.
+     */
+    private static final int DEPTH = 2;
+
+    private static final byte INT = 0, LONG = 1, DOUBLE = 2, FLOAT = 3, SHORT = 4,
+            BYTE = 5, CHAR = 6, BOOL = 7, STRING = 8;                 // kinds of field
+
+    private static final ValueLayout.OfShort AS_SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfChar AS_CHAR = ValueLayout.JAVA_CHAR_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfInt AS_INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfLong AS_LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfFloat AS_FLOAT = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfDouble AS_DOUBLE = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment file;                                 // the whole file, mapped
+    private final List<Rows> tables = new ArrayList<>();
+
+    /**
+     * **********************************************************************************
+     * A table to be written: its schema, its tuples (read once, in order) and extra
+     * bytes kept with the schema for the owner's use (may be null).
+     */
+    public record Source(String name, String[] attribute, Class[] domain, String[] key,
+            Iterable<Comparable[]> tuples, byte[] extra) {
+    }
+
+    //----------------------------------------------------------------------------------
+    // Rows inner class
+    //----------------------------------------------------------------------------------
+    /**
+     * **********************************************************************************
+     * One table of an open file: a read-only list of its tuples, decoded from the
+     * mapped pages on demand, along with its schema.
+     */
+    public final class Rows
+            extends AbstractList<Comparable[]>
+            implements RandomAccess {
+
+        private final String name;
+        private final String[] attribute;
+        private final Class[] domain;
+        private final String[] key;
+        private final byte[] kind;                                    // the kind of each attribute's field
+        private final int rows;
+        private final int firstPage;
+        private final int[] pageFirst;                                // the first row of each page
+        private final byte[] extra;
+
+        private Rows(DataInputStream dis) throws IOException {
+            name = dis.readUTF();
+            attribute = new String[dis.readShort()];
+            var domainName = new String[attribute.length];
+            for (var j = 0; j < attribute.length; j++) {
+                attribute[j] = dis.readUTF();
+                domainName[j] = dis.readUTF();
+            } // for
+            domain = Table.findClass(domainName);
+            kind = kinds(domain);
+            key = new String[dis.readShort()];
+            for (var j = 0; j < key.length; j++) {
+                key[j] = dis.readUTF();
+            }
+            rows = dis.readInt();
+            firstPage = dis.readInt();
+            pageFirst = new int[dis.readInt()];
+            for (var p = 0; p < pageFirst.length; p++) {
+                pageFirst[p] = dis.readInt();
+            }
+            extra = new byte[dis.readInt()];
+            dis.readFully(extra);
+        } // constructor
+
+        public String name() {
+            return name;
+        }
+
+        public String[] attribute() {
+            return attribute;
+        }
+
+        public Class[] domain() {
+            return domain;
+        }
+
+        public String[] key() {
+            return key;
+        }
+
+        /**
+         * Return the extra bytes written with the table (empty if none).
+         */
+        public byte[] extra() {
+            return extra;
+        }
+
+        /**
+         * Return the number of pages holding the table's tuples.
+         */
+        public int pages() {
+            return pageFirst.length;
+        }
+
+        public int size() {
+            return rows;
+        }
+
+        /**
+         * ******************************************************************************
+         * Return tuple i, decoded from its page: the page is found by binary search
+         * of the first rows, and the record through the page's slot for it.
+         *
+         * @param i the row
+         * @return a new array holding the tuple
+         */
+        public Comparable[] get(int i) {
+            Objects.checkIndex(i, rows);
+            var p = Arrays.binarySearch(pageFirst, i);
+            if (p < 0) {
+                p = -p - 2;                                           // the page starting before i
+            }
+            var base = (long) (firstPage + p) * PAGE_SIZE;
+            var pos = base + Short.toUnsignedInt(file.get(AS_SHORT, base + 2 + 2L * (i - pageFirst[p])));
+
+            var t = new Comparable[kind.length];
+            var nulls = pos;
+            pos += (kind.length + 7) / 8;
+            for (var j = 0; j < kind.length; j++) {
+                if ((file.get(ValueLayout.JAVA_BYTE, nulls + j / 8) & (1 << (j % 8))) != 0) {
+                    continue;                                         // null value
+                }
+                switch (kind[j]) {
+                    case INT -> {
+                        t[j] = file.get(AS_INT, pos);
+                        pos += 4;
+                    }
+                    case LONG -> {
+                        t[j] = file.get(AS_LONG, pos);
+                        pos += 8;
+                    }
+                    case DOUBLE -> {
+                        t[j] = file.get(AS_DOUBLE, pos);
+                        pos += 8;
+                    }
+                    case FLOAT -> {
+                        t[j] = file.get(AS_FLOAT, pos);
+                        pos += 4;
+                    }
+                    case SHORT -> {
+                        t[j] = file.get(AS_SHORT, pos);
+                        pos += 2;
+                    }
+                    case BYTE -> {
+                        t[j] = file.get(ValueLayout.JAVA_BYTE, pos);
+                        pos += 1;
+                    }
+                    case CHAR -> {
+                        t[j] = file.get(AS_CHAR, pos);
+                        pos += 2;
+                    }
+                    case BOOL -> {
+                        t[j] = file.get(ValueLayout.JAVA_BYTE, pos) != 0;
+                        pos += 1;
+                    }
+                    default -> {
+                        var bytes = new byte[Short.toUnsignedInt(file.get(AS_SHORT, pos))];
+                        MemorySegment.copy(file, ValueLayout.JAVA_BYTE, pos + 2, bytes, 0, bytes.length);
+                        t[j] = new String(bytes, StandardCharsets.UTF_8);
+                        pos += 2 + bytes.length;
+                    }
+                } // switch
+            } // for
+            return t;
+        } // get
+
+        /**
+         * ******************************************************************************
+         * Pass the tuples to sink in order, in chunks of up to size tuples. The
+         * chunks are decoded by a background thread at most DEPTH chunks ahead of
+         * sink, so reading the pages overlaps what sink does with each chunk (e.g.,
+         * inserting it into a table and its index), and at most DEPTH + 1 chunks
+         * are held at a time.
+         *
+         * @param size the number of tuples in a chunk
+         * @param sink the consumer of the chunks
+         */
+        public void stream(int size, Consumer<Comparable[][]> sink) {
+            var end = new Comparable[0][];                            // marks the last chunk
+            var queue = new ArrayBlockingQueue<Comparable[][]>(DEPTH);
+            var failure = new Throwable[1];
+            var reader = Thread.ofPlatform().daemon().start(() -> {
+                try {
+                    for (var from = 0; from < rows; from += size) {
+                        var chunk = new Comparable[Math.min(size, rows - from)][];
+                        for (var i = 0; i < chunk.length; i++) {
+                            chunk[i] = get(from + i);
+                        }
+                        queue.put(chunk);
+                    } // for
+                } catch (InterruptedException ex) {
+                    return;                                           // sink gave up
+                } catch (Throwable ex) {
+                    failure[0] = ex;                                  // rethrown by stream, after end
+                } // try
+                try {
+                    queue.put(end);
+                } catch (InterruptedException ex) {
+                }
+            });
+            try {
+                for (var chunk = queue.take(); chunk != end; chunk = queue.take()) {
+                    sink.accept(chunk);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("error: interrupted while streaming " + name, ex);
+            } finally {
+                reader.interrupt();                                   // stop reading ahead if sink failed
+                awaitReader(reader);                                  // done with the mapping before it can be closed
+            } // try
+            switch (failure[0]) {
+                case null -> {
+                }
+                case RuntimeException ex -> throw ex;
+                case Error err -> throw err;
+                default -> throw new IllegalStateException("error: reading " + name + " failed", failure[0]);
+            } // switch
+        } // stream
+
+        /**
+         * ******************************************************************************
+         * Wait for stream's reader thread to finish, even if this thread is
+         * interrupted meanwhile (the interrupt is kept for the caller).
+         */
+        private static void awaitReader(Thread reader) {
+            var interrupted = false;
+            while (true) {
+                try {
+                    reader.join();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } // try
+            } // while
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } // awaitReader
+    } // Rows
+
+    //----------------------------------------------------------------------------------
+    // Reading
+    //----------------------------------------------------------------------------------
+    /**
+     * **********************************************************************************
+     * Open a table file: map it and read its schema (no tuple is read).
+     *
+     * @param path the file
+     */
+    public TableFile(String path) throws IOException {
+        MemorySegment mapped;
+        try (var channel = FileChannel.open(Path.of(path), READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+        } catch (IOException ex) {
+            arena.close();
+            throw ex;
+        } // try
+        file = mapped;
+
+        var size = file.byteSize();
+        if (size < 12 || file.get(AS_INT, size - 4) != MAGIC) {
+            arena.close();
+            throw new IllegalArgumentException("error: " + path + " is not a table file");
+        }
+        var at = file.get(AS_LONG, size - 12);
+        var dis = new DataInputStream(new ByteArrayInputStream(
+                file.asSlice(at, size - 12 - at).toArray(ValueLayout.JAVA_BYTE)));
+        var n = dis.readInt();
+        for (var k = 0; k < n; k++) {
+            tables.add(new Rows(dis));
+        }
+    } // constructor
+
+    /**
+     * **********************************************************************************
+     * Return the tables in the file, in the order they were written.
+     */
+    public List<Rows> tables() {
+        return Collections.unmodifiableList(tables);
+    }
+
+    /**
+     * **********************************************************************************
+     * Return the table with the given name.
+     *
+     * @param name the table's name
+     */
+    public Rows table(String name) {
+        for (var rows : tables) {
+            if (rows.name.equals(name)) {
+                return rows;
+            }
+        } // for
+        throw new IllegalArgumentException("error: no table " + name + " in the file");
+    } // table
+
+    /**
+     * **********************************************************************************
+     * Return the size of the file in bytes.
+     */
+    public long bytes() {
+        return file.byteSize();
+    }
+
+    /**
+     * **********************************************************************************
+     * Unmap the file; its Rows may not be used afterwards.
+     */
+    public void close() {
+        arena.close();
+    }
+
+    //----------------------------------------------------------------------------------
+    // Writing
+    //----------------------------------------------------------------------------------
+    /**
+     * **********************************************************************************
+     * Write the tables to a new table file (replacing any file at path), one
+     * page at a time, and the schema after the last page.
+     *
+     * @param path the file
+     * @param sources the tables to write
+     */
+    public static void write(String path, List<Source> sources) throws IOException {
+        try (var channel = FileChannel.open(Path.of(path), CREATE, WRITE, TRUNCATE_EXISTING)) {
+            var schema = new ByteArrayOutputStream();
+            var dos = new DataOutputStream(schema);
+            dos.writeInt(sources.size());
+
+            var page = ByteBuffer.allocate(PAGE_SIZE);
+            var rec = ByteBuffer.allocate(PAGE_SIZE);
+            var nPages = 0;
+            for (var src : sources) {
+                var kind = kinds(src.domain());
+                var firstPage = nPages;
+                var pageFirst = new int[16];
+                var pages = 0;
+                var rows = 0;
+                var inPage = 0;                                       // rows in the current page
+                var low = 2;                                          // end of its slots
+                var high = PAGE_SIZE;                                 // start of its records
+                for (var t : src.tuples()) {
+                    rec.clear();
+                    try {
+                        encode(rec, t, kind);
+                    } catch (BufferOverflowException ex) {
+                        throw new IllegalArgumentException("error: tuple " + Arrays.toString(t) + " is larger than a page");
+                    } // try
+                    var len = rec.position();
+                    if (4 + len > PAGE_SIZE) {
+                        throw new IllegalArgumentException("error: tuple " + Arrays.toString(t) + " is larger than a page");
+                    }
+                    if (inPage > 0 && low + 2 > high - len) {        // the page is full
+                        writePage(channel, page, inPage, nPages++);
+                        inPage = 0;
+                        low = 2;
+                        high = PAGE_SIZE;
+                    } // if
+                    if (inPage == 0) {
+                        if (pages == pageFirst.length) {
+                            pageFirst = Arrays.copyOf(pageFirst, 2 * pages);
+                        }
+                        pageFirst[pages++] = rows;
+                    } // if
+                    high -= len;
+                    page.put(high, rec.array(), 0, len);
+                    page.putShort(low, (short) high);
+                    low += 2;
+                    inPage += 1;
+                    rows += 1;
+                } // for
+                if (inPage > 0) {
+                    writePage(channel, page, inPage, nPages++);
+                }
+
+                dos.writeUTF(src.name());
+                dos.writeShort(src.attribute().length);
+                for (var j = 0; j < src.attribute().length; j++) {
+                    dos.writeUTF(src.attribute()[j]);
+                    dos.writeUTF(src.domain()[j].getSimpleName());
+                } // for
+                dos.writeShort(src.key().length);
+                for (var k : src.key()) {
+                    dos.writeUTF(k);
+                }
+                dos.writeInt(rows);
+                dos.writeInt(firstPage);
+                dos.writeInt(pages);
+                for (var p = 0; p < pages; p++) {
+                    dos.writeInt(pageFirst[p]);
+                }
+                var extra = (src.extra() == null) ? new byte[0] : src.extra();
+                dos.writeInt(extra.length);
+                dos.write(extra);
+            } // for
+
+            var at = (long) nPages * PAGE_SIZE;
+            dos.writeLong(at);
+            dos.writeInt(MAGIC);
+            dos.flush();
+            var buf = ByteBuffer.wrap(schema.toByteArray());
+            while (buf.hasRemaining()) {
+                channel.write(buf, at + buf.position());
+            }
+        } // try
+    } // write
+
+    /**
+     * **********************************************************************************
+     * Write a full page (its row count first) as page number p, then clear it.
+     */
+    private static void writePage(FileChannel channel, ByteBuffer page, int rows, int p) throws IOException {
+        page.putShort(0, (short) rows);
+        page.clear();
+        while (page.hasRemaining()) {
+            channel.write(page, (long) p * PAGE_SIZE + page.position());
+        }
+        page.clear();
+        Arrays.fill(page.array(), (byte) 0);
+    } // writePage
+
+    /**
+     * **********************************************************************************
+     * Encode tuple t into rec as a record: the null bits, then the values.
+     */
+    private static void encode(ByteBuffer rec, Comparable[] t, byte[] kind) {
+        if (t.length != kind.length) {
+            throw new IllegalArgumentException("error: tuple " + Arrays.toString(t) + " does not match the schema");
+        }
+        var nulls = rec.position();
+        rec.put(new byte[(kind.length + 7) / 8]);
+        for (var j = 0; j < kind.length; j++) {
+            if (t[j] == null) {
+                rec.put(nulls + j / 8, (byte) (rec.get(nulls + j / 8) | (1 << (j % 8))));
+                continue;
+            } // if
+            switch (kind[j]) {
+                case INT ->
+                    rec.putInt((Integer) t[j]);
+                case LONG ->
+                    rec.putLong((Long) t[j]);
+                case DOUBLE ->
+                    rec.putDouble((Double) t[j]);
+                case FLOAT ->
+                    rec.putFloat((Float) t[j]);
+                case SHORT ->
+                    rec.putShort((Short) t[j]);
+                case BYTE ->
+                    rec.put((Byte) t[j]);
+                case CHAR ->
+                    rec.putChar((Character) t[j]);
+                case BOOL ->
+                    rec.put((byte) ((Boolean) t[j] ? 1 : 0));
+                default -> {
+                    var bytes = ((String) t[j]).getBytes(StandardCharsets.UTF_8);
+                    rec.putShort((short) bytes.length).put(bytes);
+                }
+            } // switch
+        } // for
+    } // encode
+
+    /**
+     * **********************************************************************************
+     * Return the kind of field of each domain.
+     */
+    private static byte[] kinds(Class[] domain) {
+        var kind = new byte[domain.length];
+        for (var j = 0; j < domain.length; j++) {
+            kind[j] = switch (domain[j].getSimpleName()) {
+                case "Integer" ->
+                    INT;
+                case "Long" ->
+                    LONG;
+                case "Double" ->
+                    DOUBLE;
+                case "Float" ->
+                    FLOAT;
+                case "Short" ->
+                    SHORT;
+                case "Byte" ->
+                    BYTE;
+                case "Character" ->
+                    CHAR;
+                case "Boolean" ->
+                    BOOL;
+                case "String" ->
+                    STRING;
+                default ->
+                    throw new IllegalArgumentException(
+                            "error: TableFile has no field layout for domain " + domain[j].getSimpleName());
+            }; // switch
+        } // for
+        return kind;
+    } // kinds
+}
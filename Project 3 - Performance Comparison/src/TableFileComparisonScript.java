@@ -0,0 +1,137 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.Callable;
+import static java.lang.System.nanoTime;
+import static java.lang.System.out;
+
+/**
+ * The TableFileComparisonScript class compares the two ways of storing tuple sets
+ * (the movieExec, studio and movie tables, n tuples each, as TimingComparisonScript
+ * loads them): a serialized Comparable [][][] (ObjectOutputStream, the .dbf files)
+ * and a table file (TableFile, the .tbl files).
+ *
+ * For each size, both files are written to a temporary directory and their sizes
+ * printed. Then, averaged over five iterations after one warm up, the time to
+ * deserialize the .dbf file (everything is read before the first tuple can be
+ * used) is compared with the time for a table file to be opened and give its
+ * first tuple, and to be opened and have every tuple decoded. The files are in
+ * the page cache after the first iteration, so disk reads are not measured.
+ *
+ * The maximum number of tuples per table may be given as args[0] (e.g., 50000).
+ */
+class TableFileComparisonScript {
+
+    /**
+     * The numbers of tuples per table.
+     */
+    private static final int[] SIZES = {10_000, 20_000, 30_000, 40_000, 50_000, 100_000};
+
+    /**
+     * Consumes results so the JIT cannot drop the reads.
+     */
+    private static long sink = 0;
+
+    /**
+     * Generate a tuple set of n tuples per table: movieExec (producerNo name
+     * address fee), studio (studioName address presNo) and movie (title year
+     * length genre studioName producerNo), drawing from rng.
+     */
+    static Comparable[][][] tupleSet(int n, Random rng) {
+        var tups = new Comparable[3][n][];
+        for (var i = 0; i < n; i++) {
+            tups[0][i] = new Comparable[]{i, "name" + i, "address" + rng.nextInt(n), rng.nextInt(1_000_000)};
+            tups[1][i] = new Comparable[]{"studioName" + i, "address" + rng.nextInt(n), rng.nextInt(n)};
+            tups[2][i] = new Comparable[]{"title" + i, 1900 + rng.nextInt(125), 60 + rng.nextInt(120),
+                "genre" + rng.nextInt(12), "studioName" + rng.nextInt(n), rng.nextInt(n)};
+        } // for
+        return tups;
+    }
+
+    /**
+     * Return the tables of tuple set tups as table file sources.
+     */
+    static List<TableFile.Source> sources(Comparable[][][] tups) {
+        return List.of(
+                new TableFile.Source("movieExec", "producerNo name address fee".split(" "),
+                        Table.findClass("Integer String String Integer".split(" ")), new String[]{"producerNo"},
+                        Arrays.asList(tups[0]), null),
+                new TableFile.Source("studio", "studioName address presNo".split(" "),
+                        Table.findClass("String String Integer".split(" ")), new String[]{"studioName"},
+                        Arrays.asList(tups[1]), null),
+                new TableFile.Source("movie", "title year length genre studioName producerNo".split(" "),
+                        Table.findClass("String Integer Integer String String Integer".split(" ")),
+                        new String[]{"title", "year"}, Arrays.asList(tups[2]), null));
+    }
+
+    /**
+     * Return the micro-seconds op takes, averaged over five iterations after one
+     * warm up.
+     */
+    static long time(Callable<Long> op) throws Exception {
+        var ns = 0L;
+        for (var it = 0; it < 6; it++) {
+            var t0 = nanoTime();
+            sink += op.call();
+            var et = nanoTime() - t0;
+            if (it > 0) {
+                ns += et;
+            }
+        } // for
+        return ns / 5000;
+    }
+
+    public static void main(String[] args) throws Exception {
+        var maxTuples = (args.length == 1) ? Integer.parseInt(args[0]) : SIZES[SIZES.length - 1];
+        var dir = Files.createTempDirectory("tablefile").toFile();
+        dir.deleteOnExit();
+
+        for (var n : SIZES) {
+            if (n > maxTuples) {
+                break;
+            }
+            out.println(n + " tuples per table, Table File Test cases");
+            var tups = tupleSet(n, new Random(42));
+            var dbf = new File(dir, n + ".dbf");
+            var tbl = new File(dir, n + ".tbl");
+            dbf.deleteOnExit();
+            tbl.deleteOnExit();
+            try (var oos = new ObjectOutputStream(new FileOutputStream(dbf))) {
+                oos.writeObject(tups);
+            }
+            TableFile.write(tbl.getPath(), sources(tups));
+            tups = null;
+
+            var dbfLoad = time(() -> {
+                try (var ois = new ObjectInputStream(new FileInputStream(dbf))) {
+                    return (long) ((Comparable[][][]) ois.readObject())[2].length;
+                }
+            });
+            var tblFirst = time(() -> {
+                var sum = 0L;
+                try (var file = new TableFile(tbl.getPath())) {
+                    for (var rows : file.tables()) {
+                        sum += rows.get(0).length;
+                    }
+                }
+                return sum;
+            });
+            var tblScan = time(() -> {
+                var sum = 0L;
+                try (var file = new TableFile(tbl.getPath())) {
+                    for (var rows : file.tables()) {
+                        for (var t : rows) {
+                            sum += t.length;
+                        }
+                    }
+                }
+                return sum;
+            });
+
+            out.printf("%-5s %9d KB %9d mu-sec load%n", "DBF", dbf.length() / 1024, dbfLoad);
+            out.printf("%-5s %9d KB %9d mu-sec open and first tuples %9d mu-sec open and scan%n",
+                    "TBL", tbl.length() / 1024, tblFirst, tblScan);
+        } // for
+        out.println("(sink " + sink + ")");
+    }
+}
@@ -1,5 +1,6 @@
 
 import java.io.*;
+import java.util.*;
 import static java.lang.System.nanoTime;
 import static java.lang.System.out;
 
@@ -7,18 +8,46 @@ import static java.lang.System.out;
  * The TimingComparisonScript class tests and compares the performance of select
  * and join operations on tables using various indexing methods (NO_MAP,
  * TREE_MAP, HASH_MAP, BPTREE_MAP) across tuple sets of different sizes (10K to
- * 100K). It loads datasets, generates indexed tables, and times each operation,
- * printing average execution times for performance analysis.
+ * 100K). One tuple set at a time, it streams the tuples from the set's table
+ * file into indexed tables, times each operation, and prints average execution
+ * times for performance analysis; the next set is not loaded until the last one
+ * is done with. Given a false positive rate as args[0], it puts Bloom filters in
+ * front of the primary indexes the joins probe and prints their statistics.
  */
 class TimingComparisonScript {
 
-    // "movieExec", "studio", "movie" is order of tables
-    static Comparable[][][] ten_k_tuple_set;
-    static Comparable[][][] twenty_k_tuple_set;
-    static Comparable[][][] thirty_k_tuple_set;
-    static Comparable[][][] forty_k_tuple_set;
-    static Comparable[][][] fifty_k_tuple_set;
-    static Comparable[][][] hundred_k_tuple_set;
+    /**
+     * The tuple sets, smallest first; each is loaded only for its own test cases.
+     */
+    private static final String[] TUPLE_SETS = {"ten_k", "twenty_k", "thirty_k", "forty_k", "fifty_k", "hundred_k"};
+
+    /**
+     * The index types each tuple set is tested with.
+     */
+    private static final IndexTestsTable.MapType[] MAP_TYPES = {IndexTestsTable.MapType.NO_MAP,
+        IndexTestsTable.MapType.TREE_MAP, IndexTestsTable.MapType.HASH_MAP, IndexTestsTable.MapType.BPTREE_MAP};
+
+    /**
+     * False positive rate of the Bloom filters put in front of the primary indexes
+     * the join cases probe (movieExec and studio), or 0 for none. It may be given
+     * as args[0] (e.g., 0.01).
+     */
+    private static double bloomFpp = 0.0;
+
+    /**
+     * Number of tuples streamed from a tuple set's file at a time.
+     */
+    private static final int CHUNK = 4096;
+
+    /**
+     * Schemas of the tables in a tuple set, in order: name, attributes, domains
+     * and key (as generate_table creates them).
+     */
+    private static final String[][] SCHEMA = {
+        {"movieExec", "producerNo name address fee", "Integer String String Integer", "producerNo"},
+        {"studio", "studioName address presNo", "String String Integer", "studioName"},
+        {"movie", "title year length genre studioName producerNo", "String Integer Integer String String Integer", "title year"}
+    };
 
     /**
      * Relative path for storage directory
@@ -26,26 +55,34 @@ class TimingComparisonScript {
     private static final String DIR = "src" + File.separator + "TupleGeneration" + File.separator + "store" + File.separator;
 
     /**
-     * Filename extension for database files
+     * Filename extension for database files (serialized tuple sets)
      */
     private static final String EXT = ".dbf";
 
+    /**
+     * Filename extension for table files (see TableFile)
+     */
+    private static final String TBL = ".tbl";
+
     private enum MapType {
         NO_MAP, TREE_MAP, HASH_MAP, LINHASH_MAP, BPTREE_MAP
     }
 
     /**
      * **********************************************************************************
-     * Load the two sets of tups from memory
+     * Open a tuple set's table file. The file is mapped, not read, so each tuple
+     * is decoded only when generate_table inserts it. A tuple set found only as a
+     * serialized .dbf file is converted to a table file first.
      *
      * @param name the name of the tup_file to load
      */
-    public static Comparable[][][] load(String name) {
-        Comparable[][][] tups = null;
+    public static TableFile load(String name) {
+        TableFile tups = null;
         try {
-            ObjectInputStream ois = new ObjectInputStream(new FileInputStream(DIR + name + EXT));
-            tups = (Comparable[][][]) ois.readObject();
-            ois.close();
+            if (!new File(DIR + name + TBL).isFile()) {
+                convert(name);
+            }
+            tups = new TableFile(DIR + name + TBL);
         } catch (IOException ex) {
             out.println("load: IO Exception");
             ex.printStackTrace();
@@ -57,15 +94,35 @@ class TimingComparisonScript {
     } // load
 
     /**
-     * Generates a table with a given name, tuple size, and index type. The
-     * tuples are loaded from predefined datasets (e.g., 10k, 20k) and inserted
-     * into the table. The table uses a specified map type for indexing (e.g.,
-     * NO_MAP, TREE_MAP).
+     * **********************************************************************************
+     * Convert a serialized tuple set (Comparable [][][], tables in SCHEMA order)
+     * into a table file beside it.
+     *
+     * @param name the name of the tup_file to convert
+     */
+    static void convert(String name) throws IOException, ClassNotFoundException {
+        Comparable[][][] tups;
+        try (var ois = new ObjectInputStream(new FileInputStream(DIR + name + EXT))) {
+            tups = (Comparable[][][]) ois.readObject();
+        }
+        var sources = new ArrayList<TableFile.Source>();
+        for (var k = 0; k < SCHEMA.length; k++) {
+            sources.add(new TableFile.Source(SCHEMA[k][0], SCHEMA[k][1].split(" "),
+                    Table.findClass(SCHEMA[k][2].split(" ")), SCHEMA[k][3].split(" "), Arrays.asList(tups[k]), null));
+        }
+        TableFile.write(DIR + name + TBL, sources);
+        out.println("convert: " + name + EXT + " -> " + name + TBL);
+    } // convert
+
+    /**
+     * Generates a table with a given name, tuple set, and index type. The
+     * tuples are streamed from the tuple set's file in chunks straight into the
+     * table (decoding the next chunks while inserting one, see TableFile.Rows.stream).
+     * The table uses a specified map type for indexing (e.g., NO_MAP, TREE_MAP).
      *
      * @param table_name The name of the table to generate (e.g., "movie",
      * "movieExec", "studio").
-     * @param tuple_count The size of the tuple set to load (e.g., "ten_k",
-     * "twenty_k", "thirty_k").
+     * @param tuple_set The open tuple set (e.g., the "ten_k" file).
      * @param mType The type of map to use for the table index (e.g., NO_MAP,
      * TREE_MAP, HASH_MAP).
      * @return A new instance of the `IndexTestsTable` with tuples loaded and
@@ -73,28 +130,11 @@ class TimingComparisonScript {
      *
      * @throws IllegalArgumentException if the table name is invalid.
      */
-    static IndexTestsTable generate_table(String table_name, String tuple_count, IndexTestsTable.MapType mType) {
+    static IndexTestsTable generate_table(String table_name, TableFile tuple_set, IndexTestsTable.MapType mType) {
 
         IndexTestsTable table;
-        Comparable[][][] temp_tups;
         int table_index;
 
-        //Determine num of tuples
-        temp_tups = switch (tuple_count) {
-            case "ten_k" ->
-                ten_k_tuple_set;
-            case "twenty_k" ->
-                twenty_k_tuple_set;
-            case "thirty_k" ->
-                thirty_k_tuple_set;
-            case "forty_k" ->
-                forty_k_tuple_set;
-            case "fifty_k" ->
-                fifty_k_tuple_set;
-            default ->
-                hundred_k_tuple_set;
-        };
-
         //Determine table type
         switch (table_name) {
             case "movie" -> {
@@ -114,9 +154,11 @@ class TimingComparisonScript {
             }
         }
 
-        for (Comparable[] temp_tup : temp_tups[table_index]) {
-            table.insert(temp_tup);
-        }
+        tuple_set.tables().get(table_index).stream(CHUNK, chunk -> {
+            for (Comparable[] temp_tup : chunk) {
+                table.insert(temp_tup);
+            }
+        });
 
         return table;
     }
@@ -218,6 +260,9 @@ class TimingComparisonScript {
             }
         } // for
         System.out.println("Join case one Average time: " + sum / 5 + " mu-sec");
+        if (bloomFpp > 0 && movie_table.mType != IndexTestsTable.MapType.NO_MAP) {
+            System.out.println("Join case one movieExec " + movieExec_table.bloomStats());
+        }
 
         //Join movie with studio table
         sum = 0;
@@ -230,150 +275,58 @@ class TimingComparisonScript {
             }
         } // for
         System.out.println("Join case two Average time: " + sum / 5 + " mu-sec");
+        if (bloomFpp > 0 && movie_table.mType != IndexTestsTable.MapType.NO_MAP) {
+            System.out.println("Join case two studio " + studio.bloomStats());
+        }
+
+        if (movie_table.mType == IndexTestsTable.MapType.BPTREE_MAP) {
+            print_metrics(movie_table, movieExec_table, studio);
+        }
+    }
 
+    /**
+     * Prints the structure of the B+Tree indexes probed by the join cases
+     * (height, leaf fill, splits, memory), with the nodes visited per lookup
+     * counted over one untimed run of each join, to explain how their times
+     * compare with TREE_MAP.
+     *
+     * @param movie_table the "movie" table
+     * @param movieExec_table the "movieExec" table (probed by join case one)
+     * @param studio the "studio" table (probed by join case two)
+     */
+    static void print_metrics(IndexTestsTable movie_table, IndexTestsTable movieExec_table, IndexTestsTable studio) {
+        movieExec_table.trackIndex(true);
+        movie_table.i_join("producerNo", "producerNo", movieExec_table);
+        movieExec_table.trackIndex(false);
+        studio.trackIndex(true);
+        movie_table.i_join("studioName", "studioName", studio);
+        studio.trackIndex(false);
+        System.out.println("movieExec index: " + movieExec_table.indexMetrics());
+        System.out.println("studio index: " + studio.indexMetrics());
     }
 
     public static void main(String[] args) {
         System.out.println("Starting");
-        ten_k_tuple_set = load("ten_k_tuple_sets");
-        twenty_k_tuple_set = load("twenty_k_tuple_sets");
-        thirty_k_tuple_set = load("thirty_k_tuple_sets");
-        forty_k_tuple_set = load("forty_k_tuple_sets");
-        fifty_k_tuple_set = load("fifty_k_tuple_sets");
-        hundred_k_tuple_set = load("hundred_k_tuple_sets");
-        System.out.println("Finished loading");
-
-        // 10K Tuple Test Cases ********************************************************************************************************************
-        // NO_MAP 
-        var movie = generate_table("movie", "ten_k", IndexTestsTable.MapType.NO_MAP);
-        var movieExec = generate_table("movieExec", "ten_k", IndexTestsTable.MapType.NO_MAP);
-        var studio = generate_table("studio", "ten_k", IndexTestsTable.MapType.NO_MAP);
-        time_tester(movie, movieExec, studio);
-        // TREE_MAP        
-        movie = generate_table("movie", "ten_k", IndexTestsTable.MapType.TREE_MAP);
-        movieExec = generate_table("movieExec", "ten_k", IndexTestsTable.MapType.TREE_MAP);
-        studio = generate_table("studio", "ten_k", IndexTestsTable.MapType.TREE_MAP);
-        time_tester(movie, movieExec, studio);
-        // HASH_MAP        
-        movie = generate_table("movie", "ten_k", IndexTestsTable.MapType.HASH_MAP);
-        movieExec = generate_table("movieExec", "ten_k", IndexTestsTable.MapType.HASH_MAP);
-        studio = generate_table("studio", "ten_k", IndexTestsTable.MapType.HASH_MAP);
-        time_tester(movie, movieExec, studio);
-        // BPTREE_MAP        
-        movie = generate_table("movie", "ten_k", IndexTestsTable.MapType.BPTREE_MAP);
-        movieExec = generate_table("movieExec", "ten_k", IndexTestsTable.MapType.BPTREE_MAP);
-        studio = generate_table("studio", "ten_k", IndexTestsTable.MapType.BPTREE_MAP);
-        time_tester(movie, movieExec, studio);
-
-        // 20K Tuple Test Cases ********************************************************************************************************************
-        // NO_MAP 
-        movie = generate_table("movie", "twenty_k", IndexTestsTable.MapType.NO_MAP);
-        movieExec = generate_table("movieExec", "twenty_k", IndexTestsTable.MapType.NO_MAP);
-        studio = generate_table("studio", "twenty_k", IndexTestsTable.MapType.NO_MAP);
-        time_tester(movie, movieExec, studio);
-        // TREE_MAP        
-        movie = generate_table("movie", "twenty_k", IndexTestsTable.MapType.TREE_MAP);
-        movieExec = generate_table("movieExec", "twenty_k", IndexTestsTable.MapType.TREE_MAP);
-        studio = generate_table("studio", "twenty_k", IndexTestsTable.MapType.TREE_MAP);
-        time_tester(movie, movieExec, studio);
-        // HASH_MAP        
-        movie = generate_table("movie", "twenty_k", IndexTestsTable.MapType.HASH_MAP);
-        movieExec = generate_table("movieExec", "twenty_k", IndexTestsTable.MapType.HASH_MAP);
-        studio = generate_table("studio", "twenty_k", IndexTestsTable.MapType.HASH_MAP);
-        time_tester(movie, movieExec, studio);
-        // BPTREE_MAP        
-        movie = generate_table("movie", "twenty_k", IndexTestsTable.MapType.BPTREE_MAP);
-        movieExec = generate_table("movieExec", "twenty_k", IndexTestsTable.MapType.BPTREE_MAP);
-        studio = generate_table("studio", "twenty_k", IndexTestsTable.MapType.BPTREE_MAP);
-        time_tester(movie, movieExec, studio);
-
-        // 30K Tuple Test Cases ********************************************************************************************************************
-        // NO_MAP 
-        movie = generate_table("movie", "thirty_k", IndexTestsTable.MapType.NO_MAP);
-        movieExec = generate_table("movieExec", "thirty_k", IndexTestsTable.MapType.NO_MAP);
-        studio = generate_table("studio", "thirty_k", IndexTestsTable.MapType.NO_MAP);
-        time_tester(movie, movieExec, studio);
-        // TREE_MAP        
-        movie = generate_table("movie", "thirty_k", IndexTestsTable.MapType.TREE_MAP);
-        movieExec = generate_table("movieExec", "thirty_k", IndexTestsTable.MapType.TREE_MAP);
-        studio = generate_table("studio", "thirty_k", IndexTestsTable.MapType.TREE_MAP);
-        time_tester(movie, movieExec, studio);
-        // HASH_MAP        
-        movie = generate_table("movie", "thirty_k", IndexTestsTable.MapType.HASH_MAP);
-        movieExec = generate_table("movieExec", "thirty_k", IndexTestsTable.MapType.HASH_MAP);
-        studio = generate_table("studio", "thirty_k", IndexTestsTable.MapType.HASH_MAP);
-        time_tester(movie, movieExec, studio);
-        // BPTREE_MAP        
-        movie = generate_table("movie", "thirty_k", IndexTestsTable.MapType.BPTREE_MAP);
-        movieExec = generate_table("movieExec", "thirty_k", IndexTestsTable.MapType.BPTREE_MAP);
-        studio = generate_table("studio", "thirty_k", IndexTestsTable.MapType.BPTREE_MAP);
-        time_tester(movie, movieExec, studio);
-
-        // 40K Tuple Test Cases ********************************************************************************************************************
-        // NO_MAP 
-        movie = generate_table("movie", "forty_k", IndexTestsTable.MapType.NO_MAP);
-        movieExec = generate_table("movieExec", "forty_k", IndexTestsTable.MapType.NO_MAP);
-        studio = generate_table("studio", "forty_k", IndexTestsTable.MapType.NO_MAP);
-        time_tester(movie, movieExec, studio);
-        // TREE_MAP        
-        movie = generate_table("movie", "forty_k", IndexTestsTable.MapType.TREE_MAP);
-        movieExec = generate_table("movieExec", "forty_k", IndexTestsTable.MapType.TREE_MAP);
-        studio = generate_table("studio", "forty_k", IndexTestsTable.MapType.TREE_MAP);
-        time_tester(movie, movieExec, studio);
-        // HASH_MAP        
-        movie = generate_table("movie", "forty_k", IndexTestsTable.MapType.HASH_MAP);
-        movieExec = generate_table("movieExec", "forty_k", IndexTestsTable.MapType.HASH_MAP);
-        studio = generate_table("studio", "forty_k", IndexTestsTable.MapType.HASH_MAP);
-        time_tester(movie, movieExec, studio);
-        // BPTREE_MAP        
-        movie = generate_table("movie", "forty_k", IndexTestsTable.MapType.BPTREE_MAP);
-        movieExec = generate_table("movieExec", "forty_k", IndexTestsTable.MapType.BPTREE_MAP);
-        studio = generate_table("studio", "forty_k", IndexTestsTable.MapType.BPTREE_MAP);
-        time_tester(movie, movieExec, studio);
-
-        // 50K Tuple Test Cases ********************************************************************************************************************
-        // NO_MAP 
-        movie = generate_table("movie", "fifty_k", IndexTestsTable.MapType.NO_MAP);
-        movieExec = generate_table("movieExec", "fifty_k", IndexTestsTable.MapType.NO_MAP);
-        studio = generate_table("studio", "fifty_k", IndexTestsTable.MapType.NO_MAP);
-        time_tester(movie, movieExec, studio);
-        // TREE_MAP        
-        movie = generate_table("movie", "fifty_k", IndexTestsTable.MapType.TREE_MAP);
-        movieExec = generate_table("movieExec", "fifty_k", IndexTestsTable.MapType.TREE_MAP);
-        studio = generate_table("studio", "fifty_k", IndexTestsTable.MapType.TREE_MAP);
-        time_tester(movie, movieExec, studio);
-        // HASH_MAP        
-        movie = generate_table("movie", "fifty_k", IndexTestsTable.MapType.HASH_MAP);
-        movieExec = generate_table("movieExec", "fifty_k", IndexTestsTable.MapType.HASH_MAP);
-        studio = generate_table("studio", "fifty_k", IndexTestsTable.MapType.HASH_MAP);
-        time_tester(movie, movieExec, studio);
-        // BPTREE_MAP        
-        movie = generate_table("movie", "fifty_k", IndexTestsTable.MapType.BPTREE_MAP);
-        movieExec = generate_table("movieExec", "fifty_k", IndexTestsTable.MapType.BPTREE_MAP);
-        studio = generate_table("studio", "fifty_k", IndexTestsTable.MapType.BPTREE_MAP);
-        time_tester(movie, movieExec, studio);
-
-        // 100K Tuple Test Cases ********************************************************************************************************************
-        // NO_MAP 
-        movie = generate_table("movie", "hundred_k", IndexTestsTable.MapType.NO_MAP);
-        movieExec = generate_table("movieExec", "hundred_k", IndexTestsTable.MapType.NO_MAP);
-        studio = generate_table("studio", "hundred_k", IndexTestsTable.MapType.NO_MAP);
-        time_tester(movie, movieExec, studio);
-        // TREE_MAP        
-        movie = generate_table("movie", "hundred_k", IndexTestsTable.MapType.TREE_MAP);
-        movieExec = generate_table("movieExec", "hundred_k", IndexTestsTable.MapType.TREE_MAP);
-        studio = generate_table("studio", "hundred_k", IndexTestsTable.MapType.TREE_MAP);
-        time_tester(movie, movieExec, studio);
-        // HASH_MAP        
-        movie = generate_table("movie", "hundred_k", IndexTestsTable.MapType.HASH_MAP);
-        movieExec = generate_table("movieExec", "hundred_k", IndexTestsTable.MapType.HASH_MAP);
-        studio = generate_table("studio", "hundred_k", IndexTestsTable.MapType.HASH_MAP);
-        time_tester(movie, movieExec, studio);
-        // BPTREE_MAP        
-        movie = generate_table("movie", "hundred_k", IndexTestsTable.MapType.BPTREE_MAP);
-        movieExec = generate_table("movieExec", "hundred_k", IndexTestsTable.MapType.BPTREE_MAP);
-        studio = generate_table("studio", "hundred_k", IndexTestsTable.MapType.BPTREE_MAP);
-        time_tester(movie, movieExec, studio);
+        bloomFpp = (args.length == 1) ? Double.parseDouble(args[0]) : 0.0;
 
+        for (var set : TUPLE_SETS) {
+            var tuple_set = load(set + "_tuple_sets");               // mapped; tuples are read as tables are built
+            if (tuple_set == null) {
+                continue;                                             // load printed why
+            }
+            System.out.println("Loaded " + set + " tuple set");
+            try (tuple_set) {
+                for (var mType : MAP_TYPES) {
+                    var movie = generate_table("movie", tuple_set, mType);
+                    var movieExec = generate_table("movieExec", tuple_set, mType);
+                    var studio = generate_table("studio", tuple_set, mType);
+                    if (bloomFpp > 0 && mType != IndexTestsTable.MapType.NO_MAP) {
+                        movieExec.enableBloomFilter(bloomFpp);
+                        studio.enableBloomFilter(bloomFpp);
+                    }
+                    time_tester(movie, movieExec, studio);
+                } // for
+            } // try
+        } // for
     }
 }
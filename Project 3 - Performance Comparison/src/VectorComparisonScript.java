@@ -0,0 +1,102 @@
+import java.util.*;
+import static java.lang.System.nanoTime;
+import static java.lang.System.out;
+
+/**
+ * The VectorComparisonScript class compares lookup throughput with the in-node
+ * key search done by the Vector API (VectorSearch) and by scalar binary search,
+ * on wide nodes (orders 64, 128 and 256) of the two B+Trees with primitive
+ * keys: IntBpTreeMap (int []) and SoaBpTreeMap (normalized long []). Each
+ * index holds 1M producerNo keys; half of the probes hit. The first of six
+ * iterations is skipped (JIT warm up).
+ *
+ * Run with --add-modules jdk.incubator.vector (as run.sh does); without it
+ * both columns use the scalar search.
+ */
+class VectorComparisonScript {
+
+    /**
+     * Number of keys in each index.
+     */
+    private static final int KEYS = 1_000_000;
+
+    /**
+     * Number of lookups per iteration.
+     */
+    private static final int PROBES = 1_000_000;
+
+    /**
+     * The orders (maximum number of children per node) to compare.
+     */
+    private static final int[] ORDERS = {64, 128, 256};
+
+    /**
+     * Consumes lookup results so the JIT cannot drop the lookups.
+     */
+    private static long sink = 0;
+
+    /**
+     * Time the lookups of the probe keys, returning millions of lookups per
+     * second averaged over five measured iterations.
+     *
+     * @param index the index to probe
+     * @param probes the keys to look up
+     * @return the lookup throughput (M lookups/s)
+     */
+    static double throughput(Map<KeyType, Comparable[]> index, KeyType[] probes) {
+        var ns = 0L;
+        for (var it = 0; it < 6; it++) {
+            var t0 = nanoTime();
+            for (var p : probes) {
+                var t = index.get(p);
+                if (t != null) {
+                    sink += t.length;
+                }
+            } // for
+            if (it > 0) {
+                ns += nanoTime() - t0;
+            }
+        } // for
+        return 5.0 * probes.length * 1000 / ns;
+    }
+
+    public static void main(String[] args) {
+        var rng = new Random(42);
+        var tuples = new ArrayList<Comparable[]>(KEYS);
+        for (var i = 0; i < KEYS; i++) {
+            var k = (int) ((i * 2654435761L) & 0x3FFFFFFF) * 2;       // distinct, in scrambled order
+            tuples.add(new Comparable[]{k, "name" + k, "address" + k, k % 1000});
+        }
+        var probes = new KeyType[PROBES];
+        for (var i = 0; i < PROBES; i++) {
+            var k = (Integer) tuples.get(rng.nextInt(KEYS))[0];
+            probes[i] = new KeyType(k + (i & 1));                     // odd keys miss
+        }
+
+        out.println(KEYS + " keys, " + PROBES + " lookups, Vector API "
+                + (VectorSearch.AVAILABLE ? "on" : "missing") + ", Vector Test cases (M lookups/s)");
+        out.println("order  index          scalar  vector");
+        for (var order : ORDERS) {
+            var intTree = new IntBpTreeMap<Comparable[]>(Integer.class, order);
+            var soaTree = new SoaBpTreeMap(new Class[]{Integer.class}, tuples, order);
+            for (var row = 0; row < KEYS; row++) {
+                var t = tuples.get(row);
+                intTree.put((Integer) t[0], t);
+                soaTree.put(new KeyType(t[0]), row);
+            } // for
+
+            intTree.setVectorSearch(false);
+            var intScalar = throughput(intTree, probes);
+            intTree.setVectorSearch(true);
+            var intVector = throughput(intTree, probes);
+            soaTree.setVectorSearch(false);
+            var soaScalar = throughput(soaTree, probes);
+            soaTree.setVectorSearch(true);
+            var soaVector = throughput(soaTree, probes);
+
+            out.printf("%5d  %-13s %7.2f %7.2f%n", order, "IntBpTreeMap", intScalar, intVector);
+            out.printf("%5d  %-13s %7.2f %7.2f%n", order, "SoaBpTreeMap", soaScalar, soaVector);
+        } // for
+        out.println("(sink " + sink + ")");
+    }
+}
@@ -0,0 +1,107 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * **********************************************************************************
+ * In-node key search with the Vector API (jdk.incubator.vector). A node's keys
+ * are sorted, so the first position where 'k < key_i' is the number of keys
+ * <= k: a probe is broadcast to every lane and compared with a whole vector of
+ * keys at once, counting the lanes that hold; a vector with a lane that fails
+ * ends the search. The keys left over past the last full vector are compared
+ * one by one.
+ *
+ * IntBpTreeMap and SoaBpTreeMap call these only when AVAILABLE (the
+ * jdk.incubator.vector module is in the boot layer), so the vector classes are
+ * never loaded on a JVM started without --add-modules jdk.incubator.vector; the
+ * maps use their scalar binary search instead.
+ */
+final class VectorSearch {
+
+    /**
+     * Whether the Vector API can be used: its module was added to the JVM and the
+     * vector search was not turned off with -Dbptree.vector=false.
+     */
+    static final boolean AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && !"false".equals(System.getProperty("bptree.vector"));
+
+    /**
+     * Nodes with fewer keys than this are searched by binary search even when the
+     * Vector API is available (a few vectors only pay off on wide nodes).
+     */
+    static final int MIN_KEYS = 16;
+
+    private VectorSearch() {
+    }
+
+    /**
+     * **********************************************************************************
+     * Return the first position i in key [0 .. keys-1] (ascending) where
+     * 'k < key [i]'.
+     *
+     * @param key the node's keys
+     * @param keys the number of active keys
+     * @param k the probe
+     * @return the number of keys <= k
+     */
+    static int find(int[] key, int keys, int k) {
+        return Lanes.find(key, keys, k);
+    }
+
+    /**
+     * **********************************************************************************
+     * Return the first position i in key [0 .. keys-1] (ascending) where
+     * 'k < key [i]'.
+     *
+     * @param key the node's keys
+     * @param keys the number of active keys
+     * @param k the probe
+     * @return the number of keys <= k
+     */
+    static int find(long[] key, int keys, long k) {
+        return Lanes.find(key, keys, k);
+    }
+
+    /**
+     * The vector code, in its own class so that no vector type is loaded until
+     * the first vector search (VectorSearch itself is loaded to read AVAILABLE).
+     */
+    private static final class Lanes {
+
+        private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+        private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+
+        static int find(int[] key, int keys, int k) {
+            var probe = IntVector.broadcast(INTS, k);
+            var bound = INTS.loopBound(keys);
+            var i = 0;
+            for (; i < bound; i += INTS.length()) {
+                var le = IntVector.fromArray(INTS, key, i).compare(VectorOperators.LE, probe);
+                if (!le.allTrue()) {
+                    return i + le.trueCount();
+                }
+            } // for
+            while (i < keys && key[i] <= k) {
+                i++;
+            }
+            return i;
+        } // find
+
+        static int find(long[] key, int keys, long k) {
+            var probe = LongVector.broadcast(LONGS, k);
+            var bound = LONGS.loopBound(keys);
+            var i = 0;
+            for (; i < bound; i += LONGS.length()) {
+                var le = LongVector.fromArray(LONGS, key, i).compare(VectorOperators.LE, probe);
+                if (!le.allTrue()) {
+                    return i + le.trueCount();
+                }
+            } // for
+            while (i < keys && key[i] <= k) {
+                i++;
+            }
+            return i;
+        } // find
+    } // Lanes
+}